@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor;
+import org.commonjava.storage.pathmapped.util.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_QUEUE_SIZE;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_REJECTION_POLICY;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_THREADS;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_WORKER_ENABLED;
+
+/**
+ * Drain a batch of jobs blocking like a remote Cassandra call through the async job executor, on a platform thread
+ * pool and on virtual threads. The virtual variant needs Java 21.
+ */
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+public class AsyncJobExecutorBenchmark
+{
+    private static final int THREADS = 64;
+
+    @Param( { "platform", "virtual" } )
+    private String threads;
+
+    @Param( { "2000" } )
+    private int jobs;
+
+    @Param( { "20" } )
+    private long blockingMillis;
+
+    private AsyncJobExecutor executor;
+
+    @Setup( Level.Invocation )
+    public void setup()
+    {
+        boolean virtual = "virtual".equals( threads );
+        if ( virtual && !VirtualThreads.isAvailable() )
+        {
+            throw new IllegalStateException( "Virtual threads are not available on this JVM" );
+        }
+
+        Map<String, Object> props = new HashMap<>();
+        props.put( PROP_ASYNC_WORKER_ENABLED, true );
+        props.put( PROP_ASYNC_THREADS, THREADS );
+        props.put( PROP_ASYNC_QUEUE_SIZE, jobs );
+        props.put( PROP_ASYNC_REJECTION_POLICY, "block" );
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig( props );
+        config.setVirtualThreadsEnabled( virtual );
+        executor = new AsyncJobExecutor( config );
+    }
+
+    @Benchmark
+    public int drain()
+    {
+        AtomicInteger done = new AtomicInteger();
+        for ( int i = 0; i < jobs; i++ )
+        {
+            executor.execute( () -> {
+                try
+                {
+                    Thread.sleep( blockingMillis );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                done.incrementAndGet();
+            } );
+        }
+        executor.shutdownAndWaitTermination();
+        if ( done.get() != jobs )
+        {
+            throw new IllegalStateException( "Only " + done.get() + " of " + jobs + " jobs done" );
+        }
+        return done.get();
+    }
+}
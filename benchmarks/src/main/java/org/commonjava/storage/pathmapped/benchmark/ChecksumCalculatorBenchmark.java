@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.commonjava.storage.pathmapped.util.ChecksumCalculator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Digest a file the way PathDBOutputStream does, fed in the buffer size of a BufferedOutputStream. Compare one pass
+ * computing all the digests against one pass per digest, inline and pipelined.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar ChecksumCalculatorBenchmark
+ * </pre>
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class ChecksumCalculatorBenchmark
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param( { "4096", "1048576", "16777216" } )
+    private int size;
+
+    @Param( { "SHA-256", "SHA-256,MD5,SHA-1", "CRC32C" } )
+    private String algorithms;
+
+    @Param( { "false", "true" } )
+    private boolean pipelined;
+
+    private byte[] content;
+
+    private List<String> algorithmList;
+
+    private ExecutorService pipeline;
+
+    @Setup( Level.Trial )
+    public void setup()
+    {
+        content = new byte[size];
+        new Random( 1 ).nextBytes( content );
+        algorithmList = Arrays.asList( algorithms.split( "," ) );
+        pipeline = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors() );
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown()
+    {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, String> singlePass() throws NoSuchAlgorithmException
+    {
+        ChecksumCalculator calculator =
+                        new ChecksumCalculator( algorithmList.get( 0 ), algorithmList.subList( 1, algorithmList.size() ),
+                                                pipelined ? pipeline : null );
+        digest( calculator );
+        return calculator.getDigests();
+    }
+
+    @Benchmark
+    public Map<String, String> passPerAlgorithm() throws NoSuchAlgorithmException
+    {
+        Map<String, String> ret = new HashMap<>();
+        for ( String algorithm : algorithmList )
+        {
+            ChecksumCalculator calculator =
+                            new ChecksumCalculator( algorithm, Collections.emptyList(), pipelined ? pipeline : null );
+            digest( calculator );
+            ret.put( algorithm, calculator.getDigestHex() );
+        }
+        return ret;
+    }
+
+    private void digest( ChecksumCalculator calculator )
+    {
+        for ( int off = 0; off < size; off += BUFFER_SIZE )
+        {
+            calculator.update( content, off, Math.min( BUFFER_SIZE, size - off ) );
+        }
+    }
+}
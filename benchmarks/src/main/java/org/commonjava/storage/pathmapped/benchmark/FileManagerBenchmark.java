@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.commonjava.storage.pathmapped.benchmark.StorageState.DIRS;
+import static org.commonjava.storage.pathmapped.benchmark.StorageState.FILES_PER_DIR;
+import static org.commonjava.storage.pathmapped.benchmark.StorageState.FILE_SYSTEM;
+import static org.commonjava.storage.pathmapped.benchmark.StorageState.getDir;
+import static org.commonjava.storage.pathmapped.benchmark.StorageState.getPath;
+
+/**
+ * The core calls of PathMappedFileManager on the pathDBs in {@link StorageState}. Reads pick a random stored file.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar FileManagerBenchmark -p pathDBType=cassandra
+ * </pre>
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+public class FileManagerBenchmark
+{
+    private static final AtomicLong counter = new AtomicLong();
+
+    @Benchmark
+    public void openOutputStream( StorageState state ) throws IOException
+    {
+        state.write( FILE_SYSTEM, "org/commonjava/benchmark/write/file-" + counter.incrementAndGet() + ".jar" );
+    }
+
+    @Benchmark
+    public long openInputStream( StorageState state ) throws IOException
+    {
+        try (InputStream in = state.fileManager.openInputStream( FILE_SYSTEM, randomPath() ))
+        {
+            return IOUtils.copyLarge( in, NULL_OUTPUT_STREAM );
+        }
+    }
+
+    @Benchmark
+    public boolean exists( StorageState state )
+    {
+        return state.fileManager.exists( FILE_SYSTEM, randomPath() );
+    }
+
+    @Benchmark
+    public boolean existsMissing( StorageState state )
+    {
+        return state.fileManager.exists( FILE_SYSTEM, randomPath() + ".missing" );
+    }
+
+    @Benchmark
+    public String[] list( StorageState state )
+    {
+        return state.fileManager.list( FILE_SYSTEM, getDir( ThreadLocalRandom.current().nextInt( DIRS ) ) );
+    }
+
+    @Benchmark
+    public String getFirstFileSystemContaining( StorageState state )
+    {
+        return state.fileManager.getFirstFileSystemContaining( state.candidates, randomPath() );
+    }
+
+    private static String randomPath()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return getPath( random.nextInt( DIRS ), random.nextInt( FILES_PER_DIR ) );
+    }
+}
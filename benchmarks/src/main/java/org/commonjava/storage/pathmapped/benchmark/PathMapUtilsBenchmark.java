@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path parsing done on every pathDB call.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class PathMapUtilsBenchmark
+{
+    @Param( { "2", "8" } )
+    private int depth;
+
+    private String path;
+
+    private String parentPath;
+
+    private String filename;
+
+    @Setup
+    public void setup()
+    {
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < depth; i++ )
+        {
+            sb.append( "/dir-" ).append( i );
+        }
+        parentPath = sb.toString();
+        filename = "artifact-1.0.jar";
+        path = parentPath + "/" + filename;
+    }
+
+    @Benchmark
+    public String getParentPath()
+    {
+        return PathMapUtils.getParentPath( path );
+    }
+
+    @Benchmark
+    public String getFilename()
+    {
+        return PathMapUtils.getFilename( path );
+    }
+
+    @Benchmark
+    public String normalize()
+    {
+        return PathMapUtils.normalize( parentPath, filename );
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.core.S3PhysicalStore;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+
+/**
+ * Write through S3PhysicalStore to a local S3 stand-in. The stand-in drains each request body and holds it for
+ * 'requestLatencyMs', as the round trip to a real endpoint would, so the effect of the concurrent part uploads shows.
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+public class S3OutputStreamBenchmark
+{
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Param( { "65536", "33554432" } )
+    private int size;
+
+    @Param( { "1", "4" } )
+    private int uploadConcurrency;
+
+    @Param( { "0", "20" } )
+    private int requestLatencyMs;
+
+    private S3PhysicalStore store;
+
+    private byte[] buffer;
+
+    @Setup
+    public void setup()
+    {
+        S3Client s3Client = (S3Client) Proxy.newProxyInstance( getClass().getClassLoader(),
+                                                               new Class[] { S3Client.class },
+                                                               ( proxy, method, args ) -> handle( method, args ) );
+        store = new S3PhysicalStore( s3Client, "benchmark", PART_SIZE, uploadConcurrency );
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    @Benchmark
+    public void write() throws IOException
+    {
+        FileInfo fileInfo = store.getFileInfo( "benchmark", "/org/commonjava/benchmark/file.jar" );
+        try (OutputStream out = store.getOutputStream( fileInfo ))
+        {
+            for ( int written = 0; written < size; written += BUFFER_SIZE )
+            {
+                out.write( buffer, 0, Math.min( BUFFER_SIZE, size - written ) );
+            }
+        }
+    }
+
+    private Object handle( Method method, Object[] args ) throws Exception
+    {
+        switch ( method.getName() )
+        {
+            case "putObject":
+                drain( (RequestBody) args[1] );
+                return PutObjectResponse.builder().build();
+            case "createMultipartUpload":
+                return CreateMultipartUploadResponse.builder().uploadId( "upload" ).build();
+            case "uploadPart":
+                drain( (RequestBody) args[1] );
+                int partNumber = ( (UploadPartRequest) args[0] ).partNumber();
+                return UploadPartResponse.builder().eTag( "etag-" + partNumber ).build();
+            case "completeMultipartUpload":
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void drain( RequestBody body ) throws Exception
+    {
+        try (InputStream in = body.contentStreamProvider().newStream())
+        {
+            IOUtils.copyLarge( in, NULL_OUTPUT_STREAM );
+        }
+        if ( requestLatencyMs > 0 )
+        {
+            Thread.sleep( requestLatencyMs );
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.cassandraunit.utils.EmbeddedCassandraServerHelper;
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
+import org.commonjava.storage.pathmapped.pathdb.datastax.CassandraPathDB;
+import org.commonjava.storage.pathmapped.pathdb.jpa.JPAPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils.PROP_CASSANDRA_HOST;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils.PROP_CASSANDRA_KEYSPACE;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils.PROP_CASSANDRA_PORT;
+
+/**
+ * A file manager over FileBasedPhysicalStore and the chosen pathDB, filled with {@link #DIRS} directories of
+ * {@link #FILES_PER_DIR} files in {@link #FILE_SYSTEM}. Embedded Cassandra runs in the benchmark JVM, JPA runs on
+ * in-memory H2 (persistence unit 'benchmark').
+ */
+@State( Scope.Benchmark )
+public class StorageState
+{
+    public static final String FILE_SYSTEM = "maven:hosted:benchmark";
+
+    public static final int DIRS = 50;
+
+    public static final int FILES_PER_DIR = 20;
+
+    private static final String KEYSPACE = "benchmark";
+
+    private static final int CANDIDATES = 10;
+
+    @Param( { "cassandra", "jpa" } )
+    public String pathDBType;
+
+    @Param( { "1024" } )
+    public int fileSize;
+
+    public PathMappedFileManager fileManager;
+
+    public byte[] content;
+
+    public List<String> candidates;
+
+    private PathDB pathDB;
+
+    private File baseDir;
+
+    @Setup( Level.Trial )
+    public void setup() throws Exception
+    {
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig( getProps() );
+        config.setGcIntervalInMinutes( 0 );
+        pathDB = createPathDB( config );
+        baseDir = Files.createTempDirectory( "path-mapped-benchmark" ).toFile();
+        fileManager = new PathMappedFileManager( config, pathDB, new FileBasedPhysicalStore( baseDir ) );
+
+        content = new byte[fileSize];
+        new Random( 1 ).nextBytes( content );
+        for ( int d = 0; d < DIRS; d++ )
+        {
+            for ( int f = 0; f < FILES_PER_DIR; f++ )
+            {
+                write( FILE_SYSTEM, getPath( d, f ) );
+            }
+        }
+
+        // the path is in the last candidate only, as for a group of hosted and remote repositories
+        candidates = new ArrayList<>();
+        for ( int i = 1; i < CANDIDATES; i++ )
+        {
+            candidates.add( "maven:remote:benchmark-" + i );
+        }
+        candidates.add( FILE_SYSTEM );
+    }
+
+    private PathDB createPathDB( DefaultPathMappedStorageConfig config ) throws Exception
+    {
+        switch ( pathDBType )
+        {
+            case "cassandra":
+                EmbeddedCassandraServerHelper.startEmbeddedCassandra();
+                return new CassandraPathDB( config );
+            case "jpa":
+                return new JPAPathDB( "benchmark" );
+            default:
+                throw new IllegalArgumentException( "Unknown pathDB: " + pathDBType );
+        }
+    }
+
+    private Map<String, Object> getProps()
+    {
+        Map<String, Object> props = new HashMap<>();
+        props.put( PROP_CASSANDRA_HOST, "localhost" );
+        props.put( PROP_CASSANDRA_PORT, 9142 );
+        props.put( PROP_CASSANDRA_KEYSPACE, KEYSPACE );
+        return props;
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws IOException
+    {
+        if ( pathDB instanceof CassandraPathDB )
+        {
+            ( (CassandraPathDB) pathDB ).getSession().execute( "DROP KEYSPACE IF EXISTS " + KEYSPACE + ";" );
+        }
+        fileManager.close();
+        FileUtils.deleteDirectory( baseDir );
+    }
+
+    public void write( String fileSystem, String path ) throws IOException
+    {
+        try (OutputStream out = fileManager.openOutputStream( fileSystem, path ))
+        {
+            out.write( content );
+        }
+    }
+
+    public static String getDir( int dir )
+    {
+        return "org/commonjava/benchmark/dir-" + dir;
+    }
+
+    public static String getPath( int dir, int file )
+    {
+        return getDir( dir ) + "/file-" + file + ".jar";
+    }
+}
@@ -15,6 +15,9 @@
  */
 package org.commonjava.storage.pathmapped.config;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface PathMappedStorageConfig
 {
 
@@ -26,6 +29,23 @@ public interface PathMappedStorageConfig
 
     String getDeduplicatePattern();
 
+    /**
+     * Digests computed besides the 'fileChecksumAlgorithm' in the same pass when writing a file, e.g., MD5 and SHA-1
+     * for Maven. They are stored with the path. CRC32C is also supported as a fast non-cryptographic checksum.
+     */
+    default List<String> getExtraChecksumAlgorithms()
+    {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Compute the checksums on a background thread so the hashing overlaps the writing.
+     */
+    default boolean isChecksumPipelined()
+    {
+        return false;
+    }
+
     Object getProperty( String key );
 
     int getGCBatchSize();
@@ -38,8 +58,59 @@ public interface PathMappedStorageConfig
 
     int getGcMaxResultSize();
 
+    /**
+     * Number of workers deleting the reclaimed files concurrently in gc.
+     */
+    default int getGCThreads()
+    {
+        return 1;
+    }
+
+    /**
+     * Max physical deletes per second in gc, across all workers. 0 means no limit.
+     */
+    default int getGCDeletesPerSecond()
+    {
+        return 0;
+    }
+
+    /**
+     * Times to retry a failed physical delete in gc before skipping it until the next run.
+     */
+    default int getGCRetries()
+    {
+        return 2;
+    }
+
     /**
      * Extend file timeout in milliseconds for accessing (being accessed).
      */
     long getResetTimeoutForAccessing();
+
+    /**
+     * Delay in milliseconds before the expiration extended for accessing is written to pathDB. The updates in this
+     * window are coalesced per path and run on a background thread. 0 means updating synchronously on the reader thread.
+     */
+    default long getResetTimeoutUpdateDelay()
+    {
+        return 0;
+    }
+
+    /**
+     * Run the background jobs (async pathDB jobs, gc) on virtual threads if the runtime supports them (Java 21+).
+     * Ignored on older runtimes.
+     */
+    default boolean isVirtualThreadsEnabled()
+    {
+        return false;
+    }
+
+    /**
+     * Number of threads running the blocking work of the async file manager calls, e.g., the physical store and a
+     * pathDB without native async support. Not used if virtual threads are enabled and available.
+     */
+    default int getAsyncBlockingThreads()
+    {
+        return 16;
+    }
 }
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.model;
+
+import java.util.List;
+
+/**
+ * One page of a directory listing. The paging state is an opaque token to get the next page, null if this is the
+ * last one. A page may hold fewer entries than the page size, or even none, while there are more to come.
+ */
+public class ListPage
+{
+    private final List<PathMap> pathMaps;
+
+    private final String pagingState;
+
+    public ListPage( List<PathMap> pathMaps, String pagingState )
+    {
+        this.pathMaps = pathMaps;
+        this.pagingState = pagingState;
+    }
+
+    public List<PathMap> getPathMaps()
+    {
+        return pathMaps;
+    }
+
+    public String getPagingState()
+    {
+        return pagingState;
+    }
+
+    public boolean hasMore()
+    {
+        return pagingState != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ListPage{" + "size=" + pathMaps.size() + ", pagingState='" + pagingState + '\'' + '}';
+    }
+}
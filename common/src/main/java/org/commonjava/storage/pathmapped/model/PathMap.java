@@ -15,7 +15,9 @@
  */
 package org.commonjava.storage.pathmapped.model;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 
 public interface PathMap
 {
@@ -36,4 +38,12 @@ public interface PathMap
     Date getExpiration();
 
     String getChecksum();
+
+    /**
+     * Extra digests of the content by algorithm, besides the checksum.
+     */
+    default Map<String, String> getDigests()
+    {
+        return Collections.emptyMap();
+    }
 }
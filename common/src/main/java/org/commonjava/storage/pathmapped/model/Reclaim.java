@@ -24,4 +24,12 @@ public interface Reclaim
     Date getDeletion();
 
     String getStorage();
+
+    /**
+     * Checksum of the reclaimed file, null if not known.
+     */
+    default String getChecksum()
+    {
+        return null;
+    }
 }
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.spi;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link PathDB}. A PathDB implements this if the backend has a native async client, so
+ * callers do not park a thread per request. The semantics of each method follow the blocking one in PathDB.
+ *
+ * The returned futures may be completed on the backend I/O threads. Callers should not block in the dependent
+ * stages, use the *Async variants of CompletableFuture for blocking work.
+ */
+public interface AsyncPathDB
+{
+    /**
+     * Whether the calls are non-blocking. A decorator implements this interface whatever PathDB it wraps, and returns
+     * false if the wrapped one has no native async support. The caller then runs the blocking methods on its own
+     * threads instead.
+     */
+    default boolean isAsyncSupported()
+    {
+        return true;
+    }
+
+    CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path );
+
+    CompletableFuture<PathDB.FileType> existsAsync( String fileSystem, String path );
+
+    CompletableFuture<List<PathMap>> listAsync( String fileSystem, String path, PathDB.FileType fileType );
+
+    CompletableFuture<Void> insertAsync( String fileSystem, String path, Date creation, Date expiration, String fileId,
+                                         long size, String fileStorage, String checksum );
+
+    default CompletableFuture<Boolean> deleteAsync( String fileSystem, String path )
+    {
+        return deleteAsync( fileSystem, path, false );
+    }
+
+    CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force );
+
+    CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem, String toPath );
+
+    CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem, String toPath,
+                                          Date creation, Date expiration );
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.spi;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Optional capability of a {@link PhysicalStore} which keeps the files on a local (or mounted) file system. The
+ * caller can send the content to a socket by {@link FileChannel#transferTo}, which the OS may do by sendfile without
+ * copying it through the Java heap.
+ */
+public interface ChannelPhysicalStore
+{
+    /**
+     * @return a read-only channel of the file, or null if the file does not exist
+     */
+    FileChannel openChannel( String storageFile ) throws IOException;
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.spi;
+
+import java.io.IOException;
+
+/**
+ * Optional capability of a {@link PhysicalStore} which keeps one copy of each content. The file manager calls
+ * {@link #commit(FileInfo, String, long)} when a file with checksum is written, before it is inserted to PathDB.
+ */
+public interface ContentAddressedPhysicalStore
+{
+    /**
+     * Publish the written file by its checksum, or drop the new copy if the same content is already stored. The
+     * storage file in fileInfo must stay readable with the same content.
+     */
+    void commit( FileInfo fileInfo, String checksum, long size ) throws IOException;
+}
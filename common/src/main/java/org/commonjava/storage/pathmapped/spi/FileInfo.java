@@ -21,6 +21,8 @@ public class FileInfo
 
     private String fileStorage;
 
+    private String checksum;
+
     public String getFileId()
     {
         return fileId;
@@ -41,9 +43,23 @@ public class FileInfo
         this.fileStorage = fileStorage;
     }
 
+    /**
+     * Checksum of the content if known, e.g., when the file is reclaimed. Not set by getFileInfo.
+     */
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    public void setChecksum( String checksum )
+    {
+        this.checksum = checksum;
+    }
+
     @Override
     public String toString()
     {
-        return "FileInfo{" + "fileId='" + fileId + '\'' + ", fileStorage='" + fileStorage + '\'' + '}';
+        return "FileInfo{" + "fileId='" + fileId + '\'' + ", fileStorage='" + fileStorage + '\'' + ", checksum='"
+                        + checksum + '\'' + '}';
     }
 }
@@ -16,14 +16,23 @@
 package org.commonjava.storage.pathmapped.spi;
 
 import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.ListPage;
 import org.commonjava.storage.pathmapped.model.PathMap;
 import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.util.ListPageIterator;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface PathDB
 {
@@ -39,18 +48,94 @@ public interface PathDB
 
     List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType );
 
+    /**
+     * List one page of files under specified path (non-recursive). Implementations should page on the backend so a
+     * large directory is never materialized. The default implementation lists all and uses the offset as state.
+     * @param pageSize max entries to read for this page
+     * @param pagingState the state returned by the previous page, null to start from the beginning
+     */
+    default ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        List<PathMap> all = list( fileSystem, path, fileType );
+        int from = pagingState == null ? 0 : Integer.parseInt( pagingState );
+        int to = Math.min( from + pageSize, all.size() );
+        return new ListPage( all.subList( Math.min( from, to ), to ), to < all.size() ? String.valueOf( to ) : null );
+    }
+
+    /**
+     * Iterate files under specified path (non-recursive), fetching one page at a time.
+     */
+    default Iterator<PathMap> iterate( String fileSystem, String path, FileType fileType, int pageSize )
+    {
+        return new ListPageIterator( this, fileSystem, path, fileType, pageSize );
+    }
+
+    default Stream<PathMap> stream( String fileSystem, String path, FileType fileType, int pageSize )
+    {
+        return StreamSupport.stream( Spliterators.spliteratorUnknownSize(
+                        iterate( fileSystem, path, fileType, pageSize ), Spliterator.ORDERED | Spliterator.NONNULL ),
+                                     false );
+    }
+
     PathMap getPathMap( String fileSystem, String path );
 
+    /**
+     * Get path maps of many paths in the same file system. Implementations should group the paths by parent
+     * to save round trips. The default implementation queries one by one.
+     * @return path to PathMap. The paths not found are absent.
+     */
+    default Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        Map<String, PathMap> ret = new HashMap<>();
+        for ( String path : paths )
+        {
+            PathMap pathMap = getPathMap( fileSystem, path );
+            if ( pathMap != null )
+            {
+                ret.put( path, pathMap );
+            }
+        }
+        return ret;
+    }
+
     long getFileLength( String fileSystem, String path );
 
     long getFileLastModified( String fileSystem, String path );
 
     FileType exists( String fileSystem, String path );
 
+    /**
+     * Batch version of {@link #exists(String, String)}. The default implementation queries one by one.
+     * @return path to FileType.{file/dir}. The paths not existing are absent.
+     */
+    default Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        Map<String, FileType> ret = new HashMap<>();
+        for ( String path : paths )
+        {
+            FileType fileType = exists( fileSystem, path );
+            if ( fileType != null )
+            {
+                ret.put( path, fileType );
+            }
+        }
+        return ret;
+    }
+
     boolean existsFile( String fileSystem, String path );
 
     void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size, String fileStorage, String checksum );
 
+    /**
+     * Insert with the extra digests of the content, see {@link PathMap#getDigests()}. The default implementation
+     * does not store the digests.
+     */
+    default void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                         String fileStorage, String checksum, Map<String, String> digests )
+    {
+        insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum );
+    }
+
     boolean isDirectory( String fileSystem, String path );
 
     boolean isFile( String fileSystem, String path );
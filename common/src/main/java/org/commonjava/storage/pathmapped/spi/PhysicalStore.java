@@ -15,9 +15,15 @@
  */
 package org.commonjava.storage.pathmapped.spi;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 public interface PhysicalStore
 {
@@ -27,7 +33,39 @@ public interface PhysicalStore
 
     InputStream getInputStream( String storageFile ) throws IOException;
 
+    /**
+     * Open the file from 'offset' for at most 'length' bytes. Implementations should read only the range from the
+     * backend. The default implementation skips the bytes before the offset.
+     * @param length max bytes to read, negative means to the end of file
+     * @return the stream, empty if offset is beyond the end of file, or null if the file does not exist
+     */
+    default InputStream getInputStream( String storageFile, long offset, long length ) throws IOException
+    {
+        InputStream in = getInputStream( storageFile );
+        if ( in == null )
+        {
+            return null;
+        }
+        IOUtils.skip( in, offset );
+        return length < 0 ? in : new BoundedInputStream( in, length );
+    }
+
     boolean exists( String storageFile );
 
     boolean delete( FileInfo fileInfo );
+
+    /**
+     * Delete many files. Implementations should use the batch API of the backend, if any, to save round trips.
+     * The default implementation deletes one by one.
+     * @return the given FileInfo instances to whether each is deleted
+     */
+    default Map<FileInfo, Boolean> deleteAll( Collection<FileInfo> fileInfos )
+    {
+        Map<FileInfo, Boolean> ret = new HashMap<>();
+        for ( FileInfo fileInfo : fileInfos )
+        {
+            ret.put( fileInfo, delete( fileInfo ) );
+        }
+        return ret;
+    }
 }
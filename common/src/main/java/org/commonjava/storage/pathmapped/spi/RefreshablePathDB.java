@@ -0,0 +1,28 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.spi;
+
+/**
+ * A PathDB holding its own copy of the entries of another one, e.g., a cache or a local replica. The copy may point
+ * to a physical file which is gone, as the path was overwritten or deleted through another node.
+ */
+public interface RefreshablePathDB
+{
+    /**
+     * Read the entry of the path again from the PathDB it is copied from, e.g., when its physical file is missing.
+     */
+    void refresh( String fileSystem, String path );
+}
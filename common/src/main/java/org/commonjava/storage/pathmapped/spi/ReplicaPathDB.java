@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.spi;
+
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Raw writes for a PathDB used as a local replica of another one, e.g., by TieredPathDB. The entries are taken as
+ * they are: no dedupe by checksum, and no reverse map, reclaims or filesystem counters, which all belong to the
+ * authoritative PathDB.
+ */
+public interface ReplicaPathDB
+{
+    /**
+     * Put the file entry of the path as given, with the missing parent dirs. Dirs are made by
+     * {@link PathDB#makeDirs(String, String)}, which has no side effects.
+     */
+    void replicate( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                    String fileStorage, String checksum, Map<String, String> digests );
+
+    /**
+     * Remove the entry of the path, if any, even a non-empty dir.
+     */
+    void removeReplica( String fileSystem, String path );
+
+    /**
+     * Remove all entries of the filesystem.
+     */
+    void clearReplica( String fileSystem );
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.util;
+
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterate a directory listing page by page. Only the current page is held in memory and the next one is fetched
+ * when it is used up.
+ */
+public class ListPageIterator
+                implements Iterator<PathMap>
+{
+    private final PathDB pathDB;
+
+    private final String fileSystem;
+
+    private final String path;
+
+    private final PathDB.FileType fileType;
+
+    private final int pageSize;
+
+    private Iterator<PathMap> current = Collections.emptyIterator();
+
+    private String pagingState;
+
+    private boolean lastPage;
+
+    public ListPageIterator( PathDB pathDB, String fileSystem, String path, PathDB.FileType fileType, int pageSize )
+    {
+        this.pathDB = pathDB;
+        this.fileSystem = fileSystem;
+        this.path = path;
+        this.fileType = fileType;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while ( !current.hasNext() && !lastPage )
+        {
+            ListPage page = pathDB.list( fileSystem, path, fileType, pageSize, pagingState );
+            current = page.getPathMaps().iterator();
+            pagingState = page.getPagingState();
+            lastPage = !page.hasMore();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public PathMap next()
+    {
+        if ( !hasNext() )
+        {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
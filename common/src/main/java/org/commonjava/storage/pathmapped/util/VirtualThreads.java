@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads (Java 21) by reflection, so the project still builds and runs on Java 11. On an older runtime
+ * {@link #isAvailable()} is false and the callers keep their platform thread pools.
+ */
+public final class VirtualThreads
+{
+    private static final Logger logger = LoggerFactory.getLogger( VirtualThreads.class );
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+
+    private static final ThreadFactory FACTORY;
+
+    static
+    {
+        Method newExecutor = null;
+        ThreadFactory factory = null;
+        try
+        {
+            newExecutor = java.util.concurrent.Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" );
+            Object builder = Thread.class.getMethod( "ofVirtual" ).invoke( null );
+            Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+            factory = (ThreadFactory) builderClass.getMethod( "factory" ).invoke( builder );
+        }
+        catch ( ReflectiveOperationException | RuntimeException e )
+        {
+            logger.debug( "Virtual threads not available: {}", e.toString() );
+            newExecutor = null;
+            factory = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads()
+    {
+    }
+
+    public static boolean isAvailable()
+    {
+        return FACTORY != null;
+    }
+
+    /**
+     * @return an executor starting a new virtual thread for each task, or null if not available
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor()
+    {
+        if ( NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null )
+        {
+            return null;
+        }
+        try
+        {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke( null );
+        }
+        catch ( ReflectiveOperationException e )
+        {
+            logger.warn( "Failed to create virtual thread executor", e );
+            return null;
+        }
+    }
+
+    /**
+     * @return a factory of virtual threads, or null if not available
+     */
+    public static ThreadFactory factory()
+    {
+        return FACTORY;
+    }
+}
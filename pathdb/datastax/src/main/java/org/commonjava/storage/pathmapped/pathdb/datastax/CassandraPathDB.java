@@ -17,20 +17,26 @@ package org.commonjava.storage.pathmapped.pathdb.datastax;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
 import com.datastax.driver.mapping.Result;
 
-import com.google.common.collect.TreeTraverser;
+import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.commonjava.storage.pathmapped.model.*;
 import org.commonjava.storage.pathmapped.pathdb.datastax.model.*;
 import org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor;
 import org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils;
+import org.commonjava.storage.pathmapped.pathdb.datastax.util.WriteBehindUpdater;
 import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
 import org.commonjava.storage.pathmapped.spi.PathDB;
 import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
 import org.commonjava.storage.pathmapped.util.PathMapUtils;
@@ -42,31 +48,43 @@ import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.datastax.driver.core.ConsistencyLevel.*;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.emptySet;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.apache.commons.lang.StringUtils.isNotBlank;
 import static org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils.getHoursInDay;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.CassandraPathDBUtils.toCompletableFuture;
 import static org.commonjava.storage.pathmapped.spi.PathDB.FileType.*;
 import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
 
 public class CassandraPathDB
-                implements PathDB, PathDBAdmin, Closeable
+                implements PathDB, AsyncPathDB, PathDBAdmin, Closeable
 {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private AsyncJobExecutor asyncJobExecutor; // run non-critical jobs on backend
 
+    private WriteBehindUpdater writeBehindUpdater; // merge reverse map and filesystem updates
+
     private Session session;
 
     private Cluster cluster;
@@ -87,9 +105,13 @@ public class CassandraPathDB
 
     private int replicationFactor = 1; // keyspace replica, default 1
 
-    private PreparedStatement preparedExistQuery, preparedListQuery, preparedListCheckEmpty, preparedContainingQuery, preparedExistFileQuery,
+    private static final int MAX_IN_CLAUSE_SIZE = 100; // filenames per 'IN' query of batch lookups
+
+    private static final int MAX_CONCURRENT_QUERIES = 32; // in-flight async queries of batch lookups and traverse
+
+    private PreparedStatement preparedExistQuery, preparedBatchGetQuery, preparedBatchExistQuery, preparedListQuery, preparedListCheckEmpty, preparedContainingQuery, preparedExistFileQuery,
             preparedUpdateExpiration, preparedReverseMapIncrement, preparedReverseMapReduction,
-            preparedFilesystemIncrement, preparedFilesystemReduction, preparedFilesystemList;
+            preparedFilesystemIncrement, preparedFilesystemList;
 
     @Deprecated
     public CassandraPathDB( PathMappedStorageConfig config, Session session, String keyspace )
@@ -139,6 +161,14 @@ public class CassandraPathDB
     {
         session.execute( CassandraPathDBUtils.getSchemaCreateKeyspace( keyspace, replicationFactor ) );
         session.execute( CassandraPathDBUtils.getSchemaCreateTablePathmap( keyspace ) );
+        try
+        {
+            session.execute( CassandraPathDBUtils.getSchemaAlterTablePathmapAddDigests( keyspace ) );
+        }
+        catch ( InvalidQueryException e )
+        {
+            logger.debug( "Column digests exists in pathmap, {}", e.getMessage() );
+        }
         session.execute( CassandraPathDBUtils.getSchemaCreateTableReversemap( keyspace ) );
         session.execute( CassandraPathDBUtils.getSchemaCreateTableReclaim( keyspace ) );
         session.execute( CassandraPathDBUtils.getSchemaCreateTableFileChecksum( keyspace ) );
@@ -160,6 +190,14 @@ public class CassandraPathDB
                                                               + ".pathmap WHERE filesystem=? and parentpath=? and filename IN ? LIMIT 1;" );
         preparedExistQuery.setConsistencyLevel( QUORUM );
 
+        preparedBatchGetQuery = session.prepare( "SELECT * FROM " + keyspace
+                                                                 + ".pathmap WHERE filesystem=? and parentpath=? and filename IN ?;" );
+        preparedBatchGetQuery.setConsistencyLevel( QUORUM );
+
+        preparedBatchExistQuery = session.prepare( "SELECT filename FROM " + keyspace
+                                                                   + ".pathmap WHERE filesystem=? and parentpath=? and filename IN ?;" );
+        preparedBatchExistQuery.setConsistencyLevel( QUORUM );
+
         preparedListQuery =
                         session.prepare( "SELECT * FROM " + keyspace + ".pathmap WHERE filesystem=? and parentpath=?;" );
 
@@ -182,20 +220,22 @@ public class CassandraPathDB
         preparedFilesystemIncrement =
                 session.prepare("UPDATE " + keyspace + ".filesystem SET filecount=filecount+?, size=size+? WHERE filesystem=?;" );
 
-        preparedFilesystemReduction =
-                session.prepare("UPDATE " + keyspace + ".filesystem SET filecount=filecount-?, size=size-? WHERE filesystem=?;" );
-
         preparedFilesystemList = session.prepare("SELECT * FROM " + keyspace + ".filesystem;" );
 
         asyncJobExecutor = new AsyncJobExecutor( config );
+
+        writeBehindUpdater = new WriteBehindUpdater( config, session, preparedReverseMapIncrement,
+                                                     preparedFilesystemIncrement );
     }
 
     @Override
     public void close()
     {
+        // the async jobs may still add write-behind updates, so stop them first
+        asyncJobExecutor.shutdownAndWaitTermination();
+        writeBehindUpdater.shutdown();
         if ( cluster != null ) // close only if the session and cluster were built by self
         {
-            asyncJobExecutor.shutdownAndWaitTermination();
             session.close();
             cluster.close();
             logger.debug( "Cassandra connection closed" );
@@ -207,6 +247,22 @@ public class CassandraPathDB
         return session;
     }
 
+    /**
+     * Report the async job metrics, e.g., queue wait and rejections, to the metricsManager.
+     */
+    public void setMetricsManager( MetricsManager metricsManager, String metricPrefix )
+    {
+        asyncJobExecutor.setMetricsManager( metricsManager, metricPrefix );
+    }
+
+    /**
+     * Write the pending reverse map and filesystem updates now, if write-behind is enabled.
+     */
+    public void flushPendingUpdates()
+    {
+        writeBehindUpdater.flush();
+    }
+
     @Override
     public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
     {
@@ -274,6 +330,38 @@ public class CassandraPathDB
         }
     }
 
+    /**
+     * Page with the driver fetch size and paging state. Only the rows of this page are read, and the filtering by
+     * fileType may leave the page shorter than pageSize.
+     */
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        BoundStatement bound = preparedListQuery.bind( fileSystem, parentPath );
+        bound.setFetchSize( pageSize );
+        if ( pagingState != null )
+        {
+            bound.setPagingState( PagingState.fromString( pagingState ) );
+        }
+
+        ResultSet result = session.execute( bound );
+        PagingState next = result.getExecutionInfo().getPagingState();
+        int available = result.getAvailableWithoutFetching();
+        Result<DtxPathMap> mapped = pathMapMapper.map( result );
+
+        List<PathMap> ret = new ArrayList<>( available );
+        for ( int i = 0; i < available; i++ )
+        {
+            DtxPathMap dtxPathMap = mapped.one();
+            if ( matchFileType( dtxPathMap, fileType ) )
+            {
+                ret.add( dtxPathMap );
+            }
+        }
+        return new ListPage( ret, next == null ? null : next.toString() );
+    }
+
     private Result<DtxPathMap> boundAndRunListQuery( String fileSystem, String parentPath )
     {
         BoundStatement bound = preparedListQuery.bind( fileSystem, parentPath );
@@ -309,51 +397,70 @@ public class CassandraPathDB
             }
         }
 
-        TreeTraverser<DtxPathMap> traverser = new TreeTraverser<DtxPathMap>()
+        // Breadth-first. The child dirs are listed concurrently with async queries and the results are consumed on
+        // the calling thread in the order they complete, so the latency follows the depth of the tree.
+        Deque<String> pendingDirs = new ArrayDeque<>();
+        pendingDirs.add( root == FAKE_ROOT_OBJ ? ROOT_DIR : getChildParentPath( root ) );
+
+        BlockingQueue<ListQuery> completed = new LinkedBlockingQueue<>();
+        Set<ListQuery> inFlight = new HashSet<>();
+        int count = 0;
+        try
         {
-            @Override
-            public Iterable<DtxPathMap> children( DtxPathMap cur )
+            while ( !pendingDirs.isEmpty() || !inFlight.isEmpty() )
             {
-                String parentPath;
-                if ( cur == FAKE_ROOT_OBJ )
+                while ( !pendingDirs.isEmpty() && inFlight.size() < MAX_CONCURRENT_QUERIES )
                 {
-                    parentPath = ROOT_DIR;
+                    ListQuery query = new ListQuery(
+                                    session.executeAsync( preparedListQuery.bind( fileSystem, pendingDirs.poll() ) ) );
+                    inFlight.add( query );
+                    query.future.addListener( () -> completed.add( query ), directExecutor() );
                 }
-                else
+
+                ListQuery done = completed.take();
+                inFlight.remove( done );
+                for ( DtxPathMap dtxPathMap : pathMapMapper.map( done.future.getUninterruptibly() ) )
                 {
-                    parentPath = Paths.get( cur.getParentPath(), cur.getFilename() ).toString();
+                    if ( dtxPathMap.getFilename().endsWith( "/" ) )
+                    {
+                        pendingDirs.add( getChildParentPath( dtxPathMap ) );
+                    }
+                    if ( matchFileType( dtxPathMap, fileType ) )
+                    {
+                        consumer.accept( dtxPathMap );
+                        count++;
+                        if ( limit > 0 && count >= limit )
+                        {
+                            logger.info( "Reach result set limit " + limit );
+                            return;
+                        }
+                    }
                 }
-                Result<DtxPathMap> ret = boundAndRunListQuery( fileSystem, parentPath );
-                return ret.all();
             }
-        };
-        AtomicInteger count = new AtomicInteger( 0 );
-        AtomicBoolean reachResultSetLimit = new AtomicBoolean( false );
-        try
+        }
+        catch ( InterruptedException e )
         {
-            traverser.preOrderTraversal( root ).forEach( dtxPathMap -> {
-                if ( limit > 0 && count.get() >= limit )
-                {
-                    reachResultSetLimit.set( true );
-                    throw new RuntimeException(); // forEach does not have break
-                }
-                if ( dtxPathMap != root && matchFileType( dtxPathMap, fileType ) )
-                {
-                    consumer.accept( dtxPathMap );
-                    count.incrementAndGet();
-                }
-            } );
+            Thread.currentThread().interrupt();
+            logger.warn( "Traverse interrupted, fileSystem: {}, path: {}", fileSystem, path );
         }
-        catch ( RuntimeException e )
+        finally
         {
-            if ( reachResultSetLimit.get() )
-            {
-                logger.info( "Reach result set limit " + limit );
-            }
-            else
-            {
-                throw e;
-            }
+            inFlight.forEach( query -> query.future.cancel( true ) );
+        }
+    }
+
+    private String getChildParentPath( DtxPathMap dir )
+    {
+        return Paths.get( dir.getParentPath(), dir.getFilename() ).toString();
+    }
+
+    private static final class ListQuery
+    {
+        private final ResultSetFuture future;
+
+        private ListQuery( ResultSetFuture future )
+        {
+            this.future = future;
         }
     }
 
@@ -389,6 +496,120 @@ public class CassandraPathDB
         return pathMapMapper.get( fileSystem, parentPath, filename );
     }
 
+    /**
+     * Group the paths by (filesystem, parentpath) partition and run one 'filename IN ?' query per partition.
+     * The queries run concurrently via executeAsync.
+     */
+    @Override
+    public Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        logger.debug( "Get pathMaps, fileSystem: {}, paths: {}", fileSystem, paths.size() );
+        Map<String, PathMap> ret = new HashMap<>();
+        Map<String, Map<String, List<String>>> partitions = groupByParentPath( paths, false );
+        runInQueries( preparedBatchGetQuery, fileSystem, partitions, ( result, requested ) -> {
+            for ( DtxPathMap pathMap : pathMapMapper.map( result ) )
+            {
+                requested.getOrDefault( pathMap.getFilename(), emptyList() ).forEach( p -> ret.put( p, pathMap ) );
+            }
+        } );
+        return ret;
+    }
+
+    /**
+     * Batch version of exists. Like the single query, both "foo/bar" and "foo/bar/" are checked for a path without
+     * trailing slash, and the file wins if both exist.
+     */
+    @Override
+    public Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        logger.debug( "Check exists, fileSystem: {}, paths: {}", fileSystem, paths.size() );
+        Map<String, FileType> ret = new HashMap<>();
+        for ( String path : paths )
+        {
+            if ( ROOT_DIR.equals( path ) )
+            {
+                ret.put( path, dir );
+            }
+        }
+        Map<String, Map<String, List<String>>> partitions = groupByParentPath( paths, true );
+        runInQueries( preparedBatchExistQuery, fileSystem, partitions, ( result, requested ) -> {
+            for ( Row row : result )
+            {
+                String filename = row.get( 0, String.class );
+                FileType type = filename.endsWith( "/" ) ? dir : file;
+                requested.getOrDefault( filename, emptyList() )
+                         .forEach( p -> ret.merge( p, type, ( prev, cur ) -> prev == file ? prev : cur ) );
+            }
+        } );
+        return ret;
+    }
+
+    /**
+     * @return parentPath -> (filename -> requested paths). Paths like "foo/" and "/foo/" share the same key.
+     */
+    private Map<String, Map<String, List<String>>> groupByParentPath( Collection<String> paths, boolean withDir )
+    {
+        Map<String, Map<String, List<String>>> partitions = new HashMap<>();
+        for ( String path : paths )
+        {
+            String parentPath = PathMapUtils.getParentPath( path );
+            String filename = PathMapUtils.getFilename( path );
+            if ( parentPath == null || filename == null )
+            {
+                continue;
+            }
+            Map<String, List<String>> filenames = partitions.computeIfAbsent( parentPath, k -> new HashMap<>() );
+            filenames.computeIfAbsent( filename, k -> new ArrayList<>() ).add( path );
+            if ( withDir && !filename.endsWith( "/" ) )
+            {
+                filenames.computeIfAbsent( filename + "/", k -> new ArrayList<>() ).add( path );
+            }
+        }
+        return partitions;
+    }
+
+    private void runInQueries( PreparedStatement prepared, String fileSystem,
+                               Map<String, Map<String, List<String>>> partitions,
+                               BiConsumer<ResultSet, Map<String, List<String>>> consumer )
+    {
+        Deque<InQuery> inFlight = new ArrayDeque<>();
+        for ( Map.Entry<String, Map<String, List<String>>> et : partitions.entrySet() )
+        {
+            String parentPath = et.getKey();
+            Map<String, List<String>> requested = et.getValue();
+            List<String> filenames = new ArrayList<>( requested.keySet() );
+            for ( int i = 0; i < filenames.size(); i += MAX_IN_CLAUSE_SIZE )
+            {
+                List<String> chunk = filenames.subList( i, Math.min( i + MAX_IN_CLAUSE_SIZE, filenames.size() ) );
+                if ( inFlight.size() >= MAX_CONCURRENT_QUERIES )
+                {
+                    InQuery done = inFlight.poll();
+                    consumer.accept( done.future.getUninterruptibly(), done.requested );
+                }
+                BoundStatement bound = prepared.bind( fileSystem, parentPath, new ArrayList<>( chunk ) );
+                inFlight.add( new InQuery( session.executeAsync( bound ), requested ) );
+            }
+        }
+        while ( !inFlight.isEmpty() )
+        {
+            InQuery done = inFlight.poll();
+            consumer.accept( done.future.getUninterruptibly(), done.requested );
+        }
+    }
+
+    private static final class InQuery
+    {
+        private final ResultSetFuture future;
+
+        private final Map<String, List<String>> requested;
+
+        private InQuery( ResultSetFuture future, Map<String, List<String>> requested )
+        {
+            this.future = future;
+            this.requested = requested;
+        }
+    }
+
     @Override
     public long getFileLastModified( String fileSystem, String path )
     {
@@ -480,6 +701,21 @@ public class CassandraPathDB
     @Override
     public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
                         String fileStorage, String checksum )
+    {
+        insert( toDtxPathMap( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum ) );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        DtxPathMap pathMap = toDtxPathMap( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum );
+        pathMap.setDigests( digests == null || digests.isEmpty() ? null : digests );
+        insert( pathMap );
+    }
+
+    private DtxPathMap toDtxPathMap( String fileSystem, String path, Date creation, Date expiration, String fileId,
+                                     long size, String fileStorage, String checksum )
     {
         DtxPathMap pathMap = new DtxPathMap();
         pathMap.setFileSystem( fileSystem );
@@ -493,7 +729,7 @@ public class CassandraPathDB
         pathMap.setFileStorage( fileStorage );
         pathMap.setSize( size );
         pathMap.setChecksum( checksum );
-        insert( pathMap );
+        return pathMap;
     }
 
     private void insert( DtxPathMap pathMap )
@@ -519,24 +755,8 @@ public class CassandraPathDB
         if ( isNotBlank( checksum ) )
         {
             final FileChecksum existing = fileChecksumMapper.get( checksum );
-            if ( existing != null )
-            {
-                final String existingStorage = existing.getStorage();
-                logger.debug( "File checksum exists, use existing file: {}", existingStorage );
-
-                isDuplicateFile = true;
-                final String curStorage = pathMap.getFileStorage();
-                pathMap.setFileStorage( existingStorage );
-                pathMap.setFileId( existing.getFileId() );
-
-                // Reclaim the curStorage if not equals to existing one
-                if ( !curStorage.equals(existingStorage) )
-                {
-                    String tempFileId = PathMapUtils.getRandomFileId();
-                    asyncJobExecutor.execute(() -> reclaim( tempFileId, curStorage, checksum ));
-                }
-            }
-            else
+            isDuplicateFile = useExistingFile( pathMap, existing );
+            if ( !isDuplicateFile )
             {
                 logger.debug( "File checksum not exists, mark current file as primary: {}", pathMap );
                 fileChecksumMapper.save(
@@ -547,13 +767,40 @@ public class CassandraPathDB
         pathMapMapper.save( pathMap );
 
         final boolean isDuplicateFileFinal = isDuplicateFile;
-        asyncJobExecutor.execute(() -> {
+        asyncJobExecutor.execute( pathMap.getFileId(), () -> {
             postInsertionActions( fileSystem, path, pathMap, isDuplicateFileFinal );
         });
 
         logger.debug( "Insert finished: {}", pathMap.getFilename() );
     }
 
+    /**
+     * If the file checksum exists, point the pathMap to the existing file and reclaim the current one.
+     * @return true if the file is a duplicate
+     */
+    private boolean useExistingFile( DtxPathMap pathMap, FileChecksum existing )
+    {
+        if ( existing == null )
+        {
+            return false;
+        }
+        final String existingStorage = existing.getStorage();
+        logger.debug( "File checksum exists, use existing file: {}", existingStorage );
+
+        final String curStorage = pathMap.getFileStorage();
+        pathMap.setFileStorage( existingStorage );
+        pathMap.setFileId( existing.getFileId() );
+
+        // Reclaim the curStorage if not equals to existing one
+        if ( !curStorage.equals( existingStorage ) )
+        {
+            String tempFileId = PathMapUtils.getRandomFileId();
+            String checksum = pathMap.getChecksum();
+            asyncJobExecutor.execute( tempFileId, () -> reclaim( tempFileId, curStorage, checksum ) );
+        }
+        return true;
+    }
+
     private void postInsertionActions(String fileSystem, String path, PathMap pathMap, boolean isDuplicateFile)
     {
         // update reverse mapping
@@ -638,7 +885,7 @@ public class CassandraPathDB
         pathMapMapper.delete( pathMap.getFileSystem(), pathMap.getParentPath(), pathMap.getFilename() );
 
         // update reverse mapping and filesystem
-        asyncJobExecutor.execute(() -> {
+        asyncJobExecutor.execute( fileId, () -> {
             postDeletionActions( fileSystem, path, pathMap );
         });
 
@@ -649,6 +896,7 @@ public class CassandraPathDB
     {
         boolean isDuplicateFile = true;
         final String fileId = pathMap.getFileId();
+        writeBehindUpdater.flushReverseMap( fileId );
         deleteFromReverseMap( fileId, PathMapUtils.marshall( fileSystem, path ) );
         ReverseMap reverseMap = reverseMapMapper.get( fileId );
         if ( reverseMap == null || reverseMap.getPaths() == null || reverseMap.getPaths().isEmpty() )
@@ -701,32 +949,19 @@ public class CassandraPathDB
     private void addToReverseMap( String fileId, String path )
     {
         logger.debug( "Add to reverseMap, fileId: {}, path: {}", fileId, path );
-        BoundStatement bound = preparedReverseMapIncrement.bind();
-        Set<String> increment = new HashSet();
-        increment.add( path );
-        bound.setSet( 0, increment );
-        bound.setString( 1, fileId );
-        session.execute( bound );
+        writeBehindUpdater.addToReverseMap( fileId, path );
     }
 
     private void updateFilesystemIncrease(String filesystem, long count, long size)
     {
         logger.debug( "Update filesystem '{}', count: +{}, size: +{}", filesystem, count, size );
-        BoundStatement bound = preparedFilesystemIncrement.bind();
-        bound.setLong( 0, count );
-        bound.setLong( 1, size );
-        bound.setString( 2, filesystem );
-        session.execute( bound );
+        writeBehindUpdater.updateFilesystem( filesystem, count, size );
     }
 
     private void updateFilesystemDecrease(String filesystem, long count, long size)
     {
         logger.debug( "Update filesystem '{}', count: -{}, size: -{}", filesystem, count, size );
-        BoundStatement bound = preparedFilesystemReduction.bind();
-        bound.setLong( 0, count );
-        bound.setLong( 1, size );
-        bound.setString( 2, filesystem );
-        session.execute( bound );
+        writeBehindUpdater.updateFilesystem( filesystem, -count, -size );
     }
 
     private void reclaim( String fileId, String fileStorage, String checksum )
@@ -780,7 +1015,7 @@ public class CassandraPathDB
         String toFilename = PathMapUtils.getFilename( toPath );
         target = new DtxPathMap( toFileSystem, toParentPath, toFilename, pathMap.getFileId(), pathMap.getCreation(),
                                  pathMap.getExpiration(), pathMap.getSize(), pathMap.getFileStorage(),
-                                 pathMap.getChecksum() );
+                                 pathMap.getChecksum(), pathMap.getDigests() );
         insert( target );
         return true;
     }
@@ -807,7 +1042,7 @@ public class CassandraPathDB
         String toFilename = PathMapUtils.getFilename( toPath );
         target = new DtxPathMap( toFileSystem, toParentPath, toFilename, pathMap.getFileId(), creation,
                 expiration, pathMap.getSize(), pathMap.getFileStorage(),
-                pathMap.getChecksum() );
+                pathMap.getChecksum(), pathMap.getDigests() );
         insert( target );
         return true;
     }
@@ -944,6 +1179,7 @@ public class CassandraPathDB
     @Override
     public Set<String> getPathsByFileId( String fileId )
     {
+        writeBehindUpdater.flushReverseMap( fileId );
         ReverseMap reverseMap = reverseMapMapper.get( fileId );
         if ( reverseMap != null )
         {
@@ -951,4 +1187,219 @@ public class CassandraPathDB
         }
         return emptySet();
     }
+
+    /*
+     * AsyncPathDB. The queries run with executeAsync and the future stages that may block (the backend jobs when
+     * async worker is disabled) are moved off the driver I/O threads.
+     */
+
+    @Override
+    public CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+
+        if ( parentPath == null || filename == null )
+        {
+            logger.debug( "getPathMapAsync, fileSystem:{}, parentPath:{}, filename:{}", fileSystem, parentPath, filename );
+            return completedFuture( null );
+        }
+        return toCompletableFuture( pathMapMapper.getAsync( fileSystem, parentPath, filename ) );
+    }
+
+    @Override
+    public CompletableFuture<FileType> existsAsync( String fileSystem, String path )
+    {
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return completedFuture( dir );
+        }
+
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+
+        BoundStatement bound;
+        if ( filename.endsWith( "/" ) )
+        {
+            bound = preparedExistQuery.bind( fileSystem, parentPath, Arrays.asList( filename ) );
+        }
+        else
+        {
+            bound = preparedExistQuery.bind( fileSystem, parentPath, Arrays.asList( filename, filename + "/" ) );
+        }
+        return executeAsync( bound ).thenApply( this::getFileTypeOrNull );
+    }
+
+    @Override
+    public CompletableFuture<List<PathMap>> listAsync( String fileSystem, String path, FileType fileType )
+    {
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        BoundStatement bound = preparedListQuery.bind( fileSystem, parentPath );
+        return executeAsync( bound ).thenCompose( this::fetchAll )
+                                    .thenApply( result -> pathMapMapper.map( result )
+                                                                       .all()
+                                                                       .stream()
+                                                                       .filter( dtxPathMap -> matchFileType( dtxPathMap, fileType ) )
+                                                                       .collect( Collectors.toList() ) );
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAsync( String fileSystem, String path, Date creation, Date expiration,
+                                                String fileId, long size, String fileStorage, String checksum )
+    {
+        return insertAsync( toDtxPathMap( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum ) );
+    }
+
+    private CompletableFuture<Void> insertAsync( DtxPathMap pathMap )
+    {
+        logger.debug( "Insert async: {}", pathMap );
+
+        final String fileSystem = pathMap.getFileSystem();
+        final String parent = pathMap.getParentPath();
+
+        asyncJobExecutor.execute( () -> makeDirs( fileSystem, parent ) );
+
+        final String path = PathMapUtils.normalize( parent, pathMap.getFilename() );
+        final String checksum = pathMap.getChecksum();
+
+        CompletableFuture<FileChecksum> existingChecksum = isNotBlank( checksum ) ?
+                        toCompletableFuture( fileChecksumMapper.getAsync( checksum ) ) :
+                        completedFuture( null );
+
+        return getPathMapAsync( fileSystem, path ).thenCompose(
+                        prev -> prev != null ? deleteAsync( fileSystem, path ) : completedFuture( true ) )
+                                                  .thenCombine( existingChecksum, ( deleted, existing ) -> existing )
+                                                  .thenComposeAsync( existing -> {
+                                                      boolean isDuplicateFile = useExistingFile( pathMap, existing );
+                                                      CompletableFuture<Void> saveChecksum = completedFuture( null );
+                                                      if ( isNotBlank( checksum ) && !isDuplicateFile )
+                                                      {
+                                                          logger.debug( "File checksum not exists, mark current file as primary: {}",
+                                                                        pathMap );
+                                                          saveChecksum = toCompletableFuture( fileChecksumMapper.saveAsync(
+                                                                          new DtxFileChecksum( checksum, pathMap.getFileId(),
+                                                                                               pathMap.getFileStorage() ) ) );
+                                                      }
+                                                      return saveChecksum.thenCompose( v -> toCompletableFuture(
+                                                                      pathMapMapper.saveAsync( pathMap ) ) )
+                                                                         .thenRunAsync( () -> {
+                                                                             asyncJobExecutor.execute(
+                                                                                             pathMap.getFileId(),
+                                                                                             () -> postInsertionActions(
+                                                                                                             fileSystem,
+                                                                                                             path,
+                                                                                                             pathMap,
+                                                                                                             isDuplicateFile ) );
+                                                                             logger.debug( "Insert async finished: {}",
+                                                                                           pathMap.getFilename() );
+                                                                         } );
+                                                  } );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force )
+    {
+        return getPathMapAsync( fileSystem, path ).thenCompose( pathMap -> {
+            if ( pathMap == null )
+            {
+                logger.debug( "File not exists, {}:{}", fileSystem, path );
+                return completedFuture( true );
+            }
+
+            if ( pathMap.getFileId() == null )
+            {
+                // force or empty dir
+                CompletableFuture<Boolean> deletable = force ? completedFuture( true ) : isEmptyDirectoryAsync( fileSystem, path );
+                return deletable.thenCompose( ok -> {
+                    if ( !ok )
+                    {
+                        logger.warn( "Can not delete non-empty directory, {}", pathMap );
+                        return completedFuture( false );
+                    }
+                    logger.info( "Delete dir (force: {}), {}", force, pathMap );
+                    return toCompletableFuture( pathMapMapper.deleteAsync( pathMap.getFileSystem(), pathMap.getParentPath(),
+                                                                           pathMap.getFilename() ) ).thenApply( v -> true );
+                } );
+            }
+
+            logger.info( "Delete pathMap, {}", pathMap );
+            return toCompletableFuture( pathMapMapper.deleteAsync( pathMap.getFileSystem(), pathMap.getParentPath(),
+                                                                   pathMap.getFilename() ) ).thenApplyAsync( v -> {
+                // update reverse mapping and filesystem
+                asyncJobExecutor.execute( pathMap.getFileId(),
+                                          () -> postDeletionActions( fileSystem, path, pathMap ) );
+                return true;
+            } );
+        } );
+    }
+
+    private CompletableFuture<Boolean> isEmptyDirectoryAsync( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        return executeAsync( preparedListCheckEmpty.bind( fileSystem, parentPath ) ).thenApply( result -> {
+            Row row = result.one();
+            return row == null || row.get( 0, Long.class ) <= 0;
+        } );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath )
+    {
+        return copyAsync( fromFileSystem, fromPath, toFileSystem, toPath,
+                          pathMap -> new DtxPathMap( toFileSystem, PathMapUtils.getParentPath( toPath ),
+                                                     PathMapUtils.getFilename( toPath ), pathMap.getFileId(),
+                                                     pathMap.getCreation(), pathMap.getExpiration(), pathMap.getSize(),
+                                                     pathMap.getFileStorage(), pathMap.getChecksum(),
+                                                     pathMap.getDigests() ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath, Date creation, Date expiration )
+    {
+        return copyAsync( fromFileSystem, fromPath, toFileSystem, toPath,
+                          pathMap -> new DtxPathMap( toFileSystem, PathMapUtils.getParentPath( toPath ),
+                                                     PathMapUtils.getFilename( toPath ), pathMap.getFileId(), creation,
+                                                     expiration, pathMap.getSize(), pathMap.getFileStorage(),
+                                                     pathMap.getChecksum(), pathMap.getDigests() ) );
+    }
+
+    private CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                  String toPath, Function<PathMap, DtxPathMap> targetCreation )
+    {
+        CompletableFuture<PathMap> target = getPathMapAsync( toFileSystem, toPath );
+        return getPathMapAsync( fromFileSystem, fromPath ).thenCompose( pathMap -> {
+            if ( pathMap == null )
+            {
+                logger.warn( "Source not found, {}:{}", fromFileSystem, fromPath );
+                return completedFuture( false );
+            }
+            return target.thenCompose( t -> {
+                if ( t != null )
+                {
+                    logger.info( "Target already exists, delete it. {}:{}", toFileSystem, toPath );
+                    return deleteAsync( toFileSystem, toPath );
+                }
+                return completedFuture( true );
+            } ).thenCompose( deleted -> insertAsync( targetCreation.apply( pathMap ) ) ).thenApply( v -> true );
+        } );
+    }
+
+    private CompletableFuture<ResultSet> executeAsync( Statement statement )
+    {
+        return toCompletableFuture( session.executeAsync( statement ) );
+    }
+
+    /**
+     * Fetch the remaining pages without blocking, so the result set can be iterated on any thread afterwards.
+     */
+    private CompletableFuture<ResultSet> fetchAll( ResultSet result )
+    {
+        if ( result.isFullyFetched() )
+        {
+            return completedFuture( result );
+        }
+        return toCompletableFuture( result.fetchMoreResults() ).thenCompose( this::fetchAll );
+    }
 }
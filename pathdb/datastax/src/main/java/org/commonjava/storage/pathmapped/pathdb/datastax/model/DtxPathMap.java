@@ -21,7 +21,9 @@ import com.datastax.driver.mapping.annotations.Column;
 import com.datastax.driver.mapping.annotations.Table;
 import org.commonjava.storage.pathmapped.model.PathMap;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.Objects;
 
 @Table( name = "pathmap", readConsistency = "QUORUM", writeConsistency = "QUORUM" )
@@ -54,6 +56,9 @@ public class DtxPathMap implements PathMap
     @Column
     private String checksum;
 
+    @Column
+    private Map<String, String> digests;
+
     public DtxPathMap()
     {
     }
@@ -72,6 +77,13 @@ public class DtxPathMap implements PathMap
         this.checksum = checksum;
     }
 
+    public DtxPathMap( String fileSystem, String parentPath, String filename, String fileId, Date creation,
+                       Date expiration, long size, String fileStorage, String checksum, Map<String, String> digests )
+    {
+        this( fileSystem, parentPath, filename, fileId, creation, expiration, size, fileStorage, checksum );
+        this.digests = digests;
+    }
+
     @Override
     public String getFileId()
     {
@@ -171,6 +183,17 @@ public class DtxPathMap implements PathMap
         this.checksum = checksum;
     }
 
+    @Override
+    public Map<String, String> getDigests()
+    {
+        return digests == null ? Collections.emptyMap() : digests;
+    }
+
+    public void setDigests( Map<String, String> digests )
+    {
+        this.digests = digests;
+    }
+
     @Override
     public boolean equals( Object o )
     {
@@ -195,6 +218,6 @@ public class DtxPathMap implements PathMap
         return "DtxPathMap{" + "fileSystem='" + fileSystem + '\'' + ", parentPath='" + parentPath + '\''
                         + ", filename='" + filename + '\'' + ", fileId='" + fileId + '\'' + ", creation=" + creation
                         + ", expiration=" + expiration + ", size=" + size + ", fileStorage='" + fileStorage + '\''
-                        + ", checksum='" + checksum + '\'' + '}';
+                        + ", checksum='" + checksum + '\'' + ", digests=" + digests + '}';
     }
 }
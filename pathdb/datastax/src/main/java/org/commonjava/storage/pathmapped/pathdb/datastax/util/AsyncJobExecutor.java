@@ -15,16 +15,38 @@
  */
 package org.commonjava.storage.pathmapped.pathdb.datastax.util;
 
+import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
 /**
  * This is to run non-critical pathDB jobs on backend if 'async_worker_enabled' is true (default false).
+ *
+ * The queue is bounded by 'async_queue_size'. When it is full, 'async_rejection_policy' decides: caller_runs (default)
+ * runs the job on the submitting thread and block waits for room. The jobs are never dropped, as losing a reclaim,
+ * reverse map or makeDirs job would corrupt the dedupe and gc state. A job submitted after the shutdown runs on the
+ * submitting thread too. If
+ * 'async_ordered_by_key' is true, the jobs with the same key run in submission order on one lane. Note that
+ * caller_runs may break the order when the lane is full, use block if the order matters.
+ *
+ * If virtual threads are enabled in the config and supported by the runtime, each job runs on its own virtual thread
+ * and 'async_queue_size' bounds the jobs in flight instead. 'async_threads' is not used then. The key ordering
+ * needs the lanes, so it takes precedence over virtual threads.
  */
 public class AsyncJobExecutor {
 
@@ -33,52 +55,329 @@ public class AsyncJobExecutor {
 
     public static final String PROP_ASYNC_THREADS = "async_threads";
 
+    public static final String PROP_ASYNC_QUEUE_SIZE = "async_queue_size";
+
+    public static final String PROP_ASYNC_REJECTION_POLICY = "async_rejection_policy";
+
+    public static final String PROP_ASYNC_ORDERED_BY_KEY = "async_ordered_by_key";
+
+    public static final String PROP_ASYNC_SHUTDOWN_TIMEOUT_SECONDS = "async_shutdown_timeout_seconds";
+
+    public enum RejectionPolicy
+    {
+        caller_runs, block
+    }
+
     // default values
     private static final int DEFAULT_ASYNC_THREADS = 4;
 
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 10000;
+
     private static final int DEFAULT_ASYNC_SHUTDOWN_TIMEOUT_SECONDS = 30;
 
+    // metric names
+    private static final String METRIC_SUBMITTED = "submitted";
+
+    private static final String METRIC_COMPLETED = "completed";
+
+    private static final String METRIC_REJECTED = "rejected";
+
+    private static final String METRIC_QUEUE_WAIT = "queueWait";
+
+    private static final String METRIC_RUN = "run";
+
+    private static final String METRIC_QUEUE_DEPTH = "queueDepth";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
-    private ExecutorService executorService;
+    private final List<ThreadPoolExecutor> lanes = new ArrayList<>();
+
+    private ExecutorService virtualExecutor;
+
+    private Semaphore virtualPermits;
+
+    private int maxVirtualInFlight;
+
+    private final AtomicInteger nextLane = new AtomicInteger();
+
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.caller_runs;
+
+    private int shutdownTimeoutSeconds = DEFAULT_ASYNC_SHUTDOWN_TIMEOUT_SECONDS;
+
+    private volatile MetricsManager metricsManager;
+
+    private String metricPrefix;
 
     public AsyncJobExecutor(PathMappedStorageConfig config)
     {
         Object p = config.getProperty( PROP_ASYNC_WORKER_ENABLED );
         if ( p != null && Boolean.parseBoolean(p.toString()))
         {
-            int threads = DEFAULT_ASYNC_THREADS;
-            Object t = config.getProperty( PROP_ASYNC_THREADS );
-            if ( t != null )
+            int threads = getIntProperty( config, PROP_ASYNC_THREADS, DEFAULT_ASYNC_THREADS );
+            int queueSize = getIntProperty( config, PROP_ASYNC_QUEUE_SIZE, DEFAULT_ASYNC_QUEUE_SIZE );
+            shutdownTimeoutSeconds = getIntProperty( config, PROP_ASYNC_SHUTDOWN_TIMEOUT_SECONDS,
+                                                     DEFAULT_ASYNC_SHUTDOWN_TIMEOUT_SECONDS );
+            Object r = config.getProperty( PROP_ASYNC_REJECTION_POLICY );
+            if ( r != null )
             {
-                threads = Integer.parseInt(t.toString());
+                rejectionPolicy = RejectionPolicy.valueOf( r.toString() );
+            }
+            Object o = config.getProperty( PROP_ASYNC_ORDERED_BY_KEY );
+            boolean orderedByKey = o != null && Boolean.parseBoolean( o.toString() );
+
+            if ( config.isVirtualThreadsEnabled() && !orderedByKey && VirtualThreads.isAvailable() )
+            {
+                logger.info( "Create AsyncJobExecutor with virtual threads, maxInFlight: {}, rejectionPolicy: {}",
+                             queueSize, rejectionPolicy );
+                virtualExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+                virtualPermits = new Semaphore( queueSize );
+                maxVirtualInFlight = queueSize;
+                return;
+            }
+
+            logger.info( "Create AsyncJobExecutor with {} threads, queueSize: {}, rejectionPolicy: {}, orderedByKey: {}",
+                         threads, queueSize, rejectionPolicy, orderedByKey );
+            if ( orderedByKey )
+            {
+                // one single-thread lane per thread, the queue size is shared among them
+                int laneQueueSize = Math.max( 1, queueSize / threads );
+                for ( int i = 0; i < threads; i++ )
+                {
+                    lanes.add( newLane( 1, laneQueueSize ) );
+                }
+            }
+            else
+            {
+                lanes.add( newLane( threads, queueSize ) );
             }
-            logger.info("Create AsyncJobExecutor with {} threads.", threads);
-            executorService = Executors.newFixedThreadPool( threads );
         }
     }
 
+    /**
+     * Register the metrics, including submitted/completed/rejected meters, queueWait/run timers and the
+     * queueDepth gauge.
+     */
+    public void setMetricsManager( MetricsManager metricsManager, String metricPrefix )
+    {
+        this.metricPrefix = metricPrefix;
+        this.metricsManager = metricsManager;
+        metricsManager.getMetricRegistry().gauge( name( metricPrefix, METRIC_QUEUE_DEPTH ), this::getQueueDepth );
+    }
+
     /*
      * Blocks until all tasks have completed execution after a shutdown, or the timeout occurs,
      * or the current thread is interrupted, whichever happens first.
      */
     public void shutdownAndWaitTermination()
     {
-        if ( executorService != null ) {
-            executorService.shutdown();
-            try {
-                executorService.awaitTermination(DEFAULT_ASYNC_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                logger.error("shutdownAndWaitTermination", e);
+        List<ExecutorService> executors = new ArrayList<>( lanes );
+        if ( virtualExecutor != null )
+        {
+            executors.add( virtualExecutor );
+        }
+        executors.forEach( ExecutorService::shutdown );
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( shutdownTimeoutSeconds );
+        for ( ExecutorService executor : executors )
+        {
+            try
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if ( !executor.awaitTermination( Math.max( remaining, 0 ), TimeUnit.MILLISECONDS ) )
+                {
+                    int left = executor.shutdownNow().size();
+                    logger.warn( "AsyncJobExecutor not terminated in {}s, drop {} queued jobs", shutdownTimeoutSeconds,
+                                 left );
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                logger.error( "shutdownAndWaitTermination", e );
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
     public void execute(Runnable runnable) {
-        if ( executorService != null ) {
-            executorService.execute(runnable);
-        } else {
+        if ( virtualExecutor != null )
+        {
+            submitVirtual( runnable );
+            return;
+        }
+        if ( lanes.isEmpty() )
+        {
+            runnable.run();
+            return;
+        }
+        submit( lanes.get( Math.floorMod( nextLane.getAndIncrement(), lanes.size() ) ), runnable );
+    }
+
+    /**
+     * Run the job after the jobs submitted earlier with the same key if 'async_ordered_by_key' is enabled, e.g.,
+     * the jobs for the same fileId.
+     */
+    public void execute( String key, Runnable runnable )
+    {
+        if ( virtualExecutor != null )
+        {
+            submitVirtual( runnable );
+            return;
+        }
+        if ( lanes.isEmpty() )
+        {
             runnable.run();
+            return;
+        }
+        submit( lanes.get( Math.floorMod( key.hashCode(), lanes.size() ) ), runnable );
+    }
+
+    public int getQueueDepth()
+    {
+        if ( virtualExecutor != null )
+        {
+            return maxVirtualInFlight - virtualPermits.availablePermits();
+        }
+        return lanes.stream().mapToInt( lane -> lane.getQueue().size() ).sum();
+    }
+
+    private void submit( ThreadPoolExecutor lane, Runnable runnable )
+    {
+        mark( METRIC_SUBMITTED );
+        lane.execute( new Job( runnable, null ) );
+    }
+
+    private void submitVirtual( Runnable runnable )
+    {
+        mark( METRIC_SUBMITTED );
+        if ( !virtualPermits.tryAcquire() )
+        {
+            mark( METRIC_REJECTED );
+            switch ( rejectionPolicy )
+            {
+                case block:
+                    try
+                    {
+                        virtualPermits.acquire();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException( "Interrupted while waiting for a permit", e );
+                    }
+                    break;
+                default:
+                    new Job( runnable, null ).run();
+                    return;
+            }
+        }
+        try
+        {
+            virtualExecutor.execute( new Job( runnable, virtualPermits::release ) );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            virtualPermits.release();
+            logger.warn( "AsyncJobExecutor is shut down, run job on the caller" );
+            new Job( runnable, null ).run();
+        }
+    }
+
+    private ThreadPoolExecutor newLane( int threads, int queueSize )
+    {
+        return new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                       new ArrayBlockingQueue<>( queueSize ), newRejectionHandler() );
+    }
+
+    private RejectedExecutionHandler newRejectionHandler()
+    {
+        return ( r, executor ) -> {
+            if ( executor.isShutdown() )
+            {
+                logger.warn( "AsyncJobExecutor is shut down, run job on the caller" );
+                r.run();
+                return;
+            }
+            mark( METRIC_REJECTED );
+            switch ( rejectionPolicy )
+            {
+                case block:
+                    try
+                    {
+                        executor.getQueue().put( r );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException( "Interrupted while waiting for the queue", e );
+                    }
+                    break;
+                default:
+                    r.run();
+            }
+        };
+    }
+
+    private void mark( String metric )
+    {
+        MetricsManager metrics = metricsManager;
+        if ( metrics != null )
+        {
+            metrics.getMeter( name( metricPrefix, metric ) ).mark();
+        }
+    }
+
+    private void update( String metric, long nanos )
+    {
+        MetricsManager metrics = metricsManager;
+        if ( metrics != null )
+        {
+            metrics.getMetricRegistry().timer( name( metricPrefix, metric ) ).update( nanos, TimeUnit.NANOSECONDS );
+        }
+    }
+
+    private int getIntProperty( PathMappedStorageConfig config, String key, int defaultValue )
+    {
+        Object v = config.getProperty( key );
+        return v == null ? defaultValue : Integer.parseInt( v.toString() );
+    }
+
+    private final class Job
+                    implements Runnable
+    {
+        private final Runnable runnable;
+
+        private final Runnable onDone;
+
+        private final long submitted = System.nanoTime();
+
+        private Job( Runnable runnable, Runnable onDone )
+        {
+            this.runnable = runnable;
+            this.onDone = onDone;
+        }
+
+        @Override
+        public void run()
+        {
+            long start = System.nanoTime();
+            update( METRIC_QUEUE_WAIT, start - submitted );
+            try
+            {
+                runnable.run();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Async job failed", e );
+            }
+            finally
+            {
+                update( METRIC_RUN, System.nanoTime() - start );
+                mark( METRIC_COMPLETED );
+                if ( onDone != null )
+                {
+                    onDone.run();
+                }
+            }
         }
     }
 }
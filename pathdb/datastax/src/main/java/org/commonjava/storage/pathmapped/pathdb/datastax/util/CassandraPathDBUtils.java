@@ -15,8 +15,15 @@
  */
 package org.commonjava.storage.pathmapped.pathdb.datastax.util;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import java.util.Calendar;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
 public class CassandraPathDBUtils
 {
@@ -67,10 +74,19 @@ public class CassandraPathDBUtils
                         + "size bigint,"
                         + "filestorage varchar,"
                         + "checksum varchar,"
+                        + "digests map<text,text>,"
                         + "PRIMARY KEY ((filesystem, parentpath), filename)"
                         + ");";
     }
 
+    /**
+     * Add the digests column to a pathmap table created by an older version.
+     */
+    public static String getSchemaAlterTablePathmapAddDigests( String keyspace )
+    {
+        return "ALTER TABLE " + keyspace + ".pathmap ADD digests map<text,text>;";
+    }
+
     public static String getSchemaCreateTableReversemap( String keyspace )
     {
         return "CREATE TABLE IF NOT EXISTS " + keyspace + ".reversemap ("
@@ -109,4 +125,28 @@ public class CassandraPathDBUtils
         calendar.setTime( date );
         return calendar.get( Calendar.HOUR_OF_DAY );
     }
+
+    /**
+     * Adapt the driver's ListenableFuture. The returned future is completed on the thread completing the source,
+     * usually a driver I/O thread.
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture( ListenableFuture<? extends T> future )
+    {
+        CompletableFuture<T> ret = new CompletableFuture<>();
+        Futures.addCallback( future, new FutureCallback<T>()
+        {
+            @Override
+            public void onSuccess( T result )
+            {
+                ret.complete( result );
+            }
+
+            @Override
+            public void onFailure( Throwable t )
+            {
+                ret.completeExceptionally( t );
+            }
+        }, directExecutor() );
+        return ret;
+    }
 }
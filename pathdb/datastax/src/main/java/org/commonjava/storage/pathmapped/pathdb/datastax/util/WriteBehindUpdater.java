@@ -0,0 +1,392 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.datastax.util;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.datastax.driver.core.exceptions.UnavailableException;
+import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind for the reverse map additions and filesystem counter updates after insertion/deletion. If
+ * 'write_behind_window_millis' is set (default 0, write immediately), the updates are merged in memory, reverse map
+ * paths per fileId and counter deltas per filesystem, and flushed in batches when the window elapses or the pending
+ * paths reach 'write_behind_max_pending'.
+ *
+ * Reverse map additions go in UNLOGGED batches. Cassandra does not allow counter updates in them, so the counters
+ * go in COUNTER batches. The reverse map additions of a failed batch are merged back into the pending ones and retried
+ * by the next flush, as adding the same paths again is harmless. Counter updates are not idempotent: after a write
+ * timeout the batch may have been applied, so a failed counter batch is only retried when no host could have run it
+ * (no host available, or the replicas known down). Otherwise its deltas are logged and dropped.
+ */
+public class WriteBehindUpdater
+{
+    // properties
+    public static final String PROP_WRITE_BEHIND_WINDOW_MILLIS = "write_behind_window_millis";
+
+    public static final String PROP_WRITE_BEHIND_MAX_PENDING = "write_behind_max_pending";
+
+    // default values
+    private static final int DEFAULT_MAX_PENDING = 1000;
+
+    private static final int MAX_BATCH_SIZE = 100; // statements per batch
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Session session;
+
+    private final PreparedStatement reverseMapIncrement;
+
+    private final PreparedStatement filesystemIncrement;
+
+    private int maxPending = DEFAULT_MAX_PENDING;
+
+    private ScheduledExecutorService executor;
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean( false );
+
+    // held during flush, so a fileId flushed alone is never written after or interleaved with the bulk flush
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // guarded by this
+    private Map<String, Set<String>> reverseMaps = new HashMap<>();
+
+    private Map<String, long[]> counters = new HashMap<>(); // filesystem -> {count, size}
+
+    private int pendingPaths;
+
+    /**
+     * @param reverseMapIncrement 'paths = paths + ?' by fileid
+     * @param filesystemIncrement 'filecount=filecount+?, size=size+?' by filesystem
+     */
+    public WriteBehindUpdater( PathMappedStorageConfig config, Session session, PreparedStatement reverseMapIncrement,
+                               PreparedStatement filesystemIncrement )
+    {
+        this.session = session;
+        this.reverseMapIncrement = reverseMapIncrement;
+        this.filesystemIncrement = filesystemIncrement;
+
+        Object w = config.getProperty( PROP_WRITE_BEHIND_WINDOW_MILLIS );
+        long window = w == null ? 0 : Long.parseLong( w.toString() );
+        if ( window > 0 )
+        {
+            Object m = config.getProperty( PROP_WRITE_BEHIND_MAX_PENDING );
+            if ( m != null )
+            {
+                maxPending = Integer.parseInt( m.toString() );
+            }
+            logger.info( "Create WriteBehindUpdater, window: {}ms, maxPending: {}", window, maxPending );
+            executor = Executors.newSingleThreadScheduledExecutor();
+            executor.scheduleWithFixedDelay( this::flushSafely, window, window, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    public void addToReverseMap( String fileId, String path )
+    {
+        if ( executor == null )
+        {
+            session.execute( bindReverseMap( fileId, singleton( path ) ) );
+            return;
+        }
+
+        boolean full;
+        synchronized ( this )
+        {
+            if ( reverseMaps.computeIfAbsent( fileId, k -> new HashSet<>() ).add( path ) )
+            {
+                pendingPaths++;
+            }
+            full = pendingPaths >= maxPending;
+        }
+        if ( full && flushScheduled.compareAndSet( false, true ) )
+        {
+            executor.execute( this::flushSafely );
+        }
+    }
+
+    /**
+     * @param count signed delta of file count
+     * @param size signed delta of size
+     */
+    public void updateFilesystem( String filesystem, long count, long size )
+    {
+        if ( executor == null )
+        {
+            session.execute( filesystemIncrement.bind( count, size, filesystem ) );
+            return;
+        }
+
+        synchronized ( this )
+        {
+            long[] delta = counters.computeIfAbsent( filesystem, k -> new long[2] );
+            delta[0] += count;
+            delta[1] += size;
+        }
+    }
+
+    /**
+     * Write the pending reverse map additions of the fileId. Call it before reading or reducing the reverse map.
+     */
+    public void flushReverseMap( String fileId )
+    {
+        if ( executor == null )
+        {
+            return;
+        }
+
+        flushLock.lock();
+        try
+        {
+            Set<String> paths;
+            synchronized ( this )
+            {
+                paths = reverseMaps.remove( fileId );
+                if ( paths != null )
+                {
+                    pendingPaths -= paths.size();
+                }
+            }
+            if ( paths != null )
+            {
+                try
+                {
+                    session.execute( bindReverseMap( fileId, paths ) );
+                }
+                catch ( RuntimeException e )
+                {
+                    requeueReverseMap( fileId, paths );
+                    throw e;
+                }
+            }
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write all pending updates.
+     */
+    public void flush()
+    {
+        flushLock.lock();
+        try
+        {
+            Map<String, Set<String>> reverseMapsToWrite;
+            Map<String, long[]> countersToWrite;
+            synchronized ( this )
+            {
+                reverseMapsToWrite = reverseMaps;
+                countersToWrite = counters;
+                reverseMaps = new HashMap<>();
+                counters = new HashMap<>();
+                pendingPaths = 0;
+            }
+            if ( reverseMapsToWrite.isEmpty() && countersToWrite.isEmpty() )
+            {
+                return;
+            }
+
+            List<String> fileIds = new ArrayList<>( reverseMapsToWrite.keySet() );
+            List<String> filesystems = new ArrayList<>( countersToWrite.size() );
+            countersToWrite.forEach( ( filesystem, delta ) -> {
+                if ( delta[0] != 0 || delta[1] != 0 )
+                {
+                    filesystems.add( filesystem );
+                }
+            } );
+
+            logger.debug( "Flush write-behind updates, reverseMaps: {}, counters: {}", fileIds.size(),
+                          filesystems.size() );
+            List<String> failedFileIds = executeInBatches( BatchStatement.Type.UNLOGGED, fileIds,
+                                                           fileId -> bindReverseMap( fileId,
+                                                                                     reverseMapsToWrite.get( fileId ) ),
+                                                           e -> true, fileId -> {} );
+            List<String> failedFilesystems = executeInBatches( BatchStatement.Type.COUNTER, filesystems, filesystem -> {
+                long[] delta = countersToWrite.get( filesystem );
+                return filesystemIncrement.bind( delta[0], delta[1], filesystem );
+            }, WriteBehindUpdater::isNotApplied, filesystem -> {
+                long[] delta = countersToWrite.get( filesystem );
+                logger.error( "Drop filesystem counter update which may or may not be applied, filesystem: {}, "
+                                              + "count: {}, size: {}", filesystem, delta[0], delta[1] );
+            } );
+
+            if ( !failedFileIds.isEmpty() || !failedFilesystems.isEmpty() )
+            {
+                failedFileIds.forEach( fileId -> requeueReverseMap( fileId, reverseMapsToWrite.get( fileId ) ) );
+                synchronized ( this )
+                {
+                    failedFilesystems.forEach( filesystem -> {
+                        long[] failed = countersToWrite.get( filesystem );
+                        long[] delta = counters.computeIfAbsent( filesystem, k -> new long[2] );
+                        delta[0] += failed[0];
+                        delta[1] += failed[1];
+                    } );
+                }
+                throw new IllegalStateException(
+                                "Failed to flush write-behind updates, requeued reverseMaps: " + failedFileIds.size()
+                                                + ", counters: " + failedFilesystems.size() );
+            }
+        }
+        finally
+        {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Run flush safely because any exception would cause the scheduled task to fail and stop.
+     */
+    private void flushSafely()
+    {
+        flushScheduled.set( false );
+        try
+        {
+            flush();
+        }
+        catch ( Exception e )
+        {
+            logger.error( "Failed to flush write-behind updates", e );
+        }
+    }
+
+    /*
+     * Stop the scheduler and flush what is left.
+     */
+    public void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination( SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                logger.error( "shutdown", e );
+            }
+            flushSafely();
+            if ( getPendingSize() > 0 )
+            {
+                logger.error( "Write-behind updates left unflushed at shutdown: {}", getPendingSize() );
+            }
+        }
+    }
+
+    public synchronized int getPendingSize()
+    {
+        return pendingPaths + counters.size();
+    }
+
+    private synchronized void requeueReverseMap( String fileId, Set<String> paths )
+    {
+        Set<String> pending = reverseMaps.computeIfAbsent( fileId, k -> new HashSet<>() );
+        for ( String path : paths )
+        {
+            if ( pending.add( path ) )
+            {
+                pendingPaths++;
+            }
+        }
+    }
+
+    /**
+     * Whether the error guarantees the statement was not applied, so it is safe to retry a non-idempotent update.
+     */
+    private static boolean isNotApplied( RuntimeException e )
+    {
+        return e instanceof NoHostAvailableException || e instanceof UnavailableException;
+    }
+
+    /**
+     * Execute the statements of the keys in batches.
+     * @param retryable whether the keys of a batch failed with the error can be retried
+     * @param drop called for each key of a failed batch which can not be retried
+     * @return keys of the failed batches to retry
+     */
+    private <K> List<K> executeInBatches( BatchStatement.Type type, List<K> keys, Function<K, Statement> binder,
+                                          Predicate<RuntimeException> retryable, Consumer<K> drop )
+    {
+        List<ResultSetFuture> futures = new ArrayList<>();
+        for ( int i = 0; i < keys.size(); i += MAX_BATCH_SIZE )
+        {
+            BatchStatement batch = new BatchStatement( type );
+            keys.subList( i, Math.min( i + MAX_BATCH_SIZE, keys.size() ) ).forEach( k -> batch.add( binder.apply( k ) ) );
+            futures.add( session.executeAsync( batch ) );
+        }
+
+        List<K> failed = new ArrayList<>();
+        for ( int i = 0; i < futures.size(); i++ )
+        {
+            try
+            {
+                futures.get( i ).getUninterruptibly();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to execute {} batch, {}", type, e.toString() );
+                int from = i * MAX_BATCH_SIZE;
+                List<K> batchKeys = keys.subList( from, Math.min( from + MAX_BATCH_SIZE, keys.size() ) );
+                if ( retryable.test( e ) )
+                {
+                    failed.addAll( batchKeys );
+                }
+                else
+                {
+                    batchKeys.forEach( drop );
+                }
+            }
+        }
+        return failed;
+    }
+
+    private Statement bindReverseMap( String fileId, Set<String> paths )
+    {
+        return reverseMapIncrement.bind().setSet( 0, paths ).setString( 1, fileId );
+    }
+
+    private Set<String> singleton( String path )
+    {
+        Set<String> ret = new HashSet<>();
+        ret.add( path );
+        return ret;
+    }
+}
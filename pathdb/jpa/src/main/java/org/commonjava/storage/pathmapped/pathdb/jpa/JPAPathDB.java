@@ -16,6 +16,7 @@
 package org.commonjava.storage.pathmapped.pathdb.jpa;
 
 import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.ListPage;
 import org.commonjava.storage.pathmapped.pathdb.jpa.model.JpaPathKey;
 import org.commonjava.storage.pathmapped.pathdb.jpa.model.JpaPathMap;
 import org.commonjava.storage.pathmapped.pathdb.jpa.model.JpaReclaim;
@@ -31,30 +32,75 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.EntityTransaction;
 import jakarta.persistence.Persistence;
+import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
+import javax.sql.DataSource;
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+/**
+ * PathDB on JPA. Each call runs on its own EntityManager, so the instance is thread-safe and the concurrency is
+ * bound by the connection pool of the persistence unit, or the pooled DataSource given. Each write is one
+ * transaction, with the inserts (e.g., the missing parent dirs) sent in JDBC batches.
+ */
 public class JPAPathDB
-                implements PathDB
+                implements PathDB, Closeable
 {
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final String PROP_NON_JTA_DATA_SOURCE = "jakarta.persistence.nonJtaDataSource";
+
+    private static final String PROP_BATCH_SIZE = "hibernate.jdbc.batch_size";
+
+    private static final String PROP_ORDER_INSERTS = "hibernate.order_inserts";
+
+    private static final String HINT_FETCH_SIZE = "org.hibernate.fetchSize";
+
+    private static final int TRAVERSE_FETCH_SIZE = 500;
+
+    private static final int MAX_IN_CLAUSE_SIZE = 100; // filenames per 'IN' query of batch lookups
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final EntityManagerFactory factory;
 
-    private final EntityManager entitymanager;
-
     public JPAPathDB( String persistenceUnitName )
     {
-        factory = Persistence.createEntityManagerFactory( persistenceUnitName );
-        entitymanager = factory.createEntityManager();
+        this( persistenceUnitName, Collections.emptyMap() );
+    }
+
+    /**
+     * Get the connections from a pooled DataSource, e.g., Agroal or HikariCP.
+     */
+    public JPAPathDB( String persistenceUnitName, DataSource dataSource )
+    {
+        this( persistenceUnitName, Collections.singletonMap( PROP_NON_JTA_DATA_SOURCE, dataSource ) );
+    }
+
+    /**
+     * @param properties override the properties of the persistence unit, including the JDBC batch size which is
+     * {@link #DEFAULT_BATCH_SIZE} by default
+     */
+    public JPAPathDB( String persistenceUnitName, Map<String, Object> properties )
+    {
+        Map<String, Object> props = new HashMap<>();
+        props.put( PROP_BATCH_SIZE, String.valueOf( DEFAULT_BATCH_SIZE ) );
+        props.put( PROP_ORDER_INSERTS, "true" );
+        props.putAll( properties );
+        factory = Persistence.createEntityManagerFactory( persistenceUnitName, props );
     }
 
     @Override
@@ -71,32 +117,141 @@ public class JPAPathDB
 
     public List<PathMap> list( String fileSystem, String path, FileType fileType )
     {
-        if ( path.endsWith( "/" ) )
-        {
-            path = path.substring( 0, path.length() - 1 );
-        }
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        return query( entityManager -> {
+            Query query = entityManager.createQuery(
+                            "Select p from JpaPathMap p where p.pathKey.fileSystem=?1 and p.pathKey.parentPath=?2"
+                                            + getFileTypeCondition( fileType ) )
+                                       .setParameter( 1, fileSystem )
+                                       .setParameter( 2, parentPath );
 
-        Query query = entitymanager.createQuery(
-                        "Select p from JpaPathMap p where p.pathKey.fileSystem=?1 and p.pathKey.parentPath=?2" )
-                                   .setParameter( 1, fileSystem )
-                                   .setParameter( 2, path );
-
-        List<PathMap> list = query.getResultList();
-        return list;
+            List<PathMap> list = query.getResultList();
+            return list;
+        } );
     }
 
     @Override
     public List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType )
     {
+        if ( recursive )
+        {
+            List<PathMap> ret = new ArrayList<>();
+            traverse( fileSystem, path, ret::add, limit, fileType );
+            return ret;
+        }
         return list( fileSystem, path, fileType );
     }
 
+    /**
+     * Page by offset. The paging state is the offset of the next page. Order by filename to keep pages stable.
+     */
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        int offset = pagingState == null ? 0 : Integer.parseInt( pagingState );
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        String queryString = "Select p from JpaPathMap p where p.pathKey.fileSystem=?1 and p.pathKey.parentPath=?2"
+                        + getFileTypeCondition( fileType ) + " order by p.pathKey.filename";
+        List<PathMap> list = query( entityManager -> {
+            Query query = entityManager.createQuery( queryString )
+                                       .setParameter( 1, fileSystem )
+                                       .setParameter( 2, parentPath )
+                                       .setFirstResult( offset )
+                                       .setMaxResults( pageSize + 1 ); // one more to tell if there is a next page
+            return new ArrayList<PathMap>( query.getResultList() );
+        } );
+
+        String next = null;
+        if ( list.size() > pageSize )
+        {
+            list = list.subList( 0, pageSize );
+            next = String.valueOf( offset + pageSize );
+        }
+        return new ListPage( list, next );
+    }
+
+    private String getFileTypeCondition( FileType fileType )
+    {
+        if ( fileType == FileType.file )
+        {
+            return " and p.fileId is not null";
+        }
+        else if ( fileType == FileType.dir )
+        {
+            return " and p.fileId is null";
+        }
+        return "";
+    }
+
     @Override
     public PathMap getPathMap(String fileSystem, String path)
     {
         return findPathMap( fileSystem, path );
     }
 
+    /**
+     * Find the path maps with one 'IN' query on the filenames per parentPath, split into chunks of
+     * {@link #MAX_IN_CLAUSE_SIZE}, all on the same EntityManager.
+     */
+    @Override
+    public Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        Map<JpaPathKey, List<String>> requested = new HashMap<>();
+        for ( String path : paths )
+        {
+            if ( PathMapUtils.ROOT_DIR.equals( path ) )
+            {
+                continue;
+            }
+            requested.computeIfAbsent( getPathKey( fileSystem, path ), k -> new ArrayList<>() ).add( path );
+        }
+        Map<String, PathMap> ret = new HashMap<>();
+        if ( requested.isEmpty() )
+        {
+            return ret;
+        }
+
+        Map<String, List<String>> byParent = new HashMap<>();
+        requested.keySet()
+                 .forEach( key -> byParent.computeIfAbsent( key.getParentPath(), k -> new ArrayList<>() )
+                                          .add( key.getFilename() ) );
+        List<JpaPathMap> list = query( entityManager -> {
+            List<JpaPathMap> found = new ArrayList<>();
+            byParent.forEach( ( parentPath, filenames ) -> {
+                for ( int i = 0; i < filenames.size(); i += MAX_IN_CLAUSE_SIZE )
+                {
+                    Query query = entityManager.createQuery(
+                                    "Select p from JpaPathMap p where p.pathKey.fileSystem=?1 and p.pathKey.parentPath=?2 and p.pathKey.filename in ?3" )
+                                               .setParameter( 1, fileSystem )
+                                               .setParameter( 2, parentPath )
+                                               .setParameter( 3, filenames.subList( i, Math.min(
+                                                               i + MAX_IN_CLAUSE_SIZE, filenames.size() ) ) );
+                    found.addAll( query.getResultList() );
+                }
+            } );
+            return found;
+        } );
+
+        for ( JpaPathMap pathMap : list )
+        {
+            List<String> matched = requested.get( pathMap.getPathKey() );
+            if ( matched != null )
+            {
+                matched.forEach( p -> ret.put( p, pathMap ) );
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        Map<String, FileType> ret = new HashMap<>();
+        getPathMaps( fileSystem, paths ).forEach(
+                        ( path, pathMap ) -> ret.put( path, pathMap.getFileId() != null ? FileType.file : FileType.dir ) );
+        return ret;
+    }
+
     @Override
     public long getFileLength( String fileSystem, String path )
     {
@@ -110,7 +265,7 @@ public class JPAPathDB
 
     private JpaPathMap findPathMap( String fileSystem, String path )
     {
-        return entitymanager.find( JpaPathMap.class, getPathKey( fileSystem, path ) );
+        return query( entityManager -> entityManager.find( JpaPathMap.class, getPathKey( fileSystem, path ) ) );
     }
 
     @Override
@@ -148,63 +303,117 @@ public class JPAPathDB
     @Override
     public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size, String fileStorage, String checksum )
     {
-        JpaPathMap pathMap = new JpaPathMap();
-        JpaPathKey pathKey = getPathKey( fileSystem, path );
-        pathMap.setPathKey( pathKey );
-        pathMap.setCreation( creation );
-        pathMap.setExpiration( expiration );
-        pathMap.setFileId( fileId );
-        pathMap.setFileStorage( fileStorage );
-        pathMap.setSize( size );
-        insert( pathMap, checksum );
+        insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, null );
+    }
+
+    /**
+     * Insert the parent dirs, the path and the reverse mapping in one transaction.
+     */
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        transaction( entityManager -> {
+            // a new entity per attempt, the one of a rolled back transaction is not reusable
+            JpaPathMap pathMap = new JpaPathMap();
+            JpaPathKey pathKey = getPathKey( fileSystem, path );
+            pathMap.setPathKey( pathKey );
+            pathMap.setCreation( creation );
+            pathMap.setExpiration( expiration );
+            pathMap.setFileId( fileId );
+            pathMap.setFileStorage( fileStorage );
+            pathMap.setSize( size );
+            pathMap.setDigests( digests );
+            insert( entityManager, pathMap );
+            return null;
+        } );
     }
 
-    private void insert( PathMap pathMap, String checksum )
+    private void insert( EntityManager entityManager, JpaPathMap pathMap )
     {
         logger.debug( "Insert: {}", pathMap );
 
         String fileSystem = pathMap.getFileSystem();
         String parent = pathMap.getParentPath();
 
-        makeDirs( fileSystem, parent );
+        makeDirs( entityManager, fileSystem, parent );
 
         String path = PathMapUtils.normalize( parent, pathMap.getFilename() );
 
         // before insertion, we need to get the prev entry and check for reclaim
-        JpaPathKey key = ( (JpaPathMap) pathMap ).getPathKey();
-        PathMap prev = entitymanager.find( JpaPathMap.class, key );
+        JpaPathMap prev = entityManager.find( JpaPathMap.class, pathMap.getPathKey() );
         if ( prev != null )
         {
-            delete( fileSystem, path );
+            delete( entityManager, fileSystem, path, prev );
+            entityManager.flush();
         }
 
-        // insert path mapping and reverse mapping
-        transactionAnd( () -> {
-            entitymanager.persist( pathMap );
-        } );
+        entityManager.persist( pathMap );
 
-        // insert reverse mapping
-        addToReverseMap( pathMap.getFileId(), fileSystem, path );
+        addToReverseMap( entityManager, pathMap.getFileId(), fileSystem, path );
     }
 
-    private void addToReverseMap( String fileId, String fileSystem, String path )
+    private void addToReverseMap( EntityManager entityManager, String fileId, String fileSystem, String path )
     {
         HashSet<String> updatedPaths = new HashSet<>();
-        ReverseMap reverseMap = getReverseMap( fileId );
+        ReverseMap reverseMap = getReverseMap( entityManager, fileId );
         if ( reverseMap != null )
         {
             updatedPaths.addAll( reverseMap.getPaths() );
         }
         updatedPaths.add( PathMapUtils.marshall( fileSystem, path ) );
-        ReverseMap updatedReverseMap = new JpaReverseMap( new JpaReverseKey( fileId, 0 ), updatedPaths );
-        transactionAnd( () -> entitymanager.persist( updatedReverseMap ) );
+        entityManager.merge( new JpaReverseMap( new JpaReverseKey( fileId, 0 ), updatedPaths ) );
+    }
+
+    private <R> R query( Function<EntityManager, R> job )
+    {
+        EntityManager entityManager = factory.createEntityManager();
+        try
+        {
+            return job.apply( entityManager );
+        }
+        finally
+        {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Run the job in one transaction on its own EntityManager. Retry once if it fails, e.g., when two writers
+     * create the same parent dir at the same time.
+     */
+    private <R> R transaction( Function<EntityManager, R> job )
+    {
+        try
+        {
+            return transactionOnce( job );
+        }
+        catch ( PersistenceException e )
+        {
+            logger.debug( "Transaction failed, retry. {}", e.getMessage() );
+            return transactionOnce( job );
+        }
     }
 
-    private void transactionAnd( Runnable job )
+    private <R> R transactionOnce( Function<EntityManager, R> job )
     {
-        entitymanager.getTransaction().begin();
-        job.run();
-        entitymanager.getTransaction().commit();
+        EntityManager entityManager = factory.createEntityManager();
+        EntityTransaction transaction = entityManager.getTransaction();
+        try
+        {
+            transaction.begin();
+            R ret = job.apply( entityManager );
+            transaction.commit();
+            return ret;
+        }
+        finally
+        {
+            if ( transaction.isActive() )
+            {
+                transaction.rollback();
+            }
+            entityManager.close();
+        }
     }
 
     @Override
@@ -232,13 +441,19 @@ public class JPAPathDB
     @Override
     public boolean delete( String fileSystem, String path )
     {
-        PathMap pathMap = findPathMap( fileSystem, path );
-        if ( pathMap == null )
-        {
-            logger.debug( "File not exists, {}", pathMap );
-            return true;
-        }
+        return transaction( entityManager -> {
+            JpaPathMap pathMap = entityManager.find( JpaPathMap.class, getPathKey( fileSystem, path ) );
+            if ( pathMap == null )
+            {
+                logger.debug( "File not exists, {}:{}", fileSystem, path );
+                return true;
+            }
+            return delete( entityManager, fileSystem, path, pathMap );
+        } );
+    }
 
+    private boolean delete( EntityManager entityManager, String fileSystem, String path, JpaPathMap pathMap )
+    {
         String fileId = pathMap.getFileId();
         if ( fileId == null )
         {
@@ -246,9 +461,9 @@ public class JPAPathDB
             return false;
         }
 
-        transactionAnd( () -> entitymanager.remove( pathMap ) );
+        entityManager.remove( pathMap );
 
-        removeFromReverseMap( fileSystem, path, pathMap );
+        removeFromReverseMap( entityManager, fileSystem, path, pathMap );
         return true;
     }
 
@@ -258,10 +473,10 @@ public class JPAPathDB
         return delete( fileSystem, path );
     }
 
-    private void removeFromReverseMap( String fileSystem, String path, PathMap pathMap )
+    private void removeFromReverseMap( EntityManager entityManager, String fileSystem, String path, PathMap pathMap )
     {
         String fileId = pathMap.getFileId();
-        ReverseMap reverseMap = getReverseMap( fileId );
+        ReverseMap reverseMap = getReverseMap( entityManager, fileId );
         if ( reverseMap != null )
         {
             HashSet<String> updatedPaths = new HashSet<>( reverseMap.getPaths() );
@@ -270,17 +485,16 @@ public class JPAPathDB
             if ( updatedPaths.isEmpty() )
             {
                 // reclaim, but not remove from reverse table immediately (for race-detection/double-check)
-                reclaim( fileId, pathMap.getFileStorage() );
+                reclaim( entityManager, fileId, pathMap.getFileStorage() );
             }
             else
             {
-                ReverseMap updatedReverseMap = new JpaReverseMap( new JpaReverseKey( fileId, 0 ), updatedPaths );
-                transactionAnd( () -> entitymanager.persist( updatedReverseMap ) );
+                entityManager.merge( new JpaReverseMap( new JpaReverseKey( fileId, 0 ), updatedPaths ) );
             }
         }
         else
         {
-            reclaim( fileId, pathMap.getFileStorage() );
+            reclaim( entityManager, fileId, pathMap.getFileStorage() );
         }
     }
 
@@ -298,35 +512,33 @@ public class JPAPathDB
     @Override
     public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
     {
-        PathMap pathMap = findPathMap( fromFileSystem, fromPath );
-        if ( pathMap == null )
-        {
-            logger.warn( "Source PathKey not found, {}:{}", fromFileSystem, fromPath );
-            return false;
-        }
+        return transaction( entityManager -> {
+            JpaPathMap pathMap = entityManager.find( JpaPathMap.class, getPathKey( fromFileSystem, fromPath ) );
+            if ( pathMap == null )
+            {
+                logger.warn( "Source PathKey not found, {}:{}", fromFileSystem, fromPath );
+                return false;
+            }
 
-        JpaPathKey to = getPathKey( toFileSystem, toPath );
-        PathMap target = findPathMap( toFileSystem, toPath );
-        if ( target != null )
-        {
-            logger.info( "Target PathKey already exists, delete it. {}", to );
-            delete( toFileSystem, toPath );
-        }
+            JpaPathKey to = getPathKey( toFileSystem, toPath );
+            JpaPathMap target = entityManager.find( JpaPathMap.class, to );
+            if ( target != null )
+            {
+                logger.info( "Target PathKey already exists, delete it. {}", to );
+                delete( entityManager, toFileSystem, toPath, target );
+                entityManager.flush();
+            }
 
-        // check parent paths
-        String parentPath = to.getParentPath();
-        String toParentPath = to.getParentPath();
-        if ( !parentPath.equals( toParentPath ) )
-        {
-            makeDirs( toFileSystem, toParentPath );
-        }
+            makeDirs( entityManager, toFileSystem, to.getParentPath() );
 
-        //TODO: need to implement checksum de-dupe in future, and add checksum here
-        transactionAnd( () -> {
-            entitymanager.persist( new JpaPathMap( to, pathMap.getFileId(), pathMap.getCreation(), pathMap.getExpiration(), pathMap.getSize(),
-                                                   pathMap.getFileStorage(), "" ) );
+            //TODO: need to implement checksum de-dupe in future, and add checksum here
+            JpaPathMap copied = new JpaPathMap( to, pathMap.getFileId(), pathMap.getCreation(),
+                                                pathMap.getExpiration(), pathMap.getSize(), pathMap.getFileStorage(),
+                                                "" );
+            copied.setDigests( pathMap.getDigests() );
+            entityManager.persist( copied );
+            return true;
         } );
-        return true;
     }
 
     @Override
@@ -341,6 +553,17 @@ public class JPAPathDB
 
     @Override
     public void makeDirs( String fileSystem, String path )
+    {
+        transaction( entityManager -> {
+            makeDirs( entityManager, fileSystem, path );
+            return null;
+        } );
+    }
+
+    /**
+     * Find the missing dirs bottom-up and persist them together, which goes to the db as one JDBC batch.
+     */
+    private void makeDirs( EntityManager entityManager, String fileSystem, String path )
     {
         logger.debug( "Make dir, fileSystem: {}, path: {}", fileSystem, path );
 
@@ -353,7 +576,7 @@ public class JPAPathDB
             path += "/";
         }
 
-        JpaPathMap pathMap = findPathMap( fileSystem, path );
+        JpaPathMap pathMap = entityManager.find( JpaPathMap.class, getPathKey( fileSystem, path ) );
         if ( pathMap != null )
         {
             logger.debug( "Dir exists, {}:{}", fileSystem, path );
@@ -373,11 +596,9 @@ public class JPAPathDB
         List<JpaPathMap> persist = new ArrayList<>();
         persist.add( pathMap );
 
-        logger.debug( "Get persist: {}", persist );
-
         for ( JpaPathMap p : parents )
         {
-            JpaPathMap o = entitymanager.find( JpaPathMap.class, p.getPathKey() );
+            JpaPathMap o = entityManager.find( JpaPathMap.class, p.getPathKey() );
             if ( o != null )
             {
                 break;
@@ -385,49 +606,133 @@ public class JPAPathDB
             persist.add( p );
         }
 
-        transactionAnd( () -> persist.forEach( p -> entitymanager.persist( p ) ) );
+        logger.debug( "Get persist: {}", persist );
+
+        persist.forEach( entityManager::persist );
     }
 
-    private void reclaim( String fileId, String fileStorage )
+    private void reclaim( EntityManager entityManager, String fileId, String fileStorage )
     {
-        transactionAnd( () -> {
-            entitymanager.persist( new JpaReclaim( fileId, new Date(), fileStorage ) );
-        } );
+        entityManager.merge( new JpaReclaim( fileId, new Date(), fileStorage ) );
     }
 
-    private ReverseMap getReverseMap( String fileId )
+    private ReverseMap getReverseMap( EntityManager entityManager, String fileId )
     {
-        return entitymanager.find( JpaReverseMap.class, new JpaReverseKey( fileId, 0 ) );
+        return entityManager.find( JpaReverseMap.class, new JpaReverseKey( fileId, 0 ) );
     }
 
     @Override
     public List<Reclaim> listOrphanedFiles( int limit )
     {
-        Query query = entitymanager.createQuery( "Select r from Reclaim r" );
-        return query.getResultList();
+        return query( entityManager -> {
+            Query query = entityManager.createQuery( "Select r from JpaReclaim r" );
+            if ( limit > 0 )
+            {
+                query.setMaxResults( limit );
+            }
+            return query.getResultList();
+        } );
     }
 
     @Override
     public void removeFromReclaim( Reclaim reclaim )
     {
-        entitymanager.remove( reclaim );
+        transaction( entityManager -> {
+            JpaReclaim managed = entityManager.find( JpaReclaim.class, reclaim.getFileId() );
+            if ( managed != null )
+            {
+                entityManager.remove( managed );
+            }
+            return null;
+        } );
     }
 
+    /**
+     * Resolve the path in all the candidates with one 'IN' query on the primary key.
+     */
     @Override
     public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
     {
-        return Collections.emptySet();
+        logger.debug( "Get fileSystem containing path {}, candidates: {}", path, candidates );
+        if ( PathMapUtils.ROOT_DIR.equals( path ) || candidates.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        return query( entityManager -> {
+            Query query = entityManager.createQuery(
+                            "Select p.pathKey.fileSystem from JpaPathMap p where p.pathKey.fileSystem in ?1 and p.pathKey.parentPath=?2 and p.pathKey.filename=?3" )
+                                       .setParameter( 1, candidates )
+                                       .setParameter( 2, parentPath )
+                                       .setParameter( 3, filename );
+            List<String> list = query.getResultList();
+            return new HashSet<>( list );
+        } );
     }
 
+    /**
+     * Get the first fileSystem in the candidates containing the path. The query returns the matches in no particular
+     * order, so pick the first by the order of the candidates.
+     */
     @Override
     public String getFirstFileSystemContaining( List<String> candidates, String path )
     {
+        Set<String> ret = getFileSystemContaining( candidates, path );
+        for ( String candidate : candidates )
+        {
+            if ( ret.contains( candidate ) )
+            {
+                return candidate;
+            }
+        }
         return null;
     }
 
+    /**
+     * Stream all the entries under the path with one query instead of a query per dir. The descendants are the rows
+     * with the parentPath of the dir itself or starting with it plus '/', which is a range scan on the
+     * (filesystem, parentpath) index.
+     */
     @Override
     public void traverse( String fileSystem, String path, Consumer<PathMap> consumer, int limit, FileType fileType )
     {
+        logger.debug( "Traverse fileSystem: {}, path: {}", fileSystem, path );
+
+        String parentPath = PathMapUtils.normalizeParentPath( path );
+        boolean root = PathMapUtils.ROOT_DIR.equals( parentPath );
+        String queryString = "Select p from JpaPathMap p where p.pathKey.fileSystem=?1"
+                        + ( root ? "" : " and (p.pathKey.parentPath=?2 or p.pathKey.parentPath like ?3 escape '\\')" )
+                        + getFileTypeCondition( fileType ) + " order by p.pathKey.parentPath, p.pathKey.filename";
+        query( entityManager -> {
+            Query query = entityManager.createQuery( queryString )
+                                       .setParameter( 1, fileSystem )
+                                       .setHint( HINT_FETCH_SIZE, TRAVERSE_FETCH_SIZE );
+            if ( !root )
+            {
+                query.setParameter( 2, parentPath ).setParameter( 3, escapeLike( parentPath ) + "/%" );
+            }
+            if ( limit > 0 )
+            {
+                query.setMaxResults( limit );
+            }
+            try (Stream<PathMap> results = query.getResultStream())
+            {
+                results.forEach( consumer );
+            }
+            return null;
+        } );
+    }
+
+    private static String escapeLike( String value )
+    {
+        return value.replace( "\\", "\\\\" ).replace( "%", "\\%" ).replace( "_", "\\_" );
+    }
+
+    @Override
+    public void close()
+    {
+        factory.close();
     }
 
     private JpaPathKey getPathKey( String fileSystem, String path )
@@ -20,12 +20,16 @@ import org.commonjava.storage.pathmapped.model.PathMap;
 import jakarta.persistence.Column;
 import jakarta.persistence.EmbeddedId;
 import jakarta.persistence.Entity;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 @Entity
-@Table( name = "pathmap" )
+@Table( name = "pathmap", indexes = { @Index( name = "pathmap_parentpath", columnList = "filesystem,parentpath" ) } )
 public class JpaPathMap implements PathMap
 {
     @EmbeddedId
@@ -49,6 +53,12 @@ public class JpaPathMap implements PathMap
     @Column( name = "checksum" )
     private String checksum;
 
+    /**
+     * Extra digests encoded as 'algorithm=hex' separated by commas, which any SQL type mapping supports.
+     */
+    @Column( name = "digests" )
+    private String digests;
+
     public JpaPathMap()
     {
     }
@@ -158,6 +168,40 @@ public class JpaPathMap implements PathMap
         this.checksum = checksum;
     }
 
+    @Override
+    public Map<String, String> getDigests()
+    {
+        if ( digests == null || digests.isEmpty() )
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, String> ret = new LinkedHashMap<>();
+        for ( String digest : digests.split( "," ) )
+        {
+            int idx = digest.indexOf( '=' );
+            ret.put( digest.substring( 0, idx ), digest.substring( idx + 1 ) );
+        }
+        return ret;
+    }
+
+    public void setDigests( Map<String, String> digests )
+    {
+        if ( digests == null || digests.isEmpty() )
+        {
+            this.digests = null;
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        digests.forEach( ( algorithm, hex ) -> {
+            if ( sb.length() > 0 )
+            {
+                sb.append( ',' );
+            }
+            sb.append( algorithm ).append( '=' ).append( hex );
+        } );
+        this.digests = sb.toString();
+    }
+
     @Override
     public boolean equals( Object o )
     {
@@ -180,6 +224,6 @@ public class JpaPathMap implements PathMap
     {
         return "JpaPathMap{" + "pathKey=" + pathKey + ", fileId='" + fileId + '\'' + ", creation=" + creation
                         + ", expiration=" + expiration + ", size=" + size + ", fileStorage='" + fileStorage + '\''
-                        + ", checksum='" + checksum + '\'' + '}';
+                        + ", checksum='" + checksum + '\'' + ", digests='" + digests + '\'' + '}';
     }
 }
@@ -0,0 +1,805 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory;
+
+import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.pathdb.memory.model.MemFileChecksum;
+import org.commonjava.storage.pathmapped.pathdb.memory.model.MemFilesystem;
+import org.commonjava.storage.pathmapped.pathdb.memory.model.MemPathKey;
+import org.commonjava.storage.pathmapped.pathdb.memory.model.MemPathMap;
+import org.commonjava.storage.pathmapped.pathdb.memory.model.MemReclaim;
+import org.commonjava.storage.pathmapped.pathdb.memory.util.MemPathDBUtils.SegmentPool;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
+import org.commonjava.storage.pathmapped.spi.ReplicaPathDB;
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.util.Collections.emptySet;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.commonjava.storage.pathmapped.spi.PathDB.FileType.dir;
+import static org.commonjava.storage.pathmapped.spi.PathDB.FileType.file;
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
+
+/**
+ * Pure in-memory PathDB for edge caches and tests. Path maps are compact immutable entries (see {@link MemPathMap})
+ * in a concurrent sorted map keyed by (fileSystem, parentPath, filename), with the filesystems and parent paths
+ * interned, so listing a dir is a range scan and traversing is a prefix scan. The reverse map, file checksums,
+ * reclaims and filesystem counters are held alongside.
+ *
+ * Reads are lock-free. Writes that touch several maps are serialized on this instance. Nothing is persisted.
+ */
+public class MemoryPathDB
+                implements PathDB, PathDBAdmin, ReplicaPathDB
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathMappedStorageConfig config;
+
+    private final ConcurrentNavigableMap<MemPathKey, MemPathMap> pathMaps = new ConcurrentSkipListMap<>();
+
+    /**
+     * fileId to the marshalled paths, replaced as a whole on update. Most files have only one path.
+     */
+    private final ConcurrentMap<String, String[]> reverseMaps = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, MemFileChecksum> fileChecksums = new ConcurrentHashMap<>();
+
+    private final ConcurrentSkipListSet<MemReclaim> reclaims = new ConcurrentSkipListSet<>( MemReclaim.DELETION_ORDER );
+
+    private final ConcurrentMap<String, MemFilesystem> filesystems = new ConcurrentHashMap<>();
+
+    private final SegmentPool segments = new SegmentPool();
+
+    private final Object writeLock = new Object();
+
+    public MemoryPathDB( PathMappedStorageConfig config )
+    {
+        this.config = config;
+    }
+
+    /**
+     * Number of path maps, dirs included.
+     */
+    public int size()
+    {
+        return pathMaps.size();
+    }
+
+    private MemPathKey getKey( String fileSystem, String parentPath, String filename )
+    {
+        return new MemPathKey( fileSystem, parentPath, filename );
+    }
+
+    /**
+     * Key to be stored, with the filesystem and parent path shared with the other keys. Filenames are mostly unique
+     * (versioned files, hashes), so pooling them would cost more than it saves.
+     */
+    private MemPathKey internKey( String fileSystem, String parentPath, String filename )
+    {
+        return new MemPathKey( segments.intern( fileSystem ), segments.intern( parentPath ), filename );
+    }
+
+    @Override
+    public FileChecksum getFileChecksum( String checksum )
+    {
+        return fileChecksums.get( checksum );
+    }
+
+    @Override
+    public Set<String> getPathsByFileId( String fileId )
+    {
+        String[] paths = reverseMaps.get( fileId );
+        return paths != null ? new LinkedHashSet<>( Arrays.asList( paths ) ) : emptySet();
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, FileType fileType )
+    {
+        return list( fileSystem, path, false, 0, fileType );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType )
+    {
+        List<PathMap> ret = new ArrayList<>();
+        if ( recursive )
+        {
+            traverse( fileSystem, path, pathMap -> ret.add( pathMap ), limit, fileType );
+        }
+        else
+        {
+            String parentPath = PathMapUtils.normalizeParentPath( path );
+            scanChildren( fileSystem, parentPath, null, pathMap -> {
+                if ( matchFileType( pathMap, fileType ) )
+                {
+                    ret.add( pathMap );
+                }
+                return limit <= 0 || ret.size() < limit;
+            } );
+        }
+        return ret;
+    }
+
+    /**
+     * The paging state is the last filename of the page, and the next page starts after it.
+     */
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        List<PathMap> ret = new ArrayList<>( pageSize );
+        boolean[] more = new boolean[1];
+        scanChildren( fileSystem, PathMapUtils.normalizeParentPath( path ), pagingState, pathMap -> {
+            if ( !matchFileType( pathMap, fileType ) )
+            {
+                return true;
+            }
+            if ( ret.size() == pageSize )
+            {
+                more[0] = true;
+                return false;
+            }
+            ret.add( pathMap );
+            return true;
+        } );
+        String next = more[0] ? ret.get( ret.size() - 1 ).getFilename() : null;
+        return new ListPage( ret, next );
+    }
+
+    /**
+     * The children of the dir come first, as one range of the same parentPath, then the deeper descendants in key
+     * order.
+     */
+    @Override
+    public void traverse( String fileSystem, String path, Consumer<PathMap> consumer, int limit, FileType fileType )
+    {
+        logger.debug( "Traverse fileSystem: {}, path: {}", fileSystem, path );
+
+        int[] count = new int[1];
+        Predicate<MemPathMap> visitor = pathMap -> {
+            if ( matchFileType( pathMap, fileType ) )
+            {
+                consumer.accept( pathMap );
+                count[0]++;
+                if ( limit > 0 && count[0] >= limit )
+                {
+                    logger.info( "Reach result set limit " + limit );
+                    return false;
+                }
+            }
+            return true;
+        };
+
+        if ( ROOT_DIR.equals( path ) )
+        {
+            scan( getKey( fileSystem, "", "" ), key -> key.getFileSystem().equals( fileSystem ), visitor );
+            return;
+        }
+
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( !pathMaps.containsKey( getKey( fileSystem, parentPath, filename ) ) )
+        {
+            logger.debug( "Root not found, fileSystem: {}, parentPath: {}, filename: {}", fileSystem, parentPath,
+                          filename );
+            return;
+        }
+
+        String dirPath = PathMapUtils.normalizeParentPath( path );
+        String descendants = dirPath + "/";
+        if ( scanChildren( fileSystem, dirPath, null, visitor ) )
+        {
+            scan( getKey( fileSystem, descendants, "" ), key -> key.getFileSystem().equals( fileSystem )
+                            && key.getParentPath().startsWith( descendants ), visitor );
+        }
+    }
+
+    /**
+     * Visit the entries directly under the parentPath, starting after the filename if given.
+     * @return false if the visitor stopped the scan
+     */
+    private boolean scanChildren( String fileSystem, String parentPath, String after, Predicate<MemPathMap> visitor )
+    {
+        MemPathKey from = getKey( fileSystem, parentPath, after == null ? "" : after );
+        return scan( pathMaps.tailMap( from, after == null ), key -> key.getParentPath().equals( parentPath )
+                        && key.getFileSystem().equals( fileSystem ), visitor );
+    }
+
+    private boolean scan( MemPathKey from, Predicate<MemPathKey> inRange, Predicate<MemPathMap> visitor )
+    {
+        return scan( pathMaps.tailMap( from, true ), inRange, visitor );
+    }
+
+    /**
+     * Visit the entries in key order while the keys are in range, until the visitor returns false. The iterators of
+     * the skip list are weakly consistent and never block the writers.
+     * @return false if the visitor stopped the scan
+     */
+    private boolean scan( ConcurrentNavigableMap<MemPathKey, MemPathMap> entries, Predicate<MemPathKey> inRange,
+                          Predicate<MemPathMap> visitor )
+    {
+        for ( Map.Entry<MemPathKey, MemPathMap> e : entries.entrySet() )
+        {
+            if ( !inRange.test( e.getKey() ) )
+            {
+                break;
+            }
+            if ( !visitor.test( e.getValue() ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchFileType( PathMap pathMap, FileType fileType )
+    {
+        String filename = pathMap.getFilename();
+        return fileType == null || fileType == FileType.all || fileType == dir && filename.endsWith( "/" )
+                        || fileType == file && !filename.endsWith( "/" );
+    }
+
+    @Override
+    public PathMap getPathMap( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+
+        if ( parentPath == null || filename == null )
+        {
+            logger.debug( "getPathMap, fileSystem:{}, parentPath:{}, filename:{}", fileSystem, parentPath, filename );
+            return null;
+        }
+        return pathMaps.get( getKey( fileSystem, parentPath, filename ) );
+    }
+
+    @Override
+    public long getFileLength( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null )
+        {
+            return pathMap.getSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getFileLastModified( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return pathMap.getCreation().getTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Check if the specified path exist. If the path does not end with /, e.g., "foo/bar", we check both "foo/bar"
+     * and "foo/bar/".
+     * @return FileType.{file/dir} if exist. Null if not exist.
+     */
+    @Override
+    public FileType exists( String fileSystem, String path )
+    {
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return dir;
+        }
+
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        FileType ret = null;
+        if ( filename.endsWith( "/" ) )
+        {
+            if ( pathMaps.containsKey( getKey( fileSystem, parentPath, filename ) ) )
+            {
+                ret = dir;
+            }
+        }
+        else if ( pathMaps.containsKey( getKey( fileSystem, parentPath, filename ) ) )
+        {
+            ret = file;
+        }
+        else if ( pathMaps.containsKey( getKey( fileSystem, parentPath, filename + "/" ) ) )
+        {
+            ret = dir;
+        }
+        logger.trace( "{} {} in fileSystem {}, fileType: {}", path, ret != null ? "exists" : "not exists",
+                      fileSystem, ret );
+        return ret;
+    }
+
+    @Override
+    public boolean existsFile( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( parentPath == null || filename == null )
+        {
+            return false;
+        }
+        return pathMaps.containsKey( getKey( fileSystem, parentPath, filename ) );
+    }
+
+    @Override
+    public boolean isDirectory( String fileSystem, String path )
+    {
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+        return existsFile( fileSystem, path );
+    }
+
+    @Override
+    public boolean isFile( String fileSystem, String path )
+    {
+        if ( path.endsWith( "/" ) )
+        {
+            return false;
+        }
+        return existsFile( fileSystem, path );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum )
+    {
+        insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, null );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        MemPathKey key = internKey( fileSystem, PathMapUtils.getParentPath( path ), PathMapUtils.getFilename( path ) );
+        insert( MemPathMap.file( key, fileId, creation, expiration, size, fileStorage, checksum, digests ) );
+    }
+
+    private void insert( MemPathMap pathMap )
+    {
+        logger.debug( "Insert: {}", pathMap );
+
+        final MemPathKey key = pathMap.getKey();
+        final String fileSystem = key.getFileSystem();
+        final String parent = key.getParentPath();
+        final String path = PathMapUtils.normalize( parent, key.getFilename() );
+
+        synchronized ( writeLock )
+        {
+            makeDirs( fileSystem, parent );
+
+            if ( pathMaps.containsKey( key ) )
+            {
+                delete( fileSystem, path );
+            }
+
+            boolean isDuplicateFile = false;
+            String checksum = pathMap.getChecksum();
+            if ( isNotBlank( checksum ) )
+            {
+                FileChecksum existing = getFileChecksum( checksum );
+                if ( existing != null )
+                {
+                    pathMap = useExistingFile( pathMap, existing );
+                    isDuplicateFile = true;
+                }
+                else
+                {
+                    logger.debug( "File checksum not exists, mark current file as primary: {}", pathMap );
+                    fileChecksums.put( checksum,
+                                       new MemFileChecksum( checksum, pathMap.getFileId(), pathMap.getFileStorage() ) );
+                }
+            }
+
+            pathMaps.put( key, pathMap );
+
+            addToReverseMap( pathMap.getFileId(), PathMapUtils.marshall( fileSystem, path ) );
+            updateFilesystem( fileSystem, 1, isDuplicateFile ? 0 : pathMap.getSize() );
+        }
+        logger.debug( "Insert finished: {}", key.getFilename() );
+    }
+
+    /**
+     * Point the pathMap to the existing file and reclaim the current one.
+     */
+    private MemPathMap useExistingFile( MemPathMap pathMap, FileChecksum existing )
+    {
+        final String existingStorage = existing.getStorage();
+        logger.debug( "File checksum exists, use existing file: {}", existingStorage );
+
+        // Reclaim the curStorage if not equals to existing one
+        final String curStorage = pathMap.getFileStorage();
+        if ( !curStorage.equals( existingStorage ) )
+        {
+            reclaim( PathMapUtils.getRandomFileId(), curStorage, pathMap.getChecksum() );
+        }
+        return pathMap.withFile( existing.getFileId(), existingStorage );
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path )
+    {
+        return delete( fileSystem, path, false );
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path, boolean force )
+    {
+        synchronized ( writeLock )
+        {
+            MemPathMap pathMap = (MemPathMap) getPathMap( fileSystem, path );
+            if ( pathMap == null )
+            {
+                logger.debug( "File not exists, fileSystem: {}, path: {}", fileSystem, path );
+                return true;
+            }
+
+            String fileId = pathMap.getFileId();
+            if ( fileId == null )
+            {
+                // force or empty dir
+                if ( force || isEmptyDirectory( fileSystem, path ) )
+                {
+                    logger.info( "Delete dir (force: {}), {}", force, pathMap );
+                    pathMaps.remove( pathMap.getKey() );
+                    return true;
+                }
+                logger.warn( "Can not delete non-empty directory, {}", pathMap );
+                return false;
+            }
+
+            logger.info( "Delete pathMap, {}", pathMap );
+            pathMaps.remove( pathMap.getKey() );
+
+            boolean isDuplicateFile = !deleteFromReverseMap( fileId, PathMapUtils.marshall( fileSystem, path ) );
+            if ( !isDuplicateFile )
+            {
+                // clean checksum when no file id referring it
+                String checksum = pathMap.getChecksum();
+                if ( isNotBlank( checksum ) )
+                {
+                    logger.debug( "Delete file checksum, {}", checksum );
+                    fileChecksums.remove( checksum );
+                }
+                reclaim( fileId, pathMap.getFileStorage(), checksum );
+            }
+            updateFilesystem( fileSystem, -1, isDuplicateFile ? 0 : -pathMap.getSize() );
+            return true;
+        }
+    }
+
+    private boolean isEmptyDirectory( String fileSystem, String path )
+    {
+        return scanChildren( fileSystem, PathMapUtils.normalizeParentPath( path ), null, pathMap -> false );
+    }
+
+    private void addToReverseMap( String fileId, String path )
+    {
+        logger.debug( "Add to reverseMap, fileId: {}, path: {}", fileId, path );
+        String[] paths = reverseMaps.get( fileId );
+        if ( paths == null )
+        {
+            reverseMaps.put( fileId, new String[] { path } );
+        }
+        else if ( !Arrays.asList( paths ).contains( path ) )
+        {
+            String[] updated = Arrays.copyOf( paths, paths.length + 1 );
+            updated[paths.length] = path;
+            reverseMaps.put( fileId, updated );
+        }
+    }
+
+    /**
+     * @return true if no path refers the file any more
+     */
+    private boolean deleteFromReverseMap( String fileId, String path )
+    {
+        logger.debug( "Delete from reverseMap, fileId: {}, path: {}", fileId, path );
+        String[] paths = reverseMaps.get( fileId );
+        if ( paths == null )
+        {
+            return true;
+        }
+        String[] updated = Arrays.stream( paths ).filter( p -> !p.equals( path ) ).toArray( String[]::new );
+        if ( updated.length == 0 )
+        {
+            reverseMaps.remove( fileId );
+            return true;
+        }
+        reverseMaps.put( fileId, updated );
+        return false;
+    }
+
+    private void updateFilesystem( String filesystem, long count, long size )
+    {
+        logger.debug( "Update filesystem '{}', count: {}, size: {}", filesystem, count, size );
+        MemFilesystem current = filesystems.get( filesystem );
+        filesystems.put( filesystem, current == null ?
+                        new MemFilesystem( segments.intern( filesystem ), count, size ) :
+                        current.add( count, size ) );
+    }
+
+    private void reclaim( String fileId, String fileStorage, String checksum )
+    {
+        MemReclaim reclaim = new MemReclaim( fileId, System.currentTimeMillis(), fileStorage, checksum );
+        logger.debug( "Reclaim, {}", reclaim );
+        reclaims.add( reclaim );
+    }
+
+    @Override
+    public String getStorageFile( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap == null )
+        {
+            return null;
+        }
+        Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < System.currentTimeMillis() )
+        {
+            logger.info( "File expired, fileSystem: {}, path: {}, expiration: {}", fileSystem, path, expiration );
+            delete( fileSystem, path );
+            return null;
+        }
+        return pathMap.getFileStorage();
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
+    {
+        PathMap pathMap = getPathMap( fromFileSystem, fromPath );
+        if ( pathMap == null )
+        {
+            logger.warn( "Source not found, {}:{}", fromFileSystem, fromPath );
+            return false;
+        }
+        return copy( (MemPathMap) pathMap, toFileSystem, toPath, pathMap.getCreation(), pathMap.getExpiration() );
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath, Date creation,
+                         Date expiration )
+    {
+        PathMap pathMap = getPathMap( fromFileSystem, fromPath );
+        if ( pathMap == null )
+        {
+            logger.warn( "Source not found, {}:{}", fromFileSystem, fromPath );
+            return false;
+        }
+        return copy( (MemPathMap) pathMap, toFileSystem, toPath, creation, expiration );
+    }
+
+    private boolean copy( MemPathMap pathMap, String toFileSystem, String toPath, Date creation, Date expiration )
+    {
+        // an existing target is deleted by the insert
+        MemPathKey key = internKey( toFileSystem, PathMapUtils.getParentPath( toPath ),
+                                    PathMapUtils.getFilename( toPath ) );
+        insert( pathMap.withKey( key, creation, expiration ) );
+        return true;
+    }
+
+    @Override
+    public void expire( String fileSystem, String path, Date expiration )
+    {
+        logger.debug( "Set file expiration, filesystem: {}, path: {}, expiration: {}", fileSystem, path, expiration );
+        synchronized ( writeLock )
+        {
+            MemPathMap pathMap = (MemPathMap) getPathMap( fileSystem, path );
+            if ( pathMap != null )
+            {
+                pathMaps.put( pathMap.getKey(), pathMap.withExpiration( expiration ) );
+            }
+        }
+    }
+
+    /**
+     * Create the dir and the missing parents. The parents of an existing dir always exist, so it stops at the first
+     * one found.
+     */
+    @Override
+    public void makeDirs( String fileSystem, String path )
+    {
+        logger.debug( "Make dir, fileSystem: {}, path: {}", fileSystem, path );
+
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return;
+        }
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+
+        synchronized ( writeLock )
+        {
+            while ( !ROOT_DIR.equals( path ) )
+            {
+                String parentPath = PathMapUtils.getParentPath( path );
+                String filename = PathMapUtils.getFilename( path );
+                if ( pathMaps.containsKey( getKey( fileSystem, parentPath, filename ) ) )
+                {
+                    logger.debug( "Dir already exists, fileSystem: {}, path: {}", fileSystem, path );
+                    return;
+                }
+                MemPathKey key = internKey( fileSystem, parentPath, filename );
+                pathMaps.put( key, MemPathMap.dir( key ) );
+                path = ROOT_DIR.equals( parentPath ) ? ROOT_DIR : parentPath + "/";
+            }
+        }
+    }
+
+    @Override
+    public void replicate( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                           String fileStorage, String checksum, Map<String, String> digests )
+    {
+        MemPathKey key = internKey( fileSystem, PathMapUtils.getParentPath( path ), PathMapUtils.getFilename( path ) );
+        MemPathMap pathMap = MemPathMap.file( key, fileId, creation, expiration, size, fileStorage, checksum,
+                                              digests == null || digests.isEmpty() ? null : digests );
+        synchronized ( writeLock )
+        {
+            makeDirs( fileSystem, key.getParentPath() );
+            pathMaps.put( key, pathMap );
+        }
+    }
+
+    @Override
+    public void removeReplica( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( parentPath != null && filename != null )
+        {
+            pathMaps.remove( getKey( fileSystem, parentPath, filename ) );
+        }
+    }
+
+    @Override
+    public void clearReplica( String fileSystem )
+    {
+        synchronized ( writeLock )
+        {
+            Iterator<MemPathKey> it = pathMaps.tailMap( getKey( fileSystem, "", "" ), true ).keySet().iterator();
+            while ( it.hasNext() && it.next().getFileSystem().equals( fileSystem ) )
+            {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public List<Reclaim> listOrphanedFiles( int limit )
+    {
+        Date cur = new Date();
+        long threshold = getReclaimThreshold( cur, config.getGCGracePeriodInHours() );
+        List<Reclaim> ret = new ArrayList<>();
+        for ( MemReclaim reclaim : reclaims )
+        {
+            if ( reclaim.getDeletionTime() >= threshold || limit > 0 && ret.size() >= limit )
+            {
+                break;
+            }
+            ret.add( reclaim );
+        }
+        logger.info( "List orphaned files, cur: {}, threshold: {}, limit: {}, size: {}", cur, new Date( threshold ),
+                     limit, ret.size() );
+        return ret;
+    }
+
+    @Override
+    public void removeFromReclaim( Reclaim reclaim )
+    {
+        reclaims.remove( new MemReclaim( reclaim.getFileId(), reclaim.getDeletion().getTime(), null, null ) );
+    }
+
+    private long getReclaimThreshold( Date date, int gcGracePeriodInHours )
+    {
+        long ret = date.getTime();
+        if ( gcGracePeriodInHours <= 0 )
+        {
+            return ret;
+        }
+        return ret - Duration.ofHours( gcGracePeriodInHours ).toMillis();
+    }
+
+    @Override
+    public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        Set<String> ret = new HashSet<>();
+        for ( String candidate : candidates )
+        {
+            if ( pathMaps.containsKey( getKey( candidate, parentPath, filename ) ) )
+            {
+                ret.add( candidate );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Point gets in the candidate order, stop at the first hit.
+     */
+    @Override
+    public String getFirstFileSystemContaining( List<String> candidates, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        for ( String candidate : candidates )
+        {
+            if ( pathMaps.containsKey( getKey( candidate, parentPath, filename ) ) )
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Filesystem getFilesystem( String filesystem )
+    {
+        return filesystems.get( filesystem );
+    }
+
+    @Override
+    public List<? extends Filesystem> getFilesystems()
+    {
+        return new ArrayList<>( filesystems.values() );
+    }
+
+    @Override
+    public void purgeFilesystem( Filesystem filesystem )
+    {
+        // Only purge empty filesystem
+        if ( filesystem.getFileCount() == 0 )
+        {
+            logger.info( "Purge filesystem: {}", filesystem );
+            filesystems.remove( filesystem.getFilesystem() );
+        }
+    }
+}
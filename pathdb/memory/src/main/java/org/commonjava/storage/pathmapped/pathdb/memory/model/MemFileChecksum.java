@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.model;
+
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+
+import java.util.Objects;
+
+public class MemFileChecksum implements FileChecksum
+{
+    private final String checksum;
+
+    private final String fileId;
+
+    private final String storage;
+
+    public MemFileChecksum( String checksum, String fileId, String storage )
+    {
+        this.checksum = checksum;
+        this.fileId = fileId;
+        this.storage = storage;
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    @Override
+    public String getStorage()
+    {
+        return storage;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MemFileChecksum that = (MemFileChecksum) o;
+        return checksum.equals( that.checksum );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( checksum );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemFileChecksum{" + "checksum='" + checksum + '\'' + ", fileId='" + fileId + '\'' + ", storage='"
+                        + storage + '\'' + '}';
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.model;
+
+import org.commonjava.storage.pathmapped.model.Filesystem;
+
+import java.util.Objects;
+
+/**
+ * Immutable counters, replaced as a whole on update so readers never see a half-updated pair.
+ */
+public class MemFilesystem implements Filesystem
+{
+    private final String filesystem;
+
+    private final long fileCount;
+
+    private final long size;
+
+    public MemFilesystem( String filesystem, long fileCount, long size )
+    {
+        this.filesystem = filesystem;
+        this.fileCount = fileCount;
+        this.size = size;
+    }
+
+    public MemFilesystem add( long count, long size )
+    {
+        return new MemFilesystem( filesystem, this.fileCount + count, this.size + size );
+    }
+
+    @Override
+    public String getFilesystem()
+    {
+        return filesystem;
+    }
+
+    @Override
+    public Long getFileCount()
+    {
+        return fileCount;
+    }
+
+    @Override
+    public Long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MemFilesystem that = (MemFilesystem) o;
+        return filesystem.equals( that.filesystem );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( filesystem );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemFilesystem{" + "filesystem='" + filesystem + '\'' + ", fileCount=" + fileCount + ", size=" + size
+                        + '}';
+    }
+}
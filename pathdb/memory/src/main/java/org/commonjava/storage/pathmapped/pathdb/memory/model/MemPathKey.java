@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.model;
+
+import java.util.Objects;
+
+/**
+ * Sort key of a path map, ordered by (fileSystem, parentPath, filename). The children of a dir are one contiguous
+ * range and the deeper descendants follow, since their parentPaths share the "parentPath/" prefix.
+ */
+public final class MemPathKey
+                implements Comparable<MemPathKey>
+{
+    private final String fileSystem;
+
+    private final String parentPath;
+
+    private final String filename;
+
+    public MemPathKey( String fileSystem, String parentPath, String filename )
+    {
+        this.fileSystem = fileSystem;
+        this.parentPath = parentPath;
+        this.filename = filename;
+    }
+
+    public String getFileSystem()
+    {
+        return fileSystem;
+    }
+
+    public String getParentPath()
+    {
+        return parentPath;
+    }
+
+    public String getFilename()
+    {
+        return filename;
+    }
+
+    @Override
+    public int compareTo( MemPathKey o )
+    {
+        int ret = fileSystem.compareTo( o.fileSystem );
+        if ( ret == 0 )
+        {
+            ret = parentPath.compareTo( o.parentPath );
+        }
+        if ( ret == 0 )
+        {
+            ret = filename.compareTo( o.filename );
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MemPathKey that = (MemPathKey) o;
+        return fileSystem.equals( that.fileSystem ) && parentPath.equals( that.parentPath ) && filename.equals(
+                        that.filename );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( fileSystem, parentPath, filename );
+    }
+
+    @Override
+    public String toString()
+    {
+        return fileSystem + ":" + parentPath + ( parentPath.endsWith( "/" ) ? "" : "/" ) + filename;
+    }
+}
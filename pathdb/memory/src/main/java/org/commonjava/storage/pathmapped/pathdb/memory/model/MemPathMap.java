@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.model;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.commonjava.storage.pathmapped.pathdb.memory.util.MemPathDBUtils.countFields;
+import static org.commonjava.storage.pathmapped.pathdb.memory.util.MemPathDBUtils.pack;
+import static org.commonjava.storage.pathmapped.pathdb.memory.util.MemPathDBUtils.unpack;
+
+/**
+ * Immutable compact path map. The times and size are primitives, with Dates made only when asked for, and the
+ * fileId, fileStorage, checksum and digests are packed into one byte array. Dirs have no data at all. Updates
+ * replace the entry, so it can be handed to readers without copying or locking.
+ */
+public final class MemPathMap implements PathMap
+{
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int FILE_ID = 0;
+
+    private static final int FILE_STORAGE = 1;
+
+    private static final int CHECKSUM = 2;
+
+    private static final int DIGESTS = 3;
+
+    private final MemPathKey key;
+
+    private final long creation;
+
+    private final long expiration;
+
+    private final long size;
+
+    private final byte[] data;
+
+    private MemPathMap( MemPathKey key, long creation, long expiration, long size, byte[] data )
+    {
+        this.key = key;
+        this.creation = creation;
+        this.expiration = expiration;
+        this.size = size;
+        this.data = data;
+    }
+
+    public static MemPathMap dir( MemPathKey key )
+    {
+        return new MemPathMap( key, NO_DATE, NO_DATE, 0, null );
+    }
+
+    public static MemPathMap file( MemPathKey key, String fileId, Date creation, Date expiration, long size,
+                                   String fileStorage, String checksum, Map<String, String> digests )
+    {
+        int count = digests == null ? 0 : digests.size();
+        String[] fields = new String[DIGESTS + count * 2];
+        fields[FILE_ID] = fileId;
+        fields[FILE_STORAGE] = fileStorage;
+        fields[CHECKSUM] = checksum;
+        if ( count > 0 )
+        {
+            int i = DIGESTS;
+            for ( Map.Entry<String, String> e : digests.entrySet() )
+            {
+                fields[i++] = e.getKey();
+                fields[i++] = e.getValue();
+            }
+        }
+        return new MemPathMap( key, toTime( creation ), toTime( expiration ), size, pack( fields ) );
+    }
+
+    /**
+     * Same file under another key, e.g., a copy.
+     */
+    public MemPathMap withKey( MemPathKey key, Date creation, Date expiration )
+    {
+        return new MemPathMap( key, toTime( creation ), toTime( expiration ), size, data );
+    }
+
+    public MemPathMap withExpiration( Date expiration )
+    {
+        return new MemPathMap( key, creation, toTime( expiration ), size, data );
+    }
+
+    /**
+     * Point a duplicate to the existing file.
+     */
+    public MemPathMap withFile( String fileId, String fileStorage )
+    {
+        Map<String, String> digests = getDigests();
+        return file( key, fileId, getCreation(), getExpiration(), size, fileStorage, getChecksum(),
+                     digests.isEmpty() ? null : digests );
+    }
+
+    private static long toTime( Date date )
+    {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date toDate( long time )
+    {
+        return time == NO_DATE ? null : new Date( time );
+    }
+
+    public MemPathKey getKey()
+    {
+        return key;
+    }
+
+    public boolean isDir()
+    {
+        return data == null;
+    }
+
+    @Override
+    public String getFileSystem()
+    {
+        return key.getFileSystem();
+    }
+
+    @Override
+    public String getParentPath()
+    {
+        return key.getParentPath();
+    }
+
+    @Override
+    public String getFilename()
+    {
+        return key.getFilename();
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return data == null ? null : unpack( data, FILE_ID );
+    }
+
+    @Override
+    public Date getCreation()
+    {
+        return toDate( creation );
+    }
+
+    @Override
+    public Date getExpiration()
+    {
+        return toDate( expiration );
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public String getFileStorage()
+    {
+        return data == null ? null : unpack( data, FILE_STORAGE );
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return data == null ? null : unpack( data, CHECKSUM );
+    }
+
+    @Override
+    public Map<String, String> getDigests()
+    {
+        int count = data == null ? 0 : countFields( data ) - DIGESTS;
+        if ( count <= 0 )
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, String> digests = new LinkedHashMap<>( count );
+        for ( int i = DIGESTS; i < DIGESTS + count; i += 2 )
+        {
+            digests.put( unpack( data, i ), unpack( data, i + 1 ) );
+        }
+        return digests;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        return key.equals( ( (MemPathMap) o ).key );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemPathMap{" + "fileSystem='" + getFileSystem() + '\'' + ", parentPath='" + getParentPath() + '\''
+                        + ", filename='" + getFilename() + '\'' + ", fileId='" + getFileId() + '\'' + ", creation="
+                        + getCreation() + ", expiration=" + getExpiration() + ", size=" + size + ", fileStorage='"
+                        + getFileStorage() + '\'' + ", checksum='" + getChecksum() + '\'' + '}';
+    }
+}
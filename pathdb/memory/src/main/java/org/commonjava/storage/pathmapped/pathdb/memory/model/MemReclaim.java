@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.model;
+
+import org.commonjava.storage.pathmapped.model.Reclaim;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Objects;
+
+public class MemReclaim implements Reclaim
+{
+    /**
+     * Deletion time order, so the orphans past the grace period are a head of the reclaim set.
+     */
+    public static final Comparator<MemReclaim> DELETION_ORDER =
+                    Comparator.comparingLong( MemReclaim::getDeletionTime ).thenComparing( MemReclaim::getFileId );
+
+    private final String fileId;
+
+    private final long deletion;
+
+    private final String storage;
+
+    private final String checksum;
+
+    public MemReclaim( String fileId, long deletion, String storage, String checksum )
+    {
+        this.fileId = fileId;
+        this.deletion = deletion;
+        this.storage = storage;
+        this.checksum = checksum;
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    public long getDeletionTime()
+    {
+        return deletion;
+    }
+
+    @Override
+    public Date getDeletion()
+    {
+        return new Date( deletion );
+    }
+
+    @Override
+    public String getStorage()
+    {
+        return storage;
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MemReclaim that = (MemReclaim) o;
+        return deletion == that.deletion && fileId.equals( that.fileId );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( deletion, fileId );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemReclaim{" + "fileId='" + fileId + '\'' + ", deletion=" + getDeletion() + ", storage='" + storage
+                        + '\'' + ", checksum='" + checksum + '\'' + '}';
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.memory.util;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class MemPathDBUtils
+{
+    /**
+     * Pack the strings into one byte array, each as a varint of (length + 1) followed by the UTF-8 bytes, and 0 for
+     * null. One array per entry costs far less than a String object (header, hash and backing array) per field.
+     */
+    public static byte[] pack( String... fields )
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( 64 );
+        for ( String field : fields )
+        {
+            if ( field == null )
+            {
+                out.write( 0 );
+                continue;
+            }
+            byte[] bytes = field.getBytes( UTF_8 );
+            writeVarInt( out, bytes.length + 1 );
+            out.write( bytes, 0, bytes.length );
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read the field at the index, or null if the data holds fewer fields.
+     */
+    public static String unpack( byte[] data, int index )
+    {
+        int pos = 0;
+        for ( int i = 0; pos < data.length; i++ )
+        {
+            int len = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[pos++];
+                len |= ( b & 0x7F ) << shift;
+                shift += 7;
+            }
+            while ( b < 0 );
+
+            if ( i == index )
+            {
+                return len == 0 ? null : new String( data, pos, len - 1, UTF_8 );
+            }
+            pos += Math.max( len - 1, 0 );
+        }
+        return null;
+    }
+
+    public static int countFields( byte[] data )
+    {
+        int count = 0;
+        int pos = 0;
+        while ( pos < data.length )
+        {
+            int len = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = data[pos++];
+                len |= ( b & 0x7F ) << shift;
+                shift += 7;
+            }
+            while ( b < 0 );
+            pos += Math.max( len - 1, 0 );
+            count++;
+        }
+        return count;
+    }
+
+    private static void writeVarInt( ByteArrayOutputStream out, int value )
+    {
+        while ( ( value & ~0x7F ) != 0 )
+        {
+            out.write( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+        out.write( value );
+    }
+
+    /**
+     * Canonical instances of the path segments shared by many keys, i.e., filesystems and parent paths (siblings share
+     * one parent path). The segments are held weakly, so one is dropped once no stored key refers to it.
+     */
+    public static class SegmentPool
+    {
+        private final Map<String, WeakReference<String>> segments = new WeakHashMap<>();
+
+        public synchronized String intern( String segment )
+        {
+            if ( segment == null )
+            {
+                return null;
+            }
+            WeakReference<String> ref = segments.get( segment );
+            String ret = ref == null ? null : ref.get();
+            if ( ret == null )
+            {
+                segments.put( segment, new WeakReference<>( segment ) );
+                ret = segment;
+            }
+            return ret;
+        }
+
+        public synchronized int size()
+        {
+            return segments.size();
+        }
+
+        public synchronized void clear()
+        {
+            segments.clear();
+        }
+    }
+}
@@ -0,0 +1,895 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore;
+
+import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.pathdb.mvstore.model.MVFileChecksum;
+import org.commonjava.storage.pathmapped.pathdb.mvstore.model.MVFilesystem;
+import org.commonjava.storage.pathmapped.pathdb.mvstore.model.MVPathMap;
+import org.commonjava.storage.pathmapped.pathdb.mvstore.model.MVReclaim;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
+import org.commonjava.storage.pathmapped.spi.ReplicaPathDB;
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+import static java.util.Collections.emptySet;
+import static org.apache.commons.lang.StringUtils.isNotBlank;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.KEY_SEPARATOR;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.MAP_FILECHECKSUM;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.MAP_FILESYSTEM;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.MAP_PATHMAP;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.MAP_RECLAIM;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.MAP_REVERSEMAP;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.PROP_MVSTORE_AUTO_COMMIT_DELAY;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.PROP_MVSTORE_CACHE_SIZE_MB;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.PROP_MVSTORE_FILE;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.PROP_MVSTORE_MEMORY_MAPPED;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.decode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.encode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.getListPrefix;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.getPathMapKey;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.getReclaimKey;
+import static org.commonjava.storage.pathmapped.spi.PathDB.FileType.dir;
+import static org.commonjava.storage.pathmapped.spi.PathDB.FileType.file;
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
+
+/**
+ * Single node PathDB on an embedded H2 MVStore. The path maps are kept in one sorted map keyed by
+ * (fileSystem, parentPath, filename), so listing a dir is a range scan, traversing is a prefix scan and the lookups
+ * are point gets, all served from the page cache of the store file without a network round trip. The reverse map,
+ * file checksums, reclaims and filesystem counters are companion maps in the same store.
+ *
+ * Reads run without locking. Writes that touch several maps are serialized on this instance.
+ */
+public class MVStorePathDB
+                implements PathDB, PathDBAdmin, ReplicaPathDB, Closeable
+{
+    private static final String NIO_MAPPED_PREFIX = "nioMapped:";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathMappedStorageConfig config;
+
+    private final MVStore store;
+
+    private final boolean ownStore; // close the store only if it was opened by self
+
+    private final MVMap<String, byte[]> pathMaps;
+
+    private final MVMap<String, byte[]> reverseMaps;
+
+    private final MVMap<String, byte[]> fileChecksums;
+
+    private final MVMap<String, byte[]> reclaims;
+
+    private final MVMap<String, long[]> filesystems;
+
+    private final Object writeLock = new Object();
+
+    /**
+     * Open the store as configured by {@link org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils}
+     * properties. The store is in memory if no file is given.
+     */
+    public MVStorePathDB( PathMappedStorageConfig config )
+    {
+        this( config, openStore( config ), true );
+    }
+
+    public MVStorePathDB( PathMappedStorageConfig config, MVStore store )
+    {
+        this( config, store, false );
+    }
+
+    private MVStorePathDB( PathMappedStorageConfig config, MVStore store, boolean ownStore )
+    {
+        this.config = config;
+        this.store = store;
+        this.ownStore = ownStore;
+        this.pathMaps = store.openMap( MAP_PATHMAP );
+        this.reverseMaps = store.openMap( MAP_REVERSEMAP );
+        this.fileChecksums = store.openMap( MAP_FILECHECKSUM );
+        this.reclaims = store.openMap( MAP_RECLAIM );
+        this.filesystems = store.openMap( MAP_FILESYSTEM );
+    }
+
+    private static MVStore openStore( PathMappedStorageConfig config )
+    {
+        MVStore.Builder builder = new MVStore.Builder();
+        String fileName = (String) config.getProperty( PROP_MVSTORE_FILE );
+        if ( isNotBlank( fileName ) )
+        {
+            boolean mapped = Boolean.TRUE.equals( config.getProperty( PROP_MVSTORE_MEMORY_MAPPED ) );
+            builder.fileName( mapped ? NIO_MAPPED_PREFIX + fileName : fileName );
+        }
+        Integer cacheSize = (Integer) config.getProperty( PROP_MVSTORE_CACHE_SIZE_MB );
+        if ( cacheSize != null )
+        {
+            builder.cacheSize( cacheSize );
+        }
+        MVStore store = builder.open();
+        Integer autoCommitDelay = (Integer) config.getProperty( PROP_MVSTORE_AUTO_COMMIT_DELAY );
+        if ( autoCommitDelay != null )
+        {
+            store.setAutoCommitDelay( autoCommitDelay );
+        }
+        return store;
+    }
+
+    public MVStore getStore()
+    {
+        return store;
+    }
+
+    @Override
+    public void close()
+    {
+        if ( ownStore && !store.isClosed() )
+        {
+            store.close();
+            logger.debug( "MVStore closed" );
+        }
+    }
+
+    @Override
+    public FileChecksum getFileChecksum( String checksum )
+    {
+        return MVFileChecksum.fromBytes( checksum, fileChecksums.get( checksum ) );
+    }
+
+    @Override
+    public Set<String> getPathsByFileId( String fileId )
+    {
+        Set<String> paths = decodePaths( reverseMaps.get( fileId ) );
+        return paths != null ? paths : emptySet();
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, FileType fileType )
+    {
+        return list( fileSystem, path, false, 0, fileType );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType )
+    {
+        List<PathMap> ret = new ArrayList<>();
+        if ( recursive )
+        {
+            traverse( fileSystem, path, pathMap -> ret.add( pathMap ), limit, fileType );
+        }
+        else
+        {
+            String parentPath = PathMapUtils.normalizeParentPath( path );
+            scan( getListPrefix( fileSystem, parentPath ), null, ( key, value ) -> {
+                MVPathMap pathMap = toPathMap( key, value );
+                if ( matchFileType( pathMap, fileType ) )
+                {
+                    ret.add( pathMap );
+                }
+                return limit <= 0 || ret.size() < limit;
+            } );
+        }
+        return ret;
+    }
+
+    /**
+     * The paging state is the last filename of the page, and the next page is scanned from the key after it.
+     */
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        String prefix = getListPrefix( fileSystem, PathMapUtils.normalizeParentPath( path ) );
+        String from = pagingState == null ? null : prefix + pagingState;
+        List<PathMap> ret = new ArrayList<>( pageSize );
+        boolean[] more = new boolean[1];
+        scan( prefix, from, ( key, value ) -> {
+            if ( key.equals( from ) )
+            {
+                return true;
+            }
+            MVPathMap pathMap = toPathMap( key, value );
+            if ( !matchFileType( pathMap, fileType ) )
+            {
+                return true;
+            }
+            if ( ret.size() == pageSize )
+            {
+                more[0] = true;
+                return false;
+            }
+            ret.add( pathMap );
+            return true;
+        } );
+        String next = more[0] ? ret.get( ret.size() - 1 ).getFilename() : null;
+        return new ListPage( ret, next );
+    }
+
+    /**
+     * The children of the dir come first, as their keys end the parentPath with the separator, then the deeper
+     * descendants in key order.
+     */
+    @Override
+    public void traverse( String fileSystem, String path, Consumer<PathMap> consumer, int limit, FileType fileType )
+    {
+        logger.debug( "Traverse fileSystem: {}, path: {}", fileSystem, path );
+
+        int[] count = new int[1];
+        BiPredicate<String, byte[]> visitor = ( key, value ) -> {
+            MVPathMap pathMap = toPathMap( key, value );
+            if ( matchFileType( pathMap, fileType ) )
+            {
+                consumer.accept( pathMap );
+                count[0]++;
+                if ( limit > 0 && count[0] >= limit )
+                {
+                    logger.info( "Reach result set limit " + limit );
+                    return false;
+                }
+            }
+            return true;
+        };
+
+        if ( ROOT_DIR.equals( path ) )
+        {
+            scan( fileSystem + KEY_SEPARATOR, null, visitor );
+            return;
+        }
+
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( !pathMaps.containsKey( getPathMapKey( fileSystem, parentPath, filename ) ) )
+        {
+            logger.debug( "Root not found, fileSystem: {}, parentPath: {}, filename: {}", fileSystem, parentPath,
+                          filename );
+            return;
+        }
+
+        String dirPath = PathMapUtils.normalizeParentPath( path );
+        if ( scan( getListPrefix( fileSystem, dirPath ), null, visitor ) )
+        {
+            scan( fileSystem + KEY_SEPARATOR + dirPath + "/", null, visitor );
+        }
+    }
+
+    /**
+     * Visit the entries whose keys start with the prefix in key order, starting at from if given, until the visitor
+     * returns false.
+     * @return false if the visitor stopped the scan
+     */
+    private boolean scan( String prefix, String from, BiPredicate<String, byte[]> visitor )
+    {
+        Cursor<String, byte[]> cursor = pathMaps.cursor( from == null ? prefix : from );
+        while ( cursor.hasNext() )
+        {
+            String key = cursor.next();
+            if ( !key.startsWith( prefix ) )
+            {
+                break;
+            }
+            if ( !visitor.test( key, cursor.getValue() ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MVPathMap toPathMap( String key, byte[] value )
+    {
+        int first = key.indexOf( KEY_SEPARATOR );
+        int second = key.indexOf( KEY_SEPARATOR, first + 1 );
+        return MVPathMap.fromBytes( key.substring( 0, first ), key.substring( first + 1, second ),
+                                    key.substring( second + 1 ), value );
+    }
+
+    private boolean matchFileType( PathMap pathMap, FileType fileType )
+    {
+        String filename = pathMap.getFilename();
+        return fileType == null || fileType == FileType.all || fileType == dir && filename.endsWith( "/" )
+                        || fileType == file && !filename.endsWith( "/" );
+    }
+
+    @Override
+    public PathMap getPathMap( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+
+        if ( parentPath == null || filename == null )
+        {
+            logger.debug( "getPathMap, fileSystem:{}, parentPath:{}, filename:{}", fileSystem, parentPath, filename );
+            return null;
+        }
+        return getPathMap( fileSystem, parentPath, filename );
+    }
+
+    private MVPathMap getPathMap( String fileSystem, String parentPath, String filename )
+    {
+        byte[] value = pathMaps.get( getPathMapKey( fileSystem, parentPath, filename ) );
+        return value == null ? null : MVPathMap.fromBytes( fileSystem, parentPath, filename, value );
+    }
+
+    @Override
+    public long getFileLength( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null )
+        {
+            return pathMap.getSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getFileLastModified( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return pathMap.getCreation().getTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Check if the specified path exist. If the path does not end with /, e.g., "foo/bar", we check both "foo/bar"
+     * and "foo/bar/".
+     * @return FileType.{file/dir} if exist. Null if not exist.
+     */
+    @Override
+    public FileType exists( String fileSystem, String path )
+    {
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return dir;
+        }
+
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        FileType ret = null;
+        if ( filename.endsWith( "/" ) )
+        {
+            if ( pathMaps.containsKey( getPathMapKey( fileSystem, parentPath, filename ) ) )
+            {
+                ret = dir;
+            }
+        }
+        else if ( pathMaps.containsKey( getPathMapKey( fileSystem, parentPath, filename ) ) )
+        {
+            ret = file;
+        }
+        else if ( pathMaps.containsKey( getPathMapKey( fileSystem, parentPath, filename + "/" ) ) )
+        {
+            ret = dir;
+        }
+        logger.trace( "{} {} in fileSystem {}, fileType: {}", path, ret != null ? "exists" : "not exists",
+                      fileSystem, ret );
+        return ret;
+    }
+
+    @Override
+    public boolean existsFile( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( parentPath == null || filename == null )
+        {
+            return false;
+        }
+        return pathMaps.containsKey( getPathMapKey( fileSystem, parentPath, filename ) );
+    }
+
+    @Override
+    public boolean isDirectory( String fileSystem, String path )
+    {
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+        return existsFile( fileSystem, path );
+    }
+
+    @Override
+    public boolean isFile( String fileSystem, String path )
+    {
+        if ( path.endsWith( "/" ) )
+        {
+            return false;
+        }
+        return existsFile( fileSystem, path );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum )
+    {
+        insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, null );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        insert( new MVPathMap( fileSystem, PathMapUtils.getParentPath( path ), PathMapUtils.getFilename( path ),
+                               fileId, creation, expiration, size, fileStorage, checksum,
+                               digests == null || digests.isEmpty() ? null : digests ) );
+    }
+
+    private void insert( MVPathMap pathMap )
+    {
+        logger.debug( "Insert: {}", pathMap );
+
+        final String fileSystem = pathMap.getFileSystem();
+        final String parent = pathMap.getParentPath();
+        final String path = PathMapUtils.normalize( parent, pathMap.getFilename() );
+        final String key = getPathMapKey( fileSystem, parent, pathMap.getFilename() );
+
+        synchronized ( writeLock )
+        {
+            makeDirs( fileSystem, parent );
+
+            if ( pathMaps.containsKey( key ) )
+            {
+                delete( fileSystem, path );
+            }
+
+            boolean isDuplicateFile = false;
+            String checksum = pathMap.getChecksum();
+            if ( isNotBlank( checksum ) )
+            {
+                isDuplicateFile = useExistingFile( pathMap, getFileChecksum( checksum ) );
+                if ( !isDuplicateFile )
+                {
+                    logger.debug( "File checksum not exists, mark current file as primary: {}", pathMap );
+                    fileChecksums.put( checksum, new MVFileChecksum( checksum, pathMap.getFileId(),
+                                                                     pathMap.getFileStorage() ).toBytes() );
+                }
+            }
+
+            pathMaps.put( key, pathMap.toBytes() );
+
+            addToReverseMap( pathMap.getFileId(), PathMapUtils.marshall( fileSystem, path ) );
+            updateFilesystem( fileSystem, 1, isDuplicateFile ? 0 : pathMap.getSize() );
+        }
+        logger.debug( "Insert finished: {}", pathMap.getFilename() );
+    }
+
+    /**
+     * If the file checksum exists, point the pathMap to the existing file and reclaim the current one.
+     * @return true if the file is a duplicate
+     */
+    private boolean useExistingFile( MVPathMap pathMap, FileChecksum existing )
+    {
+        if ( existing == null )
+        {
+            return false;
+        }
+        final String existingStorage = existing.getStorage();
+        logger.debug( "File checksum exists, use existing file: {}", existingStorage );
+
+        final String curStorage = pathMap.getFileStorage();
+        pathMap.setFileStorage( existingStorage );
+        pathMap.setFileId( existing.getFileId() );
+
+        // Reclaim the curStorage if not equals to existing one
+        if ( !curStorage.equals( existingStorage ) )
+        {
+            reclaim( PathMapUtils.getRandomFileId(), curStorage, pathMap.getChecksum() );
+        }
+        return true;
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path )
+    {
+        return delete( fileSystem, path, false );
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path, boolean force )
+    {
+        synchronized ( writeLock )
+        {
+            PathMap pathMap = getPathMap( fileSystem, path );
+            if ( pathMap == null )
+            {
+                logger.debug( "File not exists, fileSystem: {}, path: {}", fileSystem, path );
+                return true;
+            }
+
+            String key = getPathMapKey( fileSystem, pathMap.getParentPath(), pathMap.getFilename() );
+            String fileId = pathMap.getFileId();
+            if ( fileId == null )
+            {
+                // force or empty dir
+                if ( force || isEmptyDirectory( fileSystem, path ) )
+                {
+                    logger.info( "Delete dir (force: {}), {}", force, pathMap );
+                    pathMaps.remove( key );
+                    return true;
+                }
+                logger.warn( "Can not delete non-empty directory, {}", pathMap );
+                return false;
+            }
+
+            logger.info( "Delete pathMap, {}", pathMap );
+            pathMaps.remove( key );
+
+            boolean isDuplicateFile = !deleteFromReverseMap( fileId, PathMapUtils.marshall( fileSystem, path ) );
+            if ( !isDuplicateFile )
+            {
+                // clean checksum when no file id referring it
+                String checksum = pathMap.getChecksum();
+                if ( isNotBlank( checksum ) )
+                {
+                    logger.debug( "Delete file checksum, {}", checksum );
+                    fileChecksums.remove( checksum );
+                }
+                reclaim( fileId, pathMap.getFileStorage(), checksum );
+            }
+            updateFilesystem( fileSystem, -1, isDuplicateFile ? 0 : -pathMap.getSize() );
+            return true;
+        }
+    }
+
+    private boolean isEmptyDirectory( String fileSystem, String path )
+    {
+        return scan( getListPrefix( fileSystem, PathMapUtils.normalizeParentPath( path ) ), null,
+                     ( key, value ) -> false );
+    }
+
+    private void addToReverseMap( String fileId, String path )
+    {
+        logger.debug( "Add to reverseMap, fileId: {}, path: {}", fileId, path );
+        Set<String> paths = decodePaths( reverseMaps.get( fileId ) );
+        if ( paths == null )
+        {
+            paths = new LinkedHashSet<>();
+        }
+        if ( paths.add( path ) )
+        {
+            reverseMaps.put( fileId, encodePaths( paths ) );
+        }
+    }
+
+    /**
+     * @return true if no path refers the file any more
+     */
+    private boolean deleteFromReverseMap( String fileId, String path )
+    {
+        logger.debug( "Delete from reverseMap, fileId: {}, path: {}", fileId, path );
+        Set<String> paths = decodePaths( reverseMaps.get( fileId ) );
+        if ( paths == null )
+        {
+            return true;
+        }
+        paths.remove( path );
+        if ( paths.isEmpty() )
+        {
+            reverseMaps.remove( fileId );
+            return true;
+        }
+        reverseMaps.put( fileId, encodePaths( paths ) );
+        return false;
+    }
+
+    private static byte[] encodePaths( Set<String> paths )
+    {
+        return encode( out -> {
+            out.writeInt( paths.size() );
+            for ( String path : paths )
+            {
+                out.writeUTF( path );
+            }
+        } );
+    }
+
+    private static Set<String> decodePaths( byte[] value )
+    {
+        return decode( value, in -> {
+            int count = in.readInt();
+            Set<String> paths = new LinkedHashSet<>( count * 2 );
+            for ( int i = 0; i < count; i++ )
+            {
+                paths.add( in.readUTF() );
+            }
+            return paths;
+        } );
+    }
+
+    private void updateFilesystem( String filesystem, long count, long size )
+    {
+        logger.debug( "Update filesystem '{}', count: {}, size: {}", filesystem, count, size );
+        long[] counters = filesystems.get( filesystem );
+        filesystems.put( filesystem, counters == null ?
+                        new long[] { count, size } :
+                        new long[] { counters[0] + count, counters[1] + size } );
+    }
+
+    private void reclaim( String fileId, String fileStorage, String checksum )
+    {
+        MVReclaim reclaim = new MVReclaim( fileId, new Date(), fileStorage, checksum );
+        logger.debug( "Reclaim, {}", reclaim );
+        reclaims.put( reclaim.getKey(), reclaim.toBytes() );
+    }
+
+    @Override
+    public String getStorageFile( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap == null )
+        {
+            return null;
+        }
+        Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < System.currentTimeMillis() )
+        {
+            logger.info( "File expired, fileSystem: {}, path: {}, expiration: {}", fileSystem, path, expiration );
+            delete( fileSystem, path );
+            return null;
+        }
+        return pathMap.getFileStorage();
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
+    {
+        PathMap pathMap = getPathMap( fromFileSystem, fromPath );
+        if ( pathMap == null )
+        {
+            logger.warn( "Source not found, {}:{}", fromFileSystem, fromPath );
+            return false;
+        }
+        return copy( pathMap, toFileSystem, toPath, pathMap.getCreation(), pathMap.getExpiration() );
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath, Date creation,
+                         Date expiration )
+    {
+        PathMap pathMap = getPathMap( fromFileSystem, fromPath );
+        if ( pathMap == null )
+        {
+            logger.warn( "Source not found, {}:{}", fromFileSystem, fromPath );
+            return false;
+        }
+        return copy( pathMap, toFileSystem, toPath, creation, expiration );
+    }
+
+    private boolean copy( PathMap pathMap, String toFileSystem, String toPath, Date creation, Date expiration )
+    {
+        // an existing target is deleted by the insert
+        insert( new MVPathMap( toFileSystem, PathMapUtils.getParentPath( toPath ), PathMapUtils.getFilename( toPath ),
+                               pathMap.getFileId(), creation, expiration, pathMap.getSize(),
+                               pathMap.getFileStorage(), pathMap.getChecksum(),
+                               pathMap.getDigests().isEmpty() ? null : pathMap.getDigests() ) );
+        return true;
+    }
+
+    @Override
+    public void expire( String fileSystem, String path, Date expiration )
+    {
+        logger.debug( "Set file expiration, filesystem: {}, path: {}, expiration: {}", fileSystem, path, expiration );
+        synchronized ( writeLock )
+        {
+            MVPathMap pathMap = (MVPathMap) getPathMap( fileSystem, path );
+            if ( pathMap != null )
+            {
+                pathMap.setExpiration( expiration );
+                pathMaps.put( getPathMapKey( fileSystem, pathMap.getParentPath(), pathMap.getFilename() ),
+                              pathMap.toBytes() );
+            }
+        }
+    }
+
+    /**
+     * Create the dir and the missing parents. The parents of an existing dir always exist, so it stops at the first
+     * one found.
+     */
+    @Override
+    public void makeDirs( String fileSystem, String path )
+    {
+        logger.debug( "Make dir, fileSystem: {}, path: {}", fileSystem, path );
+
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return;
+        }
+        if ( !path.endsWith( "/" ) )
+        {
+            path += "/";
+        }
+
+        synchronized ( writeLock )
+        {
+            while ( !ROOT_DIR.equals( path ) )
+            {
+                String parentPath = PathMapUtils.getParentPath( path );
+                String filename = PathMapUtils.getFilename( path );
+                String key = getPathMapKey( fileSystem, parentPath, filename );
+                if ( pathMaps.containsKey( key ) )
+                {
+                    logger.debug( "Dir already exists, fileSystem: {}, path: {}", fileSystem, path );
+                    return;
+                }
+                pathMaps.put( key, new MVPathMap( fileSystem, parentPath, filename ).toBytes() );
+                path = ROOT_DIR.equals( parentPath ) ? ROOT_DIR : parentPath + "/";
+            }
+        }
+    }
+
+    @Override
+    public void replicate( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                           String fileStorage, String checksum, Map<String, String> digests )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        MVPathMap replica = new MVPathMap( fileSystem, parentPath, filename, fileId, creation, expiration, size,
+                                           fileStorage, checksum,
+                                           digests == null || digests.isEmpty() ? null : digests );
+        synchronized ( writeLock )
+        {
+            makeDirs( fileSystem, parentPath );
+            pathMaps.put( getPathMapKey( fileSystem, parentPath, filename ), replica.toBytes() );
+        }
+    }
+
+    @Override
+    public void removeReplica( String fileSystem, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( parentPath != null && filename != null )
+        {
+            pathMaps.remove( getPathMapKey( fileSystem, parentPath, filename ) );
+        }
+    }
+
+    @Override
+    public void clearReplica( String fileSystem )
+    {
+        String prefix = fileSystem + KEY_SEPARATOR;
+        List<String> keys = new ArrayList<>();
+        synchronized ( writeLock )
+        {
+            scan( prefix, null, ( key, value ) -> keys.add( key ) );
+            keys.forEach( pathMaps::remove );
+        }
+    }
+
+    @Override
+    public List<Reclaim> listOrphanedFiles( int limit )
+    {
+        Date cur = new Date();
+        long threshold = getReclaimThreshold( cur, config.getGCGracePeriodInHours() );
+        String end = getReclaimKey( threshold, "" );
+        List<Reclaim> ret = new ArrayList<>();
+        Cursor<String, byte[]> cursor = reclaims.cursor( null );
+        while ( cursor.hasNext() && ( limit <= 0 || ret.size() < limit ) )
+        {
+            if ( cursor.next().compareTo( end ) >= 0 )
+            {
+                break;
+            }
+            ret.add( MVReclaim.fromBytes( cursor.getValue() ) );
+        }
+        logger.info( "List orphaned files, cur: {}, threshold: {}, limit: {}, size: {}", cur, new Date( threshold ),
+                     limit, ret.size() );
+        return ret;
+    }
+
+    @Override
+    public void removeFromReclaim( Reclaim reclaim )
+    {
+        reclaims.remove( getReclaimKey( reclaim.getDeletion().getTime(), reclaim.getFileId() ) );
+    }
+
+    private long getReclaimThreshold( Date date, int gcGracePeriodInHours )
+    {
+        long ret = date.getTime();
+        if ( gcGracePeriodInHours <= 0 )
+        {
+            return ret;
+        }
+        return ret - Duration.ofHours( gcGracePeriodInHours ).toMillis();
+    }
+
+    @Override
+    public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        Set<String> ret = new HashSet<>();
+        for ( String candidate : candidates )
+        {
+            if ( pathMaps.containsKey( getPathMapKey( candidate, parentPath, filename ) ) )
+            {
+                ret.add( candidate );
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Point gets in the candidate order, stop at the first hit.
+     */
+    @Override
+    public String getFirstFileSystemContaining( List<String> candidates, String path )
+    {
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        for ( String candidate : candidates )
+        {
+            if ( pathMaps.containsKey( getPathMapKey( candidate, parentPath, filename ) ) )
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Filesystem getFilesystem( String filesystem )
+    {
+        return MVFilesystem.fromCounters( filesystem, filesystems.get( filesystem ) );
+    }
+
+    @Override
+    public List<? extends Filesystem> getFilesystems()
+    {
+        List<MVFilesystem> ret = new ArrayList<>();
+        filesystems.forEach( ( name, counters ) -> ret.add( MVFilesystem.fromCounters( name, counters ) ) );
+        return ret;
+    }
+
+    @Override
+    public void purgeFilesystem( Filesystem filesystem )
+    {
+        // Only purge empty filesystem
+        if ( filesystem.getFileCount() == 0 )
+        {
+            logger.info( "Purge filesystem: {}", filesystem );
+            filesystems.remove( filesystem.getFilesystem() );
+        }
+    }
+}
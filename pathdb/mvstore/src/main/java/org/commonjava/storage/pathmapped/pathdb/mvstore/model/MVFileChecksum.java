@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore.model;
+
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+
+import java.util.Objects;
+
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.decode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.encode;
+
+public class MVFileChecksum implements FileChecksum
+{
+    private final String checksum;
+
+    private final String fileId;
+
+    private final String storage;
+
+    public MVFileChecksum( String checksum, String fileId, String storage )
+    {
+        this.checksum = checksum;
+        this.fileId = fileId;
+        this.storage = storage;
+    }
+
+    public byte[] toBytes()
+    {
+        return encode( out -> {
+            out.writeUTF( fileId );
+            out.writeUTF( storage );
+        } );
+    }
+
+    public static MVFileChecksum fromBytes( String checksum, byte[] value )
+    {
+        return decode( value, in -> new MVFileChecksum( checksum, in.readUTF(), in.readUTF() ) );
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    @Override
+    public String getStorage()
+    {
+        return storage;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MVFileChecksum that = (MVFileChecksum) o;
+        return checksum.equals( that.checksum );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( checksum );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MVFileChecksum{" + "checksum='" + checksum + '\'' + ", fileId='" + fileId + '\'' + ", storage='"
+                        + storage + '\'' + '}';
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore.model;
+
+import org.commonjava.storage.pathmapped.model.Filesystem;
+
+import java.util.Objects;
+
+public class MVFilesystem implements Filesystem
+{
+    private final String filesystem;
+
+    private final long fileCount;
+
+    private final long size;
+
+    public MVFilesystem( String filesystem, long fileCount, long size )
+    {
+        this.filesystem = filesystem;
+        this.fileCount = fileCount;
+        this.size = size;
+    }
+
+    /**
+     * Stored as {fileCount, size}.
+     */
+    public static MVFilesystem fromCounters( String filesystem, long[] counters )
+    {
+        return counters == null ? null : new MVFilesystem( filesystem, counters[0], counters[1] );
+    }
+
+    @Override
+    public String getFilesystem()
+    {
+        return filesystem;
+    }
+
+    @Override
+    public Long getFileCount()
+    {
+        return fileCount;
+    }
+
+    @Override
+    public Long getSize()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MVFilesystem that = (MVFilesystem) o;
+        return filesystem.equals( that.filesystem );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( filesystem );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MVFilesystem{" + "filesystem='" + filesystem + '\'' + ", fileCount=" + fileCount + ", size=" + size
+                        + '}';
+    }
+}
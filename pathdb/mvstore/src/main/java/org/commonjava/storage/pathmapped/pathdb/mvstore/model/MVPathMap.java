@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore.model;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.decode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.encode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.readString;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.writeString;
+
+/**
+ * The key columns (fileSystem, parentPath, filename) live in the map key, the rest is encoded in the value.
+ */
+public class MVPathMap implements PathMap
+{
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private String fileSystem;
+
+    private String parentPath;
+
+    private String filename;
+
+    private String fileId;
+
+    private Date creation;
+
+    private Date expiration;
+
+    private long size;
+
+    private String fileStorage;
+
+    private String checksum;
+
+    private Map<String, String> digests;
+
+    public MVPathMap()
+    {
+    }
+
+    public MVPathMap( String fileSystem, String parentPath, String filename )
+    {
+        this.fileSystem = fileSystem;
+        this.parentPath = parentPath;
+        this.filename = filename;
+    }
+
+    public MVPathMap( String fileSystem, String parentPath, String filename, String fileId, Date creation,
+                      Date expiration, long size, String fileStorage, String checksum, Map<String, String> digests )
+    {
+        this( fileSystem, parentPath, filename );
+        this.fileId = fileId;
+        this.creation = creation;
+        this.expiration = expiration;
+        this.size = size;
+        this.fileStorage = fileStorage;
+        this.checksum = checksum;
+        this.digests = digests;
+    }
+
+    public byte[] toBytes()
+    {
+        return encode( out -> {
+            writeString( out, fileId );
+            out.writeLong( creation == null ? NO_DATE : creation.getTime() );
+            out.writeLong( expiration == null ? NO_DATE : expiration.getTime() );
+            out.writeLong( size );
+            writeString( out, fileStorage );
+            writeString( out, checksum );
+            int count = digests == null ? 0 : digests.size();
+            out.writeInt( count );
+            if ( count > 0 )
+            {
+                for ( Map.Entry<String, String> e : digests.entrySet() )
+                {
+                    out.writeUTF( e.getKey() );
+                    out.writeUTF( e.getValue() );
+                }
+            }
+        } );
+    }
+
+    public static MVPathMap fromBytes( String fileSystem, String parentPath, String filename, byte[] value )
+    {
+        return decode( value, in -> {
+            MVPathMap pathMap = new MVPathMap( fileSystem, parentPath, filename );
+            pathMap.fileId = readString( in );
+            pathMap.creation = toDate( in.readLong() );
+            pathMap.expiration = toDate( in.readLong() );
+            pathMap.size = in.readLong();
+            pathMap.fileStorage = readString( in );
+            pathMap.checksum = readString( in );
+            int count = in.readInt();
+            if ( count > 0 )
+            {
+                Map<String, String> digests = new LinkedHashMap<>( count * 2 );
+                for ( int i = 0; i < count; i++ )
+                {
+                    digests.put( in.readUTF(), in.readUTF() );
+                }
+                pathMap.digests = digests;
+            }
+            return pathMap;
+        } );
+    }
+
+    private static Date toDate( long time )
+    {
+        return time == NO_DATE ? null : new Date( time );
+    }
+
+    @Override
+    public String getFileSystem()
+    {
+        return fileSystem;
+    }
+
+    public void setFileSystem( String fileSystem )
+    {
+        this.fileSystem = fileSystem;
+    }
+
+    @Override
+    public String getParentPath()
+    {
+        return parentPath;
+    }
+
+    public void setParentPath( String parentPath )
+    {
+        this.parentPath = parentPath;
+    }
+
+    @Override
+    public String getFilename()
+    {
+        return filename;
+    }
+
+    public void setFilename( String filename )
+    {
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    public void setFileId( String fileId )
+    {
+        this.fileId = fileId;
+    }
+
+    @Override
+    public Date getCreation()
+    {
+        return creation;
+    }
+
+    public void setCreation( Date creation )
+    {
+        this.creation = creation;
+    }
+
+    @Override
+    public Date getExpiration()
+    {
+        return expiration;
+    }
+
+    public void setExpiration( Date expiration )
+    {
+        this.expiration = expiration;
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size;
+    }
+
+    public void setSize( long size )
+    {
+        this.size = size;
+    }
+
+    @Override
+    public String getFileStorage()
+    {
+        return fileStorage;
+    }
+
+    public void setFileStorage( String fileStorage )
+    {
+        this.fileStorage = fileStorage;
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    public void setChecksum( String checksum )
+    {
+        this.checksum = checksum;
+    }
+
+    @Override
+    public Map<String, String> getDigests()
+    {
+        return digests == null ? Collections.emptyMap() : digests;
+    }
+
+    public void setDigests( Map<String, String> digests )
+    {
+        this.digests = digests;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MVPathMap that = (MVPathMap) o;
+        return fileSystem.equals( that.fileSystem ) && parentPath.equals( that.parentPath ) && filename.equals(
+                        that.filename );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( fileSystem, parentPath, filename );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MVPathMap{" + "fileSystem='" + fileSystem + '\'' + ", parentPath='" + parentPath + '\''
+                        + ", filename='" + filename + '\'' + ", fileId='" + fileId + '\'' + ", creation=" + creation
+                        + ", expiration=" + expiration + ", size=" + size + ", fileStorage='" + fileStorage + '\''
+                        + ", checksum='" + checksum + '\'' + '}';
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore.model;
+
+import org.commonjava.storage.pathmapped.model.Reclaim;
+
+import java.util.Date;
+import java.util.Objects;
+
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.decode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.encode;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.getReclaimKey;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.readString;
+import static org.commonjava.storage.pathmapped.pathdb.mvstore.util.MVStorePathDBUtils.writeString;
+
+public class MVReclaim implements Reclaim
+{
+    private final String fileId;
+
+    private final Date deletion;
+
+    private final String storage;
+
+    private final String checksum;
+
+    public MVReclaim( String fileId, Date deletion, String storage, String checksum )
+    {
+        this.fileId = fileId;
+        this.deletion = deletion;
+        this.storage = storage;
+        this.checksum = checksum;
+    }
+
+    public String getKey()
+    {
+        return getReclaimKey( deletion.getTime(), fileId );
+    }
+
+    public byte[] toBytes()
+    {
+        return encode( out -> {
+            out.writeUTF( fileId );
+            out.writeLong( deletion.getTime() );
+            writeString( out, storage );
+            writeString( out, checksum );
+        } );
+    }
+
+    public static MVReclaim fromBytes( byte[] value )
+    {
+        return decode( value, in -> new MVReclaim( in.readUTF(), new Date( in.readLong() ), readString( in ),
+                                                   readString( in ) ) );
+    }
+
+    @Override
+    public String getFileId()
+    {
+        return fileId;
+    }
+
+    @Override
+    public Date getDeletion()
+    {
+        return deletion;
+    }
+
+    @Override
+    public String getStorage()
+    {
+        return storage;
+    }
+
+    @Override
+    public String getChecksum()
+    {
+        return checksum;
+    }
+
+    @Override
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+            return true;
+        if ( o == null || getClass() != o.getClass() )
+            return false;
+        MVReclaim that = (MVReclaim) o;
+        return deletion.equals( that.deletion ) && fileId.equals( that.fileId );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash( deletion, fileId );
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MVReclaim{" + "fileId='" + fileId + '\'' + ", deletion=" + deletion + ", storage='" + storage + '\''
+                        + ", checksum='" + checksum + '\'' + '}';
+    }
+}
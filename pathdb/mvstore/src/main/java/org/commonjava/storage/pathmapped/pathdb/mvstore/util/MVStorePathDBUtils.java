@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.pathdb.mvstore.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+public class MVStorePathDBUtils
+{
+    public static final String PROP_MVSTORE_FILE = "mvstore_file";
+
+    public static final String PROP_MVSTORE_CACHE_SIZE_MB = "mvstore_cache_size_mb";
+
+    public static final String PROP_MVSTORE_MEMORY_MAPPED = "mvstore_memory_mapped";
+
+    public static final String PROP_MVSTORE_AUTO_COMMIT_DELAY = "mvstore_auto_commit_delay";
+
+    public static final String MAP_PATHMAP = "pathmap";
+
+    public static final String MAP_REVERSEMAP = "reversemap";
+
+    public static final String MAP_FILECHECKSUM = "filechecksum";
+
+    public static final String MAP_RECLAIM = "reclaim";
+
+    public static final String MAP_FILESYSTEM = "filesystem";
+
+    /**
+     * Separator of the key components. It sorts before any path char, so the children of a dir come as one range
+     * ahead of the deeper descendants.
+     */
+    public static final char KEY_SEPARATOR = '\u0000';
+
+    public static String getPathMapKey( String fileSystem, String parentPath, String filename )
+    {
+        return getListPrefix( fileSystem, parentPath ) + filename;
+    }
+
+    /**
+     * Prefix of the keys of the entries directly under the parentPath.
+     */
+    public static String getListPrefix( String fileSystem, String parentPath )
+    {
+        return fileSystem + KEY_SEPARATOR + parentPath + KEY_SEPARATOR;
+    }
+
+    /**
+     * Reclaim keys start with the deletion time padded to fixed length so they sort in time order.
+     */
+    public static String getReclaimKey( long deletion, String fileId )
+    {
+        return String.format( "%019d", deletion ) + KEY_SEPARATOR + fileId;
+    }
+
+    public static void writeString( DataOutput out, String s ) throws IOException
+    {
+        out.writeBoolean( s != null );
+        if ( s != null )
+        {
+            out.writeUTF( s );
+        }
+    }
+
+    public static String readString( DataInput in ) throws IOException
+    {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Values are stored as byte arrays written with {@link DataOutput}, which keeps the store independent of java
+     * serialization and the model classes.
+     */
+    public static byte[] encode( Writer writer )
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 128 );
+        try (DataOutputStream out = new DataOutputStream( bytes ))
+        {
+            writer.write( out );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e ); // not thrown by byte array streams
+        }
+        return bytes.toByteArray();
+    }
+
+    public static <R> R decode( byte[] value, Reader<R> reader )
+    {
+        if ( value == null )
+        {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream( new ByteArrayInputStream( value ) ))
+        {
+            return reader.read( in );
+        }
+        catch ( IOException e )
+        {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    @FunctionalInterface
+    public interface Writer
+    {
+        void write( DataOutput out ) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface Reader<R>
+    {
+        R read( DataInput in ) throws IOException;
+    }
+}
@@ -0,0 +1,695 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.cache;
+
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
+import org.commonjava.storage.pathmapped.spi.RefreshablePathDB;
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
+
+/**
+ * Near-cache of PathMap entries in front of any PathDB. Point lookups (getPathMap, getFileLength, getStorageFile,
+ * etc) are served from a bounded in-memory cache keyed by (filesystem, parentPath, filename). Misses are cached as
+ * well (negative caching) with a shorter TTL.
+ *
+ * An entry never outlives the PathMap expiration, so expired files still reach the decorated PathDB which deletes
+ * them. Entries are invalidated by insert, delete, copy, expire and makeDirs made through this instance. Writes
+ * made by other nodes are only visible after the TTL, so keep the TTL short on clustered deployments.
+ *
+ * The async calls are cached the same way and passed to the decorated PathDB if it is an {@link AsyncPathDB}.
+ */
+public class CachingPathDB
+                implements PathDB, AsyncPathDB, PathDBAdmin, RefreshablePathDB, Closeable
+{
+    private static final long DEFAULT_MAX_WEIGHT = 64 * 1024 * 1024; // 64MB
+
+    private static final long DEFAULT_TTL = TimeUnit.MINUTES.toMillis( 5 );
+
+    private static final long DEFAULT_NEGATIVE_TTL = TimeUnit.SECONDS.toMillis( 30 );
+
+    private static final int DEFAULT_CONCURRENCY = 16;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathDB decorated;
+
+    private final PathMapCache cache;
+
+    private final long ttl;
+
+    private final long negativeTtl;
+
+    public CachingPathDB( PathDB decorated )
+    {
+        this( decorated, DEFAULT_MAX_WEIGHT, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL );
+    }
+
+    /**
+     * @param maxWeight approximate max memory held by the cache, in bytes
+     * @param ttl time-to-live of a found entry, in milliseconds
+     * @param negativeTtl time-to-live of a not-found entry, in milliseconds. 0 disables negative caching.
+     */
+    public CachingPathDB( PathDB decorated, long maxWeight, long ttl, long negativeTtl )
+    {
+        this.decorated = decorated;
+        this.cache = new PathMapCache( maxWeight, DEFAULT_CONCURRENCY );
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    public PathDB getDecorated()
+    {
+        return decorated;
+    }
+
+    /**
+     * Drop all cached entries.
+     */
+    public void invalidateAll()
+    {
+        cache.clear();
+    }
+
+    long getCacheSize()
+    {
+        return cache.size();
+    }
+
+    @Override
+    public PathMap getPathMap( String fileSystem, String path )
+    {
+        PathMapCache.Key key = toKey( fileSystem, path );
+        if ( key == null )
+        {
+            return decorated.getPathMap( fileSystem, path );
+        }
+        long now = System.currentTimeMillis();
+        PathMapCache.Entry entry = cache.get( key, now );
+        if ( entry != null )
+        {
+            logger.trace( "Cache hit, {}", key );
+            return entry.getPathMap();
+        }
+
+        long version = cache.version( key );
+        PathMap pathMap = decorated.getPathMap( fileSystem, path );
+        long expiresAt = getExpiresAt( pathMap, now );
+        if ( expiresAt > now )
+        {
+            cache.put( key, pathMap, expiresAt, version );
+        }
+        return pathMap;
+    }
+
+    @Override
+    public boolean isAsyncSupported()
+    {
+        return decorated instanceof AsyncPathDB && ( (AsyncPathDB) decorated ).isAsyncSupported();
+    }
+
+    @Override
+    public CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path )
+    {
+        PathMapCache.Key key = toKey( fileSystem, path );
+        if ( key == null )
+        {
+            return decoratedAsync().getPathMapAsync( fileSystem, path );
+        }
+        long now = System.currentTimeMillis();
+        PathMapCache.Entry entry = cache.get( key, now );
+        if ( entry != null )
+        {
+            logger.trace( "Cache hit, {}", key );
+            return completedFuture( entry.getPathMap() );
+        }
+
+        long version = cache.version( key );
+        return decoratedAsync().getPathMapAsync( fileSystem, path ).thenApply( pathMap -> {
+            long loadedAt = System.currentTimeMillis();
+            long expiresAt = getExpiresAt( pathMap, loadedAt );
+            if ( expiresAt > loadedAt )
+            {
+                cache.put( key, pathMap, expiresAt, version );
+            }
+            return pathMap;
+        } );
+    }
+
+    @Override
+    public CompletableFuture<FileType> existsAsync( String fileSystem, String path )
+    {
+        PathMap pathMap = getCachedPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return completedFuture( FileType.file );
+        }
+        return decoratedAsync().existsAsync( fileSystem, path );
+    }
+
+    @Override
+    public CompletableFuture<List<PathMap>> listAsync( String fileSystem, String path, FileType fileType )
+    {
+        return decoratedAsync().listAsync( fileSystem, path, fileType );
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAsync( String fileSystem, String path, Date creation, Date expiration,
+                                                String fileId, long size, String fileStorage, String checksum )
+    {
+        return decoratedAsync().insertAsync( fileSystem, path, creation, expiration, fileId, size, fileStorage,
+                                             checksum )
+                               .whenComplete( ( r, e ) -> invalidateWithParents( fileSystem, path ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force )
+    {
+        return decoratedAsync().deleteAsync( fileSystem, path, force )
+                               .whenComplete( ( r, e ) -> invalidate( fileSystem, path ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath )
+    {
+        return decoratedAsync().copyAsync( fromFileSystem, fromPath, toFileSystem, toPath )
+                               .whenComplete( ( r, e ) -> invalidateWithParents( toFileSystem, toPath ) );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath, Date creation, Date expiration )
+    {
+        return decoratedAsync().copyAsync( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration )
+                               .whenComplete( ( r, e ) -> invalidateWithParents( toFileSystem, toPath ) );
+    }
+
+    /**
+     * Serve the cached paths and load the rest with one batch lookup on the decorated PathDB.
+     */
+    @Override
+    public Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        Map<String, PathMap> ret = new HashMap<>();
+        List<String> missed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for ( String path : paths )
+        {
+            PathMapCache.Key key = toKey( fileSystem, path );
+            PathMapCache.Entry entry = key == null ? null : cache.get( key, now );
+            if ( entry == null )
+            {
+                missed.add( path );
+            }
+            else if ( !entry.isNegative() )
+            {
+                ret.put( path, entry.getPathMap() );
+            }
+        }
+        if ( missed.isEmpty() )
+        {
+            return ret;
+        }
+
+        Map<String, Long> versions = new HashMap<>();
+        missed.forEach( path -> {
+            PathMapCache.Key key = toKey( fileSystem, path );
+            if ( key != null )
+            {
+                versions.put( path, cache.version( key ) );
+            }
+        } );
+        Map<String, PathMap> loaded = decorated.getPathMaps( fileSystem, missed );
+        versions.forEach( ( path, version ) -> {
+            PathMap pathMap = loaded.get( path );
+            long expiresAt = getExpiresAt( pathMap, now );
+            if ( expiresAt > now )
+            {
+                cache.put( toKey( fileSystem, path ), pathMap, expiresAt, version );
+            }
+        } );
+        ret.putAll( loaded );
+        return ret;
+    }
+
+    /**
+     * Found entries live for ttl but never beyond the PathMap expiration. Not-found entries live for negativeTtl.
+     */
+    private long getExpiresAt( PathMap pathMap, long now )
+    {
+        if ( pathMap == null )
+        {
+            return now + negativeTtl;
+        }
+        long expiresAt = now + ttl;
+        Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < expiresAt )
+        {
+            expiresAt = expiration.getTime();
+        }
+        return expiresAt;
+    }
+
+    @Override
+    public long getFileLength( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null )
+        {
+            return pathMap.getSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getFileLastModified( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return pathMap.getCreation().getTime();
+        }
+        return -1;
+    }
+
+    /**
+     * Only a cached file answers directly. A miss for "foo" does not tell whether "foo/" exists so the decorated
+     * PathDB is asked in that case.
+     */
+    @Override
+    public FileType exists( String fileSystem, String path )
+    {
+        PathMap pathMap = getCachedPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return FileType.file;
+        }
+        return decorated.exists( fileSystem, path );
+    }
+
+    @Override
+    public Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        return decorated.existsAll( fileSystem, paths );
+    }
+
+    @Override
+    public boolean existsFile( String fileSystem, String path )
+    {
+        if ( ROOT_DIR.equals( path ) )
+        {
+            return decorated.existsFile( fileSystem, path );
+        }
+        return getPathMap( fileSystem, path ) != null;
+    }
+
+    @Override
+    public boolean isDirectory( String fileSystem, String path )
+    {
+        return decorated.isDirectory( fileSystem, path );
+    }
+
+    @Override
+    public boolean isFile( String fileSystem, String path )
+    {
+        if ( path.endsWith( "/" ) )
+        {
+            return false;
+        }
+        return getPathMap( fileSystem, path ) != null;
+    }
+
+    /**
+     * The expiration is checked here rather than in the decorated PathDB so a cached entry does not cost a
+     * round trip. Expired entries are handed over to the decorated PathDB which deletes them.
+     */
+    @Override
+    public String getStorageFile( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap == null )
+        {
+            return null;
+        }
+        Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < System.currentTimeMillis() )
+        {
+            invalidate( fileSystem, path );
+            return decorated.getStorageFile( fileSystem, path );
+        }
+        return pathMap.getFileStorage();
+    }
+
+    @Override
+    public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
+    {
+        return decorated.getFileSystemContaining( candidates, path );
+    }
+
+    /**
+     * Answer from the cache only if every candidate is cached, otherwise one query to the decorated PathDB is
+     * cheaper than a query per candidate.
+     */
+    @Override
+    public String getFirstFileSystemContaining( List<String> candidates, String path )
+    {
+        long now = System.currentTimeMillis();
+        for ( String candidate : candidates )
+        {
+            PathMapCache.Key key = toKey( candidate, path );
+            PathMapCache.Entry entry = key == null ? null : cache.get( key, now );
+            if ( entry == null )
+            {
+                return decorated.getFirstFileSystemContaining( candidates, path );
+            }
+            if ( !entry.isNegative() )
+            {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum )
+    {
+        try
+        {
+            decorated.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum );
+        }
+        finally
+        {
+            invalidateWithParents( fileSystem, path );
+        }
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        try
+        {
+            decorated.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, digests );
+        }
+        finally
+        {
+            invalidateWithParents( fileSystem, path );
+        }
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path )
+    {
+        try
+        {
+            return decorated.delete( fileSystem, path );
+        }
+        finally
+        {
+            invalidate( fileSystem, path );
+        }
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path, boolean force )
+    {
+        try
+        {
+            return decorated.delete( fileSystem, path, force );
+        }
+        finally
+        {
+            invalidate( fileSystem, path );
+        }
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
+    {
+        try
+        {
+            return decorated.copy( fromFileSystem, fromPath, toFileSystem, toPath );
+        }
+        finally
+        {
+            invalidateWithParents( toFileSystem, toPath );
+        }
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath, Date creation,
+                         Date expiration )
+    {
+        try
+        {
+            return decorated.copy( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration );
+        }
+        finally
+        {
+            invalidateWithParents( toFileSystem, toPath );
+        }
+    }
+
+    @Override
+    public void expire( String fileSystem, String path, Date expiration )
+    {
+        try
+        {
+            decorated.expire( fileSystem, path, expiration );
+        }
+        finally
+        {
+            invalidate( fileSystem, path );
+        }
+    }
+
+    @Override
+    public void makeDirs( String fileSystem, String path )
+    {
+        try
+        {
+            decorated.makeDirs( fileSystem, path );
+        }
+        finally
+        {
+            if ( !ROOT_DIR.equals( path ) )
+            {
+                invalidateWithParents( fileSystem, path.endsWith( "/" ) ? path : path + "/" );
+            }
+        }
+    }
+
+    /**
+     * Refresh the decorated PathDB first if it holds a copy too, then drop the cached entry so the next read gets it.
+     */
+    @Override
+    public void refresh( String fileSystem, String path )
+    {
+        try
+        {
+            if ( decorated instanceof RefreshablePathDB )
+            {
+                ( (RefreshablePathDB) decorated ).refresh( fileSystem, path );
+            }
+        }
+        finally
+        {
+            invalidate( fileSystem, path );
+        }
+    }
+
+    @Override
+    public FileChecksum getFileChecksum( String checksum )
+    {
+        return decorated.getFileChecksum( checksum );
+    }
+
+    @Override
+    public Set<String> getPathsByFileId( String fileId )
+    {
+        return decorated.getPathsByFileId( fileId );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, FileType fileType )
+    {
+        return decorated.list( fileSystem, path, fileType );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType )
+    {
+        return decorated.list( fileSystem, path, recursive, limit, fileType );
+    }
+
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        return decorated.list( fileSystem, path, fileType, pageSize, pagingState );
+    }
+
+    @Override
+    public List<Reclaim> listOrphanedFiles( int limit )
+    {
+        return decorated.listOrphanedFiles( limit );
+    }
+
+    @Override
+    public void removeFromReclaim( Reclaim reclaim )
+    {
+        decorated.removeFromReclaim( reclaim );
+    }
+
+    @Override
+    public void traverse( String fileSystem, String path, Consumer<PathMap> consumer, int limit, FileType fileType )
+    {
+        decorated.traverse( fileSystem, path, consumer, limit, fileType );
+    }
+
+    @Override
+    public Filesystem getFilesystem( String filesystem )
+    {
+        if ( decorated instanceof PathDBAdmin )
+        {
+            return ( (PathDBAdmin) decorated ).getFilesystem( filesystem );
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<? extends Filesystem> getFilesystems()
+    {
+        if ( decorated instanceof PathDBAdmin )
+        {
+            return ( (PathDBAdmin) decorated ).getFilesystems();
+        }
+        return emptyList();
+    }
+
+    @Override
+    public void purgeFilesystem( Filesystem filesystem )
+    {
+        if ( decorated instanceof PathDBAdmin )
+        {
+            ( (PathDBAdmin) decorated ).purgeFilesystem( filesystem );
+            cache.invalidateFileSystem( filesystem.getFilesystem() );
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        cache.clear();
+        if ( decorated instanceof Closeable )
+        {
+            ( (Closeable) decorated ).close();
+        }
+    }
+
+    private AsyncPathDB decoratedAsync()
+    {
+        if ( !isAsyncSupported() )
+        {
+            throw new UnsupportedOperationException(
+                            "Decorated PathDB has no async support: " + decorated.getClass().getName() );
+        }
+        return (AsyncPathDB) decorated;
+    }
+
+    private PathMap getCachedPathMap( String fileSystem, String path )
+    {
+        PathMapCache.Key key = toKey( fileSystem, path );
+        if ( key == null )
+        {
+            return null;
+        }
+        PathMapCache.Entry entry = cache.get( key, System.currentTimeMillis() );
+        return entry == null ? null : entry.getPathMap();
+    }
+
+    private void invalidate( String fileSystem, String path )
+    {
+        PathMapCache.Key key = toKey( fileSystem, path );
+        if ( key != null )
+        {
+            cache.invalidate( key );
+        }
+    }
+
+    /**
+     * Insert and copy create the missing parent dirs, which may be negatively cached.
+     */
+    private void invalidateWithParents( String fileSystem, String path )
+    {
+        PathMapCache.Key key = toKey( fileSystem, path );
+        if ( key == null )
+        {
+            return;
+        }
+        cache.invalidate( key );
+
+        Set<String> dirs = new LinkedHashSet<>();
+        String parent = PathMapUtils.getParentPath( path );
+        while ( parent != null && !ROOT_DIR.equals( parent ) )
+        {
+            dirs.add( parent + "/" );
+            parent = PathMapUtils.getParentPath( parent );
+        }
+        dirs.forEach( dir -> invalidate( fileSystem, dir ) );
+    }
+
+    private static PathMapCache.Key toKey( String fileSystem, String path )
+    {
+        if ( fileSystem == null || path == null )
+        {
+            return null;
+        }
+        String parentPath = PathMapUtils.getParentPath( path );
+        String filename = PathMapUtils.getFilename( path );
+        if ( parentPath == null || filename == null )
+        {
+            return null;
+        }
+        return new PathMapCache.Key( fileSystem, parentPath, filename );
+    }
+}
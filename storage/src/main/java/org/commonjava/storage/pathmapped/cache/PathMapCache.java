@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.cache;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU of PathMap entries. The cache is split into stripes, each guarded by its own lock, so readers
+ * hitting different keys do not contend. Each stripe is bounded by an estimated weight in bytes rather than
+ * by entry count, because path lengths vary a lot between repositories.
+ *
+ * A null PathMap is cached as a negative entry (the path is known not to exist).
+ */
+class PathMapCache
+{
+    private static final int ENTRY_OVERHEAD = 96; // object headers, map node, key and entry fields
+
+    private final Stripe[] stripes;
+
+    PathMapCache( long maxWeight, int concurrency )
+    {
+        int n = Integer.highestOneBit( Math.max( 1, concurrency ) );
+        stripes = new Stripe[n];
+        long stripeWeight = Math.max( 1, maxWeight / n );
+        for ( int i = 0; i < n; i++ )
+        {
+            stripes[i] = new Stripe( stripeWeight );
+        }
+    }
+
+    /**
+     * Get a not-yet-expired entry, or null if the key is absent or expired.
+     */
+    Entry get( Key key, long now )
+    {
+        return stripeFor( key ).get( key, now );
+    }
+
+    /**
+     * Current version of the stripe holding the key. Capture it before loading from the decorated PathDB and
+     * pass it to {@link #put(Key, PathMap, long, long)} so a load racing with an invalidation is discarded.
+     */
+    long version( Key key )
+    {
+        return stripeFor( key ).version;
+    }
+
+    void put( Key key, PathMap pathMap, long expiresAt, long version )
+    {
+        stripeFor( key ).put( key, new Entry( pathMap, expiresAt, weigh( key, pathMap ) ), version );
+    }
+
+    void invalidate( Key key )
+    {
+        stripeFor( key ).invalidate( key );
+    }
+
+    /**
+     * Drop the entries of the filesystem, negative ones included.
+     */
+    void invalidateFileSystem( String fileSystem )
+    {
+        for ( Stripe stripe : stripes )
+        {
+            stripe.invalidateFileSystem( fileSystem );
+        }
+    }
+
+    void clear()
+    {
+        for ( Stripe stripe : stripes )
+        {
+            stripe.clear();
+        }
+    }
+
+    long size()
+    {
+        long size = 0;
+        for ( Stripe stripe : stripes )
+        {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor( Key key )
+    {
+        int h = key.hashCode();
+        h ^= ( h >>> 16 );
+        return stripes[h & ( stripes.length - 1 )];
+    }
+
+    private static int weigh( Key key, PathMap pathMap )
+    {
+        int weight = ENTRY_OVERHEAD + 2 * ( key.fileSystem.length() + key.parentPath.length() + key.filename.length() );
+        if ( pathMap != null )
+        {
+            weight += 2 * ( length( pathMap.getFileId() ) + length( pathMap.getFileStorage() ) + length(
+                            pathMap.getChecksum() ) ) + 64;
+        }
+        return weight;
+    }
+
+    private static int length( String s )
+    {
+        return s == null ? 0 : s.length();
+    }
+
+    static final class Key
+    {
+        private final String fileSystem;
+
+        private final String parentPath;
+
+        private final String filename;
+
+        private final int hash;
+
+        Key( String fileSystem, String parentPath, String filename )
+        {
+            this.fileSystem = fileSystem;
+            this.parentPath = parentPath;
+            this.filename = filename;
+            this.hash = Objects.hash( fileSystem, parentPath, filename );
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            Key that = (Key) o;
+            return fileSystem.equals( that.fileSystem ) && parentPath.equals( that.parentPath ) && filename.equals(
+                            that.filename );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Key{" + fileSystem + ':' + parentPath + ", " + filename + '}';
+        }
+    }
+
+    static final class Entry
+    {
+        private final PathMap pathMap;
+
+        private final long expiresAt;
+
+        private final int weight;
+
+        private Entry( PathMap pathMap, long expiresAt, int weight )
+        {
+            this.pathMap = pathMap;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        PathMap getPathMap()
+        {
+            return pathMap;
+        }
+
+        boolean isNegative()
+        {
+            return pathMap == null;
+        }
+    }
+
+    private static final class Stripe
+    {
+        private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>( 64, 0.75f, true );
+
+        private final long maxWeight;
+
+        private long weight;
+
+        private volatile long version;
+
+        Stripe( long maxWeight )
+        {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized Entry get( Key key, long now )
+        {
+            Entry entry = map.get( key );
+            if ( entry == null )
+            {
+                return null;
+            }
+            if ( entry.expiresAt <= now )
+            {
+                remove( key );
+                return null;
+            }
+            return entry;
+        }
+
+        synchronized void put( Key key, Entry entry, long expectedVersion )
+        {
+            if ( version != expectedVersion )
+            {
+                return; // invalidated while loading
+            }
+            Entry old = map.put( key, entry );
+            if ( old != null )
+            {
+                weight -= old.weight;
+            }
+            weight += entry.weight;
+            evict();
+        }
+
+        synchronized void invalidate( Key key )
+        {
+            version++;
+            remove( key );
+        }
+
+        synchronized void invalidateFileSystem( String fileSystem )
+        {
+            version++;
+            Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry<Key, Entry> e = it.next();
+                if ( e.getKey().fileSystem.equals( fileSystem ) )
+                {
+                    weight -= e.getValue().weight;
+                    it.remove();
+                }
+            }
+        }
+
+        synchronized void clear()
+        {
+            version++;
+            map.clear();
+            weight = 0;
+        }
+
+        synchronized int size()
+        {
+            return map.size();
+        }
+
+        private void remove( Key key )
+        {
+            Entry old = map.remove( key );
+            if ( old != null )
+            {
+                weight -= old.weight;
+            }
+        }
+
+        private void evict()
+        {
+            Iterator<Map.Entry<Key, Entry>> it = map.entrySet().iterator();
+            while ( weight > maxWeight && it.hasNext() )
+            {
+                weight -= it.next().getValue().weight;
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,774 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.cache;
+
+import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
+import org.commonjava.storage.pathmapped.spi.RefreshablePathDB;
+import org.commonjava.storage.pathmapped.spi.ReplicaPathDB;
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Collections.emptyList;
+import static org.apache.commons.lang.StringUtils.isBlank;
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
+
+/**
+ * Local replica of selected filesystems in front of the authoritative PathDB, e.g., an embedded MVStorePathDB or
+ * MemoryPathDB in front of CassandraPathDB for immutable release repositories.
+ *
+ * A filesystem opts in by {@link #addFilesystem(String)}. Its local index is bootstrapped in the background by a bulk
+ * traverse of the authoritative PathDB, and kept current by tailing the writes made through this instance. Until the
+ * bootstrap completes, the filesystem is served by the authoritative PathDB.
+ *
+ * Reads of a replicated filesystem are served locally. Point lookups missing locally, and all writes, go to the
+ * authoritative PathDB. Listings are answered by the local index alone, so writes made by other nodes show up in
+ * listings only after the next bootstrap. The local index is dropped and bootstrapped again once it is older than the
+ * max staleness, 1 hour by default. A local entry whose physical file turns out missing, as the path was overwritten
+ * or deleted through another node, is read again from the authoritative PathDB by {@link #refresh(String, String)}.
+ *
+ * Checksums, the reverse map, reclaims and filesystem counters always come from the authoritative PathDB. The local
+ * PathDB must be dedicated to this instance. If it is a {@link ReplicaPathDB}, as MemoryPathDB and MVStorePathDB are,
+ * the entries are copied as they are. Otherwise they go through its regular insert and delete, which may dedupe, and
+ * the reclaims it records are purged after, as far as they are past its gc grace period.
+ */
+public class TieredPathDB
+                implements PathDB, PathDBAdmin, RefreshablePathDB, Closeable
+{
+    private static final long DEFAULT_MAX_STALENESS = TimeUnit.HOURS.toMillis( 1 );
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathDB authoritative;
+
+    private final PathDB local;
+
+    private final ReplicaPathDB localReplica; // null if the local PathDB has no raw writes
+
+    private final long maxStaleness;
+
+    private final ConcurrentMap<String, Replica> replicas = new ConcurrentHashMap<>();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor( r -> {
+        Thread t = new Thread( r, "tiered-pathdb-loader" );
+        t.setDaemon( true );
+        return t;
+    } );
+
+    public TieredPathDB( PathDB authoritative, PathDB local, Collection<String> filesystems )
+    {
+        this( authoritative, local, filesystems, DEFAULT_MAX_STALENESS );
+    }
+
+    /**
+     * @param filesystems filesystems replicated locally, more can be added by {@link #addFilesystem(String)}
+     * @param maxStaleness max age of a local index in milliseconds before it is bootstrapped again. 0 means no limit,
+     *                     which suits only filesystems never written through other nodes.
+     */
+    public TieredPathDB( PathDB authoritative, PathDB local, Collection<String> filesystems, long maxStaleness )
+    {
+        this.authoritative = authoritative;
+        this.local = local;
+        this.localReplica = local instanceof ReplicaPathDB ? (ReplicaPathDB) local : null;
+        this.maxStaleness = maxStaleness;
+        filesystems.forEach( this::addFilesystem );
+    }
+
+    public PathDB getAuthoritative()
+    {
+        return authoritative;
+    }
+
+    public PathDB getLocal()
+    {
+        return local;
+    }
+
+    /**
+     * Replicate the filesystem locally. It is served locally once the returned bootstrap completes.
+     */
+    public Future<?> addFilesystem( String filesystem )
+    {
+        Replica replica = new Replica();
+        Replica existing = replicas.putIfAbsent( filesystem, replica );
+        return reload( filesystem, existing != null ? existing : replica );
+    }
+
+    /**
+     * Serve the filesystem from the authoritative PathDB again and drop its local index.
+     */
+    public Future<?> removeFilesystem( String filesystem )
+    {
+        replicas.remove( filesystem );
+        return loader.submit( () -> clearLocal( filesystem ) );
+    }
+
+    /**
+     * Drop the local index of the filesystem and bootstrap it again, e.g., after writes made by other nodes.
+     */
+    public Future<?> reload( String filesystem )
+    {
+        Replica replica = replicas.get( filesystem );
+        if ( replica == null )
+        {
+            throw new IllegalArgumentException( "Filesystem not replicated: " + filesystem );
+        }
+        return reload( filesystem, replica );
+    }
+
+    private Future<?> reload( String filesystem, Replica replica )
+    {
+        synchronized ( replica )
+        {
+            replica.ready = false;
+            replica.loading = true;
+        }
+        return loader.submit( () -> bootstrap( filesystem, replica ) );
+    }
+
+    /**
+     * Whether the reads of the filesystem are served locally now.
+     */
+    public boolean isServedLocally( String filesystem )
+    {
+        Replica replica = replicas.get( filesystem );
+        if ( replica == null || !replica.ready )
+        {
+            return false;
+        }
+        if ( maxStaleness > 0 && System.currentTimeMillis() - replica.loadedAt > maxStaleness )
+        {
+            logger.info( "Local index of {} is stale, loaded at {}", filesystem, new Date( replica.loadedAt ) );
+            synchronized ( replica )
+            {
+                if ( replica.loading )
+                {
+                    return false;
+                }
+                reload( filesystem, replica );
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isServedLocally( Collection<String> filesystems )
+    {
+        for ( String filesystem : filesystems )
+        {
+            if ( !isServedLocally( filesystem ) )
+            {
+                return false;
+            }
+        }
+        return !filesystems.isEmpty();
+    }
+
+    /**
+     * Copy the filesystem from the authoritative PathDB. The paths written through this instance meanwhile may be
+     * copied in an older state, so they are refreshed once the traverse is done.
+     */
+    private void bootstrap( String filesystem, Replica replica )
+    {
+        long start = System.currentTimeMillis();
+        logger.info( "Bootstrap local index of {}", filesystem );
+        try
+        {
+            clearLocal( filesystem );
+            int[] count = new int[1];
+            authoritative.traverse( filesystem, ROOT_DIR, pathMap -> {
+                copyToLocal( filesystem, PathMapUtils.normalize( pathMap.getParentPath(), pathMap.getFilename() ),
+                             pathMap );
+                count[0]++;
+            }, 0, FileType.all );
+
+            Set<String> touched;
+            synchronized ( replica )
+            {
+                replica.loadedAt = start;
+                replica.ready = replicas.get( filesystem ) == replica;
+                replica.loading = false;
+                touched = new HashSet<>( replica.touched );
+                replica.touched.clear();
+            }
+            touched.forEach( path -> refreshLocal( filesystem, path ) );
+            logger.info( "Bootstrap local index of {} done, entries: {}, elapse: {}ms", filesystem, count[0],
+                         System.currentTimeMillis() - start );
+        }
+        catch ( RuntimeException e )
+        {
+            synchronized ( replica )
+            {
+                replica.loading = false;
+                replica.touched.clear();
+            }
+            logger.error( "Bootstrap local index of " + filesystem + " failed, served by the authoritative PathDB", e );
+        }
+    }
+
+    /**
+     * Without raw writes, delete the files first, then the dirs bottom-up so each is empty when deleted.
+     */
+    private void clearLocal( String filesystem )
+    {
+        if ( localReplica != null )
+        {
+            localReplica.clearReplica( filesystem );
+            return;
+        }
+        List<PathMap> pathMaps = local.list( filesystem, ROOT_DIR, true, 0, FileType.all );
+        List<String> dirs = new ArrayList<>();
+        for ( PathMap pathMap : pathMaps )
+        {
+            String path = PathMapUtils.normalize( pathMap.getParentPath(), pathMap.getFilename() );
+            if ( pathMap.getFileId() == null )
+            {
+                dirs.add( path );
+            }
+            else
+            {
+                local.delete( filesystem, path );
+            }
+        }
+        dirs.sort( Comparator.comparingInt( String::length ).reversed() );
+        dirs.forEach( dir -> local.delete( filesystem, dir, true ) );
+        purgeLocalReclaims();
+    }
+
+    private void copyToLocal( String filesystem, String path, PathMap pathMap )
+    {
+        if ( pathMap.getFileId() == null )
+        {
+            local.makeDirs( filesystem, path );
+            return;
+        }
+        Map<String, String> digests = pathMap.getDigests();
+        insertLocal( filesystem, path, pathMap.getCreation(), pathMap.getExpiration(), pathMap.getFileId(),
+                     pathMap.getSize(), pathMap.getFileStorage(), pathMap.getChecksum(),
+                     digests.isEmpty() ? null : digests );
+    }
+
+    private void insertLocal( String filesystem, String path, Date creation, Date expiration, String fileId,
+                              long size, String fileStorage, String checksum, Map<String, String> digests )
+    {
+        if ( localReplica != null )
+        {
+            localReplica.replicate( filesystem, path, creation, expiration, fileId, size, fileStorage, checksum,
+                                    digests );
+            return;
+        }
+        local.insert( filesystem, path, creation, expiration, fileId, size, fileStorage, checksum, digests );
+        purgeLocalReclaims();
+    }
+
+    private void deleteLocal( String filesystem, String path, boolean force )
+    {
+        if ( localReplica != null )
+        {
+            localReplica.removeReplica( filesystem, path );
+            return;
+        }
+        local.delete( filesystem, path, force );
+        purgeLocalReclaims();
+    }
+
+    /**
+     * The files belong to the authoritative PathDB, so the local reclaims must never be collected.
+     */
+    private void purgeLocalReclaims()
+    {
+        local.listOrphanedFiles( 0 ).forEach( local::removeFromReclaim );
+    }
+
+    /**
+     * Bring the local entry in line with the authoritative PathDB.
+     */
+    private void refreshLocal( String filesystem, String path )
+    {
+        PathMap pathMap = authoritative.getPathMap( filesystem, path );
+        if ( pathMap == null )
+        {
+            deleteLocal( filesystem, path, true );
+        }
+        else
+        {
+            copyToLocal( filesystem, path, pathMap );
+        }
+    }
+
+    /**
+     * Apply a write made through this instance to the local index. During a bootstrap the path is only recorded,
+     * and refreshed when the bootstrap is done.
+     * @param mirror applies the write locally, or null to refresh from the authoritative PathDB
+     */
+    private void tail( String filesystem, String path, Runnable mirror )
+    {
+        Replica replica = replicas.get( filesystem );
+        if ( replica == null )
+        {
+            return;
+        }
+        synchronized ( replica )
+        {
+            if ( replica.loading )
+            {
+                replica.touched.add( path );
+                return;
+            }
+        }
+        try
+        {
+            if ( mirror != null )
+            {
+                mirror.run();
+            }
+            else
+            {
+                refreshLocal( filesystem, path );
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to update local index of " + filesystem + ", reload it", e );
+            reload( filesystem, replica );
+        }
+    }
+
+    /**
+     * Bring the local entry in line with the authoritative PathDB, e.g., when its physical file is missing. During a
+     * bootstrap it is refreshed when the bootstrap is done.
+     */
+    @Override
+    public void refresh( String fileSystem, String path )
+    {
+        tail( fileSystem, path, null );
+    }
+
+    @Override
+    public PathMap getPathMap( String fileSystem, String path )
+    {
+        if ( isServedLocally( fileSystem ) )
+        {
+            PathMap pathMap = local.getPathMap( fileSystem, path );
+            if ( pathMap != null )
+            {
+                return pathMap;
+            }
+        }
+        return authoritative.getPathMap( fileSystem, path );
+    }
+
+    @Override
+    public Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        if ( !isServedLocally( fileSystem ) )
+        {
+            return authoritative.getPathMaps( fileSystem, paths );
+        }
+        Map<String, PathMap> ret = local.getPathMaps( fileSystem, paths );
+        if ( ret.size() < paths.size() )
+        {
+            List<String> missed = new ArrayList<>();
+            paths.forEach( path -> {
+                if ( !ret.containsKey( path ) )
+                {
+                    missed.add( path );
+                }
+            } );
+            ret.putAll( authoritative.getPathMaps( fileSystem, missed ) );
+        }
+        return ret;
+    }
+
+    @Override
+    public long getFileLength( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null )
+        {
+            return pathMap.getSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getFileLastModified( String fileSystem, String path )
+    {
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap != null && pathMap.getFileId() != null )
+        {
+            return pathMap.getCreation().getTime();
+        }
+        return -1;
+    }
+
+    @Override
+    public FileType exists( String fileSystem, String path )
+    {
+        if ( isServedLocally( fileSystem ) )
+        {
+            FileType fileType = local.exists( fileSystem, path );
+            if ( fileType != null )
+            {
+                return fileType;
+            }
+        }
+        return authoritative.exists( fileSystem, path );
+    }
+
+    @Override
+    public Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        if ( !isServedLocally( fileSystem ) )
+        {
+            return authoritative.existsAll( fileSystem, paths );
+        }
+        Map<String, FileType> ret = local.existsAll( fileSystem, paths );
+        if ( ret.size() < paths.size() )
+        {
+            List<String> missed = new ArrayList<>();
+            paths.forEach( path -> {
+                if ( !ret.containsKey( path ) )
+                {
+                    missed.add( path );
+                }
+            } );
+            ret.putAll( authoritative.existsAll( fileSystem, missed ) );
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean existsFile( String fileSystem, String path )
+    {
+        if ( isServedLocally( fileSystem ) && local.existsFile( fileSystem, path ) )
+        {
+            return true;
+        }
+        return authoritative.existsFile( fileSystem, path );
+    }
+
+    @Override
+    public boolean isDirectory( String fileSystem, String path )
+    {
+        if ( isServedLocally( fileSystem ) && local.isDirectory( fileSystem, path ) )
+        {
+            return true;
+        }
+        return authoritative.isDirectory( fileSystem, path );
+    }
+
+    @Override
+    public boolean isFile( String fileSystem, String path )
+    {
+        if ( isServedLocally( fileSystem ) && local.isFile( fileSystem, path ) )
+        {
+            return true;
+        }
+        return authoritative.isFile( fileSystem, path );
+    }
+
+    /**
+     * The expiration is checked here so a local entry does not cost a round trip. Expired entries are handed over to
+     * the authoritative PathDB which deletes them.
+     */
+    @Override
+    public String getStorageFile( String fileSystem, String path )
+    {
+        if ( !isServedLocally( fileSystem ) )
+        {
+            return authoritative.getStorageFile( fileSystem, path );
+        }
+        PathMap pathMap = getPathMap( fileSystem, path );
+        if ( pathMap == null )
+        {
+            return null;
+        }
+        Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < System.currentTimeMillis() )
+        {
+            String ret = authoritative.getStorageFile( fileSystem, path );
+            tail( fileSystem, path, null );
+            return ret;
+        }
+        return pathMap.getFileStorage();
+    }
+
+    @Override
+    public Set<String> getFileSystemContaining( Collection<String> candidates, String path )
+    {
+        if ( isServedLocally( candidates ) )
+        {
+            Set<String> ret = local.getFileSystemContaining( candidates, path );
+            if ( !ret.isEmpty() )
+            {
+                return ret;
+            }
+        }
+        return authoritative.getFileSystemContaining( candidates, path );
+    }
+
+    /**
+     * Answer locally only if every candidate is replicated, so the candidate order is kept.
+     */
+    @Override
+    public String getFirstFileSystemContaining( List<String> candidates, String path )
+    {
+        if ( isServedLocally( candidates ) )
+        {
+            String ret = local.getFirstFileSystemContaining( candidates, path );
+            if ( ret != null )
+            {
+                return ret;
+            }
+        }
+        return authoritative.getFirstFileSystemContaining( candidates, path );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, FileType fileType )
+    {
+        return isServedLocally( fileSystem ) ?
+                        local.list( fileSystem, path, fileType ) :
+                        authoritative.list( fileSystem, path, fileType );
+    }
+
+    @Override
+    public List<PathMap> list( String fileSystem, String path, boolean recursive, int limit, FileType fileType )
+    {
+        return isServedLocally( fileSystem ) ?
+                        local.list( fileSystem, path, recursive, limit, fileType ) :
+                        authoritative.list( fileSystem, path, recursive, limit, fileType );
+    }
+
+    /**
+     * The paging states of the two PathDBs differ, so a listing started on one tier may not continue on the other
+     * after a reload.
+     */
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        return isServedLocally( fileSystem ) ?
+                        local.list( fileSystem, path, fileType, pageSize, pagingState ) :
+                        authoritative.list( fileSystem, path, fileType, pageSize, pagingState );
+    }
+
+    @Override
+    public void traverse( String fileSystem, String path, Consumer<PathMap> consumer, int limit, FileType fileType )
+    {
+        if ( isServedLocally( fileSystem ) )
+        {
+            local.traverse( fileSystem, path, consumer, limit, fileType );
+        }
+        else
+        {
+            authoritative.traverse( fileSystem, path, consumer, limit, fileType );
+        }
+    }
+
+    /**
+     * The authoritative PathDB may point a duplicate to an existing file, so the stored entry is read back unless
+     * no checksum is given.
+     */
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum )
+    {
+        authoritative.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum );
+        tail( fileSystem, path, isBlank( checksum ) ?
+                        () -> insertLocal( fileSystem, path, creation, expiration, fileId, size, fileStorage,
+                                           checksum, null ) :
+                        null );
+    }
+
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        authoritative.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, digests );
+        tail( fileSystem, path, isBlank( checksum ) ?
+                        () -> insertLocal( fileSystem, path, creation, expiration, fileId, size, fileStorage,
+                                           checksum, digests ) :
+                        null );
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path )
+    {
+        return delete( fileSystem, path, false );
+    }
+
+    @Override
+    public boolean delete( String fileSystem, String path, boolean force )
+    {
+        boolean ret = authoritative.delete( fileSystem, path, force );
+        if ( ret )
+        {
+            tail( fileSystem, path, () -> deleteLocal( fileSystem, path, force ) );
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
+    {
+        boolean ret = authoritative.copy( fromFileSystem, fromPath, toFileSystem, toPath );
+        tail( toFileSystem, toPath, null );
+        return ret;
+    }
+
+    @Override
+    public boolean copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath, Date creation,
+                         Date expiration )
+    {
+        boolean ret = authoritative.copy( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration );
+        tail( toFileSystem, toPath, null );
+        return ret;
+    }
+
+    @Override
+    public void expire( String fileSystem, String path, Date expiration )
+    {
+        authoritative.expire( fileSystem, path, expiration );
+        tail( fileSystem, path, () -> local.expire( fileSystem, path, expiration ) );
+    }
+
+    @Override
+    public void makeDirs( String fileSystem, String path )
+    {
+        authoritative.makeDirs( fileSystem, path );
+        if ( !ROOT_DIR.equals( path ) )
+        {
+            tail( fileSystem, path.endsWith( "/" ) ? path : path + "/", () -> local.makeDirs( fileSystem, path ) );
+        }
+    }
+
+    @Override
+    public FileChecksum getFileChecksum( String checksum )
+    {
+        return authoritative.getFileChecksum( checksum );
+    }
+
+    @Override
+    public Set<String> getPathsByFileId( String fileId )
+    {
+        return authoritative.getPathsByFileId( fileId );
+    }
+
+    @Override
+    public List<Reclaim> listOrphanedFiles( int limit )
+    {
+        return authoritative.listOrphanedFiles( limit );
+    }
+
+    @Override
+    public void removeFromReclaim( Reclaim reclaim )
+    {
+        authoritative.removeFromReclaim( reclaim );
+    }
+
+    @Override
+    public Filesystem getFilesystem( String filesystem )
+    {
+        if ( authoritative instanceof PathDBAdmin )
+        {
+            return ( (PathDBAdmin) authoritative ).getFilesystem( filesystem );
+        }
+        return null;
+    }
+
+    @Override
+    public Collection<? extends Filesystem> getFilesystems()
+    {
+        if ( authoritative instanceof PathDBAdmin )
+        {
+            return ( (PathDBAdmin) authoritative ).getFilesystems();
+        }
+        return emptyList();
+    }
+
+    /**
+     * The replica of a purged filesystem is dropped as by {@link #removeFilesystem(String)}. The purge is ignored by
+     * the authoritative PathDB unless the filesystem is empty, and so is the replica then.
+     */
+    @Override
+    public void purgeFilesystem( Filesystem filesystem )
+    {
+        if ( authoritative instanceof PathDBAdmin )
+        {
+            PathDBAdmin admin = (PathDBAdmin) authoritative;
+            admin.purgeFilesystem( filesystem );
+            String name = filesystem.getFilesystem();
+            if ( replicas.containsKey( name ) && admin.getFilesystem( name ) == null )
+            {
+                removeFilesystem( name );
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        loader.shutdownNow();
+        replicas.clear();
+        if ( local instanceof Closeable )
+        {
+            ( (Closeable) local ).close();
+        }
+        if ( authoritative instanceof Closeable )
+        {
+            ( (Closeable) authoritative ).close();
+        }
+    }
+
+    /**
+     * Local index state of a filesystem. Guarded by itself, except the volatile reads on the read path.
+     */
+    private static final class Replica
+    {
+        private volatile boolean ready;
+
+        private volatile long loadedAt;
+
+        private boolean loading;
+
+        private final Set<String> touched = new HashSet<>();
+    }
+}
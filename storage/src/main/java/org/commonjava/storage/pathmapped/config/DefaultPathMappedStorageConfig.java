@@ -15,6 +15,8 @@
  */
 package org.commonjava.storage.pathmapped.config;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -25,6 +27,10 @@ public class DefaultPathMappedStorageConfig
 
     private static final int MAX_GC_RESULT_SIZE = 100000;
 
+    private static final int DEFAULT_GC_RETRIES = 2;
+
+    private static final int DEFAULT_ASYNC_BLOCKING_THREADS = 16;
+
     private static final long DEFAULT_RESET_TIMEOUT_FOR_ACCESSING = TimeUnit.HOURS.toMillis( 12 );
 
     private final int DEFAULT_GC_INTERVAL_IN_MINUTES = 60;
@@ -41,12 +47,28 @@ public class DefaultPathMappedStorageConfig
 
     private int gcMaxResultSize = MAX_GC_RESULT_SIZE;
 
+    private int gcThreads = 1;
+
+    private int gcDeletesPerSecond;
+
+    private int gcRetries = DEFAULT_GC_RETRIES;
+
     private long resetTimeoutForAccessing = DEFAULT_RESET_TIMEOUT_FOR_ACCESSING;
 
+    private long resetTimeoutUpdateDelay;
+
+    private boolean virtualThreadsEnabled;
+
+    private int asyncBlockingThreads = DEFAULT_ASYNC_BLOCKING_THREADS;
+
     private String fileChecksumAlgorithm = DEFAULT_FILE_CHECKSUM_ALGORITHM;
 
     private String deduplicatePattern;
 
+    private List<String> extraChecksumAlgorithms = Collections.emptyList();
+
+    private boolean checksumPipelined;
+
     private static final String DEFAULT_COMMON_FILE_EXTENSIONS = ".+\\.(jar|json|xml|pom|gz|tgz|md5|sha1|sha256)$";
 
     private String commonFileExtensions = DEFAULT_COMMON_FILE_EXTENSIONS;
@@ -129,6 +151,28 @@ public class DefaultPathMappedStorageConfig
         this.deduplicatePattern = deduplicatePattern;
     }
 
+    @Override
+    public List<String> getExtraChecksumAlgorithms()
+    {
+        return extraChecksumAlgorithms;
+    }
+
+    public void setExtraChecksumAlgorithms( List<String> extraChecksumAlgorithms )
+    {
+        this.extraChecksumAlgorithms = extraChecksumAlgorithms;
+    }
+
+    @Override
+    public boolean isChecksumPipelined()
+    {
+        return checksumPipelined;
+    }
+
+    public void setChecksumPipelined( boolean checksumPipelined )
+    {
+        this.checksumPipelined = checksumPipelined;
+    }
+
     @Override
     public String getCommonFileExtensions()
     {
@@ -160,6 +204,39 @@ public class DefaultPathMappedStorageConfig
         this.gcMaxResultSize = gcMaxResultSize;
     }
 
+    @Override
+    public int getGCThreads()
+    {
+        return gcThreads;
+    }
+
+    public void setGcThreads( int gcThreads )
+    {
+        this.gcThreads = gcThreads;
+    }
+
+    @Override
+    public int getGCDeletesPerSecond()
+    {
+        return gcDeletesPerSecond;
+    }
+
+    public void setGcDeletesPerSecond( int gcDeletesPerSecond )
+    {
+        this.gcDeletesPerSecond = gcDeletesPerSecond;
+    }
+
+    @Override
+    public int getGCRetries()
+    {
+        return gcRetries;
+    }
+
+    public void setGcRetries( int gcRetries )
+    {
+        this.gcRetries = gcRetries;
+    }
+
     @Override
     public long getResetTimeoutForAccessing()
     {
@@ -170,4 +247,37 @@ public class DefaultPathMappedStorageConfig
     {
         this.resetTimeoutForAccessing = resetTimeoutForAccessing;
     }
+
+    @Override
+    public long getResetTimeoutUpdateDelay()
+    {
+        return resetTimeoutUpdateDelay;
+    }
+
+    public void setResetTimeoutUpdateDelay( long resetTimeoutUpdateDelay )
+    {
+        this.resetTimeoutUpdateDelay = resetTimeoutUpdateDelay;
+    }
+
+    @Override
+    public boolean isVirtualThreadsEnabled()
+    {
+        return virtualThreadsEnabled;
+    }
+
+    public void setVirtualThreadsEnabled( boolean virtualThreadsEnabled )
+    {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    @Override
+    public int getAsyncBlockingThreads()
+    {
+        return asyncBlockingThreads;
+    }
+
+    public void setAsyncBlockingThreads( int asyncBlockingThreads )
+    {
+        this.asyncBlockingThreads = asyncBlockingThreads;
+    }
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+
+/**
+ * Fallback for a PathDB without native async support. Each call runs the blocking method on the given executor,
+ * never on the common pool which the blocking JDBC or driver calls would starve.
+ */
+class BlockingAsyncPathDB
+                implements AsyncPathDB
+{
+    private final PathDB pathDB;
+
+    private final Executor executor;
+
+    BlockingAsyncPathDB( PathDB pathDB, Executor executor )
+    {
+        this.pathDB = pathDB;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path )
+    {
+        return supplyAsync( () -> pathDB.getPathMap( fileSystem, path ), executor );
+    }
+
+    @Override
+    public CompletableFuture<PathDB.FileType> existsAsync( String fileSystem, String path )
+    {
+        return supplyAsync( () -> pathDB.exists( fileSystem, path ), executor );
+    }
+
+    @Override
+    public CompletableFuture<List<PathMap>> listAsync( String fileSystem, String path, PathDB.FileType fileType )
+    {
+        return supplyAsync( () -> pathDB.list( fileSystem, path, fileType ), executor );
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAsync( String fileSystem, String path, Date creation, Date expiration,
+                                                String fileId, long size, String fileStorage, String checksum )
+    {
+        return runAsync( () -> pathDB.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage,
+                                              checksum ), executor );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force )
+    {
+        return supplyAsync( () -> pathDB.delete( fileSystem, path, force ), executor );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath )
+    {
+        return supplyAsync( () -> pathDB.copy( fromFileSystem, fromPath, toFileSystem, toPath ), executor );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath, Date creation, Date expiration )
+    {
+        return supplyAsync( () -> pathDB.copy( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration ),
+                            executor );
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.commonjava.storage.pathmapped.spi.ContentAddressedPhysicalStore;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+/**
+ * File store which keeps one copy of each content. A file is written to its own random path as usual. On commit,
+ * the content is published under 'cas/' by checksum and size. If the same content is already there, the random path
+ * is replaced by a hard link to it and the new copy is dropped.
+ *
+ * The random path stays the storage file of the PathMap, so the PathDB dedupe and reclaim work as before. A delete
+ * only unlinks a name and the content goes with its last link, so a reclaimed duplicate costs no data I/O. Needs a
+ * file system supporting hard links and the 'unix' attribute view.
+ */
+public class ContentAddressedFileStore
+                extends FileBasedPhysicalStore
+                implements ContentAddressedPhysicalStore
+{
+    private static final String CONTENT_DIR = "cas";
+
+    private static final String NLINK = "unix:nlink";
+
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    public ContentAddressedFileStore( File baseDir )
+    {
+        this( baseDir, 0, 0 );
+    }
+
+    public ContentAddressedFileStore( File baseDir, long readCacheSize, int maxCachedFileSize )
+    {
+        super( baseDir, readCacheSize, maxCachedFileSize );
+        if ( !FileSystems.getDefault().supportedFileAttributeViews().contains( "unix" ) )
+        {
+            throw new IllegalStateException( "Content addressed store needs the unix file attribute view" );
+        }
+    }
+
+    @Override
+    public void commit( FileInfo fileInfo, String checksum, long size ) throws IOException
+    {
+        Path file = getFile( fileInfo.getFileStorage() );
+        Path content = getContentPath( checksum, size );
+        Files.createDirectories( content.getParent() );
+        for ( int attempt = 0; attempt < MAX_COMMIT_ATTEMPTS; attempt++ )
+        {
+            try
+            {
+                Files.createLink( content, file );
+                logger.debug( "Publish content: {}, file: {}", content, fileInfo );
+                return;
+            }
+            catch ( FileAlreadyExistsException e )
+            {
+                // same content exists, link to it below
+            }
+
+            Path link = file.resolveSibling( file.getFileName() + ".link" );
+            Files.deleteIfExists( link );
+            try
+            {
+                Files.createLink( link, content );
+            }
+            catch ( NoSuchFileException e )
+            {
+                continue; // removed by a concurrent delete, publish this copy
+            }
+            Files.move( link, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            logger.debug( "Content exists: {}, drop the copy of file: {}", content, fileInfo );
+            return;
+        }
+        logger.warn( "Failed to commit content: {}, keep the copy of file: {}", content, fileInfo );
+    }
+
+    /**
+     * Unlink the file. If the checksum is known, also remove the published content when no file links to it.
+     */
+    @Override
+    public boolean delete( FileInfo fileInfo )
+    {
+        String checksum = fileInfo.getChecksum();
+        long size = -1;
+        if ( checksum != null )
+        {
+            try
+            {
+                size = Files.size( getFile( fileInfo.getFileStorage() ) );
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Failed to get size, file: {}, error: {}", fileInfo, e.toString() );
+            }
+        }
+        boolean deleted = super.delete( fileInfo );
+        if ( deleted && size >= 0 )
+        {
+            removeIfUnreferenced( getContentPath( checksum, size ) );
+        }
+        return deleted;
+    }
+
+    /**
+     * Remove the published content no file links to. This cleans up the contents left by deletes without checksum.
+     * @return number of contents removed
+     */
+    public int purgeUnreferencedContent() throws IOException
+    {
+        Path dir = getBaseDir().toPath().resolve( CONTENT_DIR );
+        if ( !Files.isDirectory( dir ) )
+        {
+            return 0;
+        }
+        int removed = 0;
+        try (Stream<Path> contents = Files.walk( dir ))
+        {
+            for ( Path content : (Iterable<Path>) contents.filter( Files::isRegularFile )::iterator )
+            {
+                if ( removeIfUnreferenced( content ) )
+                {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * A concurrent commit may link to the content between the check and the delete. That is safe, the link keeps
+     * the data and the next duplicate publishes it again.
+     */
+    private boolean removeIfUnreferenced( Path content )
+    {
+        try
+        {
+            if ( Files.exists( content ) && (Integer) Files.getAttribute( content, NLINK ) <= 1 )
+            {
+                logger.debug( "Remove unreferenced content: {}", content );
+                return Files.deleteIfExists( content );
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to remove content: " + content, e );
+        }
+        return false;
+    }
+
+    private Path getFile( String storageFile )
+    {
+        return new File( getBaseDir(), storageFile ).toPath();
+    }
+
+    private Path getContentPath( String checksum, long size )
+    {
+        return getBaseDir().toPath()
+                           .resolve( CONTENT_DIR )
+                           .resolve( checksum.substring( 0, 2 ) )
+                           .resolve( checksum.substring( 2, 4 ) )
+                           .resolve( checksum + "-" + size );
+    }
+}
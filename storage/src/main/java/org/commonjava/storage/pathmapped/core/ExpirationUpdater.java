@@ -0,0 +1,188 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.marshall;
+
+/**
+ * Writes the expiration extended for accessing. If a delay is configured, the updates are queued and flushed by a
+ * background thread so the reader does not pay for a second round trip. Updates to the same path in one window are
+ * coalesced, keeping the latest expiration.
+ *
+ * The expire of some PathDBs is an upsert, so a deferred update must not land on a path deleted or written again
+ * meanwhile. The file manager cancels the pending update of a path it writes, and the flush skips the paths which
+ * no longer refer to the file that was read, e.g., after a write by another node.
+ */
+class ExpirationUpdater
+{
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathDB pathDB;
+
+    private final long delay;
+
+    private final Map<String, PendingExpiration> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService executor;
+
+    ExpirationUpdater( PathDB pathDB, long delay )
+    {
+        this.pathDB = pathDB;
+        this.delay = delay;
+        if ( delay > 0 )
+        {
+            logger.info( "Start path-mapped expiration updater, delay: {}ms", delay );
+            executor = Executors.newSingleThreadScheduledExecutor();
+            executor.scheduleWithFixedDelay( this::flush, delay, delay, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     * @param fileId file of the path when it was read
+     */
+    void update( String fileSystem, String path, String fileId, Date expiration )
+    {
+        if ( executor == null )
+        {
+            pathDB.expire( fileSystem, path, expiration );
+            return;
+        }
+        pending.merge( marshall( fileSystem, path ), new PendingExpiration( fileSystem, path, fileId, expiration ),
+                       ( prev, cur ) -> prev.expiration.after( cur.expiration ) ? prev : cur );
+    }
+
+    /**
+     * Drop the pending update of the path, because it is deleted, written or expired explicitly.
+     */
+    void cancel( String fileSystem, String path )
+    {
+        if ( executor != null )
+        {
+            pending.remove( marshall( fileSystem, path ) );
+        }
+    }
+
+    /**
+     * Write all pending updates of the paths still referring to the same file. Run safely because any exception
+     * would stop the scheduled task.
+     */
+    void flush()
+    {
+        Map<String, List<PendingExpiration>> byFileSystem = new HashMap<>();
+        for ( String key : pending.keySet() )
+        {
+            PendingExpiration p = pending.remove( key );
+            if ( p != null )
+            {
+                byFileSystem.computeIfAbsent( p.fileSystem, k -> new ArrayList<>() ).add( p );
+            }
+        }
+        byFileSystem.forEach( this::flush );
+    }
+
+    private void flush( String fileSystem, List<PendingExpiration> updates )
+    {
+        Map<String, PathMap> current;
+        try
+        {
+            List<String> paths = new ArrayList<>( updates.size() );
+            updates.forEach( p -> paths.add( p.path ) );
+            current = pathDB.getPathMaps( fileSystem, paths );
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Failed to extend file expiration, filesystem: " + fileSystem + ", paths: " + updates.size(),
+                         e );
+            return;
+        }
+        for ( PendingExpiration p : updates )
+        {
+            PathMap pathMap = current.get( p.path );
+            if ( pathMap == null || !p.fileId.equals( pathMap.getFileId() ) )
+            {
+                logger.debug( "Skip file expiration, path deleted or replaced, filesystem: {}, path: {}", fileSystem,
+                              p.path );
+                continue;
+            }
+            try
+            {
+                logger.debug( "Extend file expiration, filesystem: {}, path: {}, expiration: {}", fileSystem, p.path,
+                              p.expiration );
+                pathDB.expire( fileSystem, p.path, p.expiration );
+            }
+            catch ( Exception e )
+            {
+                logger.warn( "Failed to extend file expiration, filesystem: " + fileSystem + ", path: " + p.path, e );
+            }
+        }
+    }
+
+    int getPendingSize()
+    {
+        return pending.size();
+    }
+
+    void shutdown()
+    {
+        if ( executor != null )
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination( delay, TimeUnit.MILLISECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            flush();
+        }
+    }
+
+    private static final class PendingExpiration
+    {
+        private final String fileSystem;
+
+        private final String path;
+
+        private final String fileId;
+
+        private final Date expiration;
+
+        private PendingExpiration( String fileSystem, String path, String fileId, Date expiration )
+        {
+            this.fileSystem = fileSystem;
+            this.path = path;
+            this.fileId = fileId;
+            this.expiration = expiration;
+        }
+    }
+}
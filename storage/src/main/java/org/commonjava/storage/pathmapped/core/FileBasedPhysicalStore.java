@@ -15,6 +15,8 @@
  */
 package org.commonjava.storage.pathmapped.core;
 
+import org.apache.commons.io.input.BoundedInputStream;
+import org.commonjava.storage.pathmapped.spi.ChannelPhysicalStore;
 import org.commonjava.storage.pathmapped.spi.FileInfo;
 import org.commonjava.storage.pathmapped.spi.PhysicalStore;
 import org.slf4j.Logger;
@@ -26,20 +28,50 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.commonjava.storage.pathmapped.util.PathMapUtils.getRandomFileId;
 
-public class FileBasedPhysicalStore implements PhysicalStore
+public class FileBasedPhysicalStore implements PhysicalStore, ChannelPhysicalStore
 {
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private static final int DEFAULT_CACHE_CONCURRENCY = 16;
+
     private final File baseDir;
 
+    private final FileContentCache contentCache;
+
     public FileBasedPhysicalStore( File baseDir )
+    {
+        this( baseDir, 0, 0 );
+    }
+
+    /**
+     * Serve the small files from memory. The hot small files like maven-metadata.xml or checksums are then read
+     * without opening the file each time. Tiny files are held on heap, the rest memory-mapped.
+     * @param readCacheSize max bytes of file content cached, 0 to disable the cache
+     * @param maxCachedFileSize files larger than this are always read from disk
+     */
+    public FileBasedPhysicalStore( File baseDir, long readCacheSize, int maxCachedFileSize )
     {
         this.baseDir = baseDir;
+        this.contentCache = readCacheSize > 0 && maxCachedFileSize > 0 ?
+                        new FileContentCache( readCacheSize, maxCachedFileSize, DEFAULT_CACHE_CONCURRENCY ) :
+                        null;
+    }
+
+    protected File getBaseDir()
+    {
+        return baseDir;
     }
 
     @Override
@@ -82,6 +114,11 @@ public class FileBasedPhysicalStore implements PhysicalStore
     public InputStream getInputStream( String storageFile ) throws IOException
     {
         File f = new File( baseDir, storageFile );
+        ByteBuffer content = getCachedContent( storageFile, f );
+        if ( content != null )
+        {
+            return FileContentCache.newInputStream( content );
+        }
         if ( f.isDirectory() || !f.exists() )
         {
             logger.debug( "Target file not exists, file: {}", f.getAbsolutePath() );
@@ -90,9 +127,76 @@ public class FileBasedPhysicalStore implements PhysicalStore
         return new FileInputStream( f );
     }
 
+    @Override
+    public InputStream getInputStream( String storageFile, long offset, long length ) throws IOException
+    {
+        File f = new File( baseDir, storageFile );
+        ByteBuffer content = getCachedContent( storageFile, f );
+        if ( content != null )
+        {
+            content.position( (int) Math.min( offset, content.limit() ) );
+            if ( length >= 0 )
+            {
+                content.limit( (int) Math.min( content.limit(), content.position() + length ) );
+            }
+            return FileContentCache.newInputStream( content );
+        }
+        if ( f.isDirectory() || !f.exists() )
+        {
+            logger.debug( "Target file not exists, file: {}", f.getAbsolutePath() );
+            return null;
+        }
+        FileChannel channel = FileChannel.open( f.toPath(), StandardOpenOption.READ );
+        channel.position( offset );
+        InputStream in = Channels.newInputStream( channel );
+        return length < 0 ? in : new BoundedInputStream( in, length );
+    }
+
+    @Override
+    public FileChannel openChannel( String storageFile ) throws IOException
+    {
+        File f = new File( baseDir, storageFile );
+        if ( f.isDirectory() || !f.exists() )
+        {
+            logger.debug( "Target file not exists, file: {}", f.getAbsolutePath() );
+            return null;
+        }
+        return FileChannel.open( f.toPath(), StandardOpenOption.READ );
+    }
+
+    /**
+     * Get the content from cache, or load it if the file is small enough. A hit costs no file system call. Return
+     * null if cache is disabled, or the file is too large or missing.
+     */
+    private ByteBuffer getCachedContent( String storageFile, File f ) throws IOException
+    {
+        if ( contentCache == null )
+        {
+            return null;
+        }
+        ByteBuffer content = contentCache.get( storageFile );
+        if ( content != null )
+        {
+            return content;
+        }
+        long size = f.length();
+        if ( size > contentCache.getMaxFileSize() || !f.isFile() )
+        {
+            return null;
+        }
+        long version = contentCache.version( storageFile );
+        content = FileContentCache.load( f, size );
+        contentCache.put( storageFile, content, version );
+        return content.asReadOnlyBuffer();
+    }
+
     @Override
     public boolean delete( FileInfo fileInfo )
     {
+        if ( contentCache != null )
+        {
+            contentCache.invalidate( fileInfo.getFileStorage() );
+        }
         File f = new File( baseDir, fileInfo.getFileStorage() );
         try
         {
@@ -106,6 +210,17 @@ public class FileBasedPhysicalStore implements PhysicalStore
         return true;
     }
 
+    /**
+     * Unlink the files in parallel. Deletes on local or network file systems are mostly IO wait.
+     */
+    @Override
+    public Map<FileInfo, Boolean> deleteAll( Collection<FileInfo> fileInfos )
+    {
+        Map<FileInfo, Boolean> ret = new ConcurrentHashMap<>();
+        fileInfos.parallelStream().forEach( fileInfo -> ret.put( fileInfo, delete( fileInfo ) ) );
+        return ret;
+    }
+
     @Override
     public boolean exists( String storageFile )
     {
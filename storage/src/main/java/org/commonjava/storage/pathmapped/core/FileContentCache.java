@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU of the content of small files, keyed by storage file. Storage files never change once written, so an
+ * entry only has to be dropped when the file is deleted. Files under MAP_THRESHOLD are read onto the heap, larger
+ * ones are memory-mapped. Like PathMapCache, the cache is split into stripes each bounded by weight in bytes.
+ */
+class FileContentCache
+{
+    /**
+     * Mapping takes at least a page and a syscall to set up, not worth it for the tiny files
+     */
+    static final int MAP_THRESHOLD = 16 * 1024;
+
+    private static final int ENTRY_OVERHEAD = 128; // map node, key, buffer object
+
+    private final Stripe[] stripes;
+
+    private final int maxFileSize;
+
+    FileContentCache( long maxWeight, int maxFileSize, int concurrency )
+    {
+        int n = Integer.highestOneBit( Math.max( 1, concurrency ) );
+        stripes = new Stripe[n];
+        long stripeWeight = Math.max( 1, maxWeight / n );
+        for ( int i = 0; i < n; i++ )
+        {
+            stripes[i] = new Stripe( stripeWeight );
+        }
+        this.maxFileSize = maxFileSize;
+    }
+
+    int getMaxFileSize()
+    {
+        return maxFileSize;
+    }
+
+    /**
+     * @return a read-only view of the content positioned at 0, or null if not cached
+     */
+    ByteBuffer get( String storageFile )
+    {
+        ByteBuffer content = stripeFor( storageFile ).get( storageFile );
+        return content == null ? null : content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Current version of the stripe holding the key. Capture it before loading the file and pass it to
+     * {@link #put(String, ByteBuffer, long)} so a load racing with a delete is discarded.
+     */
+    long version( String storageFile )
+    {
+        return stripeFor( storageFile ).version;
+    }
+
+    void put( String storageFile, ByteBuffer content, long version )
+    {
+        stripeFor( storageFile ).put( storageFile, content, version );
+    }
+
+    void invalidate( String storageFile )
+    {
+        stripeFor( storageFile ).invalidate( storageFile );
+    }
+
+    long size()
+    {
+        long size = 0;
+        for ( Stripe stripe : stripes )
+        {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Read a file onto the heap, or map it if not smaller than MAP_THRESHOLD.
+     */
+    static ByteBuffer load( File file, long size ) throws IOException
+    {
+        if ( size < MAP_THRESHOLD )
+        {
+            return ByteBuffer.wrap( Files.readAllBytes( file.toPath() ) );
+        }
+        try (FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+        {
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, size ); // the mapping outlives the channel
+        }
+    }
+
+    static InputStream newInputStream( ByteBuffer content )
+    {
+        return new ContentInputStream( content );
+    }
+
+    private Stripe stripeFor( String storageFile )
+    {
+        int h = storageFile.hashCode();
+        h ^= ( h >>> 16 );
+        return stripes[h & ( stripes.length - 1 )];
+    }
+
+    private static final class ContentInputStream
+                    extends InputStream
+    {
+        private final ByteBuffer content;
+
+        private ContentInputStream( ByteBuffer content )
+        {
+            this.content = content;
+        }
+
+        @Override
+        public int read()
+        {
+            return content.hasRemaining() ? content.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len )
+        {
+            if ( len == 0 )
+            {
+                return 0;
+            }
+            if ( !content.hasRemaining() )
+            {
+                return -1;
+            }
+            int n = Math.min( len, content.remaining() );
+            content.get( b, off, n );
+            return n;
+        }
+
+        @Override
+        public long skip( long n )
+        {
+            int skipped = (int) Math.max( 0, Math.min( n, content.remaining() ) );
+            content.position( content.position() + skipped );
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return content.remaining();
+        }
+    }
+
+    private static final class Stripe
+    {
+        private final LinkedHashMap<String, ByteBuffer> map = new LinkedHashMap<>( 64, 0.75f, true );
+
+        private final long maxWeight;
+
+        private long weight;
+
+        private volatile long version;
+
+        Stripe( long maxWeight )
+        {
+            this.maxWeight = maxWeight;
+        }
+
+        synchronized ByteBuffer get( String key )
+        {
+            return map.get( key );
+        }
+
+        synchronized void put( String key, ByteBuffer content, long expectedVersion )
+        {
+            if ( version != expectedVersion )
+            {
+                return; // deleted while loading
+            }
+            ByteBuffer old = map.put( key, content );
+            if ( old != null )
+            {
+                weight -= weigh( key, old );
+            }
+            weight += weigh( key, content );
+            evict();
+        }
+
+        synchronized void invalidate( String key )
+        {
+            version++;
+            ByteBuffer old = map.remove( key );
+            if ( old != null )
+            {
+                weight -= weigh( key, old );
+            }
+        }
+
+        synchronized int size()
+        {
+            return map.size();
+        }
+
+        private void evict()
+        {
+            Iterator<Map.Entry<String, ByteBuffer>> it = map.entrySet().iterator();
+            while ( weight > maxWeight && it.hasNext() )
+            {
+                Map.Entry<String, ByteBuffer> entry = it.next();
+                weight -= weigh( entry.getKey(), entry.getValue() );
+                it.remove();
+            }
+        }
+
+        private static long weigh( String key, ByteBuffer content )
+        {
+            return ENTRY_OVERHEAD + 2L * key.length() + content.capacity();
+        }
+    }
+}
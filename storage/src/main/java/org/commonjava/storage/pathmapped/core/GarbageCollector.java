@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.commonjava.o11yphant.metrics.MetricsManager;
+import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.PhysicalStore;
+import org.commonjava.storage.pathmapped.util.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
+
+/**
+ * Delete the reclaimed files from the physical store, with 'gcThreads' workers at no more than 'gcDeletesPerSecond'.
+ * Each batch is split among the workers and every worker deletes its part by {@link PhysicalStore#deleteAll}.
+ * A failed delete is retried 'gcRetries' times and then skipped: it stays in reclaim and is picked up by the next run.
+ * Each file deleted is removed from reclaim right away, so the progress is kept if the run is interrupted.
+ */
+class GarbageCollector
+{
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    // metric names
+    private static final String METRIC_LISTED = "gc.listed";
+
+    private static final String METRIC_DELETED = "gc.deleted";
+
+    private static final String METRIC_RETRIED = "gc.retried";
+
+    private static final String METRIC_FAILED = "gc.failed";
+
+    private static final String METRIC_DELETE = "gc.delete";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final PathMappedStorageConfig config;
+
+    private final PathDB pathDB;
+
+    private final PhysicalStore physicalStore;
+
+    private volatile MetricsManager metricsManager;
+
+    private String metricPrefix;
+
+    GarbageCollector( PathMappedStorageConfig config, PathDB pathDB, PhysicalStore physicalStore )
+    {
+        this.config = config;
+        this.pathDB = pathDB;
+        this.physicalStore = physicalStore;
+    }
+
+    void setMetricsManager( MetricsManager metricsManager, String metricPrefix )
+    {
+        this.metricPrefix = metricPrefix;
+        this.metricsManager = metricsManager;
+    }
+
+    Map<FileInfo, Boolean> collect() throws InterruptedException, ExecutionException
+    {
+        logger.info( "Run storage gc..." );
+        final int threads = Math.max( 1, config.getGCThreads() );
+        final RateLimiter rateLimiter = new RateLimiter( config.getGCDeletesPerSecond() );
+        final ExecutorService workers = newWorkers( threads );
+
+        Map<FileInfo, Boolean> gcResults = new ConcurrentHashMap<>();
+        Set<String> skipped = new HashSet<>(); // failed in this run, left in reclaim
+        long begin = System.currentTimeMillis();
+        try
+        {
+            while ( true )
+            {
+                // ask for more to see past the skipped ones
+                int batchSize = config.getGCBatchSize();
+                List<Reclaim> reclaims = pathDB.listOrphanedFiles( batchSize + skipped.size() )
+                                               .stream()
+                                               .filter( reclaim -> !skipped.contains( reclaim.getFileId() ) )
+                                               .collect( Collectors.toList() );
+                int size = reclaims.size();
+                logger.info( "Get reclaims for gc, size: {}", size );
+                if ( size <= 0 )
+                {
+                    logger.info( "Gc complete." );
+                    break;
+                }
+                mark( METRIC_LISTED, size );
+
+                int chunkSize = ( size + threads - 1 ) / threads;
+                List<Callable<Map<FileInfo, Boolean>>> tasks = new ArrayList<>( threads );
+                for ( int from = 0; from < size; from += chunkSize )
+                {
+                    List<Reclaim> chunk = reclaims.subList( from, Math.min( from + chunkSize, size ) );
+                    tasks.add( () -> delete( chunk, rateLimiter ) );
+                }
+
+                for ( Future<Map<FileInfo, Boolean>> future : workers.invokeAll( tasks ) )
+                {
+                    future.get().forEach( ( fileInfo, result ) -> {
+                        if ( !result )
+                        {
+                            skipped.add( fileInfo.getFileId() );
+                        }
+                        gcResults.put( fileInfo, result );
+                    } );
+                }
+
+                long elapse = System.currentTimeMillis() - begin;
+                int curSize = gcResults.size();
+                logger.info( "Gc progress, processed: {}, skipped: {}, elapse: {}ms, rate: {}/s", curSize,
+                             skipped.size(), elapse, elapse > 0 ? curSize * 1000L / elapse : curSize );
+                if ( curSize >= config.getGcMaxResultSize() )
+                {
+                    logger.info( "Gc reach the max result size and complete, curSize: {}", curSize );
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            workers.shutdownNow();
+        }
+        if ( !skipped.isEmpty() )
+        {
+            logger.warn( "Gc skipped {} files failed to delete, they will be retried in next gc", skipped.size() );
+        }
+        return gcResults;
+    }
+
+    private Map<FileInfo, Boolean> delete( List<Reclaim> reclaims, RateLimiter rateLimiter )
+                    throws InterruptedException
+    {
+        Map<FileInfo, Reclaim> pending = new LinkedHashMap<>();
+        for ( Reclaim reclaim : reclaims )
+        {
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setFileId( reclaim.getFileId() );
+            fileInfo.setFileStorage( reclaim.getStorage() );
+            fileInfo.setChecksum( reclaim.getChecksum() );
+            pending.put( fileInfo, reclaim );
+        }
+
+        Map<FileInfo, Boolean> ret = new HashMap<>();
+        int retries = Math.max( 0, config.getGCRetries() );
+        for ( int attempt = 0; ; attempt++ )
+        {
+            rateLimiter.acquire( pending.size() );
+            Map<FileInfo, Boolean> deleted = Collections.emptyMap();
+            long start = System.nanoTime();
+            try
+            {
+                deleted = physicalStore.deleteAll( pending.keySet() );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Delete reclaimed files failed, size: " + pending.size() + ", attempt: " + attempt, e );
+            }
+            finally
+            {
+                update( METRIC_DELETE, System.nanoTime() - start );
+            }
+
+            Iterator<Map.Entry<FileInfo, Reclaim>> it = pending.entrySet().iterator();
+            while ( it.hasNext() )
+            {
+                Map.Entry<FileInfo, Reclaim> entry = it.next();
+                if ( Boolean.TRUE.equals( deleted.get( entry.getKey() ) ) )
+                {
+                    it.remove();
+                    ret.put( entry.getKey(), removeFromReclaim( entry.getValue(), entry.getKey() ) );
+                }
+            }
+            if ( pending.isEmpty() )
+            {
+                return ret;
+            }
+
+            for ( Map.Entry<FileInfo, Reclaim> entry : pending.entrySet() )
+            {
+                logger.warn( "Delete from physical store failed, fileInfo: {}, reclaim: {}, attempt: {}",
+                             entry.getKey(), entry.getValue(), attempt );
+            }
+            if ( attempt >= retries )
+            {
+                mark( METRIC_FAILED, pending.size() );
+                pending.keySet().forEach( fileInfo -> ret.put( fileInfo, false ) );
+                return ret;
+            }
+            mark( METRIC_RETRIED, pending.size() );
+            TimeUnit.MILLISECONDS.sleep( RETRY_DELAY_MILLIS * ( attempt + 1 ) );
+        }
+    }
+
+    private boolean removeFromReclaim( Reclaim reclaim, FileInfo fileInfo )
+    {
+        logger.info( "Delete from physical store, fileInfo: {}", fileInfo );
+        try
+        {
+            pathDB.removeFromReclaim( reclaim );
+        }
+        catch ( RuntimeException e )
+        {
+            // the file is gone, it is left in reclaim and the next run deletes it again
+            logger.warn( "Remove from reclaim failed, reclaim: " + reclaim, e );
+            mark( METRIC_FAILED, 1 );
+            return false;
+        }
+        mark( METRIC_DELETED, 1 );
+        return true;
+    }
+
+    private ExecutorService newWorkers( int threads )
+    {
+        if ( config.isVirtualThreadsEnabled() && VirtualThreads.isAvailable() )
+        {
+            return Executors.newFixedThreadPool( threads, VirtualThreads.factory() );
+        }
+        return Executors.newFixedThreadPool( threads );
+    }
+
+    private void mark( String metric, long n )
+    {
+        MetricsManager metrics = metricsManager;
+        if ( metrics != null )
+        {
+            metrics.getMeter( name( metricPrefix, metric ) ).mark( n );
+        }
+    }
+
+    private void update( String metric, long nanos )
+    {
+        MetricsManager metrics = metricsManager;
+        if ( metrics != null )
+        {
+            metrics.getMetricRegistry().timer( name( metricPrefix, metric ) ).update( nanos, TimeUnit.NANOSECONDS );
+        }
+    }
+}
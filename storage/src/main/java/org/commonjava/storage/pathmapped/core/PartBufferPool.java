@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Part buffers of the multipart uploads shared by all the S3 output streams. Buffers are allocated on demand and
+ * at most 'maxPooled' idle ones are kept for reuse, the rest are left to gc.
+ */
+class PartBufferPool
+{
+    private final int partSize;
+
+    private final BlockingQueue<byte[]> idle;
+
+    PartBufferPool( int partSize, int maxPooled )
+    {
+        this.partSize = partSize;
+        this.idle = maxPooled > 0 ? new ArrayBlockingQueue<>( maxPooled ) : null;
+    }
+
+    int getPartSize()
+    {
+        return partSize;
+    }
+
+    byte[] acquire()
+    {
+        byte[] buf = idle == null ? null : idle.poll();
+        return buf != null ? buf : new byte[partSize];
+    }
+
+    void release( byte[] buf )
+    {
+        if ( idle != null && buf != null && buf.length == partSize )
+        {
+            idle.offer( buf );
+        }
+    }
+
+    int getIdleSize()
+    {
+        return idle == null ? 0 : idle.size();
+    }
+}
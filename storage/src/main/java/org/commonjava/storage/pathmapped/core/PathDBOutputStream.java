@@ -15,6 +15,7 @@
  */
 package org.commonjava.storage.pathmapped.core;
 
+import org.commonjava.storage.pathmapped.spi.ContentAddressedPhysicalStore;
 import org.commonjava.storage.pathmapped.spi.FileInfo;
 import org.commonjava.storage.pathmapped.spi.PathDB;
 import org.commonjava.storage.pathmapped.spi.PhysicalStore;
@@ -23,7 +24,12 @@ import org.commonjava.storage.pathmapped.util.ChecksumCalculator;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +65,12 @@ public class PathDBOutputStream
 
     private ChecksumCalculator checksumCalculator;
 
+    private final boolean checksumRequired;
+
+    private final String expectedChecksum;
+
+    private final boolean deduplicate;
+
     private final long timeoutInMilliseconds;
 
     private OutputStream out;
@@ -71,6 +83,39 @@ public class PathDBOutputStream
                         OutputStream out, String checksumAlgorithm, long timeoutInMilliseconds )
             throws NoSuchAlgorithmException
     {
+        this( pathDB, physicalStore, fileSystem, path, fileInfo, out, checksumAlgorithm, null, timeoutInMilliseconds );
+    }
+
+    /**
+     * @param expectedChecksum if not null, the file is dropped and close fails when the checksum does not match
+     */
+    PathDBOutputStream( PathDB pathDB, PhysicalStore physicalStore, String fileSystem, String path, FileInfo fileInfo,
+                        OutputStream out, String checksumAlgorithm, String expectedChecksum,
+                        long timeoutInMilliseconds )
+            throws NoSuchAlgorithmException
+    {
+        this( pathDB, physicalStore, fileSystem, path, fileInfo, out, checksumAlgorithm, expectedChecksum, true,
+              Collections.emptyList(), null, timeoutInMilliseconds );
+    }
+
+    /**
+     * @param deduplicate whether the checksum is stored as the dedupe key. If false, it is only verified against the
+     * 'expectedChecksum' and stored as one of the digests
+     * @throws IllegalArgumentException if deduplicating on {@link ChecksumCalculator#CRC32C}, as a collision would link
+     * the path to other content
+     * @param extraAlgorithms digests computed in the same pass and stored with the path, even if the checksum is not
+     * @param checksumPipeline executor to compute the digests in the background, null to compute them inline
+     */
+    PathDBOutputStream( PathDB pathDB, PhysicalStore physicalStore, String fileSystem, String path, FileInfo fileInfo,
+                        OutputStream out, String checksumAlgorithm, String expectedChecksum, boolean deduplicate,
+                        Collection<String> extraAlgorithms, Executor checksumPipeline, long timeoutInMilliseconds )
+            throws NoSuchAlgorithmException
+    {
+        if ( deduplicate && ChecksumCalculator.CRC32C.equals( checksumAlgorithm ) )
+        {
+            throw new IllegalArgumentException( "CRC32C can not be the checksum algorithm to deduplicate on, "
+                                                                + "filesystem: " + fileSystem );
+        }
         this.pathDB = pathDB;
         this.physicalStore = physicalStore;
         this.fileSystem = fileSystem;
@@ -79,10 +124,19 @@ public class PathDBOutputStream
         this.fileId = fileInfo.getFileId();
         this.fileStorage = fileInfo.getFileStorage();
         this.out = out;
-        if ( isNotBlank( checksumAlgorithm ) && !checksumAlgorithm.equals( "NONE" ) )
+        this.checksumRequired = isNotBlank( checksumAlgorithm ) && !checksumAlgorithm.equals( "NONE" );
+        if ( checksumRequired )
+        {
+            this.checksumCalculator = new ChecksumCalculator( checksumAlgorithm, extraAlgorithms, checksumPipeline );
+        }
+        else if ( !extraAlgorithms.isEmpty() )
         {
-            this.checksumCalculator = new ChecksumCalculator( checksumAlgorithm );
+            // no dedupe for this path, the first extra digest stands in as the primary one
+            this.checksumCalculator = new ChecksumCalculator( extraAlgorithms.iterator().next(), extraAlgorithms,
+                                                              checksumPipeline );
         }
+        this.expectedChecksum = expectedChecksum;
+        this.deduplicate = deduplicate;
         this.timeoutInMilliseconds = timeoutInMilliseconds;
     }
 
@@ -143,12 +197,41 @@ public class PathDBOutputStream
                 expiration = new Date( creation.getTime() + timeoutInMilliseconds );
             }
             String checksum = null;
+            Map<String, String> digests = Collections.emptyMap();
             if ( checksumCalculator != null )
             {
-                checksum = checksumCalculator.getDigestHex();
+                digests = new LinkedHashMap<>( checksumCalculator.getDigests() );
+            }
+            if ( checksumRequired )
+            {
+                checksum = deduplicate ?
+                                digests.remove( checksumCalculator.getAlgorithm() ) :
+                                digests.get( checksumCalculator.getAlgorithm() );
                 logger.trace( "PathDBOutputStream: {} calculated checksum: {}", path, checksum );
+                if ( expectedChecksum != null && !expectedChecksum.equalsIgnoreCase( checksum ) )
+                {
+                    physicalStore.delete( fileInfo );
+                    throw new IOException( String.format( "Checksum mismatch for path %s - %s, expected: %s, actual: %s",
+                                                          fileSystem, path, expectedChecksum, checksum ) );
+                }
+                if ( !deduplicate )
+                {
+                    checksum = null;
+                }
+                else if ( physicalStore instanceof ContentAddressedPhysicalStore )
+                {
+                    try
+                    {
+                        ( (ContentAddressedPhysicalStore) physicalStore ).commit( fileInfo, checksum, size );
+                    }
+                    catch ( IOException e )
+                    {
+                        physicalStore.delete( fileInfo );
+                        throw e;
+                    }
+                }
             }
-            pathDB.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum );
+            pathDB.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum, digests );
         }
     }
 }
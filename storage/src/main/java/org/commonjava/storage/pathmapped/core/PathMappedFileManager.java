@@ -15,14 +15,21 @@
  */
 package org.commonjava.storage.pathmapped.core;
 
+import org.apache.commons.io.IOUtils;
+import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.commonjava.storage.pathmapped.config.PathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.model.FileChecksum;
 import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
 import org.commonjava.storage.pathmapped.model.PathMap;
-import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
+import org.commonjava.storage.pathmapped.spi.ChannelPhysicalStore;
 import org.commonjava.storage.pathmapped.spi.FileInfo;
 import org.commonjava.storage.pathmapped.spi.PathDB;
 import org.commonjava.storage.pathmapped.spi.PathDBAdmin;
 import org.commonjava.storage.pathmapped.spi.PhysicalStore;
+import org.commonjava.storage.pathmapped.spi.RefreshablePathDB;
+import org.commonjava.storage.pathmapped.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,15 +38,22 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.apache.commons.lang.StringUtils.isBlank;
 import static org.commonjava.storage.pathmapped.util.PathMapUtils.ROOT_DIR;
 
@@ -59,17 +73,37 @@ public class PathMappedFileManager implements Closeable
 
     private String deduplicatePattern;
 
+    private final ExpirationUpdater expirationUpdater;
+
+    private final AsyncPathDB asyncPathDB;
+
+    private final GarbageCollector garbageCollector;
+
+    private ExecutorService checksumExecutor;
+
+    // blocking work of the async calls, never the common pool
+    private final ExecutorService asyncExecutor;
+
     public PathMappedFileManager( PathMappedStorageConfig config, PathDB pathDB, PhysicalStore physicalStore )
     {
         this.pathDB = pathDB;
         this.physicalStore = physicalStore;
         this.config = config;
+        this.garbageCollector = new GarbageCollector( config, pathDB, physicalStore );
 
         int gcIntervalInMinutes = config.getGCIntervalInMinutes();
         if ( gcIntervalInMinutes > 0 )
         {
             logger.info( "Start path-mapped GC thread, gcIntervalInMinutes: {}", gcIntervalInMinutes );
-            gcThreadPool = Executors.newScheduledThreadPool( 1 );
+            if ( config.isVirtualThreadsEnabled() && VirtualThreads.isAvailable() )
+            {
+                logger.info( "Run path-mapped GC on virtual thread" );
+                gcThreadPool = Executors.newScheduledThreadPool( 1, VirtualThreads.factory() );
+            }
+            else
+            {
+                gcThreadPool = Executors.newScheduledThreadPool( 1 );
+            }
             int initialDelay = gcIntervalInMinutes;
             gcThreadPool.scheduleAtFixedRate( () -> {
                 gc();
@@ -78,7 +112,41 @@ public class PathMappedFileManager implements Closeable
 
         deduplicatePattern = config.getDeduplicatePattern();
 
+        if ( config.isChecksumPipelined() )
+        {
+            checksumExecutor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), r -> {
+                Thread t = new Thread( r, "path-mapped-checksum" );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+
+        expirationUpdater = new ExpirationUpdater( pathDB, config.getResetTimeoutUpdateDelay() );
+
         commonFileExtensions = config.getCommonFileExtensions();
+
+        if ( config.isVirtualThreadsEnabled() && VirtualThreads.isAvailable() )
+        {
+            asyncExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        }
+        else
+        {
+            asyncExecutor = Executors.newFixedThreadPool( config.getAsyncBlockingThreads(), r -> {
+                Thread t = new Thread( r, "path-mapped-async" );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+
+        if ( pathDB instanceof AsyncPathDB && ( (AsyncPathDB) pathDB ).isAsyncSupported() )
+        {
+            asyncPathDB = (AsyncPathDB) pathDB;
+        }
+        else
+        {
+            logger.debug( "PathDB {} has no native async support, use blocking adapter", pathDB.getClass() );
+            asyncPathDB = new BlockingAsyncPathDB( pathDB, asyncExecutor );
+        }
     }
 
     public Set<String> getFileSystemContainingDirectory( Collection<String> candidates, String path )
@@ -102,15 +170,141 @@ public class PathMappedFileManager implements Closeable
 
     public InputStream openInputStream( String fileSystem, String path ) throws IOException
     {
-        String storageFile = getStorageFileInternal( fileSystem, path );
-        if ( storageFile == null )
+        return openInputStream( fileSystem, path, getPathMapInternal( fileSystem, path ) );
+    }
+
+    /**
+     * Open the file from 'offset' for at most 'length' bytes, e.g., to serve a HTTP range request or resume a
+     * download. Only the range is read from the physical store.
+     * @param length max bytes to read, negative means to the end of file
+     */
+    public InputStream openInputStream( String fileSystem, String path, long offset, long length ) throws IOException
+    {
+        if ( offset < 0 )
+        {
+            throw new IllegalArgumentException( "Negative offset: " + offset );
+        }
+        return openInputStream( fileSystem, path, getPathMapInternal( fileSystem, path ), offset, length );
+    }
+
+    /**
+     * Open the input stream and return it together with the PathMap (size, checksum, creation) from one pathDB
+     * read. Use this rather than calling exists, getFileLength and openInputStream in turn.
+     */
+    public PathMappedInputStream openInputStreamWithMetadata( String fileSystem, String path ) throws IOException
+    {
+        final PathMap pathMap = getPathMapInternal( fileSystem, path );
+        return new PathMappedInputStream( openInputStream( fileSystem, path, pathMap ), pathMap );
+    }
+
+    /**
+     * Async version of {@link #openInputStreamWithMetadata(String, String)}. The future fails with an
+     * UncheckedIOException if the file does not exist.
+     */
+    public CompletableFuture<PathMappedInputStream> openInputStreamAsync( String fileSystem, String path )
+    {
+        return getPathMapInternalAsync( fileSystem, path ).thenApplyAsync( pathMap -> {
+            try
+            {
+                return new PathMappedInputStream( openInputStream( fileSystem, path, pathMap ), pathMap );
+            }
+            catch ( IOException e )
+            {
+                throw new UncheckedIOException( e );
+            }
+        }, asyncExecutor );
+    }
+
+    /**
+     * Open a read-only channel of the file. This needs the physical store to be a {@link ChannelPhysicalStore}.
+     * @throws UnsupportedOperationException if the physical store does not provide channels, e.g., S3
+     */
+    public FileChannel openChannel( String fileSystem, String path ) throws IOException
+    {
+        if ( !( physicalStore instanceof ChannelPhysicalStore ) )
+        {
+            throw new UnsupportedOperationException(
+                            "Physical store does not support channel: " + physicalStore.getClass().getName() );
+        }
+        return openChannel( fileSystem, path, getPathMapInternal( fileSystem, path ) );
+    }
+
+    /**
+     * Send the file to the target, from 'offset' for at most 'length' bytes. If the physical store provides
+     * channels, it is done by {@link FileChannel#transferTo} which can skip the copies in user space. Otherwise the
+     * content is copied from the input stream. The target is not closed.
+     * @param length max bytes to send, negative means to the end of file
+     * @return bytes sent
+     */
+    public long transferTo( String fileSystem, String path, long offset, long length, WritableByteChannel target )
+                    throws IOException
+    {
+        if ( offset < 0 )
+        {
+            throw new IllegalArgumentException( "Negative offset: " + offset );
+        }
+        final PathMap pathMap = getPathMapInternal( fileSystem, path );
+        if ( physicalStore instanceof ChannelPhysicalStore )
+        {
+            try (FileChannel channel = openChannel( fileSystem, path, pathMap ))
+            {
+                long end = length < 0 ? channel.size() : Math.min( channel.size(), offset + length );
+                long position = offset;
+                while ( position < end )
+                {
+                    long n = channel.transferTo( position, end - position, target );
+                    if ( n <= 0 )
+                    {
+                        break; // a non-blocking target is full, let the caller go on from here
+                    }
+                    position += n;
+                }
+                return Math.max( 0, position - offset );
+            }
+        }
+        try (InputStream in = openInputStream( fileSystem, path, pathMap, offset, length ))
+        {
+            return IOUtils.copyLarge( in, Channels.newOutputStream( target ) );
+        }
+    }
+
+    private FileChannel openChannel( String fileSystem, String path, PathMap pathMap ) throws IOException
+    {
+        if ( pathMap == null )
+        {
+            throw new IOException( String.format(
+                    "Could not open channel for path %s - %s: path-mapped file does not exist.", fileSystem, path ) );
+        }
+        final FileChannel channel = ( (ChannelPhysicalStore) physicalStore ).openChannel( pathMap.getFileStorage() );
+        if ( channel == null )
+        {
+            refreshStale( fileSystem, path );
+            throw new IOException( String.format(
+                    "Could not open channel for path %s - %s: path-mapped physical file does not exist.", fileSystem,
+                    path ) );
+        }
+        return channel;
+    }
+
+    private InputStream openInputStream( String fileSystem, String path, PathMap pathMap ) throws IOException
+    {
+        return openInputStream( fileSystem, path, pathMap, 0, -1 );
+    }
+
+    private InputStream openInputStream( String fileSystem, String path, PathMap pathMap, long offset, long length )
+                    throws IOException
+    {
+        if ( pathMap == null )
         {
             throw new IOException( String.format(
                     "Could not open input stream to for path %s - %s: path-mapped file does not exist.", fileSystem, path) );
         }
-        final InputStream stream = physicalStore.getInputStream( storageFile );
+        final InputStream stream = offset == 0 && length < 0 ?
+                        physicalStore.getInputStream( pathMap.getFileStorage() ) :
+                        physicalStore.getInputStream( pathMap.getFileStorage(), offset, length );
         if ( stream == null )
         {
+            refreshStale( fileSystem, path );
             throw new IOException( String.format
                     ("Could not open input stream to for path %s - %s: path-mapped physical file does not exist.", fileSystem, path) );
         }
@@ -118,38 +312,94 @@ public class PathMappedFileManager implements Closeable
     }
 
     /**
-     * Get storage file if not expired. Delete the file and return null if expired.
+     * The physical file of the path is missing. If the pathDB holds a copy of the entry, e.g., a TieredPathDB or
+     * CachingPathDB, the copy may be stale as the path was overwritten or deleted through another node, so read it
+     * again for the next call.
+     */
+    private void refreshStale( String fileSystem, String path )
+    {
+        if ( pathDB instanceof RefreshablePathDB )
+        {
+            logger.info( "Physical file missing, refresh the entry, fileSystem: {}, path: {}", fileSystem, path );
+            ( (RefreshablePathDB) pathDB ).refresh( fileSystem, path );
+        }
+    }
+
+    /**
+     * Get path map if not expired. Delete the file and return null if expired.
      * If 'resetTimeoutForAccessing' configured, reset timeout when the expiration is close to due date. This is
-     * to prevent commonly used files being expired too soon.
+     * to prevent commonly used files being expired too soon. The reset is handed to the expirationUpdater which
+     * may defer it to a background thread.
      */
-    private String getStorageFileInternal( String fileSystem, String path )
+    private PathMap getPathMapInternal( String fileSystem, String path )
     {
         final PathMap pathMap = getPathMap( fileSystem, path );
-        if ( pathMap != null )
+        if ( pathMap != null && pathMap.getFileStorage() != null )
         {
-            final Date expiration = pathMap.getExpiration();
-            if ( expiration != null )
+            if ( isExpired( fileSystem, path, pathMap ) )
             {
-                final long current = System.currentTimeMillis();
-                if ( expiration.getTime() < current ) // timeout
-                {
-                    logger.info("File expired, filesystem: {}, path: {}, expiration: {}", fileSystem, path, expiration);
-                    delete(fileSystem, path);
-                    return null;
-                }
-                final long resetTimeout = config.getResetTimeoutForAccessing();
-                if ( resetTimeout > 0 &&
-                        (expiration.getTime() - current) < resetTimeout )
+                delete( fileSystem, path );
+                return null;
+            }
+            resetExpirationForAccessing( fileSystem, path, pathMap );
+            return pathMap;
+        }
+        return null;
+    }
+
+    private CompletableFuture<PathMap> getPathMapInternalAsync( String fileSystem, String path )
+    {
+        return getUnexpiredPathMapAsync( fileSystem, path ).thenApply( pathMap -> {
+            if ( pathMap != null )
+            {
+                resetExpirationForAccessing( fileSystem, path, pathMap );
+            }
+            return pathMap;
+        } );
+    }
+
+    /**
+     * Get path map if not expired, like {@link PathDB#getStorageFile(String, String)}. Delete the file and return
+     * null if expired. The expiration is not reset.
+     */
+    private CompletableFuture<PathMap> getUnexpiredPathMapAsync( String fileSystem, String path )
+    {
+        return getPathMapAsync( fileSystem, path ).thenComposeAsync( pathMap -> {
+            if ( pathMap != null && pathMap.getFileStorage() != null )
+            {
+                if ( isExpired( fileSystem, path, pathMap ) )
                 {
-                    Date newExpiration = new Date(expiration.getTime() + resetTimeout);
-                    logger.debug("Extend file expiration for accessing, filesystem: {}, path: {}, expiration: {}", fileSystem,
-                            path, newExpiration);
-                    expire( fileSystem, path, newExpiration );
+                    return deleteAsync( fileSystem, path ).thenApply( deleted -> null );
                 }
+                return completedFuture( pathMap );
             }
-            return pathMap.getFileStorage();
+            return completedFuture( null );
+        }, asyncExecutor );
+    }
+
+    private boolean isExpired( String fileSystem, String path, PathMap pathMap )
+    {
+        final Date expiration = pathMap.getExpiration();
+        if ( expiration != null && expiration.getTime() < System.currentTimeMillis() ) // timeout
+        {
+            logger.info("File expired, filesystem: {}, path: {}, expiration: {}", fileSystem, path, expiration);
+            return true;
+        }
+        return false;
+    }
+
+    private void resetExpirationForAccessing( String fileSystem, String path, PathMap pathMap )
+    {
+        final Date expiration = pathMap.getExpiration();
+        final long resetTimeout = config.getResetTimeoutForAccessing();
+        if ( expiration != null && resetTimeout > 0 &&
+                (expiration.getTime() - System.currentTimeMillis()) < resetTimeout )
+        {
+            Date newExpiration = new Date(expiration.getTime() + resetTimeout);
+            logger.debug("Extend file expiration for accessing, filesystem: {}, path: {}, expiration: {}", fileSystem,
+                    path, newExpiration);
+            expirationUpdater.update( fileSystem, path, pathMap.getFileId(), newExpiration );
         }
-        return null;
     }
 
     public OutputStream openOutputStream( String fileSystem, String path ) throws IOException
@@ -160,36 +410,143 @@ public class PathMappedFileManager implements Closeable
     public OutputStream openOutputStream( String fileSystem, String path, long timeout, TimeUnit timeoutUnit )
                     throws IOException
     {
+        return openOutputStream( fileSystem, path, null, timeout, timeoutUnit );
+    }
+
+    /**
+     * Open output stream of a file whose checksum is known, e.g., from the .sha256 of a Maven deploy. Call
+     * {@link #linkIfExists(String, String, String, long, long, TimeUnit)} first to skip the upload if the same
+     * content is stored. The stream verifies the content: on mismatch, close throws IOException and the file is
+     * not stored. The content is only deduplicated if the file system matches the 'deduplicatePattern'.
+     * @param expectedChecksum checksum in the 'fileChecksumAlgorithm', null for no verification
+     */
+    public OutputStream openOutputStream( String fileSystem, String path, String expectedChecksum, long timeout,
+                                          TimeUnit timeoutUnit ) throws IOException
+    {
+        expirationUpdater.cancel( fileSystem, path );
         FileInfo fileInfo = physicalStore.getFileInfo( fileSystem, path );
         String checksumAlgorithm = null;
-        if ( deduplicatePattern != null && fileSystem.matches( deduplicatePattern ) )
+        boolean deduplicate = deduplicatePattern != null && fileSystem.matches( deduplicatePattern );
+        if ( expectedChecksum != null || deduplicate )
         {
             checksumAlgorithm = config.getFileChecksumAlgorithm();
         }
+        OutputStream out = physicalStore.getOutputStream( fileInfo );
         try
         {
             return new BufferedOutputStream( new PathDBOutputStream( pathDB, physicalStore,
                                            fileSystem, path, fileInfo,
-                                           physicalStore.getOutputStream( fileInfo ),
+                                           out,
                                            checksumAlgorithm,
+                                           expectedChecksum,
+                                           deduplicate,
+                                           config.getExtraChecksumAlgorithms(),
+                                           checksumExecutor,
                                            timeoutUnit.toMillis( timeout )) );
         }
         catch ( NoSuchAlgorithmException e )
         {
+            discard( out, fileInfo );
             throw new IOException( "Error: checksum checking not correct", e );
         }
+        catch ( RuntimeException e )
+        {
+            discard( out, fileInfo );
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the physical file of an output stream which failed to open, nothing is written to it.
+     */
+    private void discard( OutputStream out, FileInfo fileInfo )
+    {
+        IOUtils.closeQuietly( out );
+        physicalStore.delete( fileInfo );
+    }
+
+    /**
+     * Point the path to the stored file with the same content, without writing any bytes. With the checksum known
+     * before the upload, a re-deploy of identical content becomes a metadata-only operation.
+     * @param checksum checksum in the 'fileChecksumAlgorithm'
+     * @param size size of the content, checked against the stored file as a guard against a wrong checksum
+     * @return true if linked, or false if no such content is stored and it has to be uploaded. Always false if the
+     * file system does not match the 'deduplicatePattern'.
+     */
+    public boolean linkIfExists( String fileSystem, String path, String checksum, long size, long timeout,
+                                 TimeUnit timeoutUnit )
+    {
+        if ( deduplicatePattern == null || !fileSystem.matches( deduplicatePattern ) )
+        {
+            return false;
+        }
+        final FileChecksum existing = pathDB.getFileChecksum( checksum );
+        if ( existing == null )
+        {
+            return false;
+        }
+        final PathMap stored = getStoredPathMap( existing.getFileId() );
+        if ( stored == null || stored.getSize() != size )
+        {
+            logger.debug( "Size not match, checksum: {}, size: {}, stored: {}", checksum, size,
+                          stored == null ? null : stored.getSize() );
+            return false;
+        }
+        if ( !physicalStore.exists( existing.getStorage() ) )
+        {
+            logger.warn( "Physical file not exists, checksum: {}, storage: {}", checksum, existing.getStorage() );
+            return false;
+        }
+        Date creation = new Date();
+        Date expiration = timeout > 0 ? new Date( creation.getTime() + timeoutUnit.toMillis( timeout ) ) : null;
+        logger.debug( "Link {}:{} to existing file: {}", fileSystem, path, existing.getStorage() );
+        expirationUpdater.cancel( fileSystem, path );
+        pathDB.insert( fileSystem, path, creation, expiration, existing.getFileId(), size, existing.getStorage(),
+                       checksum, stored.getDigests() );
+        return true;
+    }
+
+    /**
+     * Get the path map of the first path referring to the stored file, for its size and digests. Only one path is
+     * read; if it is stale, return null and let the caller upload the content.
+     */
+    private PathMap getStoredPathMap( String fileId )
+    {
+        for ( String marshalled : pathDB.getPathsByFileId( fileId ) )
+        {
+            int index = marshalled.indexOf( ":/" ); // the file system may have colons
+            if ( index > 0 )
+            {
+                PathMap pathMap = pathDB.getPathMap( marshalled.substring( 0, index ),
+                                                     marshalled.substring( index + 1 ) );
+                return pathMap != null && fileId.equals( pathMap.getFileId() ) ? pathMap : null;
+            }
+        }
+        return null;
     }
 
     public boolean delete( String fileSystem, String path )
     {
-        return pathDB.delete( fileSystem, path, false );
+        return delete( fileSystem, path, false );
     }
 
     public boolean delete( String fileSystem, String path, boolean force )
     {
+        expirationUpdater.cancel( fileSystem, path );
         return pathDB.delete( fileSystem, path, force );
     }
 
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path )
+    {
+        return deleteAsync( fileSystem, path, false );
+    }
+
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force )
+    {
+        expirationUpdater.cancel( fileSystem, path );
+        return asyncPathDB.deleteAsync( fileSystem, path, force );
+    }
+
     public String[] list( String fileSystem, String path )
     {
         return list( fileSystem, path, PathDB.FileType.all );
@@ -231,6 +588,42 @@ public class PathMappedFileManager implements Closeable
         }
     }
 
+    /**
+     * List one page of files under the path (non-recursive). Pass the paging state of the returned page to get the
+     * next one, until {@link ListPage#hasMore()} is false.
+     */
+    public ListPage listPage( String fileSystem, String path, PathDB.FileType fileType, int pageSize,
+                              String pagingState )
+    {
+        return pathDB.list( fileSystem, path, fileType, pageSize, pagingState );
+    }
+
+    /**
+     * Stream the file names under the path (non-recursive). The entries are fetched one page at a time, so a large
+     * directory is listed with constant memory.
+     */
+    public Stream<String> listStream( String fileSystem, String path, PathDB.FileType fileType, int pageSize )
+    {
+        if ( path == null )
+        {
+            return Stream.empty();
+        }
+        return pathDB.stream( fileSystem, path, fileType, pageSize ).map( PathMap::getFilename );
+    }
+
+    /**
+     * Async version of the non-recursive {@link #list(String, String, PathDB.FileType)}.
+     */
+    public CompletableFuture<String[]> listAsync( String fileSystem, String path, PathDB.FileType fileType )
+    {
+        if ( path == null )
+        {
+            return completedFuture( new String[] {} );
+        }
+        return asyncPathDB.listAsync( fileSystem, path, fileType )
+                          .thenApply( paths -> paths.stream().map( x -> x.getFilename() ).toArray( String[]::new ) );
+    }
+
     /*
      * Format listing result. e.g, if path=/foo, parentPath=/foo/bar/1, result will be bar/1
      * The parentPath always has heading / so we make sure root has that too. /foo/1.0
@@ -254,6 +647,11 @@ public class PathMappedFileManager implements Closeable
         return pathDB.getPathMap( fileSystem, path );
     }
 
+    public CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path )
+    {
+        return asyncPathDB.getPathMapAsync( fileSystem, path );
+    }
+
     public long getFileLength( String fileSystem, String path )
     {
         if ( path == null )
@@ -281,10 +679,12 @@ public class PathMappedFileManager implements Closeable
 
         boolean exists = false;
 
+        String storageFile = null;
         if ( commonFileExtensions != null && path.matches( commonFileExtensions ) )
         {
-            // query file
-            exists = pathDB.existsFile( fileSystem, path );
+            // query file. The storage file is null if the file does not exist or is expired, so one query is enough
+            storageFile = pathDB.getStorageFile( fileSystem, path );
+            exists = storageFile != null;
         }
         else
         {
@@ -298,12 +698,15 @@ public class PathMappedFileManager implements Closeable
             {
                 return true;
             }
+            if ( exists )
+            {
+                // check expiration
+                storageFile = pathDB.getStorageFile( fileSystem, path );
+            }
         }
 
         if ( exists )
         {
-            // check expiration
-            String storageFile = pathDB.getStorageFile( fileSystem, path );
             if ( storageFile != null )
             {
                 if ( !config.isPhysicalFileExistenceCheckEnabled() )
@@ -326,6 +729,7 @@ public class PathMappedFileManager implements Closeable
                 {
                     logger.error( "File in pathDB but physical file missing! fileSystem: {}, path: {}, storageFile: {}",
                                  fileSystem, path, storageFile );
+                    refreshStale( fileSystem, path );
                     return false;
                 }
             }
@@ -333,6 +737,43 @@ public class PathMappedFileManager implements Closeable
         return false;
     }
 
+    /**
+     * Async version of {@link #exists(String, String)}. It reads the PathMap first, and only asks for the dir when the
+     * file is not found, so an existing file takes one query. Like the sync one, it does not reset the expiration.
+     */
+    public CompletableFuture<Boolean> existsAsync( String fileSystem, String path )
+    {
+        if ( isBlank( path ) )
+        {
+            return completedFuture( false );
+        }
+        return getUnexpiredPathMapAsync( fileSystem, path ).thenCompose( pathMap -> {
+            if ( pathMap != null )
+            {
+                if ( !config.isPhysicalFileExistenceCheckEnabled() )
+                {
+                    return completedFuture( true );
+                }
+                return CompletableFuture.supplyAsync( () -> {
+                    String storageFile = pathMap.getFileStorage();
+                    if ( physicalStore.exists( storageFile ) )
+                    {
+                        return true;
+                    }
+                    logger.error( "File in pathDB but physical file missing! fileSystem: {}, path: {}, storageFile: {}",
+                                  fileSystem, path, storageFile );
+                    refreshStale( fileSystem, path );
+                    return false;
+                }, asyncExecutor );
+            }
+            if ( commonFileExtensions != null && path.matches( commonFileExtensions ) )
+            {
+                return completedFuture( false );
+            }
+            return asyncPathDB.existsAsync( fileSystem, path ).thenApply( type -> type == PathDB.FileType.dir );
+        } );
+    }
+
     public boolean isDirectory( String fileSystem, String path )
     {
         if ( path == null )
@@ -358,16 +799,26 @@ public class PathMappedFileManager implements Closeable
     @Deprecated
     public void copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath )
     {
+        expirationUpdater.cancel( toFileSystem, toPath );
         pathDB.copy( fromFileSystem, fromPath, toFileSystem, toPath );
     }
 
     public void copy( String fromFileSystem, String fromPath, String toFileSystem, String toPath, Date creation, Date expiration )
     {
+        expirationUpdater.cancel( toFileSystem, toPath );
         pathDB.copy( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration );
     }
 
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath, Date creation, Date expiration )
+    {
+        expirationUpdater.cancel( toFileSystem, toPath );
+        return asyncPathDB.copyAsync( fromFileSystem, fromPath, toFileSystem, toPath, creation, expiration );
+    }
+
     public void expire( String fileSystem, String path, Date expiration )
     {
+        expirationUpdater.cancel( fileSystem, path );
         pathDB.expire( fileSystem, path, expiration );
     }
 
@@ -399,52 +850,15 @@ public class PathMappedFileManager implements Closeable
 
     private Map<FileInfo, Boolean> executeGC() throws Exception
     {
-        logger.info("Run storage gc...");
-        Map<FileInfo, Boolean> gcResults = new HashMap<>();
-        while ( true )
-        {
-            int batchSize = config.getGCBatchSize();
-            List<Reclaim> reclaims = pathDB.listOrphanedFiles( batchSize );
+        return garbageCollector.collect();
+    }
 
-            int size = reclaims.size();
-            logger.info( "Get reclaims for gc, size: {}", size );
-            if ( size <= 0 )
-            {
-                logger.info("Gc complete.");
-                break;
-            }
-            final AtomicBoolean physicalStoreError = new AtomicBoolean( false );
-            reclaims.forEach( reclaim -> {
-                FileInfo fileInfo = new FileInfo();
-                fileInfo.setFileId( reclaim.getFileId() );
-                fileInfo.setFileStorage( reclaim.getStorage() );
-                boolean result = physicalStore.delete( fileInfo );
-                if ( result )
-                {
-                    logger.info( "Delete from physical store, fileInfo: {}", fileInfo );
-                    pathDB.removeFromReclaim( reclaim );
-                }
-                else
-                {
-                    logger.warn( "Delete from physical store failed, fileInfo: {}, reclaim: {}", fileInfo, reclaim );
-                    physicalStoreError.set( true );
-                }
-                gcResults.put(fileInfo, result);
-            });
-            if ( physicalStoreError.get() )
-            {
-                // Break to avoid infinite loop. The listOrphanedFiles may fetch duplicated entries in this case.
-                logger.info("Gc hit physical store error. Break current gc. gcResults: {}", gcResults);
-                break;
-            }
-            int curSize = gcResults.size();
-            if ( curSize >= config.getGcMaxResultSize() )
-            {
-                logger.info("Gc reach the max result size and complete, curSize: {}", curSize);
-                break;
-            }
-        }
-        return gcResults;
+    /**
+     * Report the gc metrics, e.g., deleted, failed and the delete latency, to the metricsManager.
+     */
+    public void setMetricsManager( MetricsManager metricsManager, String metricPrefix )
+    {
+        garbageCollector.setMetricsManager( metricsManager, metricPrefix );
     }
 
     public PathDB getPathDB()
@@ -478,9 +892,19 @@ public class PathMappedFileManager implements Closeable
     @Override
     public void close() throws IOException
     {
+        expirationUpdater.shutdown();
+        if ( checksumExecutor != null )
+        {
+            checksumExecutor.shutdown();
+        }
+        asyncExecutor.shutdown();
         if ( pathDB instanceof Closeable )
         {
             ( (Closeable) pathDB ).close();
         }
+        if ( physicalStore instanceof Closeable )
+        {
+            ( (Closeable) physicalStore ).close();
+        }
     }
 }
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * Input stream of a path-mapped file together with the PathMap it was resolved from. This lets the caller get
+ * the size, checksum and creation without another pathDB query.
+ */
+public class PathMappedInputStream
+                extends FilterInputStream
+{
+    private final PathMap pathMap;
+
+    public PathMappedInputStream( InputStream in, PathMap pathMap )
+    {
+        super( in );
+        this.pathMap = pathMap;
+    }
+
+    public PathMap getPathMap()
+    {
+        return pathMap;
+    }
+
+    public long getSize()
+    {
+        return pathMap.getSize();
+    }
+
+    public String getChecksum()
+    {
+        return pathMap.getChecksum();
+    }
+
+    public Date getCreation()
+    {
+        return pathMap.getCreation();
+    }
+
+    public long getLastModified()
+    {
+        Date creation = pathMap.getCreation();
+        return creation == null ? -1L : creation.getTime();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Space the permits evenly at a fixed rate among all callers. A rate of 0 or less means no limit.
+ */
+class RateLimiter
+{
+    private final long intervalNanos;
+
+    private long next; // guarded by this
+
+    RateLimiter( int permitsPerSecond )
+    {
+        this.intervalNanos = permitsPerSecond > 0 ? TimeUnit.SECONDS.toNanos( 1 ) / permitsPerSecond : 0;
+    }
+
+    void acquire() throws InterruptedException
+    {
+        acquire( 1 );
+    }
+
+    /**
+     * Acquire a number of permits at once. The wait is for the caller's turn, the permits are paid by later callers.
+     */
+    void acquire( int permits ) throws InterruptedException
+    {
+        if ( intervalNanos <= 0 || permits <= 0 )
+        {
+            return;
+        }
+        long wait;
+        synchronized ( this )
+        {
+            long now = System.nanoTime();
+            if ( next < now )
+            {
+                next = now;
+            }
+            wait = next - now;
+            next += intervalNanos * permits;
+        }
+        if ( wait > 0 )
+        {
+            TimeUnit.NANOSECONDS.sleep( wait );
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped.core;
+
+import org.apache.commons.io.IOUtils;
+import software.amazon.awssdk.http.Abortable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Read an S3 object by ranged GETs of 'chunkSize', keeping up to 'prefetch' chunks downloading ahead of the reader.
+ * A large sequential read then runs over several connections at once. A chunk shorter than requested marks the
+ * end of the object. Closing the stream aborts the GETs in flight.
+ */
+class S3ChunkedInputStream
+                extends InputStream
+{
+    interface ChunkFetcher
+    {
+        /**
+         * @return the response of the bytes in range [from, from + size), fewer if reaching the end of the object
+         */
+        InputStream open( long from, int size ) throws IOException;
+    }
+
+    private static final class Chunk
+    {
+        private final int size;
+
+        private CompletableFuture<byte[]> data;
+
+        private volatile InputStream response;
+
+        private volatile boolean aborted;
+
+        private Chunk( int size )
+        {
+            this.size = size;
+        }
+
+        /**
+         * Cancelling the future does not interrupt a blocking read, so abort the response it reads from.
+         */
+        private void abort()
+        {
+            aborted = true;
+            data.cancel( true );
+            InputStream in = response;
+            if ( in != null )
+            {
+                abortResponse( in );
+            }
+        }
+    }
+
+    private final ChunkFetcher fetcher;
+
+    private final Executor executor;
+
+    private final int chunkSize;
+
+    private final int prefetch;
+
+    private final long end;
+
+    private final Deque<Chunk> chunks = new ArrayDeque<>();
+
+    private long nextOffset;
+
+    private byte[] current;
+
+    private int position;
+
+    private boolean lastChunk;
+
+    private boolean closed;
+
+    /**
+     * @param first the first chunk, fetched by the caller to find out whether the object exists
+     * @param end the offset to stop at (exclusive), Long.MAX_VALUE means the end of the object
+     */
+    S3ChunkedInputStream( ChunkFetcher fetcher, Executor executor, int chunkSize, int prefetch, long offset,
+                          int firstSize, byte[] first, long end )
+    {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.prefetch = Math.max( 1, prefetch );
+        this.end = end;
+        this.nextOffset = offset + firstSize;
+        this.current = first;
+        this.lastChunk = first.length < firstSize;
+        prefetch();
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if ( !ensureAvailable() )
+        {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException
+    {
+        if ( len == 0 )
+        {
+            return 0;
+        }
+        if ( !ensureAvailable() )
+        {
+            return -1;
+        }
+        int n = Math.min( len, current.length - position );
+        System.arraycopy( current, position, b, off, n );
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available()
+    {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close()
+    {
+        if ( !closed )
+        {
+            closed = true;
+            chunks.forEach( Chunk::abort );
+            chunks.clear();
+            current = null;
+        }
+    }
+
+    private boolean ensureAvailable() throws IOException
+    {
+        if ( closed )
+        {
+            throw new IOException( "Stream closed" );
+        }
+        while ( position >= current.length )
+        {
+            if ( lastChunk )
+            {
+                return false;
+            }
+            Chunk chunk = chunks.poll();
+            if ( chunk == null )
+            {
+                return false;
+            }
+            try
+            {
+                current = chunk.data.join();
+            }
+            catch ( CompletionException e )
+            {
+                Throwable cause = e.getCause();
+                if ( cause instanceof UncheckedIOException )
+                {
+                    throw ( (UncheckedIOException) cause ).getCause();
+                }
+                throw new IOException( "Failed to read chunk", cause );
+            }
+            position = 0;
+            lastChunk = current.length < chunk.size;
+            if ( lastChunk )
+            {
+                chunks.forEach( Chunk::abort );
+                chunks.clear();
+            }
+            else
+            {
+                prefetch();
+            }
+        }
+        return true;
+    }
+
+    private void prefetch()
+    {
+        while ( !lastChunk && chunks.size() < prefetch && nextOffset < end )
+        {
+            final long from = nextOffset;
+            final int size = (int) Math.min( chunkSize, end - from );
+            nextOffset += size;
+            Chunk chunk = new Chunk( size );
+            chunk.data = CompletableFuture.supplyAsync( () -> {
+                try
+                {
+                    return fetch( chunk, from, size );
+                }
+                catch ( IOException e )
+                {
+                    throw new UncheckedIOException( e );
+                }
+            }, executor );
+            chunks.add( chunk );
+        }
+    }
+
+    private byte[] fetch( Chunk chunk, long from, int size ) throws IOException
+    {
+        if ( chunk.aborted )
+        {
+            throw new IOException( "Chunk aborted" );
+        }
+        InputStream in = fetcher.open( from, size );
+        chunk.response = in;
+        // abort() may have missed the response just set
+        if ( chunk.aborted )
+        {
+            abortResponse( in );
+            throw new IOException( "Chunk aborted" );
+        }
+        try
+        {
+            return IOUtils.toByteArray( in );
+        }
+        finally
+        {
+            chunk.response = null;
+            IOUtils.closeQuietly( in );
+        }
+    }
+
+    /**
+     * Closing a response which is not fully read may drain the rest to reuse the connection, so abort it if possible.
+     */
+    private static void abortResponse( InputStream in )
+    {
+        if ( in instanceof Abortable )
+        {
+            ( (Abortable) in ).abort();
+        }
+        IOUtils.closeQuietly( in );
+    }
+}
@@ -28,10 +28,18 @@ import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public class S3OutputStream
                 extends OutputStream
@@ -42,6 +50,16 @@ public class S3OutputStream
      */
     protected static final int BUFFER_SIZE = 10000000;
 
+    /**
+     * The buffer starts small and grows by doubling, so a small file does not take a whole part
+     */
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    /**
+     * Above this the buffer is switched to a part buffer from the pool
+     */
+    private static final int MAX_GROWING_BUFFER_SIZE = 256 * 1024;
+
     /**
      * The path (key) name within the bucket
      */
@@ -55,16 +73,40 @@ public class S3OutputStream
     /**
      * The temporary buffer used for storing the chunks
      */
-    private final byte[] buf;
+    private byte[] buf;
+
+    private final PartBufferPool bufferPool;
+
+    /**
+     * The buffers whose parts are uploaded, ready to be filled again
+     */
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    /**
+     * Max part buffers of this stream, the one being filled plus the ones being uploaded
+     */
+    private final int maxBuffers;
+
+    private int allocatedBuffers;
 
     private final S3Client s3Client;
 
     private final String bucket;
 
     /**
-     * Collection of the etags for the parts that have been uploaded
+     * Runs the part uploads. null means uploading in the writer thread.
+     */
+    private final Executor executor;
+
+    /**
+     * The parts that have been uploaded or are being uploaded, in part number order
+     */
+    private final List<CompletableFuture<CompletedPart>> parts;
+
+    /**
+     * The first error of the uploading parts
      */
-    private final List<String> etags;
+    private volatile Throwable failure;
 
     /**
      * The position in the buffer
@@ -99,14 +141,48 @@ public class S3OutputStream
      * @param path     path within the bucket
      */
     public S3OutputStream( S3Client s3Client, String bucket, String path, Map<String, String> metadata )
+    {
+        this( s3Client, bucket, path, metadata, BUFFER_SIZE, null, 1 );
+    }
+
+    /**
+     * Creates a new S3 OutputStream which uploads the parts concurrently. The writer goes on filling the next part
+     * while the previous ones are uploading, and waits only when 'maxInFlight' parts are uploading.
+     *
+     * @param s3Client    the AmazonS3 client
+     * @param path        path within the bucket
+     * @param partSize    size of each part. S3 requires at least 5MB except the last part
+     * @param executor    executor to upload the parts. null means uploading in the writer thread
+     * @param maxInFlight max parts uploading at the same time
+     */
+    public S3OutputStream( S3Client s3Client, String bucket, String path, Map<String, String> metadata,
+                           int partSize, Executor executor, int maxInFlight )
+    {
+        this( s3Client, bucket, path, metadata, new PartBufferPool( partSize, 0 ), executor, maxInFlight );
+    }
+
+    S3OutputStream( S3Client s3Client, String bucket, String path, Map<String, String> metadata,
+                    PartBufferPool bufferPool, Executor executor, int maxInFlight )
     {
         this.s3Client = s3Client;
         this.bucket = bucket;
         this.path = path;
         this.metadata = metadata;
-        buf = new byte[BUFFER_SIZE];
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        maxBuffers = executor == null ? 1 : Math.max( 1, maxInFlight ) + 1;
+        freeBuffers = new ArrayBlockingQueue<>( maxBuffers );
+        if ( bufferPool.getPartSize() <= INITIAL_BUFFER_SIZE )
+        {
+            buf = bufferPool.acquire();
+            allocatedBuffers = 1;
+        }
+        else
+        {
+            buf = new byte[INITIAL_BUFFER_SIZE];
+        }
         position = 0;
-        etags = new ArrayList<>();
+        parts = new ArrayList<>();
         open = true;
     }
 
@@ -115,12 +191,15 @@ public class S3OutputStream
         open = false;
         if ( uploadId != null )
         {
+            // wait for the uploading parts, or they may be left in the bucket after the abort
+            parts.forEach( part -> part.handle( ( r, e ) -> null ).join() );
             s3Client.abortMultipartUpload( AbortMultipartUploadRequest.builder()
                                                                       .bucket( this.bucket )
                                                                       .key( path )
                                                                       .uploadId( uploadId )
                                                                       .build() );
         }
+        releaseBuffers();
     }
 
     @Override
@@ -129,7 +208,14 @@ public class S3OutputStream
         assertOpen();
         if ( position >= buf.length )
         {
-            flushBufferAndRewind();
+            if ( isGrowing() )
+            {
+                grow( position + 1 );
+            }
+            else
+            {
+                flushBufferAndRewind();
+            }
         }
         buf[position++] = (byte) b;
     }
@@ -159,6 +245,10 @@ public class S3OutputStream
         int ofs = o;
         int len = l;
         int size;
+        if ( len > buf.length - position && isGrowing() )
+        {
+            grow( position + len );
+        }
         while ( len > ( size = buf.length - position ) )
         {
             System.arraycopy( byteArray, ofs, buf, position, size );
@@ -186,43 +276,56 @@ public class S3OutputStream
         if ( open )
         {
             open = false;
-            if ( uploadId != null )
+            try
             {
-                if ( position > 0 )
+                if ( uploadId != null )
                 {
-                    uploadPart();
-                }
+                    if ( position > 0 )
+                    {
+                        uploadPart();
+                    }
 
-                CompletedPart[] completedParts = new CompletedPart[etags.size()];
-                for ( int i = 0; i < etags.size(); i++ )
-                {
-                    completedParts[i] = CompletedPart.builder().eTag( etags.get( i ) ).partNumber( i + 1 ).build();
+                    CompletedPart[] completedParts = new CompletedPart[parts.size()];
+                    try
+                    {
+                        for ( int i = 0; i < parts.size(); i++ )
+                        {
+                            completedParts[i] = parts.get( i ).join();
+                        }
+                    }
+                    catch ( CompletionException e )
+                    {
+                        cancel();
+                        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                    }
+
+                    CompletedMultipartUpload completedMultipartUpload =
+                                    CompletedMultipartUpload.builder().parts( completedParts ).build();
+                    CompleteMultipartUploadRequest completeMultipartUploadRequest =
+                                    CompleteMultipartUploadRequest.builder()
+                                                                  .bucket( bucket )
+                                                                  .key( path )
+                                                                  .uploadId( uploadId )
+                                                                  .multipartUpload( completedMultipartUpload )
+                                                                  .build();
+                    s3Client.completeMultipartUpload( completeMultipartUploadRequest );
                 }
+                else
+                {
+                    PutObjectRequest putRequest = PutObjectRequest.builder()
+                                                                  .bucket( this.bucket )
+                                                                  .key( path )
+                                                                  .contentLength( (long) position )
+                                                                  .build();
 
-                CompletedMultipartUpload completedMultipartUpload =
-                                CompletedMultipartUpload.builder().parts( completedParts ).build();
-                CompleteMultipartUploadRequest completeMultipartUploadRequest = CompleteMultipartUploadRequest.builder()
-                                                                                                              .bucket(
-                                                                                                                      bucket )
-                                                                                                              .key( path )
-                                                                                                              .uploadId(
-                                                                                                                      uploadId )
-                                                                                                              .multipartUpload(
-                                                                                                                      completedMultipartUpload )
-                                                                                                              .build();
-                s3Client.completeMultipartUpload( completeMultipartUploadRequest );
+                    RequestBody requestBody = RequestBody.fromInputStream(
+                                    new ByteArrayInputStream( buf, 0, position ), position );
+                    s3Client.putObject( putRequest, requestBody );
+                }
             }
-            else
+            finally
             {
-                PutObjectRequest putRequest = PutObjectRequest.builder()
-                                                              .bucket( this.bucket )
-                                                              .key( path )
-                                                              .contentLength( (long) position )
-                                                              .build();
-
-                RequestBody requestBody =
-                                RequestBody.fromInputStream( new ByteArrayInputStream( buf, 0, position ), position );
-                s3Client.putObject( putRequest, requestBody );
+                releaseBuffers();
             }
         }
     }
@@ -250,21 +353,133 @@ public class S3OutputStream
             uploadId = multipartUpload.uploadId();
         }
         uploadPart();
+        buf = nextBuffer();
         position = 0;
     }
 
+    /**
+     * Whether the buffer is still growing, i.e., not yet a part buffer
+     */
+    private boolean isGrowing()
+    {
+        return buf.length < bufferPool.getPartSize();
+    }
+
+    /**
+     * Grow the buffer to hold at least 'minCapacity' bytes. Doubling while it is small, and switching to a pooled
+     * part buffer once it is big enough to probably become a multipart upload.
+     */
+    private void grow( int minCapacity )
+    {
+        int newLength = Math.max( buf.length * 2, minCapacity );
+        byte[] newBuf;
+        if ( newLength > MAX_GROWING_BUFFER_SIZE || newLength >= bufferPool.getPartSize() )
+        {
+            newBuf = bufferPool.acquire();
+            allocatedBuffers++;
+        }
+        else
+        {
+            newBuf = new byte[newLength];
+        }
+        System.arraycopy( buf, 0, newBuf, 0, position );
+        buf = newBuf;
+    }
+
+    /**
+     * Give the part buffers back to the pool.
+     */
+    private void releaseBuffers()
+    {
+        if ( buf != null && !isGrowing() )
+        {
+            bufferPool.release( buf );
+        }
+        buf = null;
+        byte[] free;
+        while ( ( free = freeBuffers.poll() ) != null )
+        {
+            bufferPool.release( free );
+        }
+    }
+
+    /**
+     * Upload the current buffer as the next part. The buffer goes back to the free ones when the upload is done.
+     */
     protected void uploadPart()
     {
-        UploadPartRequest uploadRequest = UploadPartRequest.builder()
-                                                           .bucket( bucket )
-                                                           .key( path )
-                                                           .uploadId( uploadId )
-                                                           .partNumber( etags.size() + 1 )
-                                                           .contentLength( (long) position )
-                                                           .build();
-        RequestBody requestBody = RequestBody.fromInputStream( new ByteArrayInputStream( buf, 0, position ), position );
-        UploadPartResponse uploadPartResponse = s3Client.uploadPart( uploadRequest, requestBody );
-        etags.add( uploadPartResponse.eTag() );
+        failFast();
+        final byte[] part = buf;
+        final int length = position;
+        final int partNumber = parts.size() + 1;
+        buf = null; // owned by the upload now
+        Supplier<CompletedPart> upload = () -> {
+            try
+            {
+                UploadPartRequest uploadRequest = UploadPartRequest.builder()
+                                                                   .bucket( bucket )
+                                                                   .key( path )
+                                                                   .uploadId( uploadId )
+                                                                   .partNumber( partNumber )
+                                                                   .contentLength( (long) length )
+                                                                   .build();
+                RequestBody requestBody =
+                                RequestBody.fromInputStream( new ByteArrayInputStream( part, 0, length ), length );
+                UploadPartResponse uploadPartResponse = s3Client.uploadPart( uploadRequest, requestBody );
+                return CompletedPart.builder().eTag( uploadPartResponse.eTag() ).partNumber( partNumber ).build();
+            }
+            finally
+            {
+                freeBuffers.offer( part );
+            }
+        };
+        parts.add( executor == null ?
+                                   CompletableFuture.completedFuture( upload.get() ) :
+                                   CompletableFuture.supplyAsync( upload, executor ).whenComplete( ( r, e ) -> {
+                                       if ( e != null && failure == null )
+                                       {
+                                           failure = e;
+                                       }
+                                   } ) );
+    }
+
+    /**
+     * Get a free buffer, or allocate one if not reaching the max, or else wait for an uploading part to finish.
+     */
+    private byte[] nextBuffer()
+    {
+        byte[] next = freeBuffers.poll();
+        if ( next != null )
+        {
+            return next;
+        }
+        if ( allocatedBuffers < maxBuffers )
+        {
+            allocatedBuffers++;
+            return bufferPool.acquire();
+        }
+        try
+        {
+            return freeBuffers.take();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException( new InterruptedIOException( "Interrupted waiting for part upload" ) );
+        }
     }
-}
 
+    /**
+     * Stop writing as soon as a part fails, instead of at close.
+     */
+    private void failFast()
+    {
+        Throwable e = failure;
+        if ( e != null )
+        {
+            cancel();
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException( cause );
+        }
+    }
+}
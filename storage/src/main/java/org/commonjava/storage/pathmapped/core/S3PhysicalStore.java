@@ -15,34 +15,103 @@
  */
 package org.commonjava.storage.pathmapped.core;
 
+import org.apache.commons.io.IOUtils;
 import org.commonjava.storage.pathmapped.spi.FileInfo;
 import org.commonjava.storage.pathmapped.spi.PhysicalStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static java.lang.System.currentTimeMillis;
 import static org.commonjava.storage.pathmapped.util.PathMapUtils.getRandomFileId;
 
-public class S3PhysicalStore implements PhysicalStore
+/**
+ * The part uploads and the ranged GETs of all the streams run on two pools bound by 'uploadConcurrency' and the
+ * prefetch chunks, so a burst of streams queues up rather than opening more connections. {@link #close()} stops them.
+ */
+public class S3PhysicalStore implements PhysicalStore, Closeable
 {
+    // S3 DeleteObjects accepts up to 1000 keys per request
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    // S3 multipart upload requires parts of at least 5MB except the last one
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     private final S3Client s3Client;
     private final String bucket;
 
+    private final int uploadConcurrency;
+
+    private final PartBufferPool bufferPool;
+
+    private volatile int readChunkSize;
+
+    private volatile int readPrefetch;
+
+    private ThreadPoolExecutor readExecutor;
+
+    private final ThreadPoolExecutor uploadExecutor;
+
     public S3PhysicalStore( S3Client s3Client, String bucket )
     {
+        this( s3Client, bucket, S3OutputStream.BUFFER_SIZE, 1 );
+    }
+
+    /**
+     * @param partSize size of the multipart upload parts, at least 5MB as S3 requires
+     * @param uploadConcurrency max parts of one file uploading at the same time. 1 means uploading in the writer thread
+     */
+    public S3PhysicalStore( S3Client s3Client, String bucket, int partSize, int uploadConcurrency )
+    {
+        this( s3Client, bucket, partSize, uploadConcurrency, 2 * ( uploadConcurrency + 1 ) );
+    }
+
+    /**
+     * @param maxPooledBuffers max idle part buffers kept for reuse by all the output streams
+     */
+    public S3PhysicalStore( S3Client s3Client, String bucket, int partSize, int uploadConcurrency,
+                            int maxPooledBuffers )
+    {
+        if ( partSize < MIN_PART_SIZE )
+        {
+            throw new IllegalArgumentException( "Part size must be at least " + MIN_PART_SIZE + ", got " + partSize );
+        }
         this.s3Client = s3Client;
         this.bucket = bucket;
+        this.bufferPool = new PartBufferPool( partSize, maxPooledBuffers );
+        this.uploadConcurrency = uploadConcurrency;
+        this.uploadExecutor = uploadConcurrency > 1 ? newPool( uploadConcurrency, "s3-part-upload" ) : null;
     }
 
     @Override
@@ -74,7 +143,8 @@ public class S3PhysicalStore implements PhysicalStore
     {
         try
         {
-            return new S3OutputStream( this.s3Client, this.bucket, fileInfo.getFileStorage() );
+            return new S3OutputStream( this.s3Client, this.bucket, fileInfo.getFileStorage(), null, bufferPool,
+                                       uploadExecutor, uploadConcurrency );
         }
         catch ( S3Exception e )
         {
@@ -83,9 +153,45 @@ public class S3PhysicalStore implements PhysicalStore
         }
     }
 
+    /**
+     * Read large objects by concurrent ranged GETs. Each stream keeps up to 'prefetchChunks' chunks of 'chunkSize'
+     * downloading ahead of the reader, which takes up to chunkSize * (prefetchChunks + 1) memory per stream. The
+     * GETs of all the streams share 'prefetchChunks' threads.
+     * @param chunkSize size of each ranged GET, 0 to disable
+     */
+    public synchronized void setParallelRead( int chunkSize, int prefetchChunks )
+    {
+        int threads = Math.max( 1, prefetchChunks );
+        if ( chunkSize > 0 && readExecutor == null )
+        {
+            readExecutor = newPool( threads, "s3-range-read" );
+        }
+        else if ( readExecutor != null )
+        {
+            // grow the max first, the core size may not exceed it
+            if ( threads > readExecutor.getMaximumPoolSize() )
+            {
+                readExecutor.setMaximumPoolSize( threads );
+                readExecutor.setCorePoolSize( threads );
+            }
+            else
+            {
+                readExecutor.setCorePoolSize( threads );
+                readExecutor.setMaximumPoolSize( threads );
+            }
+        }
+        this.readPrefetch = prefetchChunks;
+        this.readChunkSize = chunkSize;
+    }
+
     @Override
-    public InputStream getInputStream( String storageFile )
+    public InputStream getInputStream( String storageFile ) throws IOException
     {
+        if ( readChunkSize > 0 )
+        {
+            return getInputStream( storageFile, 0, -1 );
+        }
+
         GetObjectRequest getObjectRequest = GetObjectRequest.builder()
                                                             .bucket( this.bucket )
                                                             .key( storageFile )
@@ -102,6 +208,81 @@ public class S3PhysicalStore implements PhysicalStore
         }
     }
 
+    /**
+     * Read the range by the S3 'Range' header, or by the chunked reader if parallel read is enabled.
+     */
+    @Override
+    public InputStream getInputStream( String storageFile, long offset, long length ) throws IOException
+    {
+        if ( length == 0 )
+        {
+            return new ByteArrayInputStream( new byte[0] ); // not expressible by a range
+        }
+        final long end = length < 0 ? Long.MAX_VALUE : offset + length;
+        try
+        {
+            int chunkSize = readChunkSize;
+            if ( chunkSize > 0 )
+            {
+                // get the first chunk in the caller thread to know whether the object exists
+                int firstSize = (int) Math.min( chunkSize, end - offset );
+                byte[] first = getRange( storageFile, offset, firstSize );
+                return new S3ChunkedInputStream( ( from, size ) -> openRange( storageFile, from, size ), readExecutor,
+                                                 chunkSize, readPrefetch, offset, firstSize, first, end );
+            }
+
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                                                                .bucket( this.bucket )
+                                                                .key( storageFile )
+                                                                .range( toRange( offset, end ) )
+                                                                .build();
+            return this.s3Client.getObject( getObjectRequest );
+        }
+        catch ( S3Exception e )
+        {
+            if ( e.statusCode() == RANGE_NOT_SATISFIABLE )
+            {
+                return new ByteArrayInputStream( new byte[0] ); // offset beyond the end of file
+            }
+            logger.debug( "Target file not exists, file: {}, got error: {}", storageFile, e.toString() );
+            return null;
+        }
+    }
+
+    private byte[] getRange( String storageFile, long from, int size ) throws IOException
+    {
+        try (InputStream in = openRange( storageFile, from, size ))
+        {
+            return IOUtils.toByteArray( in );
+        }
+    }
+
+    private InputStream openRange( String storageFile, long from, int size )
+    {
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                                                            .bucket( this.bucket )
+                                                            .key( storageFile )
+                                                            .range( toRange( from, from + size ) )
+                                                            .build();
+        try
+        {
+            return this.s3Client.getObject( getObjectRequest );
+        }
+        catch ( S3Exception e )
+        {
+            if ( e.statusCode() == RANGE_NOT_SATISFIABLE )
+            {
+                return new ByteArrayInputStream( new byte[0] );
+            }
+            throw e;
+        }
+    }
+
+    private static String toRange( long from, long end )
+    {
+        return "bytes=" + from + "-" + ( end == Long.MAX_VALUE ? "" : String.valueOf( end - 1 ) );
+    }
+
     @Override
     public boolean delete( FileInfo fileInfo )
     {
@@ -121,6 +302,53 @@ public class S3PhysicalStore implements PhysicalStore
         }
     }
 
+    /**
+     * Delete by multi-object DeleteObjects, up to 1000 keys per request. A key reported in the errors is not deleted.
+     * If a whole request fails, all files in it are reported as not deleted.
+     */
+    @Override
+    public Map<FileInfo, Boolean> deleteAll( Collection<FileInfo> fileInfos )
+    {
+        Map<FileInfo, Boolean> ret = new HashMap<>();
+        List<FileInfo> all = new ArrayList<>( fileInfos );
+        for ( int from = 0; from < all.size(); from += MAX_KEYS_PER_DELETE )
+        {
+            List<FileInfo> chunk = all.subList( from, Math.min( from + MAX_KEYS_PER_DELETE, all.size() ) );
+            // same key may be given more than once
+            Map<String, List<FileInfo>> byKey = new LinkedHashMap<>();
+            chunk.forEach( fileInfo -> byKey.computeIfAbsent( fileInfo.getFileStorage(), k -> new ArrayList<>() )
+                                            .add( fileInfo ) );
+            List<ObjectIdentifier> objects = byKey.keySet()
+                                                  .stream()
+                                                  .map( key -> ObjectIdentifier.builder().key( key ).build() )
+                                                  .collect( Collectors.toList() );
+            DeleteObjectsRequest deleteObjectsRequest =
+                            DeleteObjectsRequest.builder()
+                                                .bucket( this.bucket )
+                                                .delete( Delete.builder().objects( objects ).quiet( true ).build() )
+                                                .build();
+            try
+            {
+                // quiet mode, the response only has the errors
+                DeleteObjectsResponse response = this.s3Client.deleteObjects( deleteObjectsRequest );
+                chunk.forEach( fileInfo -> ret.put( fileInfo, true ) );
+                for ( S3Error error : response.errors() )
+                {
+                    logger.error( "Failed to delete file: {}, code: {}, message: {}", error.key(), error.code(),
+                                  error.message() );
+                    byKey.getOrDefault( error.key(), Collections.emptyList() )
+                         .forEach( fileInfo -> ret.put( fileInfo, false ) );
+                }
+            }
+            catch ( S3Exception e )
+            {
+                logger.error( "Failed to delete files, size: " + chunk.size(), e );
+                chunk.forEach( fileInfo -> ret.put( fileInfo, false ) );
+            }
+        }
+        return ret;
+    }
+
     @Override
     public boolean exists( String storageFile )
     {
@@ -149,4 +377,35 @@ public class S3PhysicalStore implements PhysicalStore
             }
         }
     }
+
+    /**
+     * Stop the upload and read threads. The S3 client is owned by the caller and left open.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if ( uploadExecutor != null )
+        {
+            uploadExecutor.shutdown();
+        }
+        if ( readExecutor != null )
+        {
+            readExecutor.shutdown();
+        }
+    }
+
+    /**
+     * A pool of at most 'threads' threads, the idle ones exit after a minute.
+     */
+    private static ThreadPoolExecutor newPool( int threads, String name )
+    {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( threads, threads, 1, TimeUnit.MINUTES,
+                                                              new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread( r, name );
+            t.setDaemon( true );
+            return t;
+        } );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
 }
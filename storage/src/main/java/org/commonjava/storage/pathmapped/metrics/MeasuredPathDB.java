@@ -17,21 +17,31 @@ package org.commonjava.storage.pathmapped.metrics;
 
 import org.commonjava.o11yphant.metrics.MetricsManager;
 import org.commonjava.storage.pathmapped.model.FileChecksum;
+import org.commonjava.storage.pathmapped.model.ListPage;
 import org.commonjava.storage.pathmapped.model.PathMap;
 import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
 import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.spi.RefreshablePathDB;
 
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static org.commonjava.o11yphant.metrics.util.NameUtils.name;
 
+/**
+ * Times each call of the decorated PathDB. The async calls are passed to the decorated PathDB if it is an
+ * {@link AsyncPathDB}, and timed until the future completes.
+ */
 public class MeasuredPathDB
-                implements PathDB
+                implements PathDB, AsyncPathDB, RefreshablePathDB
 {
     private final PathDB decorated;
 
@@ -70,11 +80,23 @@ public class MeasuredPathDB
         return measure( () -> decorated.list( fileSystem, path, recursive, limit, fileType ), "listRecursively" );
     }
 
+    @Override
+    public ListPage list( String fileSystem, String path, FileType fileType, int pageSize, String pagingState )
+    {
+        return measure( () -> decorated.list( fileSystem, path, fileType, pageSize, pagingState ), "listPage" );
+    }
+
     @Override
     public PathMap getPathMap(String fileSystem, String path) {
         return measure( () -> decorated.getPathMap( fileSystem, path ), "getPathMap" );
     }
 
+    @Override
+    public Map<String, PathMap> getPathMaps( String fileSystem, Collection<String> paths )
+    {
+        return measure( () -> decorated.getPathMaps( fileSystem, paths ), "getPathMaps" );
+    }
+
     @Override
     public long getFileLength( String fileSystem, String path )
     {
@@ -93,6 +115,12 @@ public class MeasuredPathDB
         return measure( () -> decorated.exists( fileSystem, path ), "exists" );
     }
 
+    @Override
+    public Map<String, FileType> existsAll( String fileSystem, Collection<String> paths )
+    {
+        return measure( () -> decorated.existsAll( fileSystem, paths ), "existsAll" );
+    }
+
     @Override
     public boolean existsFile( String fileSystem, String path )
     {
@@ -106,6 +134,14 @@ public class MeasuredPathDB
         measure( () -> decorated.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum ), "insert" );
     }
 
+    @Override
+    public void insert( String fileSystem, String path, Date creation, Date expiration, String fileId, long size,
+                        String fileStorage, String checksum, Map<String, String> digests )
+    {
+        measure( () -> decorated.insert( fileSystem, path, creation, expiration, fileId, size, fileStorage, checksum,
+                                         digests ), "insert" );
+    }
+
     @Override
     public boolean isDirectory( String fileSystem, String path )
     {
@@ -177,6 +213,15 @@ public class MeasuredPathDB
         measure( () -> decorated.makeDirs( fileSystem, path ), "makeDirs" );
     }
 
+    @Override
+    public void refresh( String fileSystem, String path )
+    {
+        if ( decorated instanceof RefreshablePathDB )
+        {
+            measure( () -> ( (RefreshablePathDB) decorated ).refresh( fileSystem, path ), "refresh" );
+        }
+    }
+
     @Override
     public List<Reclaim> listOrphanedFiles( int limit )
     {
@@ -189,6 +234,84 @@ public class MeasuredPathDB
         decorated.removeFromReclaim( reclaim );
     }
 
+    @Override
+    public boolean isAsyncSupported()
+    {
+        return decorated instanceof AsyncPathDB && ( (AsyncPathDB) decorated ).isAsyncSupported();
+    }
+
+    @Override
+    public CompletableFuture<PathMap> getPathMapAsync( String fileSystem, String path )
+    {
+        return measureAsync( () -> decoratedAsync().getPathMapAsync( fileSystem, path ), "getPathMapAsync" );
+    }
+
+    @Override
+    public CompletableFuture<FileType> existsAsync( String fileSystem, String path )
+    {
+        return measureAsync( () -> decoratedAsync().existsAsync( fileSystem, path ), "existsAsync" );
+    }
+
+    @Override
+    public CompletableFuture<List<PathMap>> listAsync( String fileSystem, String path, FileType fileType )
+    {
+        return measureAsync( () -> decoratedAsync().listAsync( fileSystem, path, fileType ), "listAsync" );
+    }
+
+    @Override
+    public CompletableFuture<Void> insertAsync( String fileSystem, String path, Date creation, Date expiration,
+                                                String fileId, long size, String fileStorage, String checksum )
+    {
+        return measureAsync( () -> decoratedAsync().insertAsync( fileSystem, path, creation, expiration, fileId, size,
+                                                                 fileStorage, checksum ), "insertAsync" );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync( String fileSystem, String path, boolean force )
+    {
+        return measureAsync( () -> decoratedAsync().deleteAsync( fileSystem, path, force ), "deleteAsync" );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath )
+    {
+        return measureAsync( () -> decoratedAsync().copyAsync( fromFileSystem, fromPath, toFileSystem, toPath ),
+                             "copyAsync" );
+    }
+
+    @Override
+    public CompletableFuture<Boolean> copyAsync( String fromFileSystem, String fromPath, String toFileSystem,
+                                                 String toPath, Date creation, Date expiration )
+    {
+        return measureAsync( () -> decoratedAsync().copyAsync( fromFileSystem, fromPath, toFileSystem, toPath,
+                                                               creation, expiration ), "copyAsync" );
+    }
+
+    private AsyncPathDB decoratedAsync()
+    {
+        if ( !isAsyncSupported() )
+        {
+            throw new UnsupportedOperationException(
+                            "Decorated PathDB has no async support: " + decorated.getClass().getName() );
+        }
+        return (AsyncPathDB) decorated;
+    }
+
+    private <T> CompletableFuture<T> measureAsync( Supplier<CompletableFuture<T>> methodSupplier, String metricName )
+    {
+        if ( metricsManager == null || !isMetricEnabled( metricName ) )
+        {
+            return methodSupplier.get();
+        }
+        long start = System.nanoTime();
+        return methodSupplier.get()
+                             .whenComplete( ( r, e ) -> metricsManager.getMetricRegistry()
+                                                                      .timer( name( metricPrefix, metricName ) )
+                                                                      .update( System.nanoTime() - start,
+                                                                               TimeUnit.NANOSECONDS ) );
+    }
+
     private void measure( Runnable runnable, String metricName )
     {
         if ( metricsManager != null && isMetricEnabled( metricName ) )
@@ -18,52 +18,286 @@ package org.commonjava.storage.pathmapped.util;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 
 import static org.apache.commons.codec.binary.Hex.encodeHexString;
 
+/**
+ * Compute one or more digests of a stream in a single pass over the bytes. The first algorithm is the primary one,
+ * used as the dedupe key. The others (e.g., MD5 and SHA-1 for Maven) come for the cost of the hashing only, not
+ * another read of the content.
+ * <p>
+ * With a pipeline executor, the digesting runs in the background in the order of updates, overlapped with the
+ * writing. The writer is held back when the pending bytes exceed {@link #MAX_PENDING_BYTES}.
+ */
 public class ChecksumCalculator
 {
-    private final MessageDigest digester;
+    /**
+     * Fast non-cryptographic checksum (hardware accelerated CRC32C). Good to detect corruption, but it is refused as
+     * the dedupe key.
+     */
+    public static final String CRC32C = "CRC32C";
+
+    static final long MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+    private static final int BYTE_BUFFER_SIZE = 8192;
+
+    private final String algorithm;
+
+    private final Map<String, Digester> digesters = new LinkedHashMap<>();
 
-    private String digestHex;
+    private final Executor pipeline;
+
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private volatile CompletableFuture<Void> pending = CompletableFuture.completedFuture( null );
+
+    // single bytes written in pipeline mode, handed over as one block
+    private byte[] byteBuffer;
+
+    private int buffered;
+
+    private Map<String, String> digestHex;
 
     private static Provider provider;
 
     public ChecksumCalculator( final String algorithm )
             throws NoSuchAlgorithmException
     {
-        if (provider == null)
+        this( algorithm, Collections.emptyList(), null );
+    }
+
+    /**
+     * @param extraAlgorithms digests computed in the same pass besides the primary one
+     * @param pipeline executor to digest in the background, null to digest on the caller thread
+     */
+    public ChecksumCalculator( final String algorithm, final Collection<String> extraAlgorithms,
+                               final Executor pipeline )
+            throws NoSuchAlgorithmException
+    {
+        this.algorithm = algorithm;
+        this.pipeline = pipeline;
+        digesters.put( algorithm, newDigester( algorithm ) );
+        for ( String extra : extraAlgorithms )
+        {
+            if ( !digesters.containsKey( extra ) )
+            {
+                digesters.put( extra, newDigester( extra ) );
+            }
+        }
+    }
+
+    private static Digester newDigester( final String algorithm )
+            throws NoSuchAlgorithmException
+    {
+        if ( CRC32C.equals( algorithm ) )
+        {
+            return new ChecksumDigester( new CRC32C() );
+        }
+        MessageDigest digester;
+        if ( provider == null )
         {
-            this.digester = MessageDigest.getInstance( algorithm );
-            this.provider = this.digester.getProvider();
+            digester = MessageDigest.getInstance( algorithm );
+            provider = digester.getProvider();
         }
         else
         {
-            this.digester = MessageDigest.getInstance( algorithm, this.provider );
+            try
+            {
+                digester = MessageDigest.getInstance( algorithm, provider );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                digester = MessageDigest.getInstance( algorithm );
+            }
         }
+        return new MessageDigester( digester );
+    }
+
+    public String getAlgorithm()
+    {
+        return algorithm;
     }
 
     public final void update( final byte[] data )
     {
-        digester.update( data );
+        update( data, 0, data.length );
     }
 
     public final void update( final byte data )
     {
-        digester.update( data );
+        if ( pipeline == null )
+        {
+            for ( Digester digester : digesters.values() )
+            {
+                digester.update( data );
+            }
+        }
+        else
+        {
+            if ( byteBuffer == null )
+            {
+                byteBuffer = new byte[BYTE_BUFFER_SIZE];
+            }
+            byteBuffer[buffered++] = data;
+            if ( buffered == byteBuffer.length )
+            {
+                flushBytes();
+            }
+        }
     }
 
     public final void update( final byte[] data, final int offset, final int len )
     {
-        digester.update( data, offset, len );
+        if ( pipeline == null )
+        {
+            digestAll( data, offset, len );
+            return;
+        }
+        flushBytes();
+        submit( data, offset, len );
+    }
+
+    private void flushBytes()
+    {
+        if ( buffered > 0 )
+        {
+            int len = buffered;
+            buffered = 0;
+            submit( byteBuffer, 0, len );
+        }
     }
 
-    public synchronized String getDigestHex()
+    private void submit( final byte[] data, final int offset, final int len )
+    {
+        // the caller reuses its buffer, so digest a copy
+        final byte[] copy = Arrays.copyOfRange( data, offset, offset + len );
+        pendingBytes.addAndGet( len );
+        pending = pending.thenRunAsync( () -> {
+            digestAll( copy, 0, len );
+            pendingBytes.addAndGet( -len );
+        }, pipeline );
+        if ( pendingBytes.get() > MAX_PENDING_BYTES )
+        {
+            pending.join();
+        }
+    }
+
+    private void digestAll( final byte[] data, final int offset, final int len )
+    {
+        for ( Digester digester : digesters.values() )
+        {
+            digester.update( data, offset, len );
+        }
+    }
+
+    /**
+     * Get the primary digest.
+     */
+    public String getDigestHex()
+    {
+        return getDigests().get( algorithm );
+    }
+
+    /**
+     * Get the digest of the given algorithm, or null if it was not computed.
+     */
+    public String getDigestHex( final String algorithm )
+    {
+        return getDigests().get( algorithm );
+    }
+
+    /**
+     * Get all digests by algorithm, the primary one first.
+     */
+    public synchronized Map<String, String> getDigests()
     {
         if ( digestHex == null )
         {
-            digestHex = encodeHexString( digester.digest() );
+            flushBytes();
+            pending.join();
+            Map<String, String> ret = new LinkedHashMap<>();
+            digesters.forEach( ( alg, digester ) -> ret.put( alg, encodeHexString( digester.digest() ) ) );
+            digestHex = Collections.unmodifiableMap( ret );
         }
         return digestHex;
     }
+
+    private interface Digester
+    {
+        void update( byte data );
+
+        void update( byte[] data, int offset, int len );
+
+        byte[] digest();
+    }
+
+    private static final class MessageDigester
+                    implements Digester
+    {
+        private final MessageDigest digest;
+
+        MessageDigester( MessageDigest digest )
+        {
+            this.digest = digest;
+        }
+
+        @Override
+        public void update( byte data )
+        {
+            digest.update( data );
+        }
+
+        @Override
+        public void update( byte[] data, int offset, int len )
+        {
+            digest.update( data, offset, len );
+        }
+
+        @Override
+        public byte[] digest()
+        {
+            return digest.digest();
+        }
+    }
+
+    private static final class ChecksumDigester
+                    implements Digester
+    {
+        private final Checksum checksum;
+
+        ChecksumDigester( Checksum checksum )
+        {
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void update( byte data )
+        {
+            checksum.update( data );
+        }
+
+        @Override
+        public void update( byte[] data, int offset, int len )
+        {
+            checksum.update( data, offset, len );
+        }
+
+        @Override
+        public byte[] digest()
+        {
+            int value = (int) checksum.getValue();
+            return new byte[] { (byte) ( value >>> 24 ), (byte) ( value >>> 16 ), (byte) ( value >>> 8 ),
+                            (byte) value };
+        }
+    }
 }
@@ -120,9 +120,14 @@ public abstract class AbstractCassandraFMTest
         // In test, we should let gc happened immediately when triggered.
         config.setGcGracePeriodInHours( 0 );
         config.setDeduplicatePattern( "^(generic|npm|test).*" );
+        customizeConfig( config );
         pathDB = new CassandraPathDB( config );
     }
 
+    protected void customizeConfig( DefaultPathMappedStorageConfig config )
+    {
+    }
+
     protected Map<String, Object> getProps()
     {
         Map<String, Object> props = new HashMap<>();
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_ORDERED_BY_KEY;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_QUEUE_SIZE;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_REJECTION_POLICY;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_THREADS;
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_WORKER_ENABLED;
+import static org.junit.Assert.assertEquals;
+
+public class AsyncJobExecutorTest
+{
+    @Test
+    public void callerRunsWhenQueueIsFull() throws Exception
+    {
+        Map<String, Object> props = new HashMap<>();
+        props.put( PROP_ASYNC_WORKER_ENABLED, true );
+        props.put( PROP_ASYNC_THREADS, 1 );
+        props.put( PROP_ASYNC_QUEUE_SIZE, 2 );
+        props.put( PROP_ASYNC_REJECTION_POLICY, "caller_runs" );
+        AsyncJobExecutor executor = new AsyncJobExecutor( new DefaultPathMappedStorageConfig( props ) );
+
+        CountDownLatch running = new CountDownLatch( 1 );
+        CountDownLatch release = new CountDownLatch( 1 );
+        executor.execute( () -> {
+            running.countDown();
+            await( release );
+        } );
+        running.await();
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            executor.execute( () -> {} );
+        }
+        assertEquals( 2, executor.getQueueDepth() );
+
+        // the jobs are never dropped, they run on the caller when the queue is full
+        Thread caller = Thread.currentThread();
+        List<Thread> ranOn = Collections.synchronizedList( new ArrayList<>() );
+        executor.execute( () -> ranOn.add( Thread.currentThread() ) );
+        executor.execute( "fileId", () -> ranOn.add( Thread.currentThread() ) );
+        assertEquals( 2, ranOn.size() );
+        assertEquals( caller, ranOn.get( 0 ) );
+        assertEquals( caller, ranOn.get( 1 ) );
+        assertEquals( 2, executor.getQueueDepth() );
+
+        release.countDown();
+        executor.shutdownAndWaitTermination();
+        assertEquals( 0, executor.getQueueDepth() );
+    }
+
+    @Test
+    public void sameKeyRunsInOrder()
+    {
+        Map<String, Object> props = new HashMap<>();
+        props.put( PROP_ASYNC_WORKER_ENABLED, true );
+        props.put( PROP_ASYNC_THREADS, 4 );
+        props.put( PROP_ASYNC_REJECTION_POLICY, "block" );
+        props.put( PROP_ASYNC_ORDERED_BY_KEY, true );
+        AsyncJobExecutor executor = new AsyncJobExecutor( new DefaultPathMappedStorageConfig( props ) );
+
+        List<Integer> ran = Collections.synchronizedList( new ArrayList<>() );
+        List<Integer> expected = new ArrayList<>();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            final int n = i;
+            expected.add( n );
+            executor.execute( "fileId", () -> ran.add( n ) );
+            executor.execute( "other-" + i, () -> {} );
+        }
+        executor.shutdownAndWaitTermination();
+        assertEquals( expected, ran );
+    }
+
+    private void await( CountDownLatch latch )
+    {
+        try
+        {
+            latch.await();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
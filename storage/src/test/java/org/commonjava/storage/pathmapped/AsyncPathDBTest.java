@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.core.PathMappedInputStream;
+import org.commonjava.storage.pathmapped.spi.AsyncPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncPathDBTest
+        extends AbstractCassandraFMTest
+{
+    @Test
+    public void readAndListAsync() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        writeWithContent( TEST_FS, path2, simpleContent );
+
+        assertTrue( fileManager.existsAsync( TEST_FS, path1 ).join() );
+        assertTrue( fileManager.existsAsync( TEST_FS, pathSub1 ).join() );
+        assertFalse( fileManager.existsAsync( TEST_FS, pathSub1 + "/missing.txt" ).join() );
+
+        try (PathMappedInputStream is = fileManager.openInputStreamAsync( TEST_FS, path1 ).join())
+        {
+            assertEquals( simpleContent.length(), is.getSize() );
+            assertEquals( simpleContent, IOUtils.toString( is ) );
+        }
+
+        String[] files = fileManager.listAsync( TEST_FS, pathSub1, PathDB.FileType.file ).join();
+        assertEquals( Arrays.asList( fileManager.list( TEST_FS, pathSub1, PathDB.FileType.file ) ),
+                      Arrays.asList( files ) );
+    }
+
+    @Test
+    public void openMissingFileAsync()
+    {
+        try
+        {
+            fileManager.openInputStreamAsync( TEST_FS, path1 ).join();
+            fail( "Should not open a missing file" );
+        }
+        catch ( CompletionException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void insertCopyAndDeleteAsync()
+    {
+        AsyncPathDB asyncPathDB = (AsyncPathDB) fileManager.getPathDB();
+        writeWithContent( TEST_FS, path1, simpleContent );
+        String storageFile = fileManager.getFileStoragePath( TEST_FS, path1 );
+
+        asyncPathDB.insertAsync( TEST_FS, path2, new Date(), null, "async-id", simpleContent.length(), storageFile,
+                                 null ).join();
+        checkRead( TEST_FS, path2, true, simpleContent );
+
+        assertTrue( fileManager.copyAsync( TEST_FS, path1, TEST_FS + "-copy", path1, new Date(), null ).join() );
+        checkRead( TEST_FS + "-copy", path1, true, simpleContent );
+
+        assertTrue( fileManager.deleteAsync( TEST_FS, path2 ).join() );
+        assertNull( fileManager.getPathMapAsync( TEST_FS, path2 ).join() );
+        assertNotNull( fileManager.getPathMapAsync( TEST_FS, path1 ).join() );
+    }
+
+    @Test
+    public void expiredFileIsDeletedAsync() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent, 1, TimeUnit.SECONDS );
+        assertTrue( fileManager.existsAsync( TEST_FS, path1 ).join() );
+
+        sleep( 1500 );
+        assertFalse( fileManager.existsAsync( TEST_FS, path1 ).join() );
+        assertNull( fileManager.getPathMap( TEST_FS, path1 ) );
+    }
+}
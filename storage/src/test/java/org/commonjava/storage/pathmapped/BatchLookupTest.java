@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class BatchLookupTest
+        extends AbstractCassandraFMTest
+{
+    @Test
+    public void getPathMaps()
+    {
+        List<String> paths = new ArrayList<>();
+        for ( int i = 0; i < 250; i++ )
+        {
+            String path = pathSub1 + "/file-" + i + ".txt";
+            writeWithContent( TEST_FS, path, simpleContent + i );
+            paths.add( path );
+        }
+        writeWithContent( TEST_FS, path2, simpleContent );
+        paths.add( path2 );
+
+        String missing = pathSub2 + "/missing.txt";
+        paths.add( missing );
+
+        PathDB pathDB = fileManager.getPathDB();
+        Map<String, PathMap> pathMaps = pathDB.getPathMaps( TEST_FS, paths );
+        assertEquals( 251, pathMaps.size() );
+        assertFalse( pathMaps.containsKey( missing ) );
+        assertEquals( ( simpleContent + "42" ).length(), pathMaps.get( pathSub1 + "/file-42.txt" ).getSize() );
+        assertEquals( pathDB.getPathMap( TEST_FS, path2 ).getFileId(), pathMaps.get( path2 ).getFileId() );
+    }
+
+    @Test
+    public void existsAll()
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        writeWithContent( TEST_FS, path2, simpleContent );
+
+        String missing = pathSub1 + "/missing.txt";
+        Map<String, PathDB.FileType> ret = fileManager.getPathDB()
+                                                      .existsAll( TEST_FS, Arrays.asList( path1, path2, pathSub1,
+                                                                                          pathSub2 + "/", missing,
+                                                                                          "/" ) );
+        assertEquals( PathDB.FileType.file, ret.get( path1 ) );
+        assertEquals( PathDB.FileType.file, ret.get( path2 ) );
+        assertEquals( PathDB.FileType.dir, ret.get( pathSub1 ) );
+        assertEquals( PathDB.FileType.dir, ret.get( pathSub2 + "/" ) );
+        assertEquals( PathDB.FileType.dir, ret.get( "/" ) );
+        assertNull( ret.get( missing ) );
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.cache.CachingPathDB;
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CachingPathDBTest
+        extends AbstractCassandraFMTest
+{
+    private CachingPathDB cachingPathDB;
+
+    private PathMappedFileManager uncachedFileManager;
+
+    @Before
+    public void prepareCache()
+    {
+        uncachedFileManager = fileManager;
+        cachingPathDB = new CachingPathDB( uncachedFileManager.getPathDB() );
+
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig();
+        config.setGcIntervalInMinutes( 0 );
+        fileManager = new PathMappedFileManager( config, cachingPathDB,
+                                                 new FileBasedPhysicalStore( new File( getBaseDir() ) ) );
+    }
+
+    @Test
+    public void repeatedLookupIsServedFromCache()
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+
+        PathMap pathMap = cachingPathDB.getPathMap( TEST_FS, path1 );
+        assertNotNull( pathMap );
+        assertSame( pathMap, cachingPathDB.getPathMap( TEST_FS, path1 ) );
+        assertEquals( simpleContent.length(), fileManager.getFileLength( TEST_FS, path1 ) );
+        assertTrue( fileManager.exists( TEST_FS, path1 ) );
+        checkRead( TEST_FS, path1, true, simpleContent );
+    }
+
+    @Test
+    public void writeInvalidatesCachedEntry()
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        checkRead( TEST_FS, path1, true, simpleContent );
+
+        String updated = simpleContent + " updated";
+        writeWithContent( TEST_FS, path1, updated );
+        checkRead( TEST_FS, path1, true, updated );
+        assertEquals( updated.length(), fileManager.getFileLength( TEST_FS, path1 ) );
+    }
+
+    @Test
+    public void missIsCachedUntilWrittenThroughCache() throws Exception
+    {
+        assertNull( cachingPathDB.getPathMap( TEST_FS, path1 ) );
+        assertFalse( fileManager.isDirectory( TEST_FS, pathSub1 ) );
+
+        // written by another node, the negative entry still holds
+        writeWithContent( uncachedFileManager.openOutputStream( TEST_FS, path1 ), simpleContent );
+        assertNull( cachingPathDB.getPathMap( TEST_FS, path1 ) );
+
+        cachingPathDB.invalidateAll();
+        assertNotNull( cachingPathDB.getPathMap( TEST_FS, path1 ) );
+
+        // written through the cache, the entry and the parent dirs are invalidated
+        assertNull( cachingPathDB.getPathMap( TEST_FS, path2 ) );
+        assertNull( cachingPathDB.getPathMap( TEST_FS, pathSub2 + "/" ) );
+        writeWithContent( TEST_FS, path2, simpleContent );
+        assertNotNull( cachingPathDB.getPathMap( TEST_FS, path2 ) );
+        assertNotNull( cachingPathDB.getPathMap( TEST_FS, pathSub2 + "/" ) );
+    }
+
+    @Test
+    public void purgeInvalidatesCachedEntries() throws Exception
+    {
+        writeWithContent( uncachedFileManager.openOutputStream( TEST_FS, path2 ), simpleContent );
+        uncachedFileManager.delete( TEST_FS, path2 );
+        assertNull( cachingPathDB.getPathMap( TEST_FS, path1 ) );
+
+        // the filesystem is created again by another node after the purge
+        cachingPathDB.purgeFilesystem( cachingPathDB.getFilesystem( TEST_FS ) );
+        writeWithContent( uncachedFileManager.openOutputStream( TEST_FS, path1 ), simpleContent );
+        assertNotNull( cachingPathDB.getPathMap( TEST_FS, path1 ) );
+    }
+
+    @Test
+    public void deleteInvalidatesCachedEntry()
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        assertTrue( fileManager.exists( TEST_FS, path1 ) );
+
+        fileManager.delete( TEST_FS, path1 );
+        assertFalse( fileManager.exists( TEST_FS, path1 ) );
+        assertNull( fileManager.getPathMap( TEST_FS, path1 ) );
+    }
+
+    @Test
+    public void entryDoesNotOutliveExpiration() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent, 1, TimeUnit.SECONDS );
+        assertNotNull( fileManager.getFileStoragePath( TEST_FS, path1 ) );
+
+        sleep( 1500 );
+        assertNull( fileManager.getFileStoragePath( TEST_FS, path1 ) );
+        assertFalse( fileManager.exists( TEST_FS, path1 ) );
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.assertEquals;
+
+public class ChannelTransferTest
+        extends AbstractCassandraFMTest
+{
+    @Test
+    public void openChannel() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+
+        try (FileChannel channel = fileManager.openChannel( TEST_FS, path1 ))
+        {
+            assertEquals( simpleContent.length(), channel.size() );
+            ByteBuffer buf = ByteBuffer.allocate( (int) channel.size() );
+            channel.read( buf );
+            assertEquals( simpleContent, new String( buf.array() ) );
+        }
+    }
+
+    @Test
+    public void transferTo() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent ); // "This is a test"
+
+        assertEquals( simpleContent, transfer( 0, -1 ) );
+        assertEquals( "is a", transfer( 5, 4 ) );
+        assertEquals( "test", transfer( 10, 100 ) );
+        assertEquals( "", transfer( 100, -1 ) );
+    }
+
+    private String transfer( long offset, long length ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (WritableByteChannel target = Channels.newChannel( out ))
+        {
+            long sent = fileManager.transferTo( TEST_FS, path1, offset, length, target );
+            assertEquals( out.size(), sent );
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.core.ContentAddressedFileStore;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContentAddressedFileStoreTest
+{
+    private static final String CONTENT = "This is a test";
+
+    private static final String CHECKSUM = "c7be1ed902fb8dd4d48997c6452f5d7e509fbcdbe2808b16bcf4edce4c07d14e";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File baseDir;
+
+    private ContentAddressedFileStore store;
+
+    @Before
+    public void setup() throws Exception
+    {
+        baseDir = temp.newFolder();
+        store = new ContentAddressedFileStore( baseDir );
+    }
+
+    @Test
+    public void duplicateLinkedToOneCopy() throws Exception
+    {
+        FileInfo first = write( CONTENT );
+        FileInfo second = write( CONTENT );
+
+        assertTrue( Files.isSameFile( file( first ), file( second ) ) );
+        assertEquals( 3, Files.getAttribute( file( first ), "unix:nlink" ) ); // two files and the content
+        assertEquals( CONTENT, read( second ) );
+
+        store.delete( first );
+        assertEquals( CONTENT, read( second ) );
+        assertEquals( 2, Files.getAttribute( file( second ), "unix:nlink" ) );
+
+        // the last delete removes the content too
+        store.delete( second );
+        assertEquals( 0, countContents() );
+    }
+
+    @Test
+    public void purgeUnreferencedContent() throws Exception
+    {
+        FileInfo fileInfo = write( CONTENT );
+        fileInfo.setChecksum( null ); // deleted without checksum, the content is left
+        store.delete( fileInfo );
+        assertFalse( Files.exists( file( fileInfo ) ) );
+        assertEquals( 1, countContents() );
+
+        assertEquals( 1, store.purgeUnreferencedContent() );
+        assertEquals( 0, countContents() );
+    }
+
+    private FileInfo write( String content ) throws Exception
+    {
+        FileInfo fileInfo = store.getFileInfo( "test", "/path/to/file" );
+        try (OutputStream out = store.getOutputStream( fileInfo ))
+        {
+            out.write( content.getBytes() );
+        }
+        store.commit( fileInfo, CHECKSUM, content.length() );
+        fileInfo.setChecksum( CHECKSUM );
+        return fileInfo;
+    }
+
+    private String read( FileInfo fileInfo ) throws Exception
+    {
+        try (InputStream in = store.getInputStream( fileInfo.getFileStorage() ))
+        {
+            return IOUtils.toString( in );
+        }
+    }
+
+    private Path file( FileInfo fileInfo )
+    {
+        return new File( baseDir, fileInfo.getFileStorage() ).toPath();
+    }
+
+    private long countContents() throws Exception
+    {
+        return Files.walk( baseDir.toPath().resolve( "cas" ) ).filter( Files::isRegularFile ).count();
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileReadCacheTest
+{
+    private static final int MAX_CACHED_FILE_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File baseDir;
+
+    private FileBasedPhysicalStore store;
+
+    @Before
+    public void setup() throws Exception
+    {
+        baseDir = temp.newFolder();
+        store = new FileBasedPhysicalStore( baseDir, 1024 * 1024, MAX_CACHED_FILE_SIZE );
+    }
+
+    @Test
+    public void smallFilesServedFromCache() throws Exception
+    {
+        byte[] tiny = "<metadata/>".getBytes();
+        byte[] mapped = content( 32 * 1024 ); // above the heap threshold, memory-mapped
+        FileInfo tinyFile = write( tiny );
+        FileInfo mappedFile = write( mapped );
+
+        assertArrayEquals( tiny, read( tinyFile ) );
+        assertArrayEquals( mapped, read( mappedFile ) );
+
+        // remove behind the store, the cached ones are still served without touching the disk
+        assertTrue( new File( baseDir, tinyFile.getFileStorage() ).delete() );
+        assertTrue( new File( baseDir, mappedFile.getFileStorage() ).delete() );
+        assertArrayEquals( tiny, read( tinyFile ) );
+        assertArrayEquals( mapped, read( mappedFile ) );
+
+        try (InputStream in = store.getInputStream( mappedFile.getFileStorage(), 100, 10 ))
+        {
+            assertArrayEquals( Arrays.copyOfRange( mapped, 100, 110 ), IOUtils.toByteArray( in ) );
+        }
+
+        // delete through the store drops the entry
+        store.delete( tinyFile );
+        assertNull( store.getInputStream( tinyFile.getFileStorage() ) );
+    }
+
+    @Test
+    public void largeFileNotCached() throws Exception
+    {
+        byte[] large = content( MAX_CACHED_FILE_SIZE + 1 );
+        FileInfo largeFile = write( large );
+
+        assertArrayEquals( large, read( largeFile ) );
+        assertTrue( new File( baseDir, largeFile.getFileStorage() ).delete() );
+        assertNull( store.getInputStream( largeFile.getFileStorage() ) );
+    }
+
+    private FileInfo write( byte[] content ) throws Exception
+    {
+        FileInfo fileInfo = store.getFileInfo( "test", "/path/to/file" );
+        try (OutputStream out = store.getOutputStream( fileInfo ))
+        {
+            out.write( content );
+        }
+        return fileInfo;
+    }
+
+    private byte[] read( FileInfo fileInfo ) throws Exception
+    {
+        try (InputStream in = store.getInputStream( fileInfo.getFileStorage() ))
+        {
+            byte[] bytes = IOUtils.toByteArray( in );
+            assertEquals( 0, in.available() );
+            return bytes;
+        }
+    }
+
+    private static byte[] content( int size )
+    {
+        byte[] bytes = new byte[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
@@ -15,13 +15,23 @@
  */
 package org.commonjava.storage.pathmapped;
 
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
 import org.commonjava.storage.pathmapped.model.Reclaim;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
 import org.commonjava.storage.pathmapped.spi.PathDB;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class GcTest
         extends AbstractCassandraFMTest
@@ -48,4 +58,94 @@ public class GcTest
         System.out.println("Test complete\n");
     }
 
+    @Test
+    public void parallelGcSkipsFailedFiles() throws Exception
+    {
+        int files = 10;
+        for ( int i = 0; i < files; i++ )
+        {
+            writeWithContent( TEST_FS, "/gc/file-" + i, "simpleContent" + i );
+        }
+        String failingStorage = fileManager.getFileStoragePath( TEST_FS, "/gc/file-0" );
+        for ( int i = 0; i < files; i++ )
+        {
+            fileManager.delete( TEST_FS, "/gc/file-" + i );
+        }
+        assertEquals( files, fileManager.getPathDB().listOrphanedFiles().size() );
+
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig();
+        config.setGcIntervalInMinutes( 0 );
+        config.setGcThreads( 4 );
+        config.setGcDeletesPerSecond( 100 );
+        config.setGcRetries( 1 );
+        AtomicInteger failedAttempts = new AtomicInteger();
+        FileBasedPhysicalStore failingStore = new FileBasedPhysicalStore( new File( getBaseDir() ) )
+        {
+            @Override
+            public boolean delete( FileInfo fileInfo )
+            {
+                if ( failingStorage.equals( fileInfo.getFileStorage() ) )
+                {
+                    failedAttempts.incrementAndGet();
+                    return false;
+                }
+                return super.delete( fileInfo );
+            }
+        };
+        PathMappedFileManager gcFileManager =
+                        new PathMappedFileManager( config, fileManager.getPathDB(), failingStore );
+
+        Map<FileInfo, Boolean> results = gcFileManager.gc();
+        assertEquals( files, results.size() );
+        results.forEach( ( fileInfo, deleted ) -> {
+            if ( failingStorage.equals( fileInfo.getFileStorage() ) )
+            {
+                assertFalse( deleted );
+            }
+            else
+            {
+                assertTrue( deleted );
+            }
+        } );
+        assertEquals( 2, failedAttempts.get() ); // tried once and retried once
+
+        // the failed one stays for the next gc
+        List<Reclaim> orFiles = fileManager.getPathDB().listOrphanedFiles();
+        assertEquals( 1, orFiles.size() );
+        assertEquals( failingStorage, orFiles.get( 0 ).getStorage() );
+    }
+
+    @Test
+    public void gcDeletesInBatches() throws Exception
+    {
+        int files = 10;
+        for ( int i = 0; i < files; i++ )
+        {
+            writeWithContent( TEST_FS, "/batch/file-" + i, "simpleContent" + i );
+            fileManager.delete( TEST_FS, "/batch/file-" + i );
+        }
+        assertEquals( files, fileManager.getPathDB().listOrphanedFiles().size() );
+
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig();
+        config.setGcIntervalInMinutes( 0 );
+        config.setGcThreads( 2 );
+        AtomicInteger batches = new AtomicInteger();
+        FileBasedPhysicalStore countingStore = new FileBasedPhysicalStore( new File( getBaseDir() ) )
+        {
+            @Override
+            public Map<FileInfo, Boolean> deleteAll( Collection<FileInfo> fileInfos )
+            {
+                batches.incrementAndGet();
+                return super.deleteAll( fileInfos );
+            }
+        };
+        PathMappedFileManager gcFileManager =
+                        new PathMappedFileManager( config, fileManager.getPathDB(), countingStore );
+
+        Map<FileInfo, Boolean> results = gcFileManager.gc();
+        assertEquals( files, results.size() );
+        results.values().forEach( deleted -> assertTrue( deleted ) );
+        assertEquals( 2, batches.get() ); // one batch listed, split between two workers
+        assertEquals( 0, fileManager.getPathDB().listOrphanedFiles().size() );
+    }
 }
@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.pathdb.jpa.JPAPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.util.PathMapUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JPAPathDB on an in-memory H2, see the 'test' persistence unit.
+ */
+public class JPAPathDBTest
+{
+    private static final String TEST_FS = "test";
+
+    private static final String OTHER_FS = "other";
+
+    private static final int THREADS = 8;
+
+    private JPAPathDB pathDB;
+
+    @Before
+    public void setup()
+    {
+        pathDB = new JPAPathDB( "test" );
+    }
+
+    @After
+    public void teardown()
+    {
+        pathDB.close();
+    }
+
+    /**
+     * The writers share the parent dirs, so they race to create the same dirs.
+     */
+    @Test
+    public void concurrentInsertsAndMakeDirs() throws Exception
+    {
+        int filesPerThread = 20;
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        CountDownLatch start = new CountDownLatch( 1 );
+        List<Future<?>> futures = new ArrayList<>();
+        for ( int t = 0; t < THREADS; t++ )
+        {
+            final int thread = t;
+            futures.add( executor.submit( () -> {
+                start.await();
+                for ( int i = 0; i < filesPerThread; i++ )
+                {
+                    String dir = "/org/foo/" + i % 4;
+                    pathDB.makeDirs( TEST_FS, dir + "/sub" );
+                    pathDB.insert( TEST_FS, dir + "/file-" + thread + "-" + i, new Date(), null,
+                                   "id-" + thread + "-" + i, 10, "storage-" + thread + "-" + i, null );
+                }
+                return null;
+            } ) );
+        }
+        start.countDown();
+        for ( Future<?> future : futures )
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat( pathDB.list( TEST_FS, "/org/foo", PathDB.FileType.dir ).size(), equalTo( 4 ) );
+        List<PathMap> files = pathDB.list( TEST_FS, "/org", true, 0, PathDB.FileType.file );
+        assertThat( files.size(), equalTo( THREADS * filesPerThread ) );
+        for ( int i = 0; i < 4; i++ )
+        {
+            assertTrue( pathDB.isDirectory( TEST_FS, "/org/foo/" + i + "/sub/" ) );
+            assertThat( pathDB.list( TEST_FS, "/org/foo/" + i, PathDB.FileType.file ).size(),
+                        equalTo( THREADS * filesPerThread / 4 ) );
+        }
+    }
+
+    @Test
+    public void recursiveListAndTraverse()
+    {
+        insert( TEST_FS, "/foo/1.0/foo-1.0.pom" );
+        insert( TEST_FS, "/foo/1.0/foo-1.0.jar" );
+        insert( TEST_FS, "/foo/bar/2.0/bar-2.0.pom" );
+        insert( TEST_FS, "/foobar/1.0/foobar-1.0.pom" );
+
+        // the sibling "/foobar" shares the prefix of "/foo" but is not under it
+        List<String> files = paths( pathDB.list( TEST_FS, "/foo", true, 0, PathDB.FileType.file ) );
+        assertThat( files.size(), equalTo( 3 ) );
+        assertThat( files, hasItems( "/foo/1.0/foo-1.0.pom", "/foo/1.0/foo-1.0.jar", "/foo/bar/2.0/bar-2.0.pom" ) );
+
+        List<String> dirs = paths( pathDB.list( TEST_FS, "/foo", true, 0, PathDB.FileType.dir ) );
+        assertThat( dirs.size(), equalTo( 3 ) );
+        assertThat( dirs, hasItems( "/foo/1.0/", "/foo/bar/", "/foo/bar/2.0/" ) );
+        assertThat( pathDB.list( TEST_FS, "/foo", true, 0, PathDB.FileType.all ).size(), equalTo( 6 ) );
+
+        assertThat( pathDB.list( TEST_FS, "/foo", true, 2, PathDB.FileType.all ).size(), equalTo( 2 ) );
+        List<PathMap> traversed = new ArrayList<>();
+        pathDB.traverse( TEST_FS, "/", traversed::add, 0, PathDB.FileType.file );
+        assertThat( traversed.size(), equalTo( 4 ) );
+        traversed.clear();
+        pathDB.traverse( TEST_FS, "/", traversed::add, 3, PathDB.FileType.file );
+        assertThat( traversed.size(), equalTo( 3 ) );
+
+        // not recursive, only the children
+        assertThat( paths( pathDB.list( TEST_FS, "/foo", false, 0, PathDB.FileType.all ) ),
+                    hasItems( "/foo/1.0/", "/foo/bar/" ) );
+        assertThat( pathDB.list( TEST_FS, "/foo", false, 0, PathDB.FileType.all ).size(), equalTo( 2 ) );
+    }
+
+    /**
+     * '_' and '%' in the path are literal, not LIKE wildcards matching the siblings.
+     */
+    @Test
+    public void traverseEscapesLikeWildcards()
+    {
+        insert( TEST_FS, "/a_b/c/file1" );
+        insert( TEST_FS, "/axb/c/file2" );
+        insert( TEST_FS, "/50%/c/file3" );
+        insert( TEST_FS, "/50ab/c/file4" );
+
+        assertThat( paths( pathDB.list( TEST_FS, "/a_b", true, 0, PathDB.FileType.file ) ),
+                    equalTo( Arrays.asList( "/a_b/c/file1" ) ) );
+        assertThat( paths( pathDB.list( TEST_FS, "/50%", true, 0, PathDB.FileType.file ) ),
+                    equalTo( Arrays.asList( "/50%/c/file3" ) ) );
+    }
+
+    /**
+     * More paths than fit in one 'IN' query, in several dirs, plus missing ones.
+     */
+    @Test
+    public void groupLookups()
+    {
+        List<String> paths = new ArrayList<>();
+        for ( int i = 0; i < 150; i++ )
+        {
+            paths.add( "/many/file-" + i );
+        }
+        paths.add( "/few/file-0" );
+        paths.forEach( path -> insert( TEST_FS, path ) );
+        insert( OTHER_FS, "/few/file-0" );
+
+        List<String> requested = new ArrayList<>( paths );
+        requested.add( "/many/missing" );
+        requested.add( "/missing/file-0" );
+        requested.add( "/many/" );
+        Map<String, PathMap> found = pathDB.getPathMaps( TEST_FS, requested );
+        assertThat( found.size(), equalTo( paths.size() + 1 ) );
+        assertThat( found.get( "/many/file-149" ).getFilename(), equalTo( "file-149" ) );
+        assertNull( found.get( "/many/missing" ) );
+
+        Map<String, PathDB.FileType> exists = pathDB.existsAll( TEST_FS, requested );
+        assertThat( exists.get( "/few/file-0" ), equalTo( PathDB.FileType.file ) );
+        assertThat( exists.get( "/many/" ), equalTo( PathDB.FileType.dir ) );
+        assertFalse( exists.containsKey( "/missing/file-0" ) );
+
+        assertThat( pathDB.getFileSystemContaining( Arrays.asList( OTHER_FS, TEST_FS, "none" ), "/few/file-0" ),
+                    equalTo( new HashSet<>( Arrays.asList( OTHER_FS, TEST_FS ) ) ) );
+        assertThat( pathDB.getFirstFileSystemContaining( Arrays.asList( "none", TEST_FS, OTHER_FS ), "/few/file-0" ),
+                    equalTo( TEST_FS ) );
+        assertNull( pathDB.getFirstFileSystemContaining( Arrays.asList( OTHER_FS ), "/many/file-0" ) );
+    }
+
+    private void insert( String fileSystem, String path )
+    {
+        String fileId = PathMapUtils.getRandomFileId();
+        pathDB.insert( fileSystem, path, new Date(), null, fileId, 10, "storage/" + fileId, null );
+    }
+
+    private List<String> paths( List<PathMap> pathMaps )
+    {
+        return pathMaps.stream()
+                       .map( p -> PathMapUtils.normalize( p.getParentPath(), p.getFilename() ) )
+                       .collect( Collectors.toList() );
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LinkIfExistsTest
+        extends AbstractCassandraFMTest
+{
+    @Test
+    public void linkToExistingContent() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent ); // TEST_FS matches the deduplicate pattern
+        String checksum = fileManager.getPathMap( TEST_FS, path1 ).getChecksum();
+        long size = simpleContent.length();
+
+        assertFalse( fileManager.linkIfExists( TEST_FS, path2, checksum, size + 1, 0, TimeUnit.SECONDS ) );
+        assertFalse( fileManager.linkIfExists( TEST_FS, path2, "no-such-checksum", size, 0, TimeUnit.SECONDS ) );
+        assertFalse( fileManager.exists( TEST_FS, path2 ) );
+
+        assertTrue( fileManager.linkIfExists( TEST_FS, path2, checksum, size, 0, TimeUnit.SECONDS ) );
+        assertEquals( fileManager.getFileStoragePath( TEST_FS, path1 ),
+                      fileManager.getFileStoragePath( TEST_FS, path2 ) );
+        checkRead( TEST_FS, path2, true, simpleContent );
+    }
+
+    @Test
+    public void verifyExpectedChecksum() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        String checksum = fileManager.getPathMap( TEST_FS, path1 ).getChecksum();
+
+        writeWithContent( fileManager.openOutputStream( TEST_FS, path2, checksum, 0, TimeUnit.SECONDS ),
+                          simpleContent );
+        checkRead( TEST_FS, path2, true, simpleContent );
+
+        try (OutputStream out = fileManager.openOutputStream( TEST_FS, path2, checksum, 0, TimeUnit.SECONDS ))
+        {
+            out.write( "other content".getBytes() );
+        }
+        catch ( IOException e )
+        {
+            // expected, the existing file is kept
+            checkRead( TEST_FS, path2, true, simpleContent );
+            return;
+        }
+        fail( "Should fail on checksum mismatch" );
+    }
+}
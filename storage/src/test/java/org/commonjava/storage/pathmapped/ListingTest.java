@@ -15,15 +15,18 @@
  */
 package org.commonjava.storage.pathmapped;
 
+import org.commonjava.storage.pathmapped.model.ListPage;
 import org.commonjava.storage.pathmapped.spi.PathDB;
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.commonjava.storage.pathmapped.pathdb.datastax.util.AsyncJobExecutor.PROP_ASYNC_WORKER_ENABLED;
 import static org.junit.Assert.assertEquals;
@@ -196,4 +199,65 @@ public class ListingTest
         lists = Arrays.asList( fileManager.list( TEST_FS, "/foo/bar", true, 1, PathDB.FileType.file ) );
         assertEquals( lists.size(), 1 );
     }
+
+    @Test
+    public void listWideTreeRecursively()
+                    throws IOException
+    {
+        // more sibling dirs than the concurrent list queries in flight
+        int dirs = 50;
+        for ( int i = 0; i < dirs; i++ )
+        {
+            writeWithContent( fileManager.openOutputStream( TEST_FS, "/wide/" + i + "/1.0/file.pom" ), simpleContent );
+        }
+
+        List<String> lists = Arrays.asList( fileManager.list( TEST_FS, "/wide", true, 0, PathDB.FileType.file ) );
+        assertEquals( dirs, lists.size() );
+        for ( int i = 0; i < dirs; i++ )
+        {
+            Assert.assertThat( lists, CoreMatchers.hasItems( i + "/1.0/file.pom" ) );
+        }
+
+        lists = Arrays.asList( fileManager.list( TEST_FS, "/wide", true, 0, PathDB.FileType.dir ) );
+        assertEquals( dirs * 2, lists.size() );
+
+        lists = Arrays.asList( fileManager.list( TEST_FS, "/wide", true, 10, PathDB.FileType.file ) );
+        assertEquals( 10, lists.size() );
+    }
+
+    @Test
+    public void listByPage()
+                    throws IOException
+    {
+        int files = 25;
+        for ( int i = 0; i < files; i++ )
+        {
+            writeWithContent( fileManager.openOutputStream( TEST_FS, "/paged/file-" + i ), simpleContent );
+        }
+        writeWithContent( fileManager.openOutputStream( TEST_FS, "/paged/sub/file" ), simpleContent );
+
+        List<String> paged = new ArrayList<>();
+        String pagingState = null;
+        int pages = 0;
+        do
+        {
+            ListPage page = fileManager.listPage( TEST_FS, "/paged", PathDB.FileType.all, 10, pagingState );
+            page.getPathMaps().forEach( p -> paged.add( p.getFilename() ) );
+            pagingState = page.getPagingState();
+            pages++;
+        }
+        while ( pagingState != null );
+
+        assertEquals( files + 1, paged.size() );
+        Assert.assertTrue( pages >= 3 );
+        Assert.assertThat( paged, CoreMatchers.hasItems( fileManager.list( TEST_FS, "/paged" ) ) );
+
+        List<String> streamed = fileManager.listStream( TEST_FS, "/paged", PathDB.FileType.file, 7 )
+                                           .collect( Collectors.toList() );
+        assertEquals( files, streamed.size() );
+        Assert.assertThat( streamed, CoreMatchers.hasItems( fileManager.list( TEST_FS, "/paged", PathDB.FileType.file ) ) );
+
+        assertEquals( Arrays.asList( "sub/" ),
+                      fileManager.listStream( TEST_FS, "/paged", PathDB.FileType.dir, 7 ).collect( Collectors.toList() ) );
+    }
 }
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.cache.CachingPathDB;
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.ListPage;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.pathdb.memory.MemoryPathDB;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.commonjava.storage.pathmapped.util.ChecksumCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MemoryPathDBTest
+{
+    private static final String TEST_FS = "test";
+
+    private static final String content = "This is a test";
+
+    private static final long GC_WAIT_MS = 10;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private DefaultPathMappedStorageConfig config;
+
+    private PathMappedFileManager fileManager;
+
+    private File baseDir;
+
+    @Before
+    public void setup() throws IOException
+    {
+        baseDir = temp.newFolder();
+        config = new DefaultPathMappedStorageConfig( new HashMap<>() );
+        config.setGcGracePeriodInHours( 0 );
+        config.setDeduplicatePattern( "^(generic|npm|test).*" );
+        fileManager = new PathMappedFileManager( config, new MemoryPathDB( config ),
+                                                 new FileBasedPhysicalStore( baseDir ) );
+    }
+
+    @After
+    public void teardown() throws IOException
+    {
+        fileManager.close();
+    }
+
+    @Test
+    public void readWriteAndList() throws IOException
+    {
+        write( TEST_FS, "/foo/1.0/foo-1.0.pom" );
+        write( TEST_FS, "/foo/1.0/foo-1.0.jar" );
+        write( TEST_FS, "/foo/bar/2.0/bar-2.0.pom" );
+        write( TEST_FS, "/foobar/1.0/foobar-1.0.pom" );
+
+        assertThat( read( TEST_FS, "/foo/1.0/foo-1.0.pom" ), equalTo( content ) );
+        assertTrue( fileManager.exists( TEST_FS, "/foo/1.0/foo-1.0.pom" ) );
+        assertTrue( fileManager.isDirectory( TEST_FS, "/foo/bar" ) );
+        assertFalse( fileManager.exists( TEST_FS, "/foo/1.0/foo-1.0.war" ) );
+
+        assertThat( Arrays.asList( fileManager.list( TEST_FS, "/" ) ), hasItems( "foo/", "foobar/" ) );
+        List<String> children = Arrays.asList( fileManager.list( TEST_FS, "/foo" ) );
+        assertThat( children.size(), equalTo( 2 ) );
+        assertThat( children, hasItems( "1.0/", "bar/" ) );
+
+        // the sibling "/foobar" shares the prefix of "/foo" but is not under it
+        List<String> all = Arrays.asList( fileManager.list( TEST_FS, "/foo", true, 0, PathDB.FileType.file ) );
+        assertThat( all.size(), equalTo( 3 ) );
+        assertThat( all, hasItems( "1.0/foo-1.0.pom", "1.0/foo-1.0.jar", "bar/2.0/bar-2.0.pom" ) );
+
+        assertThat( fileManager.getFirstFileSystemContaining( Arrays.asList( "other", TEST_FS ),
+                                                              "/foo/1.0/foo-1.0.pom" ), equalTo( TEST_FS ) );
+    }
+
+    @Test
+    public void listPages() throws IOException
+    {
+        for ( int i = 0; i < 25; i++ )
+        {
+            write( TEST_FS, "/paged/file" + i );
+        }
+        List<String> listed = new ArrayList<>();
+        String pagingState = null;
+        do
+        {
+            ListPage page = fileManager.getPathDB().list( TEST_FS, "/paged", PathDB.FileType.file, 10, pagingState );
+            assertTrue( page.getPathMaps().size() <= 10 );
+            page.getPathMaps().forEach( p -> listed.add( p.getFilename() ) );
+            pagingState = page.getPagingState();
+        }
+        while ( pagingState != null );
+        assertThat( listed.size(), equalTo( 25 ) );
+    }
+
+    @Test
+    public void dedupeAndGc() throws Exception
+    {
+        write( TEST_FS, "/a/file1" );
+        write( TEST_FS, "/b/file2" );
+
+        PathDB pathDB = fileManager.getPathDB();
+        PathMap first = pathDB.getPathMap( TEST_FS, "/a/file1" );
+        PathMap second = pathDB.getPathMap( TEST_FS, "/b/file2" );
+        assertEquals( first.getFileStorage(), second.getFileStorage() );
+        assertThat( pathDB.getPathsByFileId( first.getFileId() ).size(), equalTo( 2 ) );
+
+        Filesystem filesystem = fileManager.getFilesystem( TEST_FS );
+        assertThat( filesystem.getFileCount(), equalTo( 2L ) );
+        assertThat( filesystem.getSize(), equalTo( (long) content.length() ) );
+
+        // the duplicate upload is reclaimed at once, the shared file when the last path goes
+        assertThat( gc().size(), equalTo( 1 ) );
+        fileManager.delete( TEST_FS, "/a/file1" );
+        assertTrue( gc().isEmpty() );
+        fileManager.delete( TEST_FS, "/b/file2" );
+        assertThat( gc().size(), equalTo( 1 ) );
+
+        assertNull( pathDB.getFileChecksum( first.getChecksum() ) );
+        assertThat( fileManager.getFilesystem( TEST_FS ).getFileCount(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void linkIfExistsOnlyWhenDeduplicated() throws IOException
+    {
+        config.setExtraChecksumAlgorithms( Arrays.asList( "MD5" ) );
+        write( TEST_FS, "/a/file1" );
+        PathMap stored = fileManager.getPathMap( TEST_FS, "/a/file1" );
+        String checksum = stored.getChecksum();
+
+        assertFalse( fileManager.linkIfExists( "other", "/b/file2", checksum, content.length(), 0, TimeUnit.SECONDS ) );
+        assertTrue( fileManager.linkIfExists( TEST_FS, "/b/file2", checksum, content.length(), 0, TimeUnit.SECONDS ) );
+        PathMap linked = fileManager.getPathMap( TEST_FS, "/b/file2" );
+        assertEquals( stored.getFileStorage(), linked.getFileStorage() );
+        assertEquals( stored.getDigests(), linked.getDigests() );
+        assertNotNull( linked.getDigests().get( "MD5" ) );
+
+        // verified, but not deduplicated outside the pattern
+        try (OutputStream out = fileManager.openOutputStream( "other", "/c/file3", checksum, 0, TimeUnit.SECONDS ))
+        {
+            IOUtils.write( content.getBytes(), out );
+        }
+        PathMap other = fileManager.getPathMap( "other", "/c/file3" );
+        assertNull( other.getChecksum() );
+        assertFalse( stored.getFileStorage().equals( other.getFileStorage() ) );
+        assertThat( fileManager.getPathDB().getPathsByFileId( stored.getFileId() ).size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void existsAsyncKeepsExpiration() throws IOException
+    {
+        config.setResetTimeoutForAccessing( TimeUnit.HOURS.toMillis( 2 ) );
+        try (OutputStream out = fileManager.openOutputStream( TEST_FS, "/a/file1", 1, TimeUnit.HOURS ))
+        {
+            IOUtils.write( content.getBytes(), out );
+        }
+        Date expiration = fileManager.getPathMap( TEST_FS, "/a/file1" ).getExpiration();
+
+        // like the sync exists, the async one is no access to extend the expiration for
+        assertTrue( fileManager.exists( TEST_FS, "/a/file1" ) );
+        assertTrue( fileManager.existsAsync( TEST_FS, "/a/file1" ).join() );
+        assertEquals( expiration, fileManager.getPathMap( TEST_FS, "/a/file1" ).getExpiration() );
+
+        read( TEST_FS, "/a/file1" );
+        assertTrue( fileManager.getPathMap( TEST_FS, "/a/file1" ).getExpiration().after( expiration ) );
+    }
+
+    /**
+     * The caching decorator hides no native async support, so the blocking calls run on the file manager threads.
+     */
+    @Test
+    public void asyncCallsRunOffTheCommonPool() throws IOException
+    {
+        List<String> threads = Collections.synchronizedList( new ArrayList<>() );
+        MemoryPathDB recording = new MemoryPathDB( config )
+        {
+            @Override
+            public PathMap getPathMap( String fileSystem, String path )
+            {
+                threads.add( Thread.currentThread().getName() );
+                return super.getPathMap( fileSystem, path );
+            }
+        };
+        try (PathMappedFileManager manager = new PathMappedFileManager( config, new CachingPathDB( recording ),
+                                                                        new FileBasedPhysicalStore( baseDir ) ))
+        {
+            try (OutputStream out = manager.openOutputStream( TEST_FS, "/a/file1" ))
+            {
+                IOUtils.write( content.getBytes(), out );
+            }
+            threads.clear();
+            assertTrue( manager.existsAsync( TEST_FS, "/a/file1" ).join() );
+            assertThat( threads, equalTo( Collections.singletonList( "path-mapped-async" ) ) );
+        }
+    }
+
+    @Test
+    public void crc32cIsNoDedupeKey() throws IOException
+    {
+        config.setFileChecksumAlgorithm( ChecksumCalculator.CRC32C );
+        try
+        {
+            fileManager.openOutputStream( TEST_FS, "/a/file1" );
+            fail( "CRC32C must not be the dedupe key" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+        assertNull( fileManager.getPathMap( TEST_FS, "/a/file1" ) );
+        assertTrue( FileUtils.listFiles( baseDir, null, true ).isEmpty() );
+
+        // no dedupe outside the pattern, fine to verify with it
+        write( "other", "/a/file1" );
+        assertThat( read( "other", "/a/file1" ), equalTo( content ) );
+    }
+
+    @Test
+    public void copyAndExpireKeepFields()
+    {
+        PathDB pathDB = fileManager.getPathDB();
+        Map<String, String> digests = new LinkedHashMap<>();
+        digests.put( "sha1", "da39a3ee5e6b4b0d3255bfef95601890afd80709" );
+        digests.put( "sha256", "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855" );
+        Date creation = new Date();
+        pathDB.insert( TEST_FS, "/foo/1.0/foo-1.0.jar", creation, null, "id", 14, "aa/bb/id", "checksum", digests );
+
+        PathMap pathMap = pathDB.getPathMap( TEST_FS, "/foo/1.0/foo-1.0.jar" );
+        assertThat( pathMap.getFileId(), equalTo( "id" ) );
+        assertThat( pathMap.getFileStorage(), equalTo( "aa/bb/id" ) );
+        assertThat( pathMap.getChecksum(), equalTo( "checksum" ) );
+        assertThat( pathMap.getCreation(), equalTo( creation ) );
+        assertNull( pathMap.getExpiration() );
+        assertThat( pathMap.getDigests(), equalTo( digests ) );
+
+        Date expiration = new Date( creation.getTime() + 60000 );
+        pathDB.expire( TEST_FS, "/foo/1.0/foo-1.0.jar", expiration );
+        assertThat( pathDB.getPathMap( TEST_FS, "/foo/1.0/foo-1.0.jar" ).getExpiration(), equalTo( expiration ) );
+
+        assertTrue( pathDB.copy( TEST_FS, "/foo/1.0/foo-1.0.jar", "other", "/bar/foo.jar" ) );
+        PathMap copy = pathDB.getPathMap( "other", "/bar/foo.jar" );
+        assertThat( copy.getFileStorage(), equalTo( "aa/bb/id" ) );
+        assertThat( copy.getDigests(), equalTo( digests ) );
+        assertThat( pathDB.getPathsByFileId( "id" ).size(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void replicaWritesHaveNoSideEffects() throws Exception
+    {
+        MemoryPathDB pathDB = (MemoryPathDB) fileManager.getPathDB();
+        Date creation = new Date();
+        pathDB.insert( TEST_FS, "/a/file1", creation, null, "id1", 14, "aa/bb/id1", "checksum" );
+
+        // the same checksum is not deduped, and neither the reverse map nor the counters are touched
+        pathDB.replicate( TEST_FS, "/b/c/file2", creation, null, "id2", 14, "aa/bb/id2", "checksum", null );
+        PathMap replica = pathDB.getPathMap( TEST_FS, "/b/c/file2" );
+        assertThat( replica.getFileId(), equalTo( "id2" ) );
+        assertThat( replica.getFileStorage(), equalTo( "aa/bb/id2" ) );
+        assertTrue( pathDB.isDirectory( TEST_FS, "/b/c" ) );
+        assertTrue( pathDB.getPathsByFileId( "id2" ).isEmpty() );
+        assertThat( pathDB.getFilesystem( TEST_FS ).getFileCount(), equalTo( 1L ) );
+
+        pathDB.removeReplica( TEST_FS, "/a/file1" );
+        assertNull( pathDB.getPathMap( TEST_FS, "/a/file1" ) );
+        pathDB.insert( "other", "/a/file1", creation, null, "id3", 14, "aa/bb/id3", null );
+        pathDB.clearReplica( TEST_FS );
+        assertThat( pathDB.list( TEST_FS, "/", true, 0, PathDB.FileType.all ).size(), equalTo( 0 ) );
+        assertNotNull( pathDB.getPathMap( "other", "/a/file1" ) );
+        assertTrue( gc().isEmpty() );
+    }
+
+    /**
+     * Reclaims are listed once strictly older than the grace period, so step past the millisecond of the delete.
+     */
+    private Map<FileInfo, Boolean> gc() throws InterruptedException
+    {
+        Thread.sleep( GC_WAIT_MS );
+        return fileManager.gc();
+    }
+
+    private void write( String fileSystem, String path ) throws IOException
+    {
+        try (OutputStream out = fileManager.openOutputStream( fileSystem, path ))
+        {
+            IOUtils.write( content.getBytes(), out );
+        }
+    }
+
+    private String read( String fileSystem, String path ) throws IOException
+    {
+        try (InputStream in = fileManager.openInputStream( fileSystem, path ))
+        {
+            return IOUtils.toString( in );
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.util.ChecksumCalculator;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32C;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.apache.commons.codec.digest.DigestUtils.shaHex;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MultiDigestTest
+        extends AbstractCassandraFMTest
+{
+    @Override
+    protected void customizeConfig( DefaultPathMappedStorageConfig config )
+    {
+        config.setExtraChecksumAlgorithms( Arrays.asList( "MD5", "SHA-1" ) );
+        config.setChecksumPipelined( true );
+    }
+
+    @Test
+    public void storeDigestsInOnePass() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent ); // TEST_FS matches the deduplicate pattern
+        PathMap pathMap = fileManager.getPathMap( TEST_FS, path1 );
+        assertEquals( sha256Hex( simpleContent ), pathMap.getChecksum() );
+        assertEquals( md5Hex( simpleContent ), pathMap.getDigests().get( "MD5" ) );
+        assertEquals( shaHex( simpleContent ), pathMap.getDigests().get( "SHA-1" ) );
+
+        String otherFs = "maven";
+        writeWithContent( otherFs, path1, simpleContent );
+        pathMap = fileManager.getPathMap( otherFs, path1 );
+        assertNull( pathMap.getChecksum() );
+        assertEquals( md5Hex( simpleContent ), pathMap.getDigests().get( "MD5" ) );
+        assertEquals( shaHex( simpleContent ), pathMap.getDigests().get( "SHA-1" ) );
+    }
+
+    @Test
+    public void pipelinedMatchesInline() throws Exception
+    {
+        byte[] data = new byte[3 * 1024 * 1024];
+        new Random( 1 ).nextBytes( data );
+        ExecutorService pipeline = Executors.newSingleThreadExecutor();
+        try
+        {
+            List<String> extras = Arrays.asList( "MD5", ChecksumCalculator.CRC32C );
+            ChecksumCalculator inline = new ChecksumCalculator( "SHA-256", extras, null );
+            ChecksumCalculator pipelined = new ChecksumCalculator( "SHA-256", extras, pipeline );
+            for ( int off = 0; off < data.length; off += 8192 )
+            {
+                inline.update( data, off, 8192 );
+                pipelined.update( data, off, 8192 );
+            }
+            Map<String, String> digests = pipelined.getDigests();
+            assertEquals( inline.getDigests(), digests );
+            assertEquals( sha256Hex( data ), digests.get( "SHA-256" ) );
+            assertEquals( md5Hex( data ), digests.get( "MD5" ) );
+
+            CRC32C crc = new CRC32C();
+            crc.update( data );
+            assertEquals( String.format( "%08x", crc.getValue() ), digests.get( ChecksumCalculator.CRC32C ) );
+        }
+        finally
+        {
+            pipeline.shutdown();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RangedReadTest
+        extends AbstractCassandraFMTest
+{
+    @Test
+    public void readRange() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent ); // "This is a test"
+
+        assertEquals( "is a", readRange( 5, 4 ) );
+        assertEquals( "a test", readRange( 8, -1 ) );
+        assertEquals( "test", readRange( 10, 100 ) ); // length beyond the end
+        assertEquals( "", readRange( 100, 10 ) ); // offset beyond the end
+        assertEquals( "", readRange( 0, 0 ) );
+        assertEquals( simpleContent, readRange( 0, -1 ) );
+    }
+
+    @Test
+    public void readRangeOfMissingFile() throws Exception
+    {
+        try (InputStream is = fileManager.openInputStream( TEST_FS, path1, 5, 4 ))
+        {
+            fail( "Should not open a missing file" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    private String readRange( long offset, long length ) throws IOException
+    {
+        try (InputStream is = fileManager.openInputStream( TEST_FS, path1, offset, length ))
+        {
+            return IOUtils.toString( is );
+        }
+    }
+}
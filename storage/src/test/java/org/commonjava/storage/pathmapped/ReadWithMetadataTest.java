@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.PathMappedInputStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Thread.sleep;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadWithMetadataTest
+        extends AbstractCassandraFMTest
+{
+    private static final long UPDATE_DELAY_MS = 100;
+
+    @Override
+    protected void customizeConfig( DefaultPathMappedStorageConfig config )
+    {
+        config.setResetTimeoutUpdateDelay( UPDATE_DELAY_MS );
+    }
+
+    @Test
+    public void readWithMetadata() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+
+        try (PathMappedInputStream is = fileManager.openInputStreamWithMetadata( TEST_FS, path1 ))
+        {
+            assertEquals( simpleContent.length(), is.getSize() );
+            assertNotNull( is.getChecksum() ); // TEST_FS matches the deduplicate pattern
+            assertTrue( is.getLastModified() > 0 );
+            assertEquals( simpleContent, IOUtils.toString( is ) );
+        }
+    }
+
+    @Test
+    public void readMissingFile() throws Exception
+    {
+        try (PathMappedInputStream is = fileManager.openInputStreamWithMetadata( TEST_FS, path1 ))
+        {
+            fail( "Should not open a missing file" );
+        }
+        catch ( IOException e )
+        {
+            // expected
+        }
+    }
+
+    @Test
+    public void expirationExtendedInBackground() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent, 1, TimeUnit.SECONDS );
+        Date original = fileManager.getPathMap( TEST_FS, path1 ).getExpiration();
+
+        try (PathMappedInputStream is = fileManager.openInputStreamWithMetadata( TEST_FS, path1 ))
+        {
+            assertEquals( original, is.getPathMap().getExpiration() );
+        }
+
+        sleep( UPDATE_DELAY_MS * 5 );
+        Date extended = fileManager.getPathMap( TEST_FS, path1 ).getExpiration();
+        assertTrue( extended.after( original ) );
+
+        sleep( 1000 );
+        checkRead( TEST_FS, path1, true, simpleContent );
+    }
+
+    @Test
+    public void pendingExpirationNotWrittenAfterDelete() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent, 1, TimeUnit.SECONDS );
+        try (PathMappedInputStream is = fileManager.openInputStreamWithMetadata( TEST_FS, path1 ))
+        {
+            assertEquals( simpleContent, IOUtils.toString( is ) );
+        }
+        fileManager.delete( TEST_FS, path1 );
+
+        // the deferred update must not bring back the row of the deleted path
+        sleep( UPDATE_DELAY_MS * 5 );
+        assertNull( fileManager.getPathMap( TEST_FS, path1 ) );
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.storage.pathmapped.core.S3PhysicalStore;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Read by ranged GETs from a fake S3Client whose GETs after the first chunk hang until aborted.
+ */
+public class S3ChunkedReadTest
+{
+    private static final int CHUNK_SIZE = 1024;
+
+    private final CountDownLatch opened = new CountDownLatch( 2 );
+
+    private final CountDownLatch aborted = new CountDownLatch( 2 );
+
+    private S3Client s3Client;
+
+    @Before
+    public void setup()
+    {
+        s3Client = (S3Client) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[] { S3Client.class },
+                                                      ( proxy, method, args ) -> handle( method, args ) );
+    }
+
+    @Test
+    public void closeAbortsChunksInFlight() throws Exception
+    {
+        S3PhysicalStore store = new S3PhysicalStore( s3Client, "bucket" );
+        store.setParallelRead( CHUNK_SIZE, 2 );
+
+        InputStream in = store.getInputStream( "file" );
+        assertEquals( CHUNK_SIZE, IOUtils.read( in, new byte[CHUNK_SIZE] ) );
+        assertTrue( opened.await( 5, SECONDS ) );
+
+        in.close();
+        assertTrue( aborted.await( 5, SECONDS ) );
+        store.close();
+    }
+
+    private Object handle( Method method, Object[] args )
+    {
+        if ( !"getObject".equals( method.getName() ) || !( args[0] instanceof GetObjectRequest ) )
+        {
+            return null;
+        }
+        String range = ( (GetObjectRequest) args[0] ).range();
+        if ( range.startsWith( "bytes=0-" ) )
+        {
+            return response( new ByteArrayInputStream( new byte[CHUNK_SIZE] ), () -> {} );
+        }
+        opened.countDown();
+        CountDownLatch released = new CountDownLatch( 1 );
+        InputStream hanging = new InputStream()
+        {
+            @Override
+            public int read() throws IOException
+            {
+                try
+                {
+                    released.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException( "Aborted" );
+            }
+        };
+        return response( hanging, () -> {
+            aborted.countDown();
+            released.countDown();
+        } );
+    }
+
+    private ResponseInputStream<GetObjectResponse> response( InputStream in, Runnable onAbort )
+    {
+        return new ResponseInputStream<>( GetObjectResponse.builder().build(),
+                                          AbortableInputStream.create( in, onAbort::run ) );
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.core.S3PhysicalStore;
+import org.commonjava.storage.pathmapped.spi.FileInfo;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Run S3OutputStream against a fake S3Client which drops the content, to check the parts and the buffer allocation.
+ */
+public class S3OutputStreamTest
+{
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private final List<Long> putLengths = new CopyOnWriteArrayList<>();
+
+    private final List<Integer> partNumbers = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private S3Client s3Client;
+
+    @Before
+    public void setup()
+    {
+        s3Client = (S3Client) Proxy.newProxyInstance( getClass().getClassLoader(), new Class[] { S3Client.class },
+                                                      ( proxy, method, args ) -> handle( method, args ) );
+    }
+
+    @Test
+    public void smallFileInOnePut() throws Exception
+    {
+        S3PhysicalStore store = new S3PhysicalStore( s3Client, "bucket", PART_SIZE, 4 );
+        upload( store, 2048 );
+
+        assertEquals( 1, putLengths.size() );
+        assertEquals( 2048L, (long) putLengths.get( 0 ) );
+        assertTrue( partNumbers.isEmpty() );
+    }
+
+    @Test
+    public void largeFileInConcurrentParts() throws Exception
+    {
+        S3PhysicalStore store = new S3PhysicalStore( s3Client, "bucket", PART_SIZE, 4 );
+        upload( store, 5 * PART_SIZE + 100 );
+
+        assertTrue( putLengths.isEmpty() );
+        assertEquals( 6, partNumbers.size() );
+        for ( int i = 1; i <= 6; i++ )
+        {
+            assertTrue( partNumbers.contains( i ) );
+        }
+        assertEquals( 1, completed.get() );
+    }
+
+    /**
+     * Bytes allocated by the writer thread per upload. A small file takes a buffer about its own size instead of a
+     * whole part, and a large file reuses the part buffers from the pool after the first upload.
+     */
+    @Test
+    public void allocationPerUpload() throws Exception
+    {
+        Assume.assumeTrue( ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean );
+        S3PhysicalStore store = new S3PhysicalStore( s3Client, "bucket", PART_SIZE, 2 );
+
+        long small = allocatedPerUpload( store, 2048, 200 );
+        long large = allocatedPerUpload( store, 4 * PART_SIZE, 10 );
+        System.out.println( "Allocated per upload, 2KB file: " + small + " bytes, " + ( 4 * PART_SIZE ) + " bytes file: "
+                                            + large + " bytes" );
+
+        assertTrue( small < PART_SIZE / 10 );
+        assertTrue( large < PART_SIZE );
+    }
+
+    private long allocatedPerUpload( S3PhysicalStore store, int size, int uploads ) throws Exception
+    {
+        com.sun.management.ThreadMXBean mxBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        upload( store, size ); // warm up and fill the pool
+        long begin = mxBean.getThreadAllocatedBytes( threadId );
+        for ( int i = 0; i < uploads; i++ )
+        {
+            upload( store, size );
+        }
+        return ( mxBean.getThreadAllocatedBytes( threadId ) - begin ) / uploads;
+    }
+
+    private void upload( S3PhysicalStore store, int size ) throws Exception
+    {
+        FileInfo fileInfo = store.getFileInfo( "fs", "/path/to/file" );
+        byte[] chunk = new byte[8192];
+        try (OutputStream out = store.getOutputStream( fileInfo ))
+        {
+            for ( int written = 0; written < size; written += chunk.length )
+            {
+                out.write( chunk, 0, Math.min( chunk.length, size - written ) );
+            }
+        }
+    }
+
+    private Object handle( Method method, Object[] args )
+    {
+        switch ( method.getName() )
+        {
+            case "putObject":
+                putLengths.add( ( (PutObjectRequest) args[0] ).contentLength() );
+                return PutObjectResponse.builder().build();
+            case "createMultipartUpload":
+                return CreateMultipartUploadResponse.builder().uploadId( "upload" ).build();
+            case "uploadPart":
+                int partNumber = ( (UploadPartRequest) args[0] ).partNumber();
+                partNumbers.add( partNumber );
+                return UploadPartResponse.builder().eTag( "etag-" + partNumber ).build();
+            case "completeMultipartUpload":
+                completed.incrementAndGet();
+                return null;
+            default:
+                return null;
+        }
+    }
+}
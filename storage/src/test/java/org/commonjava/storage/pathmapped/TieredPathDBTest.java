@@ -0,0 +1,206 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.cache.TieredPathDB;
+import org.commonjava.storage.pathmapped.config.DefaultPathMappedStorageConfig;
+import org.commonjava.storage.pathmapped.core.FileBasedPhysicalStore;
+import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
+import org.commonjava.storage.pathmapped.pathdb.memory.MemoryPathDB;
+import org.commonjava.storage.pathmapped.spi.PathDB;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.Thread.sleep;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TieredPathDBTest
+        extends AbstractCassandraFMTest
+{
+    private static final String OTHER_FS = "other";
+
+    private TieredPathDB tieredPathDB;
+
+    private MemoryPathDB localPathDB;
+
+    private PathMappedFileManager authoritativeFileManager;
+
+    private void prepareTiers( long maxStaleness ) throws Exception
+    {
+        authoritativeFileManager = fileManager;
+        DefaultPathMappedStorageConfig config = new DefaultPathMappedStorageConfig();
+        config.setGcIntervalInMinutes( 0 );
+        localPathDB = new MemoryPathDB( config );
+        tieredPathDB = new TieredPathDB( authoritativeFileManager.getPathDB(), localPathDB, Collections.emptyList(),
+                                         maxStaleness );
+        tieredPathDB.addFilesystem( TEST_FS ).get();
+        fileManager = new PathMappedFileManager( config, tieredPathDB,
+                                                 new FileBasedPhysicalStore( new File( getBaseDir() ) ) );
+    }
+
+    @Test
+    public void bootstrapServesReadsLocally() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        writeWithContent( TEST_FS, path2, simpleContent );
+        prepareTiers( 0 );
+
+        assertTrue( tieredPathDB.isServedLocally( TEST_FS ) );
+        assertNotNull( localPathDB.getPathMap( TEST_FS, path1 ) );
+        assertNotNull( localPathDB.getPathMap( TEST_FS, pathSub2 + "/" ) );
+        checkRead( TEST_FS, path1, true, simpleContent );
+
+        List<String> listed = Arrays.asList( fileManager.list( TEST_FS, pathParent ) );
+        assertThat( listed.size(), equalTo( 2 ) );
+        assertThat( listed, hasItems( sub1 + "/", sub2 + "/" ) );
+    }
+
+    @Test
+    public void writesThroughThisNodeAreTailed() throws Exception
+    {
+        prepareTiers( 0 );
+
+        writeWithContent( TEST_FS, path1, simpleContent );
+        assertNotNull( localPathDB.getPathMap( TEST_FS, path1 ) );
+        assertThat( localPathDB.getPathMap( TEST_FS, path1 ).getFileStorage(),
+                    equalTo( authoritativeFileManager.getPathMap( TEST_FS, path1 ).getFileStorage() ) );
+
+        // the duplicate points to the file kept by the authoritative PathDB
+        writeWithContent( TEST_FS, path2, simpleContent );
+        assertThat( localPathDB.getPathMap( TEST_FS, path2 ).getFileStorage(),
+                    equalTo( authoritativeFileManager.getPathMap( TEST_FS, path2 ).getFileStorage() ) );
+
+        fileManager.delete( TEST_FS, path1 );
+        assertNull( localPathDB.getPathMap( TEST_FS, path1 ) );
+        assertFalse( fileManager.exists( TEST_FS, path1 ) );
+    }
+
+    @Test
+    public void otherNodeWritesAreSeenByLookupsAndAfterReload() throws Exception
+    {
+        prepareTiers( 0 );
+
+        writeWithContent( authoritativeFileManager.openOutputStream( TEST_FS, path1 ), simpleContent );
+        assertNull( localPathDB.getPathMap( TEST_FS, path1 ) );
+
+        // a local miss goes to the authoritative PathDB, the listing is local until reloaded
+        assertNotNull( fileManager.getPathMap( TEST_FS, path1 ) );
+        assertThat( fileManager.list( TEST_FS, pathSub1 ).length, equalTo( 0 ) );
+
+        tieredPathDB.reload( TEST_FS ).get();
+        assertThat( fileManager.list( TEST_FS, pathSub1 ).length, equalTo( 1 ) );
+    }
+
+    @Test
+    public void staleIndexIsReloaded() throws Exception
+    {
+        prepareTiers( 500 );
+
+        writeWithContent( authoritativeFileManager.openOutputStream( TEST_FS, path1 ), simpleContent );
+        sleep( 600 );
+
+        // served by the authoritative PathDB while reloading
+        assertThat( fileManager.list( TEST_FS, pathSub1 ).length, equalTo( 1 ) );
+        tieredPathDB.reload( TEST_FS ).get();
+        assertTrue( tieredPathDB.isServedLocally( TEST_FS ) );
+        assertNotNull( localPathDB.getPathMap( TEST_FS, path1 ) );
+    }
+
+    @Test
+    public void missingPhysicalFileRefreshesLocalEntry() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        prepareTiers( 0 );
+        String staleStorage = localPathDB.getPathMap( TEST_FS, path1 ).getFileStorage();
+
+        // another node overwrites the path and the old file is collected
+        String otherContent = "other content";
+        writeWithContent( authoritativeFileManager.openOutputStream( TEST_FS, path1 ), otherContent );
+        assertTrue( new File( getBaseDir(), staleStorage ).delete() );
+
+        try
+        {
+            fileManager.openInputStream( TEST_FS, path1 );
+            fail();
+        }
+        catch ( IOException ex )
+        {
+            // expected
+        }
+        assertThat( localPathDB.getPathMap( TEST_FS, path1 ).getFileStorage(),
+                    equalTo( authoritativeFileManager.getPathMap( TEST_FS, path1 ).getFileStorage() ) );
+        checkRead( TEST_FS, path1, true, otherContent );
+    }
+
+    @Test
+    public void localIndexRecordsNoReclaims() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        prepareTiers( 0 );
+
+        writeWithContent( TEST_FS, path2, simpleContent );
+        fileManager.delete( TEST_FS, path1 );
+        tieredPathDB.reload( TEST_FS ).get();
+        tieredPathDB.removeFilesystem( TEST_FS ).get();
+
+        // the files belong to the authoritative PathDB, the local one must never collect them
+        sleep( 10 );
+        assertTrue( localPathDB.listOrphanedFiles( 0 ).isEmpty() );
+        assertThat( localPathDB.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void purgedFilesystemIsNotReplicated() throws Exception
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        prepareTiers( 0 );
+
+        fileManager.delete( TEST_FS, path1 );
+        tieredPathDB.purgeFilesystem( tieredPathDB.getFilesystem( TEST_FS ) );
+        assertNull( tieredPathDB.getFilesystem( TEST_FS ) );
+        assertFalse( tieredPathDB.isServedLocally( TEST_FS ) );
+    }
+
+    @Test
+    public void onlyOptedInFilesystemsAreReplicated() throws Exception
+    {
+        prepareTiers( 0 );
+
+        writeWithContent( OTHER_FS, path1, simpleContent );
+        assertFalse( tieredPathDB.isServedLocally( OTHER_FS ) );
+        assertNull( localPathDB.getPathMap( OTHER_FS, path1 ) );
+        checkRead( OTHER_FS, path1, true, simpleContent );
+        assertThat( fileManager.getFirstFileSystemContaining( Arrays.asList( TEST_FS, OTHER_FS ), path1 ),
+                    equalTo( OTHER_FS ) );
+
+        tieredPathDB.removeFilesystem( TEST_FS ).get();
+        assertFalse( tieredPathDB.isServedLocally( TEST_FS ) );
+        assertThat( localPathDB.size(), equalTo( 0 ) );
+        assertThat( tieredPathDB.list( TEST_FS, "/", PathDB.FileType.all ).size(), equalTo( 0 ) );
+    }
+}
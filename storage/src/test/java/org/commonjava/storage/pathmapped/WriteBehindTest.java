@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2019 Red Hat, Inc. (nos-devel@redhat.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.storage.pathmapped;
+
+import org.commonjava.storage.pathmapped.model.Filesystem;
+import org.commonjava.storage.pathmapped.model.PathMap;
+import org.commonjava.storage.pathmapped.pathdb.datastax.CassandraPathDB;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.commonjava.storage.pathmapped.pathdb.datastax.util.WriteBehindUpdater.PROP_WRITE_BEHIND_WINDOW_MILLIS;
+import static org.commonjava.storage.pathmapped.util.PathMapUtils.marshall;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+
+public class WriteBehindTest
+        extends AbstractCassandraFMTest
+{
+    @Override
+    protected Map<String, Object> getProps()
+    {
+        Map<String, Object> props = super.getProps();
+        props.put( PROP_WRITE_BEHIND_WINDOW_MILLIS, 60000 ); // flushed only by the test
+        return props;
+    }
+
+    private CassandraPathDB cassandraPathDB;
+
+    @Before
+    public void preparePathDBRef()
+    {
+        cassandraPathDB = (CassandraPathDB) fileManager.getPathDB();
+    }
+
+    @Test
+    public void updatesAreMergedUntilFlush()
+    {
+        int files = 20;
+        for ( int i = 0; i < files; i++ )
+        {
+            writeWithContent( TEST_FS, "/write-behind/file-" + i, simpleContent + i );
+        }
+        assertNull( fileManager.getFilesystem( TEST_FS ) );
+
+        cassandraPathDB.flushPendingUpdates();
+        Filesystem filesystem = fileManager.getFilesystem( TEST_FS );
+        assertThat( filesystem.getFileCount(), equalTo( (long) files ) );
+
+        PathMap pathMap = fileManager.getPathMap( TEST_FS, "/write-behind/file-0" );
+        assertThat( cassandraPathDB.getPathsByFileId( pathMap.getFileId() ),
+                    hasItem( marshall( TEST_FS, "/write-behind/file-0" ) ) );
+    }
+
+    @Test
+    public void deleteSeesPendingReverseMap()
+    {
+        writeWithContent( TEST_FS, path1, simpleContent );
+        PathMap pathMap = fileManager.getPathMap( TEST_FS, path1 );
+
+        // the pending addition is written before the deletion reduces the reverse map
+        fileManager.delete( TEST_FS, path1 );
+        assertThat( cassandraPathDB.getPathsByFileId( pathMap.getFileId() ), not( hasItem( marshall( TEST_FS, path1 ) ) ) );
+
+        cassandraPathDB.flushPendingUpdates();
+        Filesystem filesystem = fileManager.getFilesystem( TEST_FS );
+        assertThat( filesystem.getFileCount(), equalTo( 0L ) );
+        assertThat( filesystem.getSize(), equalTo( 0L ) );
+    }
+}